@@ -0,0 +1,189 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+
+import org.jgrasstools.gears.utils.files.FileUtilities;
+
+/**
+ * The results of a benchmarks run, as written by jmh in csv format.
+ *
+ * <p>
+ * Every result is identified by the benchmark, its mode and the values
+ * of its parameters, so that the same benchmark run by different releases
+ * can be compared.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class BenchmarkResults {
+
+    private static final String PARAM_PREFIX = "Param: ";
+    private static final String THROUGHPUT_MODE = "thrpt";
+
+    private final LinkedHashMap<String, double[]> key2ScoreMap = new LinkedHashMap<String, double[]>();
+    private final LinkedHashMap<String, String> key2UnitMap = new LinkedHashMap<String, String>();
+
+    private BenchmarkResults() {
+    }
+
+    /**
+     * Read the results from a jmh csv file.
+     *
+     * @param csvFile the results file.
+     * @return the results.
+     * @throws IOException
+     */
+    public static BenchmarkResults read( File csvFile ) throws IOException {
+        List<String> lines = FileUtilities.readFileToLinesList(csvFile);
+        if (lines.size() == 0) {
+            throw new IOException("The results file is empty: " + csvFile);
+        }
+        List<String> header = splitLine(lines.get(0));
+        int benchmarkIndex = header.indexOf("Benchmark");
+        int modeIndex = header.indexOf("Mode");
+        int scoreIndex = header.indexOf("Score");
+        int errorIndex = -1;
+        for( int i = 0; i < header.size(); i++ ) {
+            if (header.get(i).startsWith("Score Error")) {
+                errorIndex = i;
+            }
+        }
+        int unitIndex = header.indexOf("Unit");
+        if (benchmarkIndex == -1 || modeIndex == -1 || scoreIndex == -1 || errorIndex == -1 || unitIndex == -1) {
+            throw new IOException("The file is not a jmh csv results file: " + csvFile);
+        }
+
+        BenchmarkResults results = new BenchmarkResults();
+        for( int i = 1; i < lines.size(); i++ ) {
+            String line = lines.get(i);
+            if (line.trim().length() == 0) {
+                continue;
+            }
+            List<String> values = splitLine(line);
+            StringBuilder key = new StringBuilder();
+            key.append(values.get(benchmarkIndex)).append(' ').append(values.get(modeIndex));
+            for( int j = 0; j < header.size() && j < values.size(); j++ ) {
+                String name = header.get(j);
+                String value = values.get(j);
+                if (name.startsWith(PARAM_PREFIX) && value.length() > 0) {
+                    key.append(' ').append(name.substring(PARAM_PREFIX.length())).append('=').append(value);
+                }
+            }
+            double score = parseNumber(values.get(scoreIndex));
+            double error = parseNumber(values.get(errorIndex));
+            results.key2ScoreMap.put(key.toString(), new double[]{score, error});
+            results.key2UnitMap.put(key.toString(), values.get(unitIndex));
+        }
+        return results;
+    }
+
+    /**
+     * Compare these results with older ones.
+     *
+     * <p>A benchmark has regressed if it got worse by more than the threshold
+     * and by more than the sum of the errors of the two scores.</p>
+     *
+     * @param oldResults the results to compare with.
+     * @param threshold the allowed worsening, in percent.
+     * @param out the stream to which the comparison is printed.
+     * @return the number of regressed benchmarks.
+     */
+    public int compare( BenchmarkResults oldResults, double threshold, PrintStream out ) {
+        int regressions = 0;
+        for( Entry<String, double[]> entry : key2ScoreMap.entrySet() ) {
+            String key = entry.getKey();
+            double[] newScore = entry.getValue();
+            double[] oldScore = oldResults.key2ScoreMap.get(key);
+            if (oldScore == null) {
+                out.println("NEW\t" + key + "\t" + newScore[0] + " " + key2UnitMap.get(key));
+                continue;
+            }
+
+            double change = (newScore[0] - oldScore[0]) / oldScore[0] * 100.0;
+            if (key.split(" ")[1].equals(THROUGHPUT_MODE)) {
+                change = -change;
+            }
+            double errors = zeroIfNaN(newScore[1]) + zeroIfNaN(oldScore[1]);
+            boolean isRegression = change > threshold && Math.abs(newScore[0] - oldScore[0]) > errors;
+            if (isRegression) {
+                regressions++;
+            }
+            String status = isRegression ? "WORSE" : "OK";
+            out.println(String.format("%s\t%s\t%.3f -> %.3f %s\t%+.1f%%", status, key, oldScore[0], newScore[0],
+                    key2UnitMap.get(key), change));
+        }
+        for( String key : oldResults.key2ScoreMap.keySet() ) {
+            if (!key2ScoreMap.containsKey(key)) {
+                out.println("MISSING\t" + key);
+            }
+        }
+        return regressions;
+    }
+
+    private static double zeroIfNaN( double value ) {
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+
+    private static double parseNumber( String value ) {
+        if (value.length() == 0) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Split a csv line, honouring the quoted values.
+     */
+    private static List<String> splitLine( String line ) {
+        List<String> values = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        boolean inQuotes = false;
+        for( int i = 0; i < line.length(); i++ ) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append(ch);
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                }
+            } else if (ch == ',' && !inQuotes) {
+                values.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(ch);
+            }
+        }
+        values.add(sb.toString());
+        return values;
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmarks jar.
+ *
+ * <p>
+ * Usage:
+ * <pre>
+ * java -jar benchmarks.jar run &lt;results.csv&gt; [benchmarks regex]
+ * java -jar benchmarks.jar compare &lt;old results.csv&gt; &lt;new results.csv&gt; [threshold %]
+ * </pre>
+ * The results are written in the jmh csv format, one line per benchmark and parameters
+ * set, so that the results of two releases can be diffed or compared through
+ * {@link BenchmarkResults}, which exits with an error if a benchmark got slower than
+ * the threshold.
+ * </p>
+ * <p>
+ * Any other arguments are passed to the jmh command line runner.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class BenchmarksRunner {
+
+    private static final double DEFAULT_THRESHOLD = 10.0;
+
+    public static void main( String[] args ) throws Exception {
+        if (args.length >= 2 && args[0].equals("run")) {
+            File resultsFile = new File(args[1]);
+            String include = args.length > 2 ? args[2] : BenchmarksRunner.class.getPackage().getName() + ".*";
+            Options options = new OptionsBuilder()//
+                    .include(include)//
+                    .resultFormat(ResultFormatType.CSV)//
+                    .result(resultsFile.getAbsolutePath())//
+                    .build();
+            new Runner(options).run();
+        } else if (args.length >= 3 && args[0].equals("compare")) {
+            double threshold = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_THRESHOLD;
+            BenchmarkResults oldResults = BenchmarkResults.read(new File(args[1]));
+            BenchmarkResults newResults = BenchmarkResults.read(new File(args[2]));
+            int regressions = newResults.compare(oldResults, threshold, System.out);
+            if (regressions > 0) {
+                System.exit(1);
+            }
+        } else {
+            org.openjdk.jmh.Main.main(args);
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import oms3.Compound;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Out;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.OmsPitfiller;
+import org.jgrasstools.hortonmachine.modules.geomorphology.flow.OmsFlowDirections;
+import org.jgrasstools.hortonmachine.modules.geomorphology.tca.OmsTca;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the oms3 {@link oms3.Controller controller}, which runs the
+ * components of a {@link Compound} and moves the data among them.
+ *
+ * <p>
+ * The chain of trivial components measures the cost of the dataflow alone, the
+ * hydrologic chain the cost of wiring and running real modules.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class DataflowBenchmarks {
+
+    @Param({"128"})
+    public int size;
+
+    @Param({"2", "32"})
+    public int componentsNum;
+
+    @Param({"42"})
+    public long seed;
+
+    private IJGTProgressMonitor pm = new DummyProgressMonitor();
+
+    private GridCoverage2D dem;
+    private ChainCompound chainCompound;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SyntheticData data = new SyntheticData(size, size, seed);
+        dem = data.createDem();
+        chainCompound = new ChainCompound(componentsNum);
+    }
+
+    @Benchmark
+    public double componentsChain() throws Exception {
+        chainCompound.execute();
+        return chainCompound.result;
+    }
+
+    @Benchmark
+    public GridCoverage2D hydrologyChain() throws Exception {
+        HydrologyCompound compound = new HydrologyCompound(pm);
+        compound.inElev = dem;
+        compound.execute();
+        return compound.outTca;
+    }
+
+    /**
+     * A component that adds one to its input.
+     */
+    public static class Increment {
+        @In
+        public double in;
+
+        @Out
+        public double out;
+
+        @Execute
+        public void execute() {
+            out = in + 1.0;
+        }
+    }
+
+    /**
+     * A compound of {@link Increment}s connected in a chain.
+     */
+    public static class ChainCompound extends Compound {
+        public double start = 0.0;
+        public double result;
+
+        public ChainCompound( int componentsNum ) {
+            Increment previous = new Increment();
+            field2in(this, "start", previous, "in");
+            for( int i = 1; i < componentsNum; i++ ) {
+                Increment next = new Increment();
+                out2in(previous, "out", next, "in");
+                previous = next;
+            }
+            out2field(previous, "out", this, "result");
+        }
+    }
+
+    /**
+     * A compound of the pitfiller, the flowdirections and the tca.
+     */
+    public static class HydrologyCompound extends Compound {
+        public GridCoverage2D inElev;
+        public GridCoverage2D outTca;
+
+        public HydrologyCompound( IJGTProgressMonitor pm ) {
+            OmsPitfiller pitfiller = new OmsPitfiller();
+            OmsFlowDirections flowDirections = new OmsFlowDirections();
+            OmsTca tca = new OmsTca();
+            pitfiller.pm = pm;
+            flowDirections.pm = pm;
+            tca.pm = pm;
+
+            field2in(this, "inElev", pitfiller, "inElev");
+            out2in(pitfiller, "outPit", flowDirections, "inPit");
+            out2in(flowDirections, "outFlow", tca, "inFlow");
+            out2field(tca, "outTca", this, "outTca");
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrasstools.gears.io.grasslegacy.io.GrassRasterReader;
+import org.jgrasstools.gears.io.grasslegacy.io.GrassRasterWriter;
+import org.jgrasstools.gears.io.grasslegacy.io.MapReader;
+import org.jgrasstools.gears.io.grasslegacy.utils.GrassLegacyConstans;
+import org.jgrasstools.gears.io.grasslegacy.utils.Window;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.files.FileUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the reading of compressed grass rasters.
+ *
+ * <p>
+ * A location is created once per size in a temporary folder, with the
+ * synthetic elevation model written in its PERMANENT mapset, and removed
+ * at the end of the trial.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GrassRasterReaderBenchmarks {
+
+    private static final String MAP_NAME = "dem";
+
+    @Param({"512", "2048"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"42"})
+    public long seed;
+
+    private IJGTProgressMonitor pm = new DummyProgressMonitor();
+
+    private File locationFolder;
+    private Window window;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SyntheticData data = new SyntheticData(size, size, seed);
+        RegionMap region = data.getRegion();
+        window = new Window(region.getWest(), region.getEast(), region.getSouth(), region.getNorth(), region.getXres(),
+                region.getYres());
+
+        locationFolder = File.createTempFile("jgt-benchmarks", "");
+        locationFolder.delete();
+        File mapsetFolder = new File(locationFolder, GrassLegacyConstans.PERMANENT_MAPSET);
+        mapsetFolder.mkdirs();
+        Window.writeDefaultWindowToLocation(locationFolder.getAbsolutePath(), window);
+        Window.writeActiveWindowToMapset(mapsetFolder.getAbsolutePath(), window);
+
+        GrassRasterWriter writer = new GrassRasterWriter();
+        try {
+            writer.setOutputDataObject(new double[0][0]);
+            writer.setDataWindow(window);
+            if (!writer.open(MAP_NAME, locationFolder.getAbsolutePath(), GrassLegacyConstans.PERMANENT_MAPSET)) {
+                throw new IllegalStateException("Unable to create the map in: " + mapsetFolder);
+            }
+            writer.write(data.createDemData());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtilities.deleteFileOrDir(locationFolder);
+    }
+
+    @Benchmark
+    public double[][] read() throws Exception {
+        GrassRasterReader reader = new GrassRasterReader();
+        try {
+            reader.setReaderType(MapReader.RASTER_READER);
+            reader.setOutputDataObject(new double[0][0]);
+            reader.setDataWindow(window);
+            reader.setParameter("threads", threads);
+            reader.open(MAP_NAME, locationFolder.getAbsolutePath(), GrassLegacyConstans.PERMANENT_MAPSET);
+            if (reader.hasMoreData(pm)) {
+                return (double[][]) reader.getNextData();
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import static org.jgrasstools.gears.libs.modules.Variables.TCA;
+
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.hortonmachine.modules.demmanipulation.pitfiller.OmsPitfiller;
+import org.jgrasstools.hortonmachine.modules.geomorphology.draindir.OmsDrainDir;
+import org.jgrasstools.hortonmachine.modules.geomorphology.flow.OmsFlowDirections;
+import org.jgrasstools.hortonmachine.modules.geomorphology.tca.OmsTca;
+import org.jgrasstools.hortonmachine.modules.network.extractnetwork.OmsExtractNetwork;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the modules of the hydrologic chain, from the pitfilling to the network extraction.
+ *
+ * <p>
+ * The inputs of every module are prepared once per size by running the chain, so that
+ * each benchmark measures a single module.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HydrologyBenchmarks {
+
+    @Param({"256", "1024"})
+    public int size;
+
+    @Param({"42"})
+    public long seed;
+
+    private IJGTProgressMonitor pm = new DummyProgressMonitor();
+
+    private GridCoverage2D dem;
+    private GridCoverage2D pit;
+    private GridCoverage2D flow;
+    private GridCoverage2D tca;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SyntheticData data = new SyntheticData(size, size, seed);
+        dem = data.createDem();
+        pit = pitfiller();
+        flow = flowDirections();
+        tca = tca();
+    }
+
+    @Benchmark
+    public GridCoverage2D pitfiller() throws Exception {
+        OmsPitfiller pitfiller = new OmsPitfiller();
+        pitfiller.inElev = dem;
+        pitfiller.pm = pm;
+        pitfiller.process();
+        return pitfiller.outPit;
+    }
+
+    @Benchmark
+    public GridCoverage2D flowDirections() throws Exception {
+        OmsFlowDirections flowDirections = new OmsFlowDirections();
+        flowDirections.inPit = pit;
+        flowDirections.pm = pm;
+        flowDirections.process();
+        return flowDirections.outFlow;
+    }
+
+    @Benchmark
+    public GridCoverage2D drainDir() throws Exception {
+        OmsDrainDir drainDir = new OmsDrainDir();
+        drainDir.inPit = pit;
+        drainDir.inFlow = flow;
+        drainDir.pLambda = 1.0;
+        drainDir.doLad = true;
+        drainDir.pm = pm;
+        drainDir.process();
+        return drainDir.outFlow;
+    }
+
+    @Benchmark
+    public GridCoverage2D tca() throws Exception {
+        OmsTca tca = new OmsTca();
+        tca.inFlow = flow;
+        tca.pm = pm;
+        tca.process();
+        return tca.outTca;
+    }
+
+    @Benchmark
+    public GridCoverage2D extractNetwork() throws Exception {
+        OmsExtractNetwork extractNetwork = new OmsExtractNetwork();
+        extractNetwork.inTca = tca;
+        extractNetwork.inFlow = flow;
+        extractNetwork.pMode = TCA;
+        extractNetwork.pThres = 100;
+        extractNetwork.pm = pm;
+        extractNetwork.process();
+        return extractNetwork.outNet;
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import static org.jgrasstools.gears.libs.modules.Variables.IDW;
+import static org.jgrasstools.gears.libs.modules.Variables.TPS;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.modules.r.interpolation2d.OmsSurfaceInterpolator;
+import org.jgrasstools.hortonmachine.modules.statistics.kriging.OmsKriging;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the interpolation of scattered points on a grid.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class InterpolationBenchmarks {
+
+    @Param({"64", "128"})
+    public int size;
+
+    @Param({"50", "200"})
+    public int pointsNum;
+
+    @Param({"42"})
+    public long seed;
+
+    private IJGTProgressMonitor pm = new DummyProgressMonitor();
+
+    private GridGeometry2D gridGeometry;
+    private SimpleFeatureCollection points;
+    private HashMap<Integer, double[]> pointsData;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SyntheticData data = new SyntheticData(size, size, seed);
+        gridGeometry = data.getGridGeometry();
+        points = data.createPoints(pointsNum);
+        pointsData = data.createPointsData(pointsNum);
+    }
+
+    @Benchmark
+    public GridCoverage2D kriging() throws Exception {
+        OmsKriging kriging = new OmsKriging();
+        kriging.inStations = points;
+        kriging.fStationsid = SyntheticData.ID_FIELD;
+        kriging.inData = pointsData;
+        kriging.inInterpolationGrid = gridGeometry;
+        kriging.pMode = 1;
+        kriging.defaultVariogramMode = 1;
+        kriging.pSemivariogramType = 1;
+        kriging.pA = size * 10.0;
+        kriging.pS = 1.0;
+        kriging.pNug = 0.0;
+        kriging.pm = pm;
+        kriging.process();
+        return kriging.outGrid;
+    }
+
+    @Benchmark
+    public GridCoverage2D surfaceInterpolatorTps() throws Exception {
+        return surfaceInterpolator(TPS);
+    }
+
+    @Benchmark
+    public GridCoverage2D surfaceInterpolatorIdw() throws Exception {
+        return surfaceInterpolator(IDW);
+    }
+
+    private GridCoverage2D surfaceInterpolator( String mode ) throws Exception {
+        OmsSurfaceInterpolator interpolator = new OmsSurfaceInterpolator();
+        interpolator.inVector = points;
+        interpolator.inGrid = gridGeometry;
+        interpolator.fCat = SyntheticData.ELEV_FIELD;
+        interpolator.pMode = mode;
+        interpolator.pm = pm;
+        interpolator.process();
+        return interpolator.outRaster;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.io.las.core.v_1_0.LasReader_1_0;
+import org.jgrasstools.gears.io.las.core.v_1_0.LasWriter_1_0;
+import org.jgrasstools.gears.utils.files.FileUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * Benchmarks of the reading of las files.
+ *
+ * <p>
+ * The point cloud is written once per size to a temporary folder, which is
+ * removed at the end of the trial.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LasReaderBenchmarks {
+
+    @Param({"100000", "1000000"})
+    public int pointsNum;
+
+    @Param({"42"})
+    public long seed;
+
+    private File tmpFolder;
+    private File lasFile;
+    private CoordinateReferenceSystem crs;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SyntheticData data = new SyntheticData(1000, 1000, seed);
+        crs = data.getCrs();
+        LasRecord[] records = data.createLasRecords(pointsNum);
+
+        double zMin = Double.POSITIVE_INFINITY;
+        double zMax = Double.NEGATIVE_INFINITY;
+        for( LasRecord record : records ) {
+            zMin = Math.min(zMin, record.z);
+            zMax = Math.max(zMax, record.z);
+        }
+
+        tmpFolder = File.createTempFile("jgt-benchmarks", "");
+        tmpFolder.delete();
+        tmpFolder.mkdirs();
+        lasFile = new File(tmpFolder, "points.las");
+
+        LasWriter_1_0 writer = new LasWriter_1_0(lasFile, crs);
+        writer.setBounds(data.getRegion().getWest(), data.getRegion().getEast(), data.getRegion().getSouth(), data
+                .getRegion().getNorth(), zMin, zMax);
+        writer.open();
+        for( LasRecord record : records ) {
+            writer.addPoint(record);
+        }
+        writer.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        FileUtilities.deleteFileOrDir(tmpFolder);
+    }
+
+    @Benchmark
+    public double readRecords() throws Exception {
+        LasReader_1_0 reader = new LasReader_1_0(lasFile, crs);
+        double sum = 0;
+        try {
+            reader.open();
+            while( reader.hasNextLasDot() ) {
+                LasRecord record = reader.readNextLasDot();
+                sum += record.z;
+            }
+        } finally {
+            reader.close();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double readPositions() throws Exception {
+        LasReader_1_0 reader = new LasReader_1_0(lasFile, crs);
+        double sum = 0;
+        try {
+            reader.open();
+            long recordsCount = reader.getRecordsCount();
+            for( long i = 0; i < recordsCount; i++ ) {
+                double[] xyzAddress = reader.readNextLasXYZAddress();
+                sum += xyzAddress[2];
+            }
+        } finally {
+            reader.close();
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.benchmarks;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.CRS;
+import org.jgrasstools.gears.io.las.core.LasRecord;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+/**
+ * Synthetic maps and points for the benchmarks.
+ *
+ * <p>
+ * Everything is generated from a seed, so that the same seed always gives
+ * the same data and results of different releases can be compared. The terrain
+ * is a valley draining to the south border, with some hills on it and noise,
+ * which leaves pits for the pitfiller and a network to extract. Points are
+ * sampled from the same terrain.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class SyntheticData {
+
+    /**
+     * The id field of the generated points.
+     */
+    public static final String ID_FIELD = "id";
+
+    /**
+     * The elevation field of the generated points.
+     */
+    public static final String ELEV_FIELD = "elev";
+
+    private static final double WEST = 600000.0;
+    private static final double SOUTH = 5100000.0;
+    private static final double RES = 10.0;
+    private static final int HILLS_NUM = 12;
+
+    private final RegionMap regionMap;
+    private final CoordinateReferenceSystem crs;
+    private final long seed;
+    private final double[][] hills;
+
+    /**
+     * Constructor.
+     *
+     * @param rows the rows of the region.
+     * @param cols the columns of the region.
+     * @param seed the seed of all the generated data.
+     * @throws Exception
+     */
+    public SyntheticData( int rows, int cols, long seed ) throws Exception {
+        this.seed = seed;
+        double north = SOUTH + rows * RES;
+        double east = WEST + cols * RES;
+        regionMap = CoverageUtilities.makeRegionParamsMap(north, SOUTH, WEST, east, RES, RES, cols, rows);
+        crs = CRS.decode("EPSG:32632");
+
+        Random random = new Random(seed);
+        hills = new double[HILLS_NUM][];
+        for( int i = 0; i < HILLS_NUM; i++ ) {
+            double x = WEST + random.nextDouble() * cols * RES;
+            double y = SOUTH + random.nextDouble() * rows * RES;
+            double radius = (0.05 + 0.15 * random.nextDouble()) * Math.min(rows, cols) * RES;
+            double height = 5.0 + 45.0 * random.nextDouble();
+            hills[i] = new double[]{x, y, radius, height};
+        }
+    }
+
+    public RegionMap getRegion() {
+        return regionMap;
+    }
+
+    public CoordinateReferenceSystem getCrs() {
+        return crs;
+    }
+
+    public GridGeometry2D getGridGeometry() {
+        return CoverageUtilities.gridGeometryFromRegionParams(regionMap, crs);
+    }
+
+    /**
+     * Get the elevation of the terrain in a position, without noise.
+     *
+     * @param x the easting.
+     * @param y the northing.
+     * @return the elevation.
+     */
+    public double elevation( double x, double y ) {
+        double centerX = regionMap.getWest() + regionMap.getWidth() / 2.0;
+
+        double elev = 500.0;
+        elev += (y - regionMap.getSouth()) * 0.02;
+        elev += Math.abs(x - centerX) * 0.1;
+        for( double[] hill : hills ) {
+            double dx = x - hill[0];
+            double dy = y - hill[1];
+            elev += hill[3] * Math.exp(-(dx * dx + dy * dy) / (hill[2] * hill[2]));
+        }
+        return elev;
+    }
+
+    /**
+     * Create the elevation matrix of the region, in row/col order.
+     *
+     * @return the elevation data.
+     */
+    public double[][] createDemData() {
+        int rows = regionMap.getRows();
+        int cols = regionMap.getCols();
+        Random random = new Random(seed + 1);
+        double[][] data = new double[rows][cols];
+        for( int r = 0; r < rows; r++ ) {
+            double y = regionMap.getNorth() - (r + 0.5) * RES;
+            for( int c = 0; c < cols; c++ ) {
+                double x = regionMap.getWest() + (c + 0.5) * RES;
+                data[r][c] = elevation(x, y) + random.nextGaussian() * 0.5;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Create the elevation model of the region.
+     *
+     * @return the elevation coverage.
+     */
+    public GridCoverage2D createDem() {
+        return CoverageUtilities.buildCoverage("dem", createDemData(), regionMap, crs, true);
+    }
+
+    /**
+     * Create points randomly placed in the region, with an {@link #ID_FIELD}
+     * and the elevation of the terrain in {@link #ELEV_FIELD}.
+     *
+     * @param pointsNum the number of points.
+     * @return the points.
+     */
+    public SimpleFeatureCollection createPoints( int pointsNum ) {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("points");
+        b.setCRS(crs);
+        b.add("the_geom", Point.class);
+        b.add(ID_FIELD, Integer.class);
+        b.add(ELEV_FIELD, Double.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+
+        GeometryFactory gf = GeometryUtilities.gf();
+        DefaultFeatureCollection newCollection = new DefaultFeatureCollection();
+        Random random = new Random(seed + 2);
+        for( int i = 0; i < pointsNum; i++ ) {
+            Coordinate coordinate = randomCoordinate(random);
+            Point point = gf.createPoint(coordinate);
+            Object[] values = new Object[]{point, i, coordinate.z};
+            builder.addAll(values);
+            SimpleFeature feature = builder.buildFeature(type.getTypeName() + "." + i);
+            newCollection.add(feature);
+        }
+        return newCollection;
+    }
+
+    /**
+     * Create the measured values of the points created by {@link #createPoints(int)}.
+     *
+     * @param pointsNum the number of points.
+     * @return the map of the point ids to their values.
+     */
+    public HashMap<Integer, double[]> createPointsData( int pointsNum ) {
+        HashMap<Integer, double[]> id2ValueMap = new HashMap<Integer, double[]>();
+        Random random = new Random(seed + 2);
+        for( int i = 0; i < pointsNum; i++ ) {
+            Coordinate coordinate = randomCoordinate(random);
+            id2ValueMap.put(i, new double[]{coordinate.z});
+        }
+        return id2ValueMap;
+    }
+
+    /**
+     * Create a point cloud over the region.
+     *
+     * @param pointsNum the number of points.
+     * @return the las records.
+     */
+    public LasRecord[] createLasRecords( int pointsNum ) {
+        LasRecord[] records = new LasRecord[pointsNum];
+        Random random = new Random(seed + 3);
+        for( int i = 0; i < pointsNum; i++ ) {
+            Coordinate coordinate = randomCoordinate(random);
+            LasRecord record = new LasRecord();
+            record.x = coordinate.x;
+            record.y = coordinate.y;
+            record.z = coordinate.z + random.nextGaussian() * 0.2;
+            record.intensity = (short) random.nextInt(256);
+            record.returnNumber = 1;
+            record.numberOfReturns = 1;
+            record.classification = 2;
+            record.gpsTime = i;
+            records[i] = record;
+        }
+        return records;
+    }
+
+    private Coordinate randomCoordinate( Random random ) {
+        double x = regionMap.getWest() + random.nextDouble() * regionMap.getWidth();
+        double y = regionMap.getSouth() + random.nextDouble() * regionMap.getHeight();
+        return new Coordinate(x, y, elevation(x, y));
+    }
+
+}
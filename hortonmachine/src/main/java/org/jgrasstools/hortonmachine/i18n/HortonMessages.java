@@ -52,6 +52,7 @@ public class HortonMessages {
     public static final String DUFFYINPUTS_pEtrate_DESCRIPTION = "Etrate";
     public static final String DUFFYINPUTS_pSatconst_DESCRIPTION = "Satconst";
     public static final String DUFFYINPUTS_pRouting_DESCRIPTION = "The routing model type to use.";
+    public static final String DUFFYINPUTS_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String DUFFYINPUTS_doBoundary_DESCRIPTION = "Switch to write final boundary conditions.";
     public static final String DUFFYINPUTS_inInitialconditions_DESCRIPTION = "The initial conditions of the model.";
     public static final String DUFFYINPUTS_pDischargePerUnitArea_DESCRIPTION = "Start discharge per unit area";
@@ -77,6 +78,21 @@ public class HortonMessages {
     public static final String OMSWATEROUTLET_outBasin_DESCRIPTION = "The extracted basin mask.";
     public static final String OMSWATEROUTLET_outArea_DESCRIPTION = "The area of the extracted basin.";
 
+    public static final String OMSMULTIWATEROUTLET_DESCRIPTION = "Extract the watersheds of a set of outlets in one run.";
+    public static final String OMSMULTIWATEROUTLET_DOCUMENTATION = "";
+    public static final String OMSMULTIWATEROUTLET_KEYWORDS = "Dem manipulation, Geomorphology, OmsFlowDirections";
+    public static final String OMSMULTIWATEROUTLET_LABEL = DEMMANIPULATION;
+    public static final String OMSMULTIWATEROUTLET_NAME = "multiwateroutlet";
+    public static final int OMSMULTIWATEROUTLET_STATUS = 5;
+    public static final String OMSMULTIWATEROUTLET_LICENSE = "General Public License Version 3 (GPLv3)";
+    public static final String OMSMULTIWATEROUTLET_AUTHORNAMES = "Andrea Antonello";
+    public static final String OMSMULTIWATEROUTLET_AUTHORCONTACTS = "http://www.hydrologis.com";
+    public static final String OMSMULTIWATEROUTLET_inFlow_DESCRIPTION = "The map of flowdirections.";
+    public static final String OMSMULTIWATEROUTLET_inOutlets_DESCRIPTION = "The outlet points.";
+    public static final String OMSMULTIWATEROUTLET_fId_DESCRIPTION = "The field of the outlets holding the value of the basins (if not set, the position of the outlet is used, starting from 1).";
+    public static final String OMSMULTIWATEROUTLET_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
+    public static final String OMSMULTIWATEROUTLET_outBasins_DESCRIPTION = "The extracted basins, every cell has the value of the first outlet downstream of it.";
+
     public static final String OMSDEBRISVANDRE_DESCRIPTION = "Implementation of the Vandre methodology for Debris handling.";
     public static final String OMSDEBRISVANDRE_DOCUMENTATION = "";
     public static final String OMSDEBRISVANDRE_KEYWORDS = "Debris, Raster";
@@ -187,6 +203,7 @@ public class HortonMessages {
     public static final String OMSSKYVIEW_AUTHORCONTACTS = "http://www.ing.unitn.it/dica/hp/?user=rigon";
     public static final String OMSSKYVIEW_inElev_DESCRIPTION = "The map of the elevation.";
     public static final String OMSSKYVIEW_outSky_DESCRIPTION = "The map of skyview factor.";
+    public static final String OMSSKYVIEW_doHorizonTable_DESCRIPTION = "Use the precomputed horizon angles table instead of the scan of every azimuth and elevation (faster on large maps).";
 
     public static final String OMSSHALSTAB_DESCRIPTION = "A version of the OmsShalstab stability model.";
     public static final String OMSSHALSTAB_DOCUMENTATION = "OmsShalstab.html";
@@ -339,6 +356,7 @@ public class HortonMessages {
     public static final String OMSTRENTOP_outDischarge_DESCRIPTION = "The output if pTest=1, contains the discharge for each pipes at several time.";
     public static final String OMSTRENTOP_outFillDegree_DESCRIPTION = "The output if pTest=1, contains the fill degree for each pipes at several time.";
     public static final String OMSTRENTOP_outTpMax_DESCRIPTION = "The time which give the maximum discharge.";
+    public static final String OMSTRENTOP_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
 
     public static final String OMSNETSHAPE2FLOW_DESCRIPTION = "Transforms the network shape to a flow map.";
     public static final String OMSNETSHAPE2FLOW_DOCUMENTATION = "OmsNetshape2Flow.html";
@@ -571,6 +589,13 @@ public class HortonMessages {
     public static final String OMSINSOLATION_tStartDate_DESCRIPTION = "The first day of the simulation.";
     public static final String OMSINSOLATION_tEndDate_DESCRIPTION = "The last day of the simulation.";
     public static final String OMSINSOLATION_outIns_DESCRIPTION = "The map of total insolation.";
+    public static final String OMSINSOLATION_doHorizonTable_DESCRIPTION = "Use the precomputed horizon angles table to evaluate the shadows instead of scanning the dem at every hour.";
+    public static final String OMSINSOLATION_pHorizonAzimuths_DESCRIPTION = "The number of azimuths of the horizon angles table (default is 72).";
+    public static final String OMSINSOLATION_doMonthly_DESCRIPTION = "Also calculate the insolation of every month of the simulation.";
+    public static final String OMSINSOLATION_doSeasonal_DESCRIPTION = "Also calculate the insolation of every season (djf, mam, jja, son) of the simulation.";
+    public static final String OMSINSOLATION_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
+    public static final String OMSINSOLATION_outInsMonthly_DESCRIPTION = "The maps of insolation of the months of the simulation.";
+    public static final String OMSINSOLATION_outInsSeasonal_DESCRIPTION = "The maps of insolation of the seasons of the simulation.";
 
     public static final String OMSMELTONNUMBER_DESCRIPTION = "Melton number calculator";
     public static final String OMSMELTONNUMBER_DOCUMENTATION = "";
@@ -738,6 +763,7 @@ public class HortonMessages {
     public static final String OMSMAGNITUDO_AUTHORNAMES = "Erica Ghesla - erica.ghesla@ing.unitn.it, Antonello Andrea, Cozzini Andrea, Franceschi Silvia, Pisoni Silvano, Rigon Riccardo";
     public static final String OMSMAGNITUDO_AUTHORCONTACTS = "";
     public static final String OMSMAGNITUDO_inFlow_DESCRIPTION = "The map of flowdirections.";
+    public static final String OMSMAGNITUDO_inTopology_DESCRIPTION = "The optional flow topology of the map of flowdirections (built if not available).";
     public static final String OMSMAGNITUDO_outMag_DESCRIPTION = "The map of magnitudo.";
 
     public static final String OMSJAMI_DESCRIPTION = "Jami - Just another meteo interpolator";
@@ -769,6 +795,7 @@ public class HortonMessages {
     public static final String OMSJAMI_inAltimetry_DESCRIPTION = "The list of altimetric bands information, into which the basin is divided.";
     public static final String OMSJAMI_inAreas_DESCRIPTION = "The list of altimetric/energetic bands areas.";
     public static final String OMSJAMI_inMeteo_DESCRIPTION = "The map of meteo data to interpolate. Every value is associated to the id of the station.";
+    public static final String OMSJAMI_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String OMSJAMI_outInterpolatedBand_DESCRIPTION = "Output interpolated meteo data for every band and point. Every value is associated to the id of the interpolation point.";
     public static final String OMSJAMI_outInterpolated_DESCRIPTION = "Output interpolated meteo data for every point. Every value is associated to the id of the interpolation point.";
 
@@ -905,6 +932,7 @@ public class HortonMessages {
     public static final String OMSKERNELDENSITY_pKernel_DESCRIPTION = "The kernel to use.";
     public static final String OMSKERNELDENSITY_pRadius_DESCRIPTION = "The kernel radius to use in cells (default = 10).";
     public static final String OMSKERNELDENSITY_doConstant_DESCRIPTION = "Use a constant value for the existing input map values instead of the real map value (default = false).";
+    public static final String OMSKERNELDENSITY_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String OMSKERNELDENSITY_outDensity_DESCRIPTION = "The kernel density estimation.";
 
     public static final String OMSSTRAHLERRATIOS_DESCRIPTION = "Calculates the OmsStrahler ratios.";
@@ -0,0 +1,154 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_AUTHORCONTACTS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_AUTHORNAMES;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_KEYWORDS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_LABEL;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_LICENSE;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_NAME;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_fId_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_inFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_inOutlets_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_outBasins_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_pMaxThreads_DESCRIPTION;
+
+import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.util.List;
+
+import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.iterator.RandomIterFactory;
+import javax.media.jai.iterator.WritableRandomIter;
+
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Out;
+import oms3.annotations.Status;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridGeometry2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+@Description(OMSMULTIWATEROUTLET_DESCRIPTION)
+@Author(name = OMSMULTIWATEROUTLET_AUTHORNAMES, contact = OMSMULTIWATEROUTLET_AUTHORCONTACTS)
+@Keywords(OMSMULTIWATEROUTLET_KEYWORDS)
+@Label(OMSMULTIWATEROUTLET_LABEL)
+@Name(OMSMULTIWATEROUTLET_NAME)
+@Status(OMSMULTIWATEROUTLET_STATUS)
+@License(OMSMULTIWATEROUTLET_LICENSE)
+public class OmsMultiWateroutlet extends JGTModel {
+    @Description(OMSMULTIWATEROUTLET_inFlow_DESCRIPTION)
+    @In
+    public GridCoverage2D inFlow;
+
+    @Description(OMSMULTIWATEROUTLET_inOutlets_DESCRIPTION)
+    @In
+    public SimpleFeatureCollection inOutlets;
+
+    @Description(OMSMULTIWATEROUTLET_fId_DESCRIPTION)
+    @In
+    public String fId;
+
+    @Description(OMSMULTIWATEROUTLET_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(OMSMULTIWATEROUTLET_outBasins_DESCRIPTION)
+    @Out
+    public GridCoverage2D outBasins = null;
+
+    @Execute
+    public void process() throws Exception {
+        if (!concatOr(outBasins == null, doReset)) {
+            return;
+        }
+        checkNull(inFlow, inOutlets);
+        RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inFlow);
+        int ncols = regionMap.getCols();
+        int nrows = regionMap.getRows();
+        GridGeometry2D gridGeometry = inFlow.getGridGeometry();
+
+        List<SimpleFeature> outletFeatures = FeatureUtilities.featureCollectionToList(inOutlets);
+        int outletsNum = outletFeatures.size();
+        int[] outletCols = new int[outletsNum];
+        int[] outletRows = new int[outletsNum];
+        double[] outletValues = new double[outletsNum];
+        int idFieldIndex = -1;
+        if (fId != null && outletsNum > 0) {
+            idFieldIndex = outletFeatures.get(0).getFeatureType().indexOf(fId);
+            if (idFieldIndex == -1) {
+                throw new ModelsIllegalargumentException("The field of the outlet id couldn't be found in the supplied outlets.",
+                        this);
+            }
+        }
+        for( int i = 0; i < outletsNum; i++ ) {
+            SimpleFeature outletFeature = outletFeatures.get(i);
+            Coordinate coordinate = ((Geometry) outletFeature.getDefaultGeometry()).getCoordinate();
+            int[] colRow = CoverageUtilities.colRowFromCoordinate(coordinate, gridGeometry, null);
+            outletCols[i] = colRow[0];
+            outletRows[i] = colRow[1];
+            if (idFieldIndex != -1) {
+                outletValues[i] = ((Number) outletFeature.getAttribute(idFieldIndex)).doubleValue();
+            } else {
+                outletValues[i] = i + 1;
+            }
+        }
+
+        RenderedImage flowRI = inFlow.getRenderedImage();
+        RandomIter flowIter = RandomIterFactory.create(flowRI, null);
+        WatershedEngine engine = new WatershedEngine(flowIter, ncols, nrows);
+        flowIter.done();
+
+        int[] labels = engine.delineate(outletCols, outletRows, pMaxThreads, pm);
+
+        WritableRaster basinsWR = CoverageUtilities.createDoubleWritableRaster(ncols, nrows, null, null, doubleNovalue);
+        WritableRandomIter basinsIter = RandomIterFactory.createWritable(basinsWR, null);
+        int index = 0;
+        for( int r = 0; r < nrows; r++ ) {
+            for( int c = 0; c < ncols; c++ ) {
+                int label = labels[index++];
+                if (label != 0) {
+                    basinsIter.setSample(c, r, 0, outletValues[label - 1]);
+                }
+            }
+        }
+        basinsIter.done();
+
+        outBasins = CoverageUtilities.buildCoverage("basins", basinsWR, regionMap, inFlow.getCoordinateReferenceSystem());
+    }
+}
@@ -17,8 +17,6 @@
  */
 package org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet;
 
-import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
-import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSWATEROUTLET_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSWATEROUTLET_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSWATEROUTLET_DESCRIPTION;
@@ -36,8 +34,8 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSWATEROUTLET_p
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 
+import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -91,20 +89,6 @@ public class OmsWateroutlet extends JGTModel {
 
     private HortonMessageHandler msg = HortonMessageHandler.getInstance();
 
-    private int[] pt_seg = new int[1];
-    private int[] ba_seg = new int[1];
-    private static final int RAMSEGBITS = 4;
-    private static final int DOUBLEBITS = 8; /* 2 * ramsegbits */
-    private static final int SEGLENLESS = 15; /* 2 ^ ramsegbits - 1 */
-
-    private double[] drain_ptrs = null;
-
-    private double[] bas_ptrs = null;
-
-    private int ncols;
-
-    private int nrows;
-
     @Execute
     public void process() throws Exception {
         if (!concatOr(outBasin == null, doReset)) {
@@ -112,8 +96,8 @@ public class OmsWateroutlet extends JGTModel {
         }
         checkNull(inFlow);
         RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inFlow);
-        ncols = regionMap.getCols();
-        nrows = regionMap.getRows();
+        int ncols = regionMap.getCols();
+        int nrows = regionMap.getRows();
         double xRes = regionMap.getXres();
         double yRes = regionMap.getYres();
         double north = regionMap.getNorth();
@@ -129,125 +113,18 @@ public class OmsWateroutlet extends JGTModel {
                     .getSimpleName());
         }
         RenderedImage flowRI = inFlow.getRenderedImage();
-        WritableRaster flowWR = CoverageUtilities.renderedImage2WritableRaster(flowRI, false);
-        WritableRandomIter flowIter = RandomIterFactory.createWritable(flowWR, null);
-
-        WritableRaster basinWR = CoverageUtilities.createDoubleWritableRaster(ncols, nrows, null, null, null);
-        WritableRandomIter basinIter = RandomIterFactory.createWritable(basinWR, null);
-
-        drain_ptrs = new double[size_array(pt_seg, nrows, ncols)];
-        // bas = (CELL *) G_calloc (size_array (&ba_seg, nrows, ncols),
-        // sizeof(CELL));
-        bas_ptrs = new double[size_array(ba_seg, nrows, ncols)];
-
-        pm.beginTask(msg.message("wateroutlet.extracting"), 2 * nrows);
-        for( int r = 0; r < nrows; r++ ) {
-            if (pm.isCanceled()) {
-                return;
-            }
-            for( int c = 0; c < ncols; c++ ) {
-                // adapt to the grass drainagedirection format "grass
-                // flow=(fluidturtle flow-1)"
-                double flowValue = flowIter.getSampleDouble(c, r, 0);
-                if (isNovalue(flowValue) || flowValue == 0) {
-                    flowIter.setSample(c, r, 0, -1.0);
-                } else if (flowValue == 1.0) {
-                    flowIter.setSample(c, r, 0, 8.0);
-                } else if (!isNovalue(flowValue)) {
-                    flowIter.setSample(c, r, 0, flowValue - 1);
-                }
-                drain_ptrs[seg_index(pt_seg, r, c)] = flowIter.getSample(c, r, 0);
-            }
-            pm.worked(1);
-        }
+        RandomIter flowIter = RandomIterFactory.create(flowRI, null);
+
+        pm.message(msg.message("wateroutlet.extracting"));
+        WatershedEngine engine = new WatershedEngine(flowIter, ncols, nrows);
+        flowIter.done();
 
         int row = (int) ((north - pNorth) / yRes);
         int col = (int) ((pEast - west) / xRes);
+        int[] labels = engine.delineate(new int[]{col}, new int[]{row}, 1, pm);
 
-        if (row >= 0 && col >= 0 && row < nrows && col < ncols)
-            overland_cells(row, col);
-
-        for( int r = 0; r < nrows; r++ ) {
-            for( int c = 0; c < ncols; c++ ) {
-                double basinValue = bas_ptrs[seg_index(ba_seg, r, c)];
-                basinIter.setSample(c, r, 0, basinValue);
-                if (isNovalue(flowIter.getSampleDouble(c, r, 0)) || basinIter.getSampleDouble(c, r, 0) == 0.0) {
-                    basinIter.setSample(c, r, 0, doubleNovalue);
-                } else {
-                    outArea = outArea + 1;
-                }
-            }
-            pm.worked(1);
-        }
-        pm.done();
-
-        outArea = outArea * xRes * yRes;
+        outArea = WatershedEngine.countCells(labels, 1)[0] * xRes * yRes;
+        WritableRaster basinWR = CoverageUtilities.createWritableRasterFromArray(ncols, nrows, labels);
         outBasin = CoverageUtilities.buildCoverage("basin", basinWR, regionMap, inFlow.getCoordinateReferenceSystem());
     }
-
-    private int size_array( int[] ram_seg, int nrows, int ncols ) {
-        int size, segs_in_col;
-
-        segs_in_col = ((nrows - 1) >> RAMSEGBITS) + 1;
-        ram_seg[0] = ((ncols - 1) >> RAMSEGBITS) + 1;
-        size = ((((nrows - 1) >> RAMSEGBITS) + 1) << RAMSEGBITS) * ((((ncols - 1) >> RAMSEGBITS) + 1) << RAMSEGBITS);
-        size -= ((segs_in_col << RAMSEGBITS) - nrows) << RAMSEGBITS;
-        size -= (ram_seg[0] << RAMSEGBITS) - ncols;
-        return (size);
-    }
-
-    private int seg_index( int[] s, int r, int c ) {
-        int value = ((((r) >> RAMSEGBITS) * (s[0]) + (((c) >> RAMSEGBITS)) << DOUBLEBITS) + (((r) & SEGLENLESS) << RAMSEGBITS) + ((c) & SEGLENLESS));
-
-        return value;
-    }
-
-    private void overland_cells( int row, int col ) {
-        int r, rr, c, cc, num_cells, size_more;
-        double value;
-        double[][] draindir = {{7, 6, 5}, {8, -17, 4}, {1, 2, 3}};
-
-        if (nrows > ncols) {
-            size_more = nrows;
-        } else {
-            size_more = ncols;
-        }
-
-        // OneCell[] Acells = new OneCell[size_more];
-        int[] AcellsR = new int[nrows * ncols];
-        int[] AcellsC = new int[nrows * ncols];
-        // OneCell Acells = new OneCell(nrows * ncols);
-
-        // Acells = (ONE_CELL *) G_malloc (size_more * sizeof(ONE_CELL));
-        num_cells = 1;
-        AcellsR[0] = row;
-        AcellsC[0] = col;
-        while( num_cells != 0 ) {
-            num_cells--;
-            // out.println(" num_cell = " + num_cells);
-            row = AcellsR[num_cells];
-            col = AcellsC[num_cells];
-            bas_ptrs[seg_index(ba_seg, row, col)] = 1.0;
-            for( r = row - 1, rr = 0; r <= row + 1; r++, rr++ ) {
-                for( c = col - 1, cc = 0; c <= col + 1; c++, cc++ ) {
-                    if (r >= 0 && c >= 0 && r < nrows && c < ncols) {
-                        value = drain_ptrs[seg_index(pt_seg, r, c)];
-
-                        /*
-                         * out.println("value == drain -> " + value + " == " + draindir[rr][cc] + " &&
-                         * bas_ptrs == 0.0 -> " + bas_ptrs[seg_index(ba_seg, r, c)] + " == 0.0");
-                         */
-
-                        if ((value == draindir[rr][cc]) && (bas_ptrs[seg_index(ba_seg, r, c)] == 0.0)) {
-                            if (num_cells == size_more) {
-                                System.out.println("AAAAAAAAAAAARRRRRRRRRRRGGGGGGGGGGGHHHHHHHH");
-                            }
-                            AcellsR[num_cells] = r;
-                            AcellsC[num_cells++] = c;
-                        }
-                    }
-                }
-            }
-        }
-    }
 }
@@ -0,0 +1,203 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.jgrasstools.gears.libs.modules.Direction;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Delineation of the watersheds of a set of outlets.
+ *
+ * <p>
+ * The flowdirections are kept as one byte per cell and every outlet is
+ * followed upstream through a stack of cell indexes (<code>row * cols + col</code>).
+ * The result is a map of labels, in which every cell takes the label of the
+ * first outlet found downstream of it, so that a basin containing other outlets
+ * is cut at their position. Since basins never overlap, the outlets are processed
+ * in parallel.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class WatershedEngine {
+
+    private static final int INITIAL_STACK_SIZE = 1024;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int cols;
+    private final int rows;
+    private final byte[] flow;
+
+    /**
+     * Constructor.
+     *
+     * @param flowIter the flowdirections map.
+     * @param cols the cols of the map.
+     * @param rows the rows of the map.
+     */
+    public WatershedEngine( RandomIter flowIter, int cols, int rows ) {
+        this.cols = cols;
+        this.rows = rows;
+        flow = new byte[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double value = flowIter.getSampleDouble(c, r, 0);
+                if (isNovalue(value)) {
+                    continue;
+                }
+                int flowValue = (int) value;
+                if (flowValue >= 1 && flowValue <= 8) {
+                    flow[r * cols + c] = (byte) flowValue;
+                }
+            }
+        }
+    }
+
+    /**
+     * Delineate the basins of a set of outlets.
+     *
+     * <p>
+     * Outlets that lie outside the map or on the same cell of a previous outlet
+     * get no basin.
+     * </p>
+     *
+     * @param outletCols the cols of the outlets.
+     * @param outletRows the rows of the outlets.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the labels of the cells, <code>i + 1</code> for the basin of outlet <code>i</code>
+     *          and 0 for cells that don't drain into any outlet.
+     */
+    public int[] delineate( int[] outletCols, int[] outletRows, int threads, final IJGTProgressMonitor pm ) {
+        final int[] labels = new int[cols * rows];
+        final int outletsNum = outletCols.length;
+        final int[] outletCells = new int[outletsNum];
+        // mark all the outlets first, so that every basin stops at the outlets upstream of it
+        for( int i = 0; i < outletsNum; i++ ) {
+            int col = outletCols[i];
+            int row = outletRows[i];
+            outletCells[i] = -1;
+            if (col >= 0 && col < cols && row >= 0 && row < rows) {
+                int cell = row * cols + col;
+                if (labels[cell] == 0) {
+                    labels[cell] = i + 1;
+                    outletCells[i] = cell;
+                }
+            }
+        }
+
+        final AtomicInteger nextOutlet = new AtomicInteger(0);
+        pm.beginTask("Extracting basins...", outletsNum);
+        Runnable worker = new Runnable(){
+            public void run() {
+                int[] stack = new int[INITIAL_STACK_SIZE];
+                int outlet;
+                while( (outlet = nextOutlet.getAndIncrement()) < outletsNum ) {
+                    if (outletCells[outlet] != -1) {
+                        stack = fillBasin(outletCells[outlet], outlet + 1, labels, stack);
+                    }
+                    synchronized (pm) {
+                        pm.worked(1);
+                    }
+                }
+            }
+        };
+        threads = Math.min(threads, outletsNum);
+        if (threads > 1) {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            for( int i = 0; i < threads; i++ ) {
+                fixedThreadPool.execute(worker);
+            }
+            try {
+                fixedThreadPool.shutdown();
+                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+                fixedThreadPool.shutdownNow();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        } else {
+            worker.run();
+        }
+        pm.done();
+        return labels;
+    }
+
+    /**
+     * Count the cells of every basin.
+     *
+     * @param labels the labels as returned by {@link #delineate(int[], int[], int, IJGTProgressMonitor)}.
+     * @param outletsNum the number of outlets.
+     * @return the number of cells of the basin of every outlet.
+     */
+    public static int[] countCells( int[] labels, int outletsNum ) {
+        int[] counts = new int[outletsNum];
+        for( int i = 0; i < labels.length; i++ ) {
+            if (labels[i] != 0) {
+                counts[labels[i] - 1]++;
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Label all the cells upstream of an outlet that are not yet labeled.
+     *
+     * <p>Cells are labeled before being pushed, so every cell enters the stack once.</p>
+     *
+     * @return the stack, possibly enlarged, to be reused.
+     */
+    private int[] fillBasin( int outletCell, int label, int[] labels, int[] stack ) {
+        int size = 0;
+        stack[size++] = outletCell;
+        while( size > 0 ) {
+            int cell = stack[--size];
+            int col = cell % cols;
+            int row = cell / cols;
+            for( Direction direction : DIRECTIONS ) {
+                int c = col + direction.col;
+                int r = row + direction.row;
+                if (c < 0 || c >= cols || r < 0 || r >= rows) {
+                    continue;
+                }
+                int upstream = r * cols + c;
+                if (labels[upstream] == 0 && flow[upstream] == direction.getEnteringFlow()) {
+                    labels[upstream] = label;
+                    if (size == stack.length) {
+                        int[] tmp = new int[2 * size];
+                        System.arraycopy(stack, 0, tmp, 0, size);
+                        stack = tmp;
+                    }
+                    stack[size++] = upstream;
+                }
+            }
+        }
+        return stack;
+    }
+
+}
@@ -35,7 +35,6 @@ public class Offtakes implements IDischargeContributor {
     private final HashMap<String, Integer> offtakes_pfaff2idMap;
     private HashMap<Integer, double[]> offtakes_id2valuesQMap;
     private final IJGTProgressMonitor out;
-    private String pNum;
 
     /**
      * Constructor.
@@ -50,7 +49,6 @@ public class Offtakes implements IDischargeContributor {
     }
 
     public Double getDischarge( String pNum ) {
-        this.pNum = pNum;
         Integer damId = offtakes_pfaff2idMap.get(pNum);
         if (damId != null) {
             double[] discharges = offtakes_id2valuesQMap.get(damId);
@@ -63,13 +61,15 @@ public class Offtakes implements IDischargeContributor {
         offtakes_id2valuesQMap = currentDataMap;
     }
 
-    public double mergeWithDischarge( double contributorDischarge, double inputDischarge ) {
+    public double mergeWithDischarge( String pfafstetterNumber, double contributorDischarge, double inputDischarge ) {
         if (inputDischarge >= contributorDischarge) {
             return inputDischarge - contributorDischarge;
         } else {
-            out.errorMessage(MessageFormat
-                    .format("WARNING: offtake discharge at {0} is greater than the river discharge. Offtake discharge set to 0 to continue.",
-                            pNum));
+            synchronized (out) {
+                out.errorMessage(MessageFormat
+                        .format("WARNING: offtake discharge at {0} is greater than the river discharge. Offtake discharge set to 0 to continue.",
+                                pfafstetterNumber));
+            }
             return inputDischarge;
         }
     }
@@ -39,7 +39,7 @@ public class Tributaries implements IDischargeContributor {
         tributary_id2valuesQMap = currentDataMap;
     }
 
-    public double mergeWithDischarge( double contributorDischarge, double inputDischarge ) {
+    public double mergeWithDischarge( String pfafstetterNumber, double contributorDischarge, double inputDischarge ) {
         return inputDischarge + contributorDischarge;
     }
 
@@ -96,7 +96,7 @@ public class DuffyAdigeEngine implements IAdigeEngine {
         inDuffyInput.outS1 = new HashMap<Integer, double[]>();
         inDuffyInput.outS2 = new HashMap<Integer, double[]>();
 
-        duffyEvaluator = new DuffyModel(orderedHillslopes, inDuffyInput.pRouting, pm, doLog);
+        duffyEvaluator = new DuffyModel(orderedHillslopes, inDuffyInput.pRouting, inDuffyInput.pMaxThreads, pm, doLog);
 
         hillsSlopeNum = orderedHillslopes.size();
 
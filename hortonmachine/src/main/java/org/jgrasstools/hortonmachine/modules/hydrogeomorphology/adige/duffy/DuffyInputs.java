@@ -18,6 +18,8 @@
  */
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy;
 
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.DUFFYINPUTS_pMaxThreads_DESCRIPTION;
+
 import java.util.HashMap;
 
 import oms3.annotations.Author;
@@ -111,6 +113,10 @@ public class DuffyInputs extends JGTModel {
     @In@Out
     public int pRouting = 3;
 
+    @Description(DUFFYINPUTS_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description("Switch to write final boundary conditions.")
     @In@Out
     public boolean doBoundary = false;
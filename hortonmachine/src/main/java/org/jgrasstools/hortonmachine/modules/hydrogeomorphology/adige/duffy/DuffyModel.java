@@ -15,7 +15,6 @@ GNU General Public License for more details.
 You should have received a copy of the GNU General Public License
 along with this program; if not, write to the Free Software
 Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
- */
 
 /*
  * NetworkEquations.java
@@ -29,7 +28,14 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
@@ -37,8 +43,6 @@ import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IDisc
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy.Parameters;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
-import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.PfafstetterNumber;
-import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.AdigeUtilities;
 /**
  * The duffy model.
  * 
@@ -47,16 +51,19 @@ import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.Adig
  * {@link IBasicFunction.util.ordDiffEqSolver.BasicFunction} that is used by the
  * {@link hydroScalingAPI.util.ordDiffEqSolver.RungeKuttaFelberg}
  * 
+ * <p>
+ * The hillslope parameters and the network topology are copied once into flat arrays,
+ * so that an evaluation doesn't need to walk the hillslope objects. Since every hillslope
+ * only reads the state of the hillslopes directly upstream, hillslopes are grouped by
+ * network level (the longest path from the sources) and the hillslopes of a level are
+ * evaluated in parallel, one level after the other.
+ * </p>
+ * 
  * @author Peter Furey
  * @author Andrea Antonello (www.hydrologis.com)
  * @author Silvia Franceschi (www.hydrologis.com)
  */
 public class DuffyModel {
-    private double qd, qs, Q_trib, Qs_trib;
-    // public double pcoe;
-
-    private double satsurf, mst, qdh, qds, inf, re, qe1, qe2;
-
     private double THRESHOLD_AREA = 500000; // 0.1Km2
     /*
      * HydroloGIS addons
@@ -65,6 +72,10 @@ public class DuffyModel {
     public static final int ROUTING_CHEZY = 3;
     public static final int ROUTING_MANNING = 4;
     private static final double MSTMAX = 1;
+    /**
+     * Levels with less hillslopes than this are evaluated in the calling thread.
+     */
+    private static final int MIN_PARALLEL_LEVEL_SIZE = 32;
     private int routingType = ROUTING_CHEZY;
     private List<IHillSlope> orderedHillslopes = null;
     private boolean doLog = false;
@@ -74,26 +85,238 @@ public class DuffyModel {
     private List<IDischargeContributor> dischargeContributorList = new ArrayList<IDischargeContributor>();
     private HashMap<Integer, ADischargeDistributor> hillslopeId2DischargeDistributor;
 
+    /*
+     * the hillslopes in arrays, at the index of the ordered hillslopes
+     */
+    private final int linksNum;
+    private final int[] hillslopeIds;
+    private final String[] pfafstetterNumbers;
+    private final double[] areas;
+    private final double[] minSupDischarges;
+    private final double[] minSubDischarges;
+    private final double[] s1Residuals;
+    private final double[] s2Residuals;
+    private final double[] s2Params;
+    private final double[] s2Maxs;
+    private final double[] ksValues;
+    private final double[] mstExps;
+    private final double[] recParams;
+    private final Double[] eTrates;
+    /* the factors of the routing coefficient that don't depend on the discharge */
+    private final double[] routingWidthFactors;
+    private final double[] routingLengthFactors;
+    private final double[] routingSlopeFactors;
+    private final double[] routingChezyFactors;
+    private final double[] linkWidths;
+    private ADischargeDistributor[] distributors;
+    /* the upstream hillslopes of hillslope i are upstreamIndexes[upstreamStart[i]..upstreamStart[i+1]) */
+    private final int[] upstreamStart;
+    private final int[] upstreamIndexes;
+    /* the hillslopes of level l are levelHillslopes[levelStart[l]..levelStart[l+1]) */
+    private final int[] levelStart;
+    private final int[] levelHillslopes;
+
+    private final int threads;
+    private ExecutorService executor;
+
     /**
      * Duffy model function.
      * 
-     * @param linksList
-     *            the list of all the network links, expressed through their
-     *            OmsPfafstetter numbers
-     * @param closureHillslope
-     *            the most downstream hillslope in the analyzed basin
+     * @param orderedHillslopes
+     *            the hillslopes, ordered so that every hillslope comes before the 
+     *            ones upstream of it.
      * @param routingType
      *            the type of routing to be used
+     * @param threads
+     *            the number of threads to use for the evaluation.
      * @param pm
-     * @param deltaTinMinutes 
      * @param doLog
      */
-    public DuffyModel( List<IHillSlope> orderedHillslopes, int routingType, IJGTProgressMonitor pm, boolean doLog ) {
+    public DuffyModel( List<IHillSlope> orderedHillslopes, int routingType, int threads, IJGTProgressMonitor pm, boolean doLog ) {
         this.orderedHillslopes = orderedHillslopes;
         this.routingType = routingType;
+        this.threads = threads;
         this.pm = pm;
         this.doLog = doLog;
 
+        linksNum = orderedHillslopes.size();
+        hillslopeIds = new int[linksNum];
+        pfafstetterNumbers = new String[linksNum];
+        areas = new double[linksNum];
+        minSupDischarges = new double[linksNum];
+        minSubDischarges = new double[linksNum];
+        s1Residuals = new double[linksNum];
+        s2Residuals = new double[linksNum];
+        s2Params = new double[linksNum];
+        s2Maxs = new double[linksNum];
+        ksValues = new double[linksNum];
+        mstExps = new double[linksNum];
+        recParams = new double[linksNum];
+        eTrates = new Double[linksNum];
+        routingWidthFactors = new double[linksNum];
+        routingLengthFactors = new double[linksNum];
+        routingSlopeFactors = new double[linksNum];
+        routingChezyFactors = new double[linksNum];
+        linkWidths = new double[linksNum];
+
+        HashMap<IHillSlope, Integer> hillslope2Index = new HashMap<IHillSlope, Integer>();
+        for( int i = 0; i < linksNum; i++ ) {
+            hillslope2Index.put(orderedHillslopes.get(i), i);
+        }
+        upstreamStart = new int[linksNum + 1];
+        List<Integer> upstreamList = new ArrayList<Integer>();
+        for( int i = 0; i < linksNum; i++ ) {
+            HillSlopeDuffy hillslope = (HillSlopeDuffy) orderedHillslopes.get(i);
+            Parameters parameters = hillslope.getParameters();
+            hillslopeIds[i] = hillslope.getHillslopeId();
+            pfafstetterNumbers[i] = hillslope.getPfafstetterNumber().toString();
+            areas[i] = hillslope.getHillslopeArea();
+            double upstreamArea = hillslope.getUpstreamArea(null);
+            minSupDischarges[i] = parameters.getqqsupmin() * upstreamArea / 1E6;
+            minSubDischarges[i] = parameters.getqqsubmin() * upstreamArea / 1E6;
+            s1Residuals[i] = parameters.getS1residual();
+            s2Residuals[i] = parameters.getS2residual();
+            s2Params[i] = parameters.getS2Param();
+            s2Maxs[i] = parameters.getS2max();
+            ksValues[i] = parameters.getKs();
+            mstExps[i] = parameters.getMstExp();
+            recParams[i] = parameters.getRecParam();
+            eTrates[i] = parameters.getETrate();
+            prepareRouting(i, hillslope);
+
+            upstreamStart[i] = upstreamList.size();
+            List<IHillSlope> upstreamHillslopes = hillslope.getConnectedUpstreamElements();
+            if (upstreamHillslopes != null) {
+                for( IHillSlope upstreamHillslope : upstreamHillslopes ) {
+                    Integer index = hillslope2Index.get(upstreamHillslope);
+                    if (index == null) {
+                        index = orderedHillslopes.indexOf(upstreamHillslope);
+                    }
+                    if (index <= i) {
+                        throw new ModelsIllegalargumentException(
+                                "The hillslopes have to be ordered with the upstream ones after the downstream ones.", this);
+                    }
+                    upstreamList.add(index);
+                }
+            }
+        }
+        upstreamStart[linksNum] = upstreamList.size();
+        upstreamIndexes = new int[upstreamList.size()];
+        for( int i = 0; i < upstreamIndexes.length; i++ ) {
+            upstreamIndexes[i] = upstreamList.get(i);
+        }
+
+        // levels from the sources, upstream hillslopes have higher indexes
+        int[] levels = new int[linksNum];
+        int levelsNum = 0;
+        for( int i = linksNum - 1; i >= 0; i-- ) {
+            int level = 0;
+            for( int u = upstreamStart[i]; u < upstreamStart[i + 1]; u++ ) {
+                level = Math.max(level, levels[upstreamIndexes[u]] + 1);
+            }
+            levels[i] = level;
+            levelsNum = Math.max(levelsNum, level + 1);
+        }
+        levelStart = new int[levelsNum + 1];
+        for( int i = 0; i < linksNum; i++ ) {
+            levelStart[levels[i] + 1]++;
+        }
+        for( int l = 0; l < levelsNum; l++ ) {
+            levelStart[l + 1] += levelStart[l];
+        }
+        levelHillslopes = new int[linksNum];
+        int[] levelFill = new int[levelsNum];
+        for( int i = linksNum - 1; i >= 0; i-- ) {
+            int level = levels[i];
+            levelHillslopes[levelStart[level] + levelFill[level]++] = i;
+        }
+    }
+
+    /**
+     * Keeps the factors of the routing coefficient that don't depend on the discharge,
+     * so that the coefficient is evaluated with the same operations of 
+     * {@link org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.utils.AdigeUtilities#doRouting(double, IHillSlope, int)}.
+     */
+    private void prepareRouting( int i, IHillSlope hillslope ) {
+        double linkWidth = hillslope.getLinkWidth(8.66, 0.6, 0.0);
+        double linkLength = hillslope.getLinkLength();
+        double linkSlope = hillslope.getLinkSlope();
+        double chezLawExpon = -1. / 3.;
+        double chezLawCoeff = 200. / Math.pow(0.000357911, chezLawExpon);
+        double linkChezy = hillslope.getLinkChezi(chezLawCoeff, chezLawExpon);
+        linkWidths[i] = linkWidth;
+        routingLengthFactors[i] = Math.pow(linkLength, -1);
+        switch( routingType ) {
+        case 2:
+            routingWidthFactors[i] = Math.pow(linkWidth, -1 / 3.);
+            routingSlopeFactors[i] = Math.pow(linkSlope, 2 / 9.);
+            break;
+        case 3:
+            routingChezyFactors[i] = Math.pow(linkChezy, 2. / 3.);
+            routingWidthFactors[i] = Math.pow(linkWidth, -1. / 3.);
+            routingSlopeFactors[i] = Math.pow(linkSlope, 1. / 3.);
+            break;
+        case 4:
+            routingSlopeFactors[i] = Math.pow(linkSlope, 1 / 2.);
+            break;
+        }
+    }
+
+    private double doRouting( double discharge, int i ) {
+        switch( routingType ) {
+        case 2:
+            return 8.796 * Math.pow(discharge, 1 / 3.) * routingWidthFactors[i] * routingLengthFactors[i]
+                    * routingSlopeFactors[i];
+        case 3:
+            return 3 / 2. * Math.pow(discharge, 1. / 3.) * routingChezyFactors[i] * routingWidthFactors[i]
+                    * routingLengthFactors[i] * routingSlopeFactors[i];
+        case 4:
+            double flowdepth = (1. / 3.) * Math.pow(discharge, 1. / 3.);
+            double hydrad = (flowdepth * linkWidths[i]) / (2.f * flowdepth + linkWidths[i]);
+            double mannings_n = 1;
+            return (Math.pow(hydrad, 2. / 3.) * routingSlopeFactors[i] / mannings_n) * routingLengthFactors[i];
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Creates the threads used by the evaluations. 
+     * 
+     * <p>To be paired with {@link #closeThreadPool()}.</p>
+     */
+    public void openThreadPool() {
+        if (threads > 1 && executor == null) {
+            executor = Executors.newFixedThreadPool(threads - 1);
+        }
+    }
+
+    /**
+     * Stops the threads used by the evaluations.
+     */
+    public void closeThreadPool() {
+        if (executor != null) {
+            try {
+                executor.shutdown();
+                executor.awaitTermination(30, TimeUnit.DAYS);
+                executor.shutdownNow();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            executor = null;
+        }
+    }
+
+    /**
+     * Duffy function evaluation.
+     * 
+     * @see #eval(double, double[], double[], double[], boolean, double[])
+     */
+    public double[] eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
+            boolean isAtFinalSubtimestep ) {
+        double[] output = new double[input.length];
+        eval(currentTimeInMinutes, input, rainArray, etpArray, isAtFinalSubtimestep, output);
+        return output;
     }
 
     /**
@@ -120,6 +343,7 @@ public class DuffyModel {
      *            <li>...</li>
      *            <li>linkn water storage in saturated zone of the hillslope</li>
      *            </ul>
+     *            Values under the minimum allowed are raised to it.
      * @param rainArray
      *            the array of precipitation (in mm/h) for each hillslope
      *            centroid (to be ordered in a consistent way with the
@@ -127,267 +351,258 @@ public class DuffyModel {
      * @param etpArray 
      * @param timeinMinutes
      *            the time
-     * 
-     * @return
+     * @param output
+     *            the array into which to put the derivatives, of the size of the input.
      */
-    public double[] eval( double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
-            boolean isAtFinalSubtimestep ) {
-        // the input's length is twice the number of links... the first half
-        // corresponds to links
-        // discharge and the second to hillslopes storage
-        // System.out.println(input.length);
-
-        // define the month
-        long currentTimeInMillis = (long) (currentTimeInMinutes * 60.0 * 1000.0);
-        int linksNum = orderedHillslopes.size(); // linksConectionStruct.headsArray.length;
-        // double mstold = 0.0;
-
-        double[] output = new double[input.length];
-
-        for( int i = linksNum - 1; i >= 0; i-- ) {
+    public void eval( final double currentTimeInMinutes, final double[] input, final double[] rainArray,
+            final double[] etpArray, final boolean isAtFinalSubtimestep, final double[] output ) {
+        if (executor == null) {
             // start from the last pieces
-            HillSlopeDuffy currentHillslope = (HillSlopeDuffy) orderedHillslopes.get(i);
-            Parameters parameters = currentHillslope.getParameters();
-            /*
-             * NOTE: Initial conditions are ... input[i] for link discharge
-             * input[i+nLi] for link base flow input[i+2*nLi] for unsaturated
-             * hillslope S1 input[i+3*nLi] for saturated hillslope S2 . input[]
-             * is updated for each time step in DiffEqSolver.RKF .
-             */
-
-            double prec_mphr = rainArray[i] / 1000.0; // input precipitation is in mm/h
-
-            double area_m2 = currentHillslope.getHillslopeArea();
-            // automatically in m2 from the features
-            /*
-             * Added some check for phisic consistency of the parameters
-             */
-            // if (input[i + 3 * linksNum] != input[i + 3 * linksNum]) {
-            // System.out.println();
-            // }
-            double minsupdischarge = parameters.getqqsupmin() * currentHillslope.getUpstreamArea(null) / 1E6;
-            if (input[i] < minsupdischarge) {
-                input[i] = minsupdischarge;
-                // System.out
-                // .println(
-                // "Current superficial discharge is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+            for( int i = linksNum - 1; i >= 0; i-- ) {
+                evalHillslope(i, currentTimeInMinutes, input, rainArray, etpArray, isAtFinalSubtimestep, output);
             }
-            double minsubdischarge = parameters.getqqsubmin() * currentHillslope.getUpstreamArea(null) / 1E6;
-            if (input[i + linksNum] < minsubdischarge) {
-                input[i + linksNum] = minsubdischarge;
-                // System.out
-                // .println(
-                // "Current subsuperficial discharge is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+        } else {
+            LinkedList<Future<Object>> futures = new LinkedList<Future<Object>>();
+            for( int l = 0; l < levelStart.length - 1; l++ ) {
+                final int from = levelStart[l];
+                final int to = levelStart[l + 1];
+                int levelSize = to - from;
+                if (levelSize < MIN_PARALLEL_LEVEL_SIZE) {
+                    for( int h = from; h < to; h++ ) {
+                        evalHillslope(levelHillslopes[h], currentTimeInMinutes, input, rainArray, etpArray,
+                                isAtFinalSubtimestep, output);
+                    }
+                    continue;
+                }
+                int chunkSize = (levelSize + threads - 1) / threads;
+                for( int chunkFrom = from + chunkSize; chunkFrom < to; chunkFrom += chunkSize ) {
+                    final int chunkStart = chunkFrom;
+                    final int chunkEnd = Math.min(chunkFrom + chunkSize, to);
+                    futures.add(executor.submit(new Callable<Object>(){
+                        public Object call() throws Exception {
+                            for( int h = chunkStart; h < chunkEnd; h++ ) {
+                                evalHillslope(levelHillslopes[h], currentTimeInMinutes, input, rainArray, etpArray,
+                                        isAtFinalSubtimestep, output);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                // the first chunk in this thread
+                for( int h = from; h < from + chunkSize; h++ ) {
+                    evalHillslope(levelHillslopes[h], currentTimeInMinutes, input, rainArray, etpArray, isAtFinalSubtimestep,
+                            output);
+                }
+                waitFor(futures);
             }
-            if (input[i + 2 * linksNum] < parameters.getS1residual()) {
-                input[i + 2 * linksNum] = parameters.getS1residual();
-                // System.out
-                // .println(
-                // "Current S1 parameter is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+        }
+        doPrint = false;
+    }
+
+    private void waitFor( LinkedList<Future<Object>> futures ) {
+        try {
+            while( !futures.isEmpty() ) {
+                futures.removeFirst().get();
             }
-            if (input[i + 3 * linksNum] < parameters.getS2residual()) {
-                input[i + 3 * linksNum] = parameters.getS2residual();
-                // System.out
-                // .println(
-                // "Current S2 parameter is less than the minimum value, setted to it for the basin "
-                // + currentHillslope.getHillslopeId());
+        } catch (InterruptedException e) {
+            throw new ModelsIllegalargumentException("The evaluation has been interrupted.", this);
+        } catch (ExecutionException e) {
+            // wait the remaining ones before giving up
+            for( Future<Object> future : futures ) {
+                future.cancel(false);
             }
-
-            /* HILLSLOPE FLUX CONDITIONS */
-            satsurf = parameters.getS2Param() * (input[i + 3 * linksNum]); // dimless
-            // double areasat = satsurf * area_m2;
-            mst = (input[i + 2 * linksNum]) / (parameters.getS2max() - (input[i + 3 * linksNum])); // dimless
-            if (Double.isInfinite(mst)) {
-                mst = MSTMAX;
+            futures.clear();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
+            throw new RuntimeException(cause);
+        }
+    }
 
-            // if ((mst - mstold) > 0.01) {
-            // System.out.println("mst " + mst + "mstold " + mstold);
-            // mstold = mst;
-            // }
-            // Ku = hillSlopesInfo.Ks(currentHillslope)
-            // * (Math.pow(mst, hillSlopesInfo.MstExp(currentHillslope))); //
-            // mphr
-
-            /* HILLSLOPE S1-SURFACE FLUX VALUES */
-            if (prec_mphr < parameters.getKs()) {
-                inf = (1.0 - satsurf) * area_m2 * prec_mphr; // m3phr
-                qdh = 0.0; // m3phr
-            } else {
-                inf = (1.0 - satsurf) * area_m2 * parameters.getKs(); // m3phr
-                qdh = (1.0 - satsurf) * area_m2 * (prec_mphr - parameters.getKs()); // m3phr
-            }
+    private void evalHillslope( int i, double currentTimeInMinutes, double[] input, double[] rainArray, double[] etpArray,
+            boolean isAtFinalSubtimestep, double[] output ) {
+        /*
+         * NOTE: Initial conditions are ... input[i] for link discharge
+         * input[i+nLi] for link base flow input[i+2*nLi] for unsaturated
+         * hillslope S1 input[i+3*nLi] for saturated hillslope S2 . input[]
+         * is updated for each time step in DiffEqSolver.RKF .
+         */
+        double qd, qs, Q_trib, Qs_trib;
+        double satsurf, mst, qdh, qds, inf, re, qe1, qe2;
 
-            Double eTrate = parameters.getETrate();
-            if (etpArray != null) {
-                qe1 = etpArray[i];
-            } else {
-                if (input[i + 2 * linksNum] > parameters.getS1residual()) {
-                    qe1 = eTrate * area_m2 * (1.0 - satsurf) * mst; // m3phr
-                } else {
-                    qe1 = 0.0;
-                }
-            }
+        long currentTimeInMillis = (long) (currentTimeInMinutes * 60.0 * 1000.0);
+        double prec_mphr = rainArray[i] / 1000.0; // input precipitation is in mm/h
+
+        double area_m2 = areas[i];
+        /*
+         * Added some check for phisic consistency of the parameters
+         */
+        if (input[i] < minSupDischarges[i]) {
+            input[i] = minSupDischarges[i];
+        }
+        if (input[i + linksNum] < minSubDischarges[i]) {
+            input[i + linksNum] = minSubDischarges[i];
+        }
+        if (input[i + 2 * linksNum] < s1Residuals[i]) {
+            input[i + 2 * linksNum] = s1Residuals[i];
+        }
+        if (input[i + 3 * linksNum] < s2Residuals[i]) {
+            input[i + 3 * linksNum] = s2Residuals[i];
+        }
 
-            /* HILLSLOPE S1-S2 FLUX VALUE */
-            // re = 1100.0
-            // * (input[i + 2 * linksNum] / parameters.getS2max())
-            // + 300.0
-            // * ((input[i + 2 * linksNum] / parameters.getS2max()) + 5)
-            // * Math.pow((input[i + 3 * linksNum] / parameters.getS2max()),
-            // 2.0);
-            re = parameters.getKs() * area_m2 * (1.0 - satsurf) * (Math.pow(mst, parameters.getMstExp())); // m3phr
+        /* HILLSLOPE FLUX CONDITIONS */
+        satsurf = s2Params[i] * (input[i + 3 * linksNum]); // dimless
+        mst = (input[i + 2 * linksNum]) / (s2Maxs[i] - (input[i + 3 * linksNum])); // dimless
+        if (Double.isInfinite(mst)) {
+            mst = MSTMAX;
+        }
 
-            /* HILLSLOPE S2-SURFACE FLUX VALUES */
-            qds = satsurf * area_m2 * prec_mphr; // m3phr
+        /* HILLSLOPE S1-SURFACE FLUX VALUES */
+        double ks = ksValues[i];
+        if (prec_mphr < ks) {
+            inf = (1.0 - satsurf) * area_m2 * prec_mphr; // m3phr
+            qdh = 0.0; // m3phr
+        } else {
+            inf = (1.0 - satsurf) * area_m2 * ks; // m3phr
+            qdh = (1.0 - satsurf) * area_m2 * (prec_mphr - ks); // m3phr
+        }
 
-            if (etpArray != null) {
-                qe2 = etpArray[i];
+        Double eTrate = eTrates[i];
+        if (etpArray != null) {
+            qe1 = etpArray[i];
+        } else {
+            if (input[i + 2 * linksNum] > s1Residuals[i]) {
+                qe1 = eTrate * area_m2 * (1.0 - satsurf) * mst; // m3phr
             } else {
-                qe2 = eTrate * area_m2 * satsurf; // m3phr,
+                qe1 = 0.0;
             }
+        }
 
-            qs = parameters.getRecParam() * (input[i + 3 * linksNum]); // m3phr
-
-            /* HILLSLOPE DIRECT RUNOFF (TOTAL) FLUXES */
-            // System.out.println("qdh = " + qdh);
-            // System.out.println("qds = " + qds);
-            qd = qdh + qds; // m3phr
-
-            if (Double.isNaN(qs) || Double.isNaN(qd)) {
-                if (Double.isNaN(qs)) {
-                    throw new ModelsIllegalargumentException("Subsuperficial discharge for the hillslope "
-                            + currentHillslope.getHillslopeId() + " " + i + " is NaN", this.getClass().getSimpleName());
-                } else {
-                    throw new ModelsIllegalargumentException("Timestep " + currentTimeInMinutes
-                            + "Superficial discharge for the hillslope " + currentHillslope.getHillslopeId() + " " + i
-                            + " is NaN" + "\nValue of qdh " + qdh + "\nValue of qds " + qds + "\nPrecipitation " + prec_mphr
-                            + "\nSatsurf " + satsurf, this.getClass().getSimpleName());
-                }
+        /* HILLSLOPE S1-S2 FLUX VALUE */
+        re = ks * area_m2 * (1.0 - satsurf) * (Math.pow(mst, mstExps[i])); // m3phr
+
+        /* HILLSLOPE S2-SURFACE FLUX VALUES */
+        qds = satsurf * area_m2 * prec_mphr; // m3phr
+
+        if (etpArray != null) {
+            qe2 = etpArray[i];
+        } else {
+            qe2 = eTrate * area_m2 * satsurf; // m3phr,
+        }
+
+        qs = recParams[i] * (input[i + 3 * linksNum]); // m3phr
+
+        /* HILLSLOPE DIRECT RUNOFF (TOTAL) FLUXES */
+        qd = qdh + qds; // m3phr
+
+        if (Double.isNaN(qs) || Double.isNaN(qd)) {
+            if (Double.isNaN(qs)) {
+                throw new ModelsIllegalargumentException("Subsuperficial discharge for the hillslope " + hillslopeIds[i] + " "
+                        + i + " is NaN", this.getClass().getSimpleName());
+            } else {
+                throw new ModelsIllegalargumentException("Timestep " + currentTimeInMinutes
+                        + "Superficial discharge for the hillslope " + hillslopeIds[i] + " " + i + " is NaN"
+                        + "\nValue of qdh " + qdh + "\nValue of qds " + qds + "\nPrecipitation " + prec_mphr + "\nSatsurf "
+                        + satsurf, this.getClass().getSimpleName());
             }
+        }
 
-            if (isAtFinalSubtimestep) {
+        if (isAtFinalSubtimestep) {
+            synchronized (pm) {
                 pm.message("timeinmin = " + currentTimeInMinutes + "\tbacino: " + i + "\tqdh = " + qdh + "\tqds = " + qds
                         + "\tre = " + re + "\tqs = " + qs + "\tmst = " + mst + "\tinf = " + inf + "\tqe1 = " + qe1 + "\tqe2 = "
                         + qe2);
             }
-            /*
-             * if the area is > 0.1 km2, we consider the delay effect
-             * of the hillslope.
-             */
-            if (area_m2 > THRESHOLD_AREA) {
-                // distribute the discharge
-                int hillslopeId = currentHillslope.getHillslopeId();
-                ADischargeDistributor dischargeDistributor = hillslopeId2DischargeDistributor.get(hillslopeId);
-                qs = dischargeDistributor.calculateSubsuperficialDischarge(qs, satsurf, currentTimeInMillis);
-                qd = dischargeDistributor.calculateSuperficialDischarge(qd, satsurf, currentTimeInMillis);
-            }
+        }
+        /*
+         * if the area is > 0.1 km2, we consider the delay effect
+         * of the hillslope.
+         */
+        if (area_m2 > THRESHOLD_AREA) {
+            // distribute the discharge
+            ADischargeDistributor dischargeDistributor = distributors[i];
+            qs = dischargeDistributor.calculateSubsuperficialDischarge(qs, satsurf, currentTimeInMillis);
+            qd = dischargeDistributor.calculateSuperficialDischarge(qd, satsurf, currentTimeInMillis);
+        }
 
-            /* LINK FLUX ( Q ) */
-            /*
-             * Below, i=link#, j=id of connecting links, Array[i][j]=link# for
-             * connecting link
-             */
-            /* LINK FLUX ( Q SUBSURFACE, BASE FLOW ) */
-            /*
-             * Below, i=link#, j=id of connecting links, Array[i][j]=link# for
-             * connecting link
-             */
-            Q_trib = 0.0D;
-            Qs_trib = 0.0D;
-
-            List<IHillSlope> connectedUpstreamHillSlopes = currentHillslope.getConnectedUpstreamElements();
-
-            if (connectedUpstreamHillSlopes != null) {
-                for( IHillSlope hillSlope : connectedUpstreamHillSlopes ) {
-                    PfafstetterNumber pNum = hillSlope.getPfafstetterNumber();
-                    int index = orderedHillslopes.indexOf(hillSlope);
-                    boolean doCalculate = true;
-                    for( IDischargeContributor dContributor : dischargeContributorList ) {
-                        Double contributedDischarge = dContributor.getDischarge(pNum.toString());
-                        contributedDischarge = dContributor.mergeWithDischarge(contributedDischarge, input[index]);
-                        if (!isNovalue(contributedDischarge)) {
-                            if (doLog && doPrint) {
-                                pm.message("----> For hillslope " + currentHillslope.getPfafstetterNumber()
-                                        + " using hydrometer/dams data in pfafstetter: " + pNum.toString() + "(meaning added "
-                                        + contributedDischarge + " instead of " + input[index] + ")");
-                            }
-                            double dischargeRatio = 0.3;// input[index] / (input[index] +
-                            // input[index + linksNum]);
-                            Q_trib = dischargeRatio * contributedDischarge; // units m^3/s
-                            Qs_trib = contributedDischarge - Q_trib; // units m^3/s
-                            doCalculate = false;
+        /* LINK FLUX ( Q ) */
+        /* LINK FLUX ( Q SUBSURFACE, BASE FLOW ) */
+        Q_trib = 0.0D;
+        Qs_trib = 0.0D;
+        for( int u = upstreamStart[i]; u < upstreamStart[i + 1]; u++ ) {
+            int index = upstreamIndexes[u];
+            boolean doCalculate = true;
+            for( IDischargeContributor dContributor : dischargeContributorList ) {
+                Double contributedDischarge = dContributor.getDischarge(pfafstetterNumbers[index]);
+                contributedDischarge = dContributor.mergeWithDischarge(pfafstetterNumbers[index], contributedDischarge,
+                        input[index]);
+                if (!isNovalue(contributedDischarge)) {
+                    if (doLog && doPrint) {
+                        synchronized (pm) {
+                            pm.message("----> For hillslope " + pfafstetterNumbers[i]
+                                    + " using hydrometer/dams data in pfafstetter: " + pfafstetterNumbers[index]
+                                    + "(meaning added " + contributedDischarge + " instead of " + input[index] + ")");
                         }
                     }
-                    if (doCalculate) {
-                        // at the same position we can query the input array
-                        Q_trib += input[index]; // units m^3/s
-                        Qs_trib += input[index + linksNum]; // units m^3/s
-                    }
+                    double dischargeRatio = 0.3;// input[index] / (input[index] +
+                    // input[index + linksNum]);
+                    Q_trib = dischargeRatio * contributedDischarge; // units m^3/s
+                    Qs_trib = contributedDischarge - Q_trib; // units m^3/s
+                    doCalculate = false;
                 }
-
             }
-
-            double K_Q = AdigeUtilities.doRouting(input[i], currentHillslope, routingType);
-
-            /*
-             * if (i == 62) { System.out.println(" WD ratio ="+
-             * linksHydraulicInfo.Width(i)/flowdepth); System.out.println("
-             * Mannings v (m/s) =" +
-             * (Math.pow(hydrad,2./3.)*Math.pow(linksHydraulicInfo.Slope(i),1/2.)/mannings_n) );
-             * System.out.println(" K_Q =" +
-             * (Math.pow(hydrad,2./3.)*Math.pow(linksHydraulicInfo.Slope(i),1/2.)/mannings_n)
-             * *Math.pow(linksHydraulicInfo.Length(i),-1) ); }
-             */
-            if (input[i] == 0.0D)
-                K_Q = 1e-10;
-
-            if (Double.isNaN(qs) || Double.isNaN(qd)) {
-                pm.errorMessage("Problems in basin: " + currentHillslope.getHillslopeId() + " " + i); //$NON-NLS-1$ //$NON-NLS-2$
-                if (area_m2 < THRESHOLD_AREA) {
-                    qd = 0.0;
-                    qs = 0.0;
-                    inf = 0.0;
-                    qe1 = 0.0;
-                    qe2 = 0.0;
-                    re = 0.0;
-                    System.out.println("All the contributes are set to zero.");
-                }
+            if (doCalculate) {
+                // at the same position we can query the input array
+                Q_trib += input[index]; // units m^3/s
+                Qs_trib += input[index + linksNum]; // units m^3/s
             }
+        }
 
-            /* OUTPUT */
-            if (area_m2 > THRESHOLD_AREA) {
-                // LINK dQ/dt; big () term is m^3/s, 60*K_Q is 1/min
-                output[i] = 60.0D * K_Q * ((1.0D / 3600.) * qd + Q_trib - input[i]);
-                // 60.0 * K_Q * (Q_trib - input[i]) + (1.0 / 3600.0) * qd / deltaTinMinutes;
-                // LINK dQs/dt -> (m^3/s)/min
-                output[i + linksNum] = 60.0 * K_Q * (Qs_trib - input[i + linksNum]) + 60.0 * K_Q * (1.0 / 3600.) * (qs);
-                // HILLSLOPE dS1/dt -> m3/min
-                output[i + (2 * linksNum)] = (1.0 / 60.0) * (inf - re - qe1);
-                // HILLSLOPE dS2/dt -> m3/min
-                output[i + (3 * linksNum)] = (1.0 / 60.0) * (re - qs - qe2);
-            } else {
-                output[i] = 60.0D * K_Q * ((1.0D / 3600.) * qd + Q_trib - input[i]);
-                output[i + linksNum] = 60.0D * K_Q * ((1.0D / 3600.) * (qs) + Qs_trib - input[i + linksNum]);
-                output[i + (2 * linksNum)] = (1.0D / 60.0) * (inf - re - qe1);
-                if (output[i + (2 * linksNum)] != output[i + (2 * linksNum)] || output[i + (2 * linksNum)] == 0.0) {
-                    throw new ModelsIllegalargumentException("Invalid value of S1, please check the parameters."
-                            + output[i + (2 * linksNum)], this);
-                }
-                output[i + (3 * linksNum)] = (1.0D / 60.0) * (re - qs - qe2);
+        double K_Q = doRouting(input[i], i);
+
+        if (input[i] == 0.0D)
+            K_Q = 1e-10;
+
+        if (Double.isNaN(qs) || Double.isNaN(qd)) {
+            synchronized (pm) {
+                pm.errorMessage("Problems in basin: " + hillslopeIds[i] + " " + i); //$NON-NLS-1$ //$NON-NLS-2$
             }
-            if (output[i + (3 * linksNum)] != output[i + (3 * linksNum)] || output[i + (2 * linksNum)] == 0.) {
-                throw new ModelsIllegalargumentException("Invalid value of S2, please check the parameters.", this.getClass()
-                        .getSimpleName());
+            if (area_m2 < THRESHOLD_AREA) {
+                qd = 0.0;
+                qs = 0.0;
+                inf = 0.0;
+                qe1 = 0.0;
+                qe2 = 0.0;
+                re = 0.0;
+                System.out.println("All the contributes are set to zero.");
             }
-
         }
-        doPrint = false;
 
-        return output;
+        /* OUTPUT */
+        if (area_m2 > THRESHOLD_AREA) {
+            // LINK dQ/dt; big () term is m^3/s, 60*K_Q is 1/min
+            output[i] = 60.0D * K_Q * ((1.0D / 3600.) * qd + Q_trib - input[i]);
+            // LINK dQs/dt -> (m^3/s)/min
+            output[i + linksNum] = 60.0 * K_Q * (Qs_trib - input[i + linksNum]) + 60.0 * K_Q * (1.0 / 3600.) * (qs);
+            // HILLSLOPE dS1/dt -> m3/min
+            output[i + (2 * linksNum)] = (1.0 / 60.0) * (inf - re - qe1);
+            // HILLSLOPE dS2/dt -> m3/min
+            output[i + (3 * linksNum)] = (1.0 / 60.0) * (re - qs - qe2);
+        } else {
+            output[i] = 60.0D * K_Q * ((1.0D / 3600.) * qd + Q_trib - input[i]);
+            output[i + linksNum] = 60.0D * K_Q * ((1.0D / 3600.) * (qs) + Qs_trib - input[i + linksNum]);
+            output[i + (2 * linksNum)] = (1.0D / 60.0) * (inf - re - qe1);
+            if (output[i + (2 * linksNum)] != output[i + (2 * linksNum)] || output[i + (2 * linksNum)] == 0.0) {
+                throw new ModelsIllegalargumentException("Invalid value of S1, please check the parameters."
+                        + output[i + (2 * linksNum)], this);
+            }
+            output[i + (3 * linksNum)] = (1.0D / 60.0) * (re - qs - qe2);
+        }
+        if (output[i + (3 * linksNum)] != output[i + (3 * linksNum)] || output[i + (2 * linksNum)] == 0.) {
+            throw new ModelsIllegalargumentException("Invalid value of S2, please check the parameters.", this.getClass()
+                    .getSimpleName());
+        }
     }
 
     public void addDischargeContributor( IDischargeContributor dischargeContributor ) {
@@ -396,5 +611,9 @@ public class DuffyModel {
 
     public void addDischargeDistributor( HashMap<Integer, ADischargeDistributor> hillslopeId2DischargeDistributor ) {
         this.hillslopeId2DischargeDistributor = hillslopeId2DischargeDistributor;
+        distributors = new ADischargeDistributor[linksNum];
+        for( int i = 0; i < linksNum; i++ ) {
+            distributors[i] = hillslopeId2DischargeDistributor.get(hillslopeIds[i]);
+        }
     }
 }
@@ -79,6 +79,36 @@ public class RungeKuttaFelberg {
         this.doLog = doLog;
     }
 
+    /*
+     * the buffers of the stages, reused by every step
+     */
+    private double[] k0;
+    private double[] k1;
+    private double[] k2;
+    private double[] k3;
+    private double[] k4;
+    private double[] k5;
+    private double[] carrier;
+    private double[] newYstar;
+    /* two buffers for the solution, so that a step never writes on its initial conditions */
+    private double[] solutionA;
+    private double[] solutionB;
+
+    private void checkBuffers( int length ) {
+        if (carrier == null || carrier.length != length) {
+            k0 = new double[length];
+            k1 = new double[length];
+            k2 = new double[length];
+            k3 = new double[length];
+            k4 = new double[length];
+            k5 = new double[length];
+            carrier = new double[length];
+            newYstar = new double[length];
+            solutionA = new double[length];
+            solutionB = new double[length];
+        }
+    }
+
     /**
      * Returns the value of the function described by differential equations in the next time step
      * 
@@ -93,36 +123,36 @@ public class RungeKuttaFelberg {
      */
     private void step( double currentTimeInMinutes, double[] initialConditions, double timeStepInMinutes, boolean finalize,
             CurrentTimestepSolution currentSolution, double[] rainArray, double[] etpArray ) {
+        int length = initialConditions.length;
+        checkBuffers(length);
 
-        double[] carrier = new double[initialConditions.length];
-
-        double[] k0 = duffy.eval(currentTimeInMinutes, initialConditions, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, initialConditions, rainArray, etpArray, false, k0);
+        for( int i = 0; i < length; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes * b[1][0] * k0[i]);
 
-        double[] k1 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k1);
+        for( int i = 0; i < length; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes * (b[2][0] * k0[i] + b[2][1] * k1[i]));
 
-        double[] k2 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k2);
+        for( int i = 0; i < length; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[3][0] * k0[i] + b[3][1] * k1[i] + b[3][2] * k2[i]));
 
-        double[] k3 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k3);
+        for( int i = 0; i < length; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[4][0] * k0[i] + b[4][1] * k1[i] + b[4][2] * k2[i] + b[4][3] * k3[i]));
 
-        double[] k4 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false);
-        for( int i = 0; i < initialConditions.length; i++ )
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, false, k4);
+        for( int i = 0; i < length; i++ )
             carrier[i] = Math.max(0, initialConditions[i] + timeStepInMinutes
                     * (b[5][0] * k0[i] + b[5][1] * k1[i] + b[5][2] * k2[i] + b[5][3] * k3[i] + b[5][4] * k4[i]));
 
-        double[] k5 = duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, isAtFinalSubtimestep);
+        duffy.eval(currentTimeInMinutes, carrier, rainArray, etpArray, isAtFinalSubtimestep, k5);
 
-        double[] newY = new double[initialConditions.length];
-        for( int i = 0; i < initialConditions.length; i++ ) {
+        double[] newY = initialConditions != solutionA ? solutionA : solutionB;
+        for( int i = 0; i < length; i++ ) {
             newY[i] = initialConditions[i] + timeStepInMinutes
                     * (c[0] * k0[i] + c[1] * k1[i] + c[2] * k2[i] + c[3] * k3[i] + c[4] * k4[i] + c[5] * k5[i]);
             newY[i] = Math.max(0, newY[i]);
@@ -131,8 +161,7 @@ public class RungeKuttaFelberg {
             }
         }
 
-        double[] newYstar = new double[initialConditions.length];
-        for( int i = 0; i < initialConditions.length; i++ ) {
+        for( int i = 0; i < length; i++ ) {
             newYstar[i] = initialConditions[i]
                     + timeStepInMinutes
                     * (cStar[0] * k0[i] + cStar[1] * k1[i] + cStar[2] * k2[i] + cStar[3] * k3[i] + cStar[4] * k4[i] + cStar[5]
@@ -144,7 +173,7 @@ public class RungeKuttaFelberg {
         }
 
         double delta = 0;
-        for( int i = 0; i < initialConditions.length; i++ ) {
+        for( int i = 0; i < length; i++ ) {
             if ((newY[i] + newYstar[i]) > 0)
                 delta = Math.max(delta, Math.abs(2 * (newY[i] - newYstar[i]) / (newY[i] + newYstar[i])));
         }
@@ -197,6 +226,18 @@ public class RungeKuttaFelberg {
     @SuppressWarnings("nls")
     public void solve( DateTime currentTimstamp, int modelTimestepInMinutes, double internalTimestepInMinutes,
             double[] initialConditions, double[] rainArray, double[] etpArray ) throws IOException {
+        duffy.openThreadPool();
+        try {
+            solveInterval(currentTimstamp, modelTimestepInMinutes, internalTimestepInMinutes, initialConditions, rainArray,
+                    etpArray);
+        } finally {
+            duffy.closeThreadPool();
+        }
+    }
+
+    @SuppressWarnings("nls")
+    private void solveInterval( DateTime currentTimstamp, int modelTimestepInMinutes, double internalTimestepInMinutes,
+            double[] initialConditions, double[] rainArray, double[] etpArray ) {
         isAtFinalSubtimestep = false;
 
         double intervalStartTimeInMinutes = currentTimstamp.getMillis() / 1000d / 60d;
@@ -321,7 +362,8 @@ public class RungeKuttaFelberg {
             outputStream.errorMessage("WARNING, UNEXPECTED");
         }
 
-        finalCond = initialConditions;
+        // the buffers are reused by the next interval
+        finalCond = initialConditions.clone();
 
     }
 
@@ -285,7 +285,8 @@ public class HymodAdigeEngine implements IAdigeEngine {
 
                         // modificato
                         if (!isNovalue(contributedDischarge)) {
-                            upstreamDischarge = dContributor.mergeWithDischarge(contributedDischarge, upstreamDischarge);
+                            upstreamDischarge = dContributor.mergeWithDischarge(pNum.toString(), contributedDischarge,
+                                    upstreamDischarge);
                         }
 
                     }
@@ -0,0 +1,341 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.insolation;
+
+import static org.jgrasstools.gears.libs.modules.ModelsEngine.calcInverseSunVector;
+import static org.jgrasstools.gears.libs.modules.ModelsEngine.calcNormalSunVector;
+import static org.jgrasstools.gears.libs.modules.ModelsEngine.calculateFactor;
+
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
+
+/**
+ * The insolation of a dem over a set of days.
+ *
+ * <p>
+ * The normal vectors of the cells and the parts of the atmospheric
+ * transmittances that depend only on the elevation are calculated once, as
+ * arrays. The sun positions of all the days are calculated first, then the
+ * radiation is summed cell by cell over stripes of rows, in parallel.
+ * </p>
+ * <p>
+ * The shadows are taken from the horizon angles table, if supplied, in which
+ * case every stripe goes through all the sun positions at once. Else the dem
+ * is scanned for every sun position and the stripes are processed one sun
+ * position at a time.
+ * </p>
+ * <p>
+ * Every day can be added to several periods (for example the whole simulation,
+ * its month and its season), all filled in the same pass.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class InsolationEngine {
+
+    private static final double pCmO3 = 0.3;
+
+    private static final double pRH = 0.4;
+
+    private static final double pLapse = -.0065;
+
+    private static final double pVisibility = 60;
+
+    /**
+     * The solar constant.
+     */
+    private static final double SOLARCTE = 1368.0;
+
+    private static final int STRIPE_ROWS = 16;
+
+    private final HortonMessageHandler msg = HortonMessageHandler.getInstance();
+
+    private final WritableRaster demWR;
+    private final double dx;
+    private final double lambda;
+    private final HorizonEngine horizonEngine;
+    private final int cols;
+    private final int rows;
+
+    private final double[] normalX;
+    private final double[] normalY;
+    private final double[] normalZ;
+    private final double[] pressureRatio;
+    private final double[] waterPrecipitable;
+
+    private double[][] sunVectors;
+    private double[] sunAzimuths;
+    private double[] sunElevations;
+    private double[] sunMr;
+    private int[] sunDays;
+
+    /**
+     * Constructor.
+     *
+     * @param demWR the elevation, with novalues already replaced.
+     * @param dx the resolution of the dem.
+     * @param lambda the latitude in radians.
+     * @param horizonEngine the calculated horizon angles table or <code>null</code>
+     *          to scan the dem for the shadows.
+     */
+    public InsolationEngine( WritableRaster demWR, double dx, double lambda, HorizonEngine horizonEngine ) {
+        this.demWR = demWR;
+        this.dx = dx;
+        this.lambda = lambda;
+        this.horizonEngine = horizonEngine;
+        cols = demWR.getWidth();
+        rows = demWR.getHeight();
+
+        double[] elevation = demWR.getSamples(demWR.getMinX(), demWR.getMinY(), cols, rows, 0, (double[]) null);
+        normalX = new double[cols * rows];
+        normalY = new double[cols * rows];
+        normalZ = new double[cols * rows];
+        pressureRatio = new double[cols * rows];
+        waterPrecipitable = new double[cols * rows];
+        // corripio's formula, the last row and col are left without normal
+        double thirdComponent = 2 * (dx * dx);
+        for( int r = 0; r < rows - 1; r++ ) {
+            for( int c = 0; c < cols - 1; c++ ) {
+                int index = r * cols + c;
+                double zij = elevation[index];
+                double zidxj = elevation[index + 1];
+                double zijdy = elevation[index + cols];
+                double zidxjdy = elevation[index + cols + 1];
+                double firstComponent = dx * (zij - zidxj + zijdy - zidxjdy);
+                double secondComponent = dx * (zij + zidxj - zijdy - zidxjdy);
+                double den = Math.sqrt(firstComponent * firstComponent + secondComponent * secondComponent + thirdComponent
+                        * thirdComponent);
+                normalX[index] = firstComponent / den;
+                normalY[index] = secondComponent / den;
+                normalZ[index] = thirdComponent / den;
+            }
+        }
+        for( int i = 0; i < elevation.length; i++ ) {
+            double z = elevation[i];
+            pressureRatio[i] = Math.exp(-0.0001184 * z);
+            double temp = 273 + pLapse * (z - 4000);
+            double vap_psat = Math.exp(26.23 - 5416.0 / temp);
+            waterPrecipitable[i] = 0.493 * pRH * vap_psat / temp;
+        }
+    }
+
+    /**
+     * Calculate the insolation.
+     *
+     * @param days the days of the year to simulate.
+     * @param dayPeriods for every day the indexes of the periods it is added to.
+     * @param periodsNum the number of periods.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the insolation of every period, as arrays of <code>cols * rows</code>
+     *          values ordered by row.
+     * @throws Exception
+     */
+    public double[][] calculate( int[] days, int[][] dayPeriods, int periodsNum, int threads, IJGTProgressMonitor pm )
+            throws Exception {
+        calculateSunPositions(days);
+        final double[][] insolation = new double[periodsNum][cols * rows];
+        final int[][] sunPeriods = new int[sunDays.length][];
+        for( int k = 0; k < sunDays.length; k++ ) {
+            sunPeriods[k] = dayPeriods[sunDays[k]];
+        }
+
+        int stripesNum = (rows + STRIPE_ROWS - 1) / STRIPE_ROWS;
+        threads = Math.max(1, Math.min(threads, stripesNum));
+        ExecutorService fixedThreadPool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            if (horizonEngine != null) {
+                pm.beginTask(msg.message("insolation.calculating"), stripesNum);
+                runStripes(fixedThreadPool, 0, sunDays.length, null, sunPeriods, insolation, pm);
+            } else {
+                pm.beginTask(msg.message("insolation.calculating"), sunDays.length);
+                for( int k = 0; k < sunDays.length; k++ ) {
+                    double[] sunVector = sunVectors[k];
+                    double[] inverseSunVector = calcInverseSunVector(sunVector);
+                    double[] normalSunVector = calcNormalSunVector(sunVector);
+                    WritableRaster shadowWR = calculateFactor(rows, cols, sunVector, inverseSunVector, normalSunVector, demWR,
+                            dx);
+                    double[] shadow = shadowWR.getSamples(0, 0, cols, rows, 0, (double[]) null);
+                    runStripes(fixedThreadPool, k, k + 1, shadow, sunPeriods, insolation, null);
+                    pm.worked(1);
+                }
+            }
+            pm.done();
+        } finally {
+            if (fixedThreadPool != null) {
+                fixedThreadPool.shutdownNow();
+            }
+        }
+        return insolation;
+    }
+
+    /**
+     * Calculate the sun positions of every hour of the days.
+     */
+    private void calculateSunPositions( int[] days ) {
+        List<double[]> vectorsList = new ArrayList<double[]>();
+        List<Integer> daysList = new ArrayList<Integer>();
+        for( int d = 0; d < days.length; d++ ) {
+            double dayangb = (360 / 365.25) * (days[d] - 79.436);
+            dayangb = Math.toRadians(dayangb);
+            double delta = getDeclination(dayangb);
+            double ss = Math.acos(-Math.tan(delta) * Math.tan(lambda));
+            double hour = -ss + (Math.PI / 48.0);
+            while( hour <= ss - (Math.PI / 48) ) {
+                vectorsList.add(calcSunVector(delta, hour));
+                daysList.add(d);
+                hour = hour + Math.PI / 24.0;
+            }
+        }
+
+        int sunNum = vectorsList.size();
+        sunVectors = vectorsList.toArray(new double[sunNum][]);
+        sunDays = new int[sunNum];
+        sunAzimuths = new double[sunNum];
+        sunElevations = new double[sunNum];
+        sunMr = new double[sunNum];
+        for( int k = 0; k < sunNum; k++ ) {
+            double[] sunVector = sunVectors[k];
+            sunDays[k] = daysList.get(k);
+            // the sun vector has x towards east and y towards south
+            sunAzimuths[k] = Math.atan2(sunVector[0], -sunVector[1]);
+            sunElevations[k] = Math.asin(sunVector[2]);
+            double zenith = Math.acos(sunVector[2]);
+            sunMr[k] = 1 / (sunVector[2] + 0.15 * Math.pow((93.885 - zenith), (-1.253)));
+        }
+    }
+
+    private void runStripes( ExecutorService fixedThreadPool, final int fromSun, final int toSun, final double[] shadow,
+            final int[][] sunPeriods, final double[][] insolation, final IJGTProgressMonitor pm ) throws Exception {
+        List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+        for( int fromRow = 0; fromRow < rows; fromRow += STRIPE_ROWS ) {
+            final int stripeFromRow = fromRow;
+            final int stripeToRow = Math.min(fromRow + STRIPE_ROWS, rows);
+            tasks.add(new Callable<Object>(){
+                public Object call() throws Exception {
+                    addRadiation(stripeFromRow, stripeToRow, fromSun, toSun, shadow, sunPeriods, insolation);
+                    if (pm != null) {
+                        synchronized (pm) {
+                            pm.worked(1);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        if (fixedThreadPool == null) {
+            for( Callable<Object> task : tasks ) {
+                task.call();
+            }
+        } else {
+            List<Future<Object>> futures = fixedThreadPool.invokeAll(tasks);
+            try {
+                for( Future<Object> future : futures ) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Add the radiation of a range of sun positions to the cells of a stripe of rows.
+     *
+     * @param shadow the shadow factors of the cells or <code>null</code>, to use the horizon angles table.
+     */
+    private void addRadiation( int fromRow, int toRow, int fromSun, int toSun, double[] shadow, int[][] sunPeriods,
+            double[][] insolation ) {
+        double tauaBase = 0.97 - 1.265 * Math.pow(pVisibility, (-0.66));
+        for( int k = fromSun; k < toSun; k++ ) {
+            double[] sunVector = sunVectors[k];
+            double sunX = sunVector[0];
+            double sunY = sunVector[1];
+            double sunZ = sunVector[2];
+            double mr = sunMr[k];
+            // the ozone transmittance doesn't depend on the cell
+            double d = pCmO3 * mr;
+            double tauo = 1 - (0.1611 * d * Math.pow(1.0 + 139.48 * d, -0.3035) - 0.002715 * d)
+                    / (1.0 + 0.044 * d + 0.0003 * Math.pow(d, 2));
+            int[] periods = sunPeriods[k];
+            for( int r = fromRow; r < toRow; r++ ) {
+                for( int c = 0; c < cols; c++ ) {
+                    int index = r * cols + c;
+                    double cosinc = sunX * normalX[index] + sunY * normalY[index] + sunZ * normalZ[index];
+                    if (cosinc <= 0) {
+                        continue;
+                    }
+                    double sOmbra;
+                    if (shadow != null) {
+                        sOmbra = shadow[index];
+                    } else {
+                        sOmbra = horizonEngine.isVisible(sunAzimuths[k], sunElevations[k], c, r) ? 1.0 : 0.0;
+                    }
+                    if (sOmbra == 0) {
+                        continue;
+                    }
+                    double ma = mr * pressureRatio[index];
+                    double taur = Math.exp((-.09030 * Math.pow(ma, 0.84)) * (1.0 + ma - Math.pow(ma, 1.01)));
+                    double taug = Math.exp(-0.0127 * Math.pow(ma, 0.26));
+                    double wm = waterPrecipitable[index] * mr;
+                    double tauw = 1 - 2.4959 * wm / (1.0 + 79.034 * wm * 0.6828 + 6.385 * wm);
+                    double taua = Math.pow(tauaBase, Math.pow(ma, 0.9));
+
+                    double In = 0.9751 * SOLARCTE * taur * tauo * taug * tauw * taua;
+                    double radiation = In * cosinc * sOmbra / 1000;
+                    for( int p : periods ) {
+                        insolation[p][index] += radiation;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * Evaluate the declination.
+     */
+    private double getDeclination( double dayangb ) {
+        double delta = .3723 + 23.2567 * Math.sin(dayangb) - .758 * Math.cos(dayangb) + .1149 * Math.sin(2 * dayangb) + .3656
+                * Math.cos(2 * dayangb) - .1712 * Math.sin(3 * dayangb) + .0201 * Math.cos(3 * dayangb);
+        return Math.toRadians(delta);
+    }
+
+    private double[] calcSunVector( double delta, double omega ) {
+        double sunVector[] = new double[3];
+        sunVector[0] = -Math.sin(omega) * Math.cos(delta);
+        sunVector[1] = Math.sin(lambda) * Math.cos(omega) * Math.cos(delta) - Math.cos(lambda) * Math.sin(delta);
+        sunVector[2] = Math.cos(lambda) * Math.cos(omega) * Math.cos(delta) + Math.sin(lambda) * Math.sin(delta);
+        return sunVector;
+    }
+
+}
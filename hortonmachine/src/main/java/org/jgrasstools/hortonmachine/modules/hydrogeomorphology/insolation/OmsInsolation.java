@@ -17,10 +17,6 @@
  */
 package org.jgrasstools.hortonmachine.modules.hydrogeomorphology.insolation;
 
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.calcInverseSunVector;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.calcNormalSunVector;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.calculateFactor;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.scalarProduct;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_DESCRIPTION;
@@ -29,20 +25,23 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_LA
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_doHorizonTable_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_doMonthly_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_doSeasonal_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outIns_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outInsMonthly_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outInsSeasonal_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_pHorizonAzimuths_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tEndDate_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tStartDate_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
-import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
+import java.util.ArrayList;
 import java.util.HashMap;
-
-import javax.media.jai.RasterFactory;
-import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
+import java.util.List;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -57,11 +56,11 @@ import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.CrsUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
-import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
@@ -92,35 +91,42 @@ public class OmsInsolation extends JGTModel {
     @In
     public String tEndDate = null;
 
-    @Description(OMSINSOLATION_outIns_DESCRIPTION)
-    @Out
-    public GridCoverage2D outIns;
-
-    private static final double pCmO3 = 0.3;
-
-    private static final double pRH = 0.4;
+    @Description(OMSINSOLATION_doHorizonTable_DESCRIPTION)
+    @In
+    public boolean doHorizonTable = false;
 
-    private static final double pLapse = -.0065;
+    @Description(OMSINSOLATION_pHorizonAzimuths_DESCRIPTION)
+    @In
+    public int pHorizonAzimuths = 72;
 
-    private static final double pVisibility = 60;
+    @Description(OMSINSOLATION_doMonthly_DESCRIPTION)
+    @In
+    public boolean doMonthly = false;
 
-    /**
-     * The solar constant.
-     */
-    private static final double SOLARCTE = 1368.0;
+    @Description(OMSINSOLATION_doSeasonal_DESCRIPTION)
+    @In
+    public boolean doSeasonal = false;
 
-    /**
-     * The atmosphere pressure.
-     */
-    private static final double ATM = 1013.25;
+    @Description(OMSINSOLATION_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
 
-    private double lambda;
+    @Description(OMSINSOLATION_outIns_DESCRIPTION)
+    @Out
+    public GridCoverage2D outIns;
 
-    private double delta;
+    @Description(OMSINSOLATION_outInsMonthly_DESCRIPTION)
+    @Out
+    public List<GridCoverage2D> outInsMonthly;
 
-    private double omega;
+    @Description(OMSINSOLATION_outInsSeasonal_DESCRIPTION)
+    @Out
+    public List<GridCoverage2D> outInsSeasonal;
 
-    private HortonMessageHandler msg = HortonMessageHandler.getInstance();
+    /**
+     * The seasons, named after their months.
+     */
+    private static final String[] SEASONS = {"djf", "mam", "jja", "son"};
 
     @Execute
     public void process() throws Exception { // transform the
@@ -143,186 +149,111 @@ public class OmsInsolation extends JGTModel {
         Point[] so = new Point[]{GeometryUtilities.gf().createPoint(source)};
         CrsUtilities.reproject(sourceCRS, targetCRS, so);
         // the latitude value
-        lambda = Math.toRadians(so[0].getY());
+        double lambda = Math.toRadians(so[0].getY());
 
         /*
          * transform the start and end date in an int value (the day in the
          * year, from 1 to 365)
          */
         DateTimeFormatter formatter = DateTimeFormat.forPattern("yyyy-MM-dd").withZone(DateTimeZone.UTC);
-        DateTime currentDatetime = formatter.parseDateTime(tStartDate);
-        int startDay = currentDatetime.getDayOfYear();
-        currentDatetime = formatter.parseDateTime(tEndDate);
+        DateTime startDatetime = formatter.parseDateTime(tStartDate);
+        int startDay = startDatetime.getDayOfYear();
+        DateTime currentDatetime = formatter.parseDateTime(tEndDate);
         int endDay = currentDatetime.getDayOfYear();
-        CoverageUtilities.getRegionParamsFromGridCoverage(inElev);
+        DateTime firstDayOfYear = startDatetime.withDayOfYear(1);
+
+        /*
+         * every day is added to the total and optionally to its month and season
+         */
+        int daysNum = Math.max(0, endDay - startDay + 1);
+        int[] days = new int[daysNum];
+        int[][] dayPeriods = new int[daysNum][];
+        List<String> periodNames = new ArrayList<String>();
+        periodNames.add("insolation");
+        HashMap<String, Integer> periodName2IndexMap = new HashMap<String, Integer>();
+        List<Integer> monthlyIndexes = new ArrayList<Integer>();
+        List<Integer> seasonalIndexes = new ArrayList<Integer>();
+        for( int d = 0; d < daysNum; d++ ) {
+            days[d] = startDay + d;
+            int month = firstDayOfYear.plusDays(days[d] - 1).getMonthOfYear();
+            List<Integer> periods = new ArrayList<Integer>();
+            periods.add(0);
+            if (doMonthly) {
+                periods.add(getPeriodIndex(String.format("insolation_%02d", month), periodNames, periodName2IndexMap,
+                        monthlyIndexes));
+            }
+            if (doSeasonal) {
+                periods.add(getPeriodIndex("insolation_" + SEASONS[(month % 12) / 3], periodNames, periodName2IndexMap,
+                        seasonalIndexes));
+            }
+            dayPeriods[d] = new int[periods.size()];
+            for( int p = 0; p < dayPeriods[d].length; p++ ) {
+                dayPeriods[d][p] = periods.get(p);
+            }
+        }
+
         RenderedImage pitTmpRI = inElev.getRenderedImage();
         int width = pitTmpRI.getWidth();
         int height = pitTmpRI.getHeight();
         WritableRaster pitWR = CoverageUtilities.replaceNovalue(pitTmpRI, -9999.0);
         pitTmpRI = null;
 
-        WritableRaster insolationWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, pitWR.getSampleModel(),
-                0.0);
-        WritableRandomIter insolationIterator = RandomIterFactory.createWritable(insolationWR, null);
-
-        WritableRaster gradientWR = normalVector(pitWR, dx);
-
-        pm.beginTask(msg.message("insolation.calculating"), endDay - startDay);
-
-        for( int i = startDay; i <= endDay; i++ ) {
-            calcInsolation(lambda, pitWR, gradientWR, insolationWR, i, dx);
-            pm.worked(i - startDay);
+        HorizonEngine horizonEngine = null;
+        if (doHorizonTable) {
+            double dy = attribute.get(CoverageUtilities.YRES);
+            horizonEngine = new HorizonEngine(pitWR, dx, dy, pHorizonAzimuths);
+            horizonEngine.calculate(pMaxThreads, pm);
         }
-        pm.done();
-        for( int y = 2; y < height - 2; y++ ) {
-            for( int x = 2; x < width - 2; x++ ) {
-                if (pitWR.getSampleDouble(x, y, 0) == -9999.0) {
-                    insolationIterator.setSample(x, y, 0, Double.NaN);
 
+        InsolationEngine insolationEngine = new InsolationEngine(pitWR, dx, lambda, horizonEngine);
+        double[][] insolation = insolationEngine.calculate(days, dayPeriods, periodNames.size(), pMaxThreads, pm);
+
+        CoordinateReferenceSystem crs = inElev.getCoordinateReferenceSystem();
+        List<GridCoverage2D> coverages = new ArrayList<GridCoverage2D>();
+        for( int p = 0; p < insolation.length; p++ ) {
+            double[] periodInsolation = insolation[p];
+            for( int y = 2; y < height - 2; y++ ) {
+                for( int x = 2; x < width - 2; x++ ) {
+                    if (pitWR.getSampleDouble(x, y, 0) == -9999.0) {
+                        periodInsolation[y * width + x] = Double.NaN;
+                    }
                 }
             }
+            WritableRaster insolationWR = CoverageUtilities.createDoubleWritableRaster(width, height, null,
+                    pitWR.getSampleModel(), 0.0);
+            insolationWR.setSamples(0, 0, width, height, 0, periodInsolation);
+            insolation[p] = null;
+            coverages.add(CoverageUtilities.buildCoverage(periodNames.get(p), insolationWR, attribute, crs));
         }
 
-        outIns = CoverageUtilities.buildCoverage("insolation", insolationWR, attribute, inElev.getCoordinateReferenceSystem());
-    }
-
-    /**
-     * Evaluate the radiation.
-     * 
-     * @param lambda
-     *            the latitude.
-     * @param demWR
-     *            the raster of elevation
-     * @param gradientWR
-     *            the raster of the gradient value of the dem.
-     * @param insolationWR
-     *            the wr where to store the result.
-     * @param the
-     *            day in the year.
-     * @paradx the resolutiono of the dem.
-     */
-    private void calcInsolation( double lambda, WritableRaster demWR, WritableRaster gradientWR, WritableRaster insolationWR,
-            int day, double dx ) {
-        // calculating the day angle
-        // double dayang = 2 * Math.PI * (day - 1) / 365.0;
-        double dayangb = (360 / 365.25) * (day - 79.436);
-        dayangb = Math.toRadians(dayangb);
-        // Evaluate the declination of the sun.
-        delta = getDeclination(dayangb);
-        // Evaluate the radiation in this day.
-        double ss = Math.acos(-Math.tan(delta) * Math.tan(lambda));
-        double hour = -ss + (Math.PI / 48.0);
-        while( hour <= ss - (Math.PI / 48) ) {
-            omega = hour;
-            // calculating the vector related to the sun
-            double sunVector[] = calcSunVector();
-            double zenith = calcZenith(sunVector[2]);
-            double[] inverseSunVector = calcInverseSunVector(sunVector);
-            double[] normalSunVector = calcNormalSunVector(sunVector);
-
-            int height = demWR.getHeight();
-            int width = demWR.getWidth();
-            WritableRaster sOmbraWR = calculateFactor(height, width, sunVector, inverseSunVector, normalSunVector, demWR, dx);
-            double mr = 1 / (sunVector[2] + 0.15 * Math.pow((93.885 - zenith), (-1.253)));
-            for( int j = 0; j < height; j++ ) {
-                for( int i = 0; i < width; i++ ) {
-                    // evaluate the radiation.
-                    calcRadiation(i, j, demWR, sOmbraWR, insolationWR, sunVector, gradientWR, mr);
-                }
+        outIns = coverages.get(0);
+        if (doMonthly) {
+            outInsMonthly = new ArrayList<GridCoverage2D>();
+            for( int index : monthlyIndexes ) {
+                outInsMonthly.add(coverages.get(index));
+            }
+        }
+        if (doSeasonal) {
+            outInsSeasonal = new ArrayList<GridCoverage2D>();
+            for( int index : seasonalIndexes ) {
+                outInsSeasonal.add(coverages.get(index));
             }
-            hour = hour + Math.PI / 24.0;
         }
     }
 
-    /*
-     * Evaluate the declination.
-     */
-    private double getDeclination( double dayangb ) {
-        double delta = .3723 + 23.2567 * Math.sin(dayangb) - .758 * Math.cos(dayangb) + .1149 * Math.sin(2 * dayangb) + .3656
-                * Math.cos(2 * dayangb) - .1712 * Math.sin(3 * dayangb) + .0201 * Math.cos(3 * dayangb);
-        return Math.toRadians(delta);
-    }
-
-    /*
-     * evaluate several component of the radiation and then multiply by the
-     * sOmbra factor.
+    /**
+     * Get the index of a period, adding it if it is new.
      */
-    private void calcRadiation( int i, int j, WritableRaster demWR, WritableRaster sOmbraWR, WritableRaster insolationWR,
-            double[] sunVector, WritableRaster gradientWR, double mr ) {
-        double z = demWR.getSampleDouble(i, j, 0);
-        double pressure = ATM * Math.exp(-0.0001184 * z);
-        double ma = mr * pressure / ATM;
-        double temp = 273 + pLapse * (z - 4000);
-        double vap_psat = Math.exp(26.23 - 5416.0 / temp);
-        double wPrec = 0.493 * pRH * vap_psat / temp;
-        double taur = Math.exp((-.09030 * Math.pow(ma, 0.84)) * (1.0 + ma - Math.pow(ma, 1.01)));
-        double d = pCmO3 * mr;
-        double tauo = 1 - (0.1611 * d * Math.pow(1.0 + 139.48 * d, -0.3035) - 0.002715 * d)
-                / (1.0 + 0.044 * d + 0.0003 * Math.pow(d, 2));
-        double taug = Math.exp(-0.0127 * Math.pow(ma, 0.26));
-        double tauw = 1 - 2.4959 * (wPrec * mr) / (1.0 + 79.034 * (wPrec * mr) * 0.6828 + 6.385 * (wPrec * mr));
-        double taua = Math.pow((0.97 - 1.265 * Math.pow(pVisibility, (-0.66))), Math.pow(ma, 0.9));
-
-        double In = 0.9751 * SOLARCTE * taur * tauo * taug * tauw * taua;
-
-        double cosinc = scalarProduct(sunVector, gradientWR.getPixel(i, j, new double[3]));
-
-        if (cosinc < 0) {
-            cosinc = 0;
+    private int getPeriodIndex( String name, List<String> periodNames, HashMap<String, Integer> periodName2IndexMap,
+            List<Integer> indexes ) {
+        Integer index = periodName2IndexMap.get(name);
+        if (index == null) {
+            index = periodNames.size();
+            periodNames.add(name);
+            periodName2IndexMap.put(name, index);
+            indexes.add(index);
         }
-        double tmp = insolationWR.getSampleDouble(i, j, 0);
-        insolationWR.setSample(i, j, 0, In * cosinc * sOmbraWR.getSampleDouble(i, j, 0) / 1000 + tmp);
-    }
-
-    protected double[] calcSunVector() {
-        double sunVector[] = new double[3];
-        sunVector[0] = -Math.sin(omega) * Math.cos(delta);
-        sunVector[1] = Math.sin(lambda) * Math.cos(omega) * Math.cos(delta) - Math.cos(lambda) * Math.sin(delta);
-        sunVector[2] = Math.cos(lambda) * Math.cos(omega) * Math.cos(delta) + Math.sin(lambda) * Math.sin(delta);
-
-        return sunVector;
-
+        return index;
     }
 
-    protected WritableRaster normalVector( WritableRaster pitWR, double res ) {
-
-        int minX = pitWR.getMinX();
-        int minY = pitWR.getMinY();
-        int rows = pitWR.getHeight();
-        int cols = pitWR.getWidth();
-
-        RandomIter pitIter = RandomIterFactory.create(pitWR, null);
-        /*
-         * Initializa the Image of the normal vector in the central point of the
-         * cells, which have 3 components so the Image have 3 bands..
-         */
-        SampleModel sm = RasterFactory.createBandedSampleModel(5, cols, rows, 3);
-        WritableRaster tmpNormalVectorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, sm, 0.0);
-        WritableRandomIter tmpNormalIter = RandomIterFactory.createWritable(tmpNormalVectorWR, null);
-        /*
-         * apply the corripio's formula (is the formula (3) in the article)
-         */
-        for( int j = minY; j < minX + rows - 1; j++ ) {
-            for( int i = minX; i < minX + cols - 1; i++ ) {
-                double zij = pitIter.getSampleDouble(i, j, 0);
-                double zidxj = pitIter.getSampleDouble(i + 1, j, 0);
-                double zijdy = pitIter.getSampleDouble(i, j + 1, 0);
-                double zidxjdy = pitIter.getSampleDouble(i + 1, j + 1, 0);
-                double firstComponent = res * (zij - zidxj + zijdy - zidxjdy);
-                double secondComponent = res * (zij + zidxj - zijdy - zidxjdy);
-                double thirthComponent = 2 * (res * res);
-                double den = Math.sqrt(firstComponent * firstComponent + secondComponent * secondComponent + thirthComponent
-                        * thirthComponent);
-                tmpNormalIter.setPixel(i, j, new double[]{firstComponent / den, secondComponent / den, thirthComponent / den});
-
-            }
-        }
-        pitIter.done();
-
-        return tmpNormalVectorWR;
-
-    }
-    private double calcZenith( double sunVector2 ) {
-        return Math.acos(sunVector2);
-    }
 }
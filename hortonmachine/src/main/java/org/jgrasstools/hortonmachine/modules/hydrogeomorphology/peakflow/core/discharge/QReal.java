@@ -23,6 +23,7 @@ import java.util.Set;
 
 import org.jgrasstools.gears.libs.modules.ModelsEngine;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.math.DiscreteConvolution;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.peakflow.ParameterBox;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.peakflow.core.iuh.IUHCalculator;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.peakflow.core.jeff.RealJeff;
@@ -94,9 +95,8 @@ public class QReal implements DischargeCalculator {
         double tcorr = ampi[ampi.length - 1][0];
         tpmax = (double) raintimestep;
         int rainLength = jeff.size();
-        double[][] totalQshiftMatrix = new double[rainLength][(int) (Math.floor((tcorr + tpmax) / timestep) + 1 + rainLength
-                * raintimestep / timestep)];
-        double[][] Q = new double[(int) Math.floor((tcorr + tpmax) / timestep) + 1][3];
+        int qLength = (int) Math.floor((tcorr + tpmax) / timestep) + 1;
+        int totalLength = (int) (Math.floor((tcorr + tpmax) / timestep) + 1 + rainLength * raintimestep / timestep);
 
         if (area_sub != -9999.0) {
             area_tot = area_sub + area_super;
@@ -104,73 +104,49 @@ public class QReal implements DischargeCalculator {
             area_tot = area_super;
         }
 
+        /*
+         * the response to a unit rain pulse of length tpmax, which is the
+         * same for every rain value and scaled by it
+         */
+        double[] unitQ = new double[qLength];
+        /*
+         * calculate the discharge for t < tcorr
+         */
+        int j = 0;
+        for( int t = 1; t < tcorr; t += timestep ) {
+            j = (int) Math.floor((t) / timestep);
+            if (t <= tpmax) {
+                unitQ[j] = ModelsEngine.width_interpolate(ampi, t, 0, 2);
+            } else {
+                unitQ[j] = ModelsEngine.width_interpolate(ampi, t, 0, 2) - ModelsEngine.width_interpolate(ampi, t - tpmax, 0, 2);
+            }
+        }
+        /*
+         * calculate the discharge for t > tcorr
+         */
+        for( double t = tcorr; t < (tcorr + tpmax); t += timestep ) {
+            j = (int) Math.floor(((int) t) / timestep);
+            unitQ[j] = ampi[ampi.length - 1][2] - ModelsEngine.width_interpolate(ampi, t - tpmax, 0, 2);
+        }
+
+        /*
+         * place the rain pulses in the timeline, the padding before each value
+         * is given by its distance from the first date. Note that jeff contains
+         * already the progressive time of the rainfile.
+         */
         Set<DateTime> dates = jeff.keySet();
+        double[] rainSeries = new double[totalLength];
         pm.beginTask("Calculating discharge...", dates.size());
-        int i = 0;
         for( DateTime dateTime : dates ) {
             double J = jeff.get(dateTime);
-            /*
-             * calculate the discharge for t < tcorr
-             */
-            int j = 0;
-            for( int t = 1; t < tcorr; t += timestep ) {
-                j = (int) Math.floor((t) / timestep);
-
-                if (t <= tpmax) {
-                    Q[j][0] = t;
-                    double widthInterpolate = ModelsEngine.width_interpolate(ampi, t, 0, 2);
-                    Q[j][1] = (double) (J * area_tot * widthInterpolate);
-                    Q[j][2] = Q[j - 1][2] + Q[j][1];
-                } else {
-                    Q[j][0] = t;
-                    Q[j][1] = (double) (J * area_tot * (ModelsEngine.width_interpolate(ampi, t, 0, 2) - ModelsEngine
-                            .width_interpolate(ampi, t - tpmax, 0, 2)));
-                    Q[j][2] = Q[j - 1][2] + Q[j][1];
-                }
-            }
-
-            /*
-             * calculate the discharge for t > tcorr
-             */
-
-            for( double t = tcorr; t < (tcorr + tpmax); t += timestep ) {
-                j = (int) Math.floor(((int) t) / timestep);
-                Q[j][0] = t;
-                Q[j][1] = (double) (J * area_tot * (ampi[ampi.length - 1][2] - ModelsEngine.width_interpolate(ampi, t - tpmax, 0,
-                        2)));
-                Q[j][2] = Q[j - 1][2] + Q[j][1];
-            }
-
-            /*
-             * calculate the volumes
-             */
-            // double vol = Q[Q.length - 2][2] * timestep;
-            // double vol2 = (double) (area_tot * J * raintimestep);
-
-            /*
-             * calculate zero padding before first value Note that jeff contains already the
-             * progressive time of the rainfile.
-             */
-            int totalshiftmatrixindex = 0;
-            int initalshiftmatrixindex = 0;
             // FIXME time in ???
             Duration duration = new Duration(firstDate, dateTime);
             long intervalSeconds = duration.getStandardSeconds();
 
             int paddingnumber = (int) (intervalSeconds / timestep);
-            for( int m = 0; m < paddingnumber; m++ ) {
-                totalQshiftMatrix[i][m] = 0;
-                totalshiftmatrixindex++;
-            }
-            initalshiftmatrixindex = totalshiftmatrixindex;
-            for( int k = initalshiftmatrixindex; k < Q.length + initalshiftmatrixindex; k++ ) {
-                totalQshiftMatrix[i][k] = Q[k - initalshiftmatrixindex][1];
-                totalshiftmatrixindex++;
-            }
-            for( int k = Q.length + totalshiftmatrixindex; k < totalQshiftMatrix[0].length; k++ ) {
-                totalQshiftMatrix[i][k] = 0;
+            if (paddingnumber < totalLength) {
+                rainSeries[paddingnumber] = rainSeries[paddingnumber] + J * area_tot;
             }
-            i++;
             pm.worked(1);
         }
         pm.done();
@@ -178,17 +154,13 @@ public class QReal implements DischargeCalculator {
         /*
          * sum the discharge contributes
          */
-        Qtot = new double[totalQshiftMatrix[0].length][2];
+        double[] discharge = DiscreteConvolution.convolve(rainSeries, unitQ, totalLength);
+        Qtot = new double[totalLength][2];
         double tottime = 0f;
         for( int k = 0; k < Qtot.length; k++ ) {
-            double sum = 0f;
-            for( int j = 0; j < totalQshiftMatrix.length; j++ ) {
-                sum = sum + totalQshiftMatrix[j][k];
-            }
-
             tottime = tottime + timestep;
 
-            Qtot[k][1] = sum;
+            Qtot[k][1] = discharge[k];
             Qtot[k][0] = tottime;
         }
 
@@ -32,6 +32,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LABEL
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_doHorizonTable_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_outSky_DESCRIPTION;
 
@@ -54,6 +55,7 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
@@ -71,12 +73,21 @@ public class OmsSkyview extends JGTModel {
     @In
     public GridCoverage2D inElev = null;
 
+    @Description(OMSSKYVIEW_doHorizonTable_DESCRIPTION)
+    @In
+    public boolean doHorizonTable = false;
+
     @Description(OMSSKYVIEW_outSky_DESCRIPTION)
     @Out
     public GridCoverage2D outSky;
 
     private HortonMessageHandler msg = HortonMessageHandler.getInstance();
 
+    /**
+     * The number of azimuths of the horizon table (one every 10 degrees).
+     */
+    private static final int HORIZON_AZIMUTHS = 36;
+
     private double maxSlope;
     private double azimuth;
     private double elevation;
@@ -102,7 +113,13 @@ public class OmsSkyview extends JGTModel {
         rows = pitWR.getHeight();
         cols = pitWR.getWidth();
 
-        WritableRaster skyWR = skyviewfactor(pitWR, dx);
+        WritableRaster skyWR;
+        if (doHorizonTable) {
+            double dy = attribute.get(CoverageUtilities.YRES);
+            skyWR = skyviewfactorFromHorizons(pitWR, dx, dy);
+        } else {
+            skyWR = skyviewfactor(pitWR, dx);
+        }
 
         int maxY = minY + rows;
         int maxX = minX + cols;
@@ -269,6 +286,59 @@ public class OmsSkyview extends JGTModel {
         return skyviewFactorWR;
     }
 
+    /**
+     * Calculate the skyview factor from the horizon angles table.
+     * 
+     * <p>The horizon of every cell is calculated once for {@value #HORIZON_AZIMUTHS}
+     * azimuths and then clipped to the same range used by the scan of {@link #skyviewfactor(WritableRaster, double)}.
+     * The factor is summed over the same azimuths and with the same weight of the scan.</p>
+     * 
+     * @param pitWR
+     *            the dem ( the map of elevation).
+     * @param xRes the x resolution of the map.
+     * @param yRes the y resolution of the map.
+     * @return the map of sky view factor.
+     */
+    private WritableRaster skyviewfactorFromHorizons( WritableRaster pitWR, double xRes, double yRes ) {
+        // needed for the max slope
+        normalVectorWR = normalVector(pitWR, xRes);
+        double maxSlopeRad = Math.toRadians(maxSlope);
+
+        // the engine ignores the novalues, which in the pit map are -9999
+        double[] elevation = pitWR.getSamples(minX, minY, cols, rows, 0, (double[]) null);
+        for( int i = 0; i < elevation.length; i++ ) {
+            if (elevation[i] == -9999.0) {
+                elevation[i] = doubleNovalue;
+            }
+        }
+        HorizonEngine horizonEngine = new HorizonEngine(elevation, cols, rows, xRes, yRes, HORIZON_AZIMUTHS);
+        horizonEngine.calculate(getDefaultThreadsNum(), pm);
+
+        WritableRaster skyviewFactorWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, pitWR.getSampleModel(),
+                0.0);
+        pm.beginTask(msg.message("skyview.calculating"), rows);
+        for( int y = 0; y < rows; y++ ) {
+            for( int x = 0; x < cols; x++ ) {
+                double sum = 0;
+                // as in the scan, the last azimuth is left out
+                for( int k = 0; k < HORIZON_AZIMUTHS - 1; k++ ) {
+                    double horizon = horizonEngine.getHorizon(k, x, y);
+                    if (horizon < 0) {
+                        horizon = 0;
+                    } else if (horizon > maxSlopeRad) {
+                        horizon = maxSlopeRad;
+                    }
+                    double cos = Math.cos(horizon);
+                    sum = sum + cos * cos;
+                }
+                skyviewFactorWR.setSample(x, y, 0, sum * 10.0 / 360.0);
+            }
+            pm.worked(1);
+        }
+        pm.done();
+        return skyviewFactorWR;
+    }
+
     /**
      * Calculate the angle.
      * 
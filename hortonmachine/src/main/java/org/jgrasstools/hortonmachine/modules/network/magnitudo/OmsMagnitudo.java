@@ -19,8 +19,6 @@ package org.jgrasstools.hortonmachine.modules.network.magnitudo;
 
 import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
 import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.go_downstream;
-import static org.jgrasstools.gears.libs.modules.ModelsEngine.isSourcePixel;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_AUTHORCONTACTS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_AUTHORNAMES;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_DESCRIPTION;
@@ -30,6 +28,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_LIC
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_inFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_inTopology_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_outMag_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
@@ -51,6 +50,7 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.FlowTopology;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.i18n.HortonMessageHandler;
@@ -68,6 +68,10 @@ public class OmsMagnitudo extends JGTModel {
     @In
     public GridCoverage2D inFlow = null;
 
+    @Description(OMSMAGNITUDO_inTopology_DESCRIPTION)
+    @In
+    public FlowTopology inTopology = null;
+
     @Description(OMSMAGNITUDO_outMag_DESCRIPTION)
     @Out
     public GridCoverage2D outMag = null;
@@ -98,44 +102,39 @@ public class OmsMagnitudo extends JGTModel {
     }
 
     public void magnitudo( RandomIter flowIter, int width, int height, WritableRaster magWR ) {
+        FlowTopology topology = inTopology;
+        if (topology == null || topology.getCols() != width || topology.getRows() != height) {
+            topology = FlowTopology.build(flowIter, width, height, pm);
+        }
 
-        int[] flow = new int[2];
-        // get rows and cols from the active region
-        int cols = width;
-        int rows = height;
-        RandomIter magIter = RandomIterFactory.create(magWR, null);
-        pm.beginTask(msg.message("magnitudo.workingon"), rows * 2); //$NON-NLS-1$
-
-        for( int j = 0; j < rows; j++ ) {
-            for( int i = 0; i < cols; i++ ) {
-                flow[0] = i;
-                flow[1] = j;
-                // looks for the source
-                if (isSourcePixel(flowIter, flow[0], flow[1])) {
-                    magWR.setSample(flow[0], flow[1], 0, magIter.getSampleDouble(flow[0], flow[1], 0) + 1.0);
-                    if (!go_downstream(flow, flowIter.getSampleDouble(flow[0], flow[1], 0)))
-                        return;
-                    while( !isNovalue(flowIter.getSampleDouble(flow[0], flow[1], 0))
-                            && flowIter.getSampleDouble(flow[0], flow[1], 0) != 10 ) {
-                        magWR.setSample(flow[0], flow[1], 0, magIter.getSampleDouble(flow[0], flow[1], 0) + 1.0);
-                        if (!go_downstream(flow, flowIter.getSampleDouble(flow[0], flow[1], 0)))
-                            return;
-                    }
-
-                    if (flowIter.getSampleDouble(flow[0], flow[1], 0) == 10) {
-                        magWR.setSample(flow[0], flow[1], 0, magIter.getSampleDouble(flow[0], flow[1], 0) + 1.0);
-                    }
-                }
+        pm.beginTask(msg.message("magnitudo.workingon"), height * 2); //$NON-NLS-1$
+        // every source adds one to all the cells downstream of it
+        double[] mag = new double[width * height];
+        int[] order = topology.getOrder();
+        int progressStep = Math.max(1, order.length / height);
+        for( int i = 0; i < order.length; i++ ) {
+            int index = order[i];
+            if (topology.isSource(index)) {
+                mag[index] = 1.0;
+            } else if (mag[index] == 0.0 && topology.isOutlet(index)) {
+                mag[index] = 1.0;
+            }
+            int downstream = topology.getDownstream(index);
+            if (downstream >= 0) {
+                mag[downstream] = mag[downstream] + mag[index];
+            }
+            if (i % progressStep == 0) {
+                pm.worked(1);
             }
-            pm.worked(1);
         }
 
-        for( int j = 0; j < rows; j++ ) {
-            for( int i = 0; i < cols; i++ ) {
-                if (magIter.getSampleDouble(i, j, 0) == 0.0 && flowIter.getSampleDouble(i, j, 0) == 10.0) {
-                    magWR.setSample(i, j, 0, 1.0);
-                } else if (magIter.getSampleDouble(i, j, 0) == 0.0 && isNovalue(flowIter.getSampleDouble(i, j, 0))) {
+        for( int j = 0; j < height; j++ ) {
+            for( int i = 0; i < width; i++ ) {
+                double value = mag[j * width + i];
+                if (value == 0.0 && isNovalue(flowIter.getSampleDouble(i, j, 0))) {
                     magWR.setSample(i, j, 0, doubleNovalue);
+                } else {
+                    magWR.setSample(i, j, 0, value);
                 }
             }
             pm.worked(1);
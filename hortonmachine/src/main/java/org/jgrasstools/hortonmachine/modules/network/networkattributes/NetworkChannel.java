@@ -37,6 +37,7 @@ public class NetworkChannel {
     public static final String STARTELEVNAME = "startelev";
     public static final String ENDELEVNAME = "endelev";
     public static final String NETNUMNAME = "netnum";
+    public static final String UPSTREAMLENGTHNAME = "uplength";
     public static final String BARICENTERELEVNAME = "height"; // TODO
 
     private NetworkChannel nextChannel;
@@ -34,10 +34,13 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIB
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_outHack_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSNETWORKATTRIBUTESBUILDER_outNet_DESCRIPTION;
 
-import java.awt.geom.Point2D;
 import java.awt.image.WritableRaster;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.WritableRandomIter;
@@ -60,10 +63,10 @@ import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
-import org.jgrasstools.gears.libs.modules.FlowNode;
+import org.jgrasstools.gears.libs.modules.Direction;
+import org.jgrasstools.gears.libs.modules.FlowTopology;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
-import org.jgrasstools.gears.libs.modules.Node;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -74,7 +77,6 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
-import com.vividsolutions.jts.geom.Point;
 
 @Description(OMSNETWORKATTRIBUTESBUILDER_DESCRIPTION)
 @Author(name = OMSNETWORKATTRIBUTESBUILDER_AUTHORNAMES, contact = OMSNETWORKATTRIBUTESBUILDER_AUTHORCONTACTS)
@@ -116,22 +118,25 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
     private int cols;
     private int rows;
 
-    private List<SimpleFeature> networkList = new ArrayList<SimpleFeature>();
-
     private GridGeometry2D gridGeometry;
 
     private RandomIter netIter;
 
-    private GeometryFactory gf = GeometryUtilities.gf();
-
-    private SimpleFeatureBuilder networkBuilder;
-
     private RandomIter tcaIter;
-    private int maxHack = 0;
 
     private WritableRandomIter hackWIter;
 
-    private List<NetworkChannel> channels;
+    private FlowTopology topology;
+
+    /*
+     * the channels graph, channels are stored in the order in which they are
+     * extracted going upstream, so that every channel comes before the ones
+     * that flow into it.
+     */
+    private List<int[]> channelCells = new ArrayList<int[]>();
+    private int[] channelHack = new int[64];
+    private int[] channelNext = new int[64];
+    private int channelsNum = 0;
 
     @Execute
     public void process() throws Exception {
@@ -142,7 +147,11 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
         RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(inFlow);
         cols = regionMap.getCols();
         rows = regionMap.getRows();
+        double xRes = regionMap.getXres();
+        double yRes = regionMap.getYres();
         gridGeometry = inFlow.getGridGeometry();
+        channelCells.clear();
+        channelsNum = 0;
 
         RandomIter flowIter = CoverageUtilities.getRandomIterator(inFlow);
         tcaIter = CoverageUtilities.getRandomIterator(inTca);
@@ -154,8 +163,10 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
             hackWIter = CoverageUtilities.getWritableRandomIterator(hackWR);
         }
 
+        topology = FlowTopology.build(flowIter, cols, rows, pm);
+
         pm.beginTask("Find outlets...", rows); //$NON-NLS-1$
-        List<FlowNode> exitsList = new ArrayList<FlowNode>();
+        List<Integer> exitsList = new ArrayList<Integer>();
         for( int r = 0; r < rows; r++ ) {
             for( int c = 0; c < cols; c++ ) {
                 double netValue = netIter.getSampleDouble(c, r, 0);
@@ -163,322 +174,401 @@ public class OmsNetworkAttributesBuilder extends JGTModel {
                     // we make sure that we pick only outlets that are on the net
                     continue;
                 }
-                FlowNode flowNode = new FlowNode(flowIter, cols, rows, c, r);
-                if (flowNode.isMarkedAsOutlet()) {
-                    exitsList.add(flowNode);
-                } else if (flowNode.touchesBound() && flowNode.isValid()) {
-                    // check if the flow exits
-                    Node goDownstream = flowNode.goDownstream();
-                    if (goDownstream == null) {
-                        // flowNode is exit
-                        exitsList.add(flowNode);
-                    }
+                int index = topology.index(c, r);
+                if (isExit(flowIter, c, r, index)) {
+                    exitsList.add(index);
                 }
             }
             pm.worked(1);
         }
         pm.done();
-        
-        if (exitsList.size()==0) {
-            throw new ModelsIllegalargumentException("No outlet has been found in the network. Check your data.", this);
-        }
+        flowIter.done();
 
-        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
-        b.setName("net");
-        b.setCRS(inFlow.getCoordinateReferenceSystem());
-        b.add("the_geom", LineString.class);
-        String hackName = NetworkChannel.HACKNAME;
-        b.add(hackName, Integer.class);
-        String strahlerName = NetworkChannel.STRAHLERNAME;
-        b.add(strahlerName, Integer.class);
-        b.add(NetworkChannel.PFAFNAME, String.class);
-        if (inDem != null) {
-            b.add(NetworkChannel.STARTELEVNAME, Double.class);
-            b.add(NetworkChannel.ENDELEVNAME, Double.class);
+        if (exitsList.size() == 0) {
+            throw new ModelsIllegalargumentException("No outlet has been found in the network. Check your data.", this);
         }
-        SimpleFeatureType type = b.buildFeatureType();
-        networkBuilder = new SimpleFeatureBuilder(type);
 
-        pm.beginTask("Extract vectors...", exitsList.size());
-        for( FlowNode exitNode : exitsList ) {
+        pm.beginTask("Extract channels...", exitsList.size());
+        for( int exitIndex : exitsList ) {
             /*
              * - first hack order is 1
              */
-            handleTrail(exitNode, null, 1);
+            extractChannels(exitIndex);
             pm.worked(1);
         }
         pm.done();
 
-        outNet = new DefaultFeatureCollection();
-        ((DefaultFeatureCollection) outNet).addAll(networkList);
-
         /*
-         * connect channels
+         * calculate strahler, pfafstetter and upstream length
          */
-        channels = new ArrayList<NetworkChannel>();
-        for( SimpleFeature network : networkList ) {
-            channels.add(new NetworkChannel(network));
-        }
-        pm.beginTask("Connect channels...", channels.size());
-        for( NetworkChannel channel : channels ) {
-            for( NetworkChannel checkChannel : channels ) {
-                if (channel.equals(checkChannel)) {
-                    continue;
-                }
-                channel.checkAndAdd(checkChannel);
-            }
-            pm.worked(1);
-        }
+        pm.beginTask("Calculate channel attributes...", IJGTProgressMonitor.UNKNOWN);
+        int[] strahler = new int[channelsNum];
+        double[] channelLength = new double[channelsNum];
+        double[] upstreamLength = new double[channelsNum];
+        String[] pfafstetter = new String[channelsNum];
+        calculateAttributes(xRes, yRes, strahler, channelLength, upstreamLength, pfafstetter);
         pm.done();
 
-        /*
-         * calculate strahler
-         */
-        pm.beginTask("Calculate Strahler...", IJGTProgressMonitor.UNKNOWN);
-        calculateStrahler();
-        pm.done();
-
-        /*
-         * calculate pfaf
-         */
-        pm.beginTask("Calculate Pfafstetter...", IJGTProgressMonitor.UNKNOWN);
-        calculatePfafstetter();
-        pm.done();
+        outNet = new DefaultFeatureCollection();
+        ((DefaultFeatureCollection) outNet).addAll(createFeatures(strahler, upstreamLength, pfafstetter));
 
         if (hackWIter != null) {
             outHack = CoverageUtilities.buildCoverage("hack", hackWR, regionMap, inFlow.getCoordinateReferenceSystem());
         }
     }
 
-    private void calculatePfafstetter() {
-        for( int i = 1; i <= maxHack; i++ ) {
-            // find a channel of that order
-            List<NetworkChannel> startChannels = new ArrayList<NetworkChannel>();
-            for( NetworkChannel channel : channels ) {
-                int hack = channel.getHack();
-                NetworkChannel nextChannel = channel.getNextChannel();
-                if (hack == i && (nextChannel == null || nextChannel.getHack() != i)) {
-                    startChannels.add(channel);
-                }
+    /**
+     * Walks the network upstream from an exit, splitting it into channels at every confluence.
+     * 
+     * <p>The main upstream channel (the one with max tca) keeps the hack index of
+     * the channel it flows into, the others get it incremented by one.</p>
+     */
+    private void extractChannels( int exitIndex ) {
+        // stack of trails to follow: start cell, first cell, hack index, next channel
+        int[] stack = new int[4 * 64];
+        int stackSize = 0;
+        stack[stackSize++] = -1;
+        stack[stackSize++] = exitIndex;
+        stack[stackSize++] = 1;
+        stack[stackSize++] = -1;
+
+        int[] trail = new int[256];
+        int[] netUpstream = new int[8];
+        while( stackSize > 0 ) {
+            int nextChannel = stack[--stackSize];
+            int hackIndex = stack[--stackSize];
+            int running = stack[--stackSize];
+            int startCell = stack[--stackSize];
+
+            int trailSize = 0;
+            if (startCell >= 0) {
+                trail[trailSize++] = startCell;
+                // write hack if needed
+                setHack(running, hackIndex);
             }
+            // if there are entering cells
+            while( topology.getUpstreamCount(running) > 0 ) {
+                if (isNet(running)) {
+                    // if a net value is available, then it needs to be vector net
+                    if (trailSize == trail.length) {
+                        trail = Arrays.copyOf(trail, trailSize * 2);
+                    }
+                    trail[trailSize++] = running;
+                    // write hack if needed
+                    setHack(running, hackIndex);
+                } else {
+                    /*
+                     * the line is finished 
+                     */
+                    if (trailSize < 2) {
+                        throw new RuntimeException();
+                    }
+                    // create a line and finish this trail
+                    addChannel(trail, trailSize, hackIndex, nextChannel);
+                    break;
+                }
 
-            for( NetworkChannel startChannel : startChannels ) {
-                NetworkChannel nextChannel = startChannel.getNextChannel();
-                String base = "";
-                if (nextChannel != null) {
-                    base = nextChannel.getPfaf();
-                    int lastDot = base.lastIndexOf('.');
-                    if (lastDot == -1) {
-                        int lastInt = Integer.parseInt(base);
-                        lastInt = lastInt + 1;
-                        base = lastInt + ".";
-                    } else {
-                        String prefix = base.substring(0, lastDot + 1);
-                        String last = base.substring(lastDot + 1);
-                        int lastInt = Integer.parseInt(last);
-                        lastInt = lastInt + 1;
-                        base = prefix + lastInt + ".";
+                // we need to check which ones are really net cells
+                int netUpstreamNum = 0;
+                for( int i = topology.getUpstreamStart(running); i < topology.getUpstreamEnd(running); i++ ) {
+                    int upstream = topology.getUpstreamCell(i);
+                    if (isNet(upstream)) {
+                        netUpstream[netUpstreamNum++] = upstream;
                     }
                 }
-                int index = 1;
-                startChannel.setPfafstetter(base + index);
-                index = index + 2;
-                while( startChannel.getPreviousChannels().size() > 0 ) {
-                    List<NetworkChannel> previousChannels = startChannel.getPreviousChannels();
-                    for( NetworkChannel networkChannel : previousChannels ) {
-                        if (networkChannel.getHack() == i) {
-                            startChannel = networkChannel;
-                            startChannel.setPfafstetter(base + index);
-                            index = index + 2;
-                            break;
+                if (netUpstreamNum == 1) {
+                    // normal, get the next upstream cell and go on
+                    running = netUpstream[0];
+                } else if (netUpstreamNum == 0) {
+                    // it was an exit
+                    addChannel(trail, trailSize, hackIndex, nextChannel);
+                    break;
+                } else {
+                    int channel = addChannel(trail, trailSize, hackIndex, nextChannel);
+                    int mainUpstream = getMainUpstream(running);
+                    if (stackSize + 4 * netUpstreamNum > stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * (stack.length + 4 * netUpstreamNum));
+                    }
+                    // the others jump up one
+                    for( int i = 0; i < netUpstreamNum; i++ ) {
+                        if (netUpstream[i] != mainUpstream) {
+                            stack[stackSize++] = running;
+                            stack[stackSize++] = netUpstream[i];
+                            stack[stackSize++] = hackIndex + 1;
+                            stack[stackSize++] = channel;
                         }
                     }
+                    // the main channel keeps the same index
+                    stack[stackSize++] = running;
+                    stack[stackSize++] = mainUpstream;
+                    stack[stackSize++] = hackIndex;
+                    stack[stackSize++] = channel;
+                    break;
                 }
-
             }
         }
     }
 
-    private void calculateStrahler() {
-        // calculate Strahler
-        List<NetworkChannel> sourceChannels = new ArrayList<NetworkChannel>();
-        for( NetworkChannel channel : channels ) {
-            if (channel.isSource()) {
-                sourceChannels.add(channel);
-                // set start
-                channel.setStrahler(1);
+    /**
+     * Check if a cell is an outlet, i.e. it is marked as outlet or, touching the
+     * bound of the map or a novalue, it flows out of the valid map.
+     */
+    private boolean isExit( RandomIter flowIter, int col, int row, int index ) {
+        if (topology.isOutlet(index)) {
+            return true;
+        }
+        double flowValue = flowIter.getSampleDouble(col, row, 0);
+        if (isNovalue(flowValue)) {
+            return false;
+        }
+        boolean touchesBound = false;
+        for( Direction direction : Direction.getOrderedDirs() ) {
+            if (!isValidFlow(flowIter, col + direction.col, row + direction.row)) {
+                touchesBound = true;
+                break;
             }
         }
+        if (!touchesBound) {
+            return false;
+        }
+        Direction direction = Direction.forFlow((int) flowValue);
+        if (direction == null) {
+            return true;
+        }
+        return !isValidFlow(flowIter, col + direction.col, row + direction.row);
+    }
 
-        List<NetworkChannel> nextsList = new ArrayList<NetworkChannel>();
-        List<NetworkChannel> toKeepList = new ArrayList<NetworkChannel>();
-        while( true ) {
-            sourceChannels.addAll(nextsList);
-            nextsList.clear();
-            sourceChannels.addAll(toKeepList);
-            toKeepList.clear();
-            for( NetworkChannel sourceChannel : sourceChannels ) {
-                NetworkChannel nextChannel = sourceChannel.getNextChannel();
-                if (nextChannel != null) {
-                    if (!nextsList.contains(nextChannel))
-                        nextsList.add(nextChannel);
-                }
+    private boolean isValidFlow( RandomIter flowIter, int col, int row ) {
+        if (col < 0 || col >= cols || row < 0 || row >= rows) {
+            return false;
+        }
+        return !isNovalue(flowIter.getSampleDouble(col, row, 0));
+    }
+
+    private boolean isNet( int index ) {
+        return !isNovalue(netIter.getSampleDouble(index % cols, index / cols, 0));
+    }
+
+    private void setHack( int index, int hackIndex ) {
+        if (doHack) {
+            hackWIter.setSample(index % cols, index / cols, 0, hackIndex);
+        }
+    }
+
+    /**
+     * Get the entering net cell with the max tca, in case of equal values the first 
+     * in the order of {@link Direction#getOrderedDirs()} is picked.
+     */
+    private int getMainUpstream( int index ) {
+        int col = index % cols;
+        int row = index / cols;
+        double maxTca = Double.NEGATIVE_INFINITY;
+        int mainUpstream = -1;
+        for( Direction direction : Direction.getOrderedDirs() ) {
+            int newCol = col + direction.col;
+            int newRow = row + direction.row;
+            if (newCol < 0 || newCol >= cols || newRow < 0 || newRow >= rows) {
+                continue;
             }
-            if (nextsList.size() == 0) {
-                break;
+            int upstream = topology.index(newCol, newRow);
+            if (topology.getDownstream(upstream) != index || !isNet(upstream)) {
+                continue;
             }
-
-            for( NetworkChannel networkChannel : nextsList ) {
-                List<NetworkChannel> previousChannels = networkChannel.getPreviousChannels();
-                if (previousChannels.size() == 0) {
-                    throw new RuntimeException();
-                }
-                int maxStrahler = 0;
-                boolean allEqual = true;
-                int previousStrahler = -1;
-                boolean doContinue = false;
-                for( NetworkChannel channel : previousChannels ) {
-                    int strahler = channel.getStrahler();
-                    if (strahler < 0) {
-                        // has not been set yet, keep it
-                        toKeepList.add(channel);
-                        doContinue = true;
-                        break;
-                    } else {
-                        if (strahler > maxStrahler)
-                            maxStrahler = strahler;
-                        if (previousStrahler > 0) {
-                            // was set already
-                            if (previousStrahler != strahler) {
-                                allEqual = false;
-                            }
-                        }
-                        previousStrahler = strahler;
-                    }
-                }
-                if (doContinue) {
-                    continue;
-                }
-                if (allEqual) {
-                    networkChannel.setStrahler(maxStrahler + 1);
-                } else {
-                    networkChannel.setStrahler(maxStrahler);
-                }
+            double tcaValue = tcaIter.getSampleDouble(newCol, newRow, 0);
+            if (mainUpstream == -1 || tcaValue > maxTca) {
+                maxTca = tcaValue;
+                mainUpstream = upstream;
             }
-
-            sourceChannels.clear();
         }
+        return mainUpstream;
     }
 
-    private void handleTrail( FlowNode runningNode, Coordinate startCoordinate, int hackIndex ) {
-        List<Coordinate> lineCoordinatesList = new ArrayList<Coordinate>();
-        if (startCoordinate != null) {
-            lineCoordinatesList.add(startCoordinate);
-            // write hack if needed
-            if (doHack)
-                runningNode.setValueInMap(hackWIter, hackIndex);
+    /**
+     * Add a channel to the graph.
+     * 
+     * @return the index of the channel or -1 if the trail was too short to make a line.
+     */
+    private int addChannel( int[] trail, int trailSize, int hackIndex, int nextChannel ) {
+        if (trailSize < 2) {
+            return -1;
         }
-        // if there are entering nodes
-        while( runningNode.getEnteringNodes().size() > 0 ) {
-            int col = runningNode.col;
-            int row = runningNode.row;
-            Coordinate coord = CoverageUtilities.coordinateFromColRow(col, row, gridGeometry);
-
-            double netValue = netIter.getSampleDouble(col, row, 0);
-            if (!isNovalue(netValue)) {
-                // if a net value is available, then it needs to be vector net
-                lineCoordinatesList.add(coord);
-                // write hack if needed
-                if (doHack)
-                    runningNode.setValueInMap(hackWIter, hackIndex);
+        if (channelsNum == channelHack.length) {
+            channelHack = Arrays.copyOf(channelHack, channelsNum * 2);
+            channelNext = Arrays.copyOf(channelNext, channelsNum * 2);
+        }
+        channelCells.add(Arrays.copyOf(trail, trailSize));
+        channelHack[channelsNum] = hackIndex;
+        channelNext[channelsNum] = nextChannel;
+        return channelsNum++;
+    }
+
+    /**
+     * Calculates the channel attributes.
+     * 
+     * <p>Since every channel is stored before the channels flowing into it, the
+     * reversed storage order is a post-order of the network (used for strahler
+     * and upstream length) and the storage order a pre-order (used for pfafstetter).</p>
+     */
+    private void calculateAttributes( double xRes, double yRes, int[] strahler, double[] channelLength,
+            double[] upstreamLength, String[] pfafstetter ) {
+        int[] maxStrahler = new int[channelsNum];
+        boolean[] allEqual = new boolean[channelsNum];
+        Arrays.fill(allEqual, true);
+        double diagonal = Math.sqrt(xRes * xRes + yRes * yRes);
+
+        for( int channel = channelsNum - 1; channel >= 0; channel-- ) {
+            // all the channels upstream have been handled already
+            if (maxStrahler[channel] == 0) {
+                // source channel
+                strahler[channel] = 1;
+            } else if (allEqual[channel]) {
+                strahler[channel] = maxStrahler[channel] + 1;
             } else {
-                /*
-                 * the line is finished 
-                 */
-                if (lineCoordinatesList.size() < 2) {
-                    throw new RuntimeException();
-                }
-                // create a line and finish this trail
-                createLine(lineCoordinatesList, hackIndex);
-                break;
+                strahler[channel] = maxStrahler[channel];
             }
 
-            List<FlowNode> enteringNodes = runningNode.getEnteringNodes();
-            List<FlowNode> checkedNodes = new ArrayList<FlowNode>();
-            // we need to check which ones are really net nodes
-            for( FlowNode tmpNode : enteringNodes ) {
-                int tmpCol = tmpNode.col;
-                int tmpRow = tmpNode.row;
-                double tmpNetValue = netIter.getSampleDouble(tmpCol, tmpRow, 0);
-                if (!isNovalue(tmpNetValue)) {
-                    checkedNodes.add(tmpNode);
+            int[] cells = channelCells.get(channel);
+            double length = 0;
+            for( int i = 1; i < cells.length; i++ ) {
+                int dCol = cells[i] % cols - cells[i - 1] % cols;
+                int dRow = cells[i] / cols - cells[i - 1] / cols;
+                if (dCol != 0 && dRow != 0) {
+                    length = length + diagonal;
+                } else if (dCol != 0) {
+                    length = length + xRes;
+                } else {
+                    length = length + yRes;
                 }
             }
-            if (checkedNodes.size() == 1) {
-                // normal, get the next upstream node and go on
-                runningNode = checkedNodes.get(0);
-            } else if (checkedNodes.size() == 0) {
-                // it was an exit
-                createLine(lineCoordinatesList, hackIndex);
-                break;
-            } else if (checkedNodes.size() > 1) {
-
-                createLine(lineCoordinatesList, hackIndex);
+            channelLength[channel] = length;
+            upstreamLength[channel] = upstreamLength[channel] + length;
+
+            int next = channelNext[channel];
+            if (next >= 0) {
+                upstreamLength[next] = upstreamLength[next] + upstreamLength[channel];
+                if (maxStrahler[next] != 0 && maxStrahler[next] != strahler[channel]) {
+                    allEqual[next] = false;
+                }
+                if (strahler[channel] > maxStrahler[next]) {
+                    maxStrahler[next] = strahler[channel];
+                }
+            }
+        }
 
-                if (tcaIter == null) {
-                    // we just extract the vector line
-                    for( FlowNode flowNode : checkedNodes ) {
-                        handleTrail(flowNode, coord, hackIndex + 1);
-                    }
-                } else {
-                    // we want also hack numbering and friends
-                    FlowNode mainUpstream = runningNode.getUpstreamTcaBased(tcaIter, null);
-                    // the main channel keeps the same index
-                    handleTrail(mainUpstream, coord, hackIndex);
-                    // the others jump up one
-                    for( FlowNode flowNode : checkedNodes ) {
-                        if (!flowNode.equals(mainUpstream)) {
-                            handleTrail(flowNode, coord, hackIndex + 1);
-                        }
+        // the pfafstetter base of the stem and the position in it
+        String[] pfafBase = new String[channelsNum];
+        int[] pfafIndex = new int[channelsNum];
+        for( int channel = 0; channel < channelsNum; channel++ ) {
+            int next = channelNext[channel];
+            if (next >= 0 && channelHack[next] == channelHack[channel]) {
+                // continuation of the stem of the next channel
+                pfafBase[channel] = pfafBase[next];
+                pfafIndex[channel] = pfafIndex[next] + 2;
+            } else {
+                String base = "";
+                if (next >= 0) {
+                    base = pfafstetter[next];
+                    int lastDot = base.lastIndexOf('.');
+                    if (lastDot == -1) {
+                        int lastInt = Integer.parseInt(base);
+                        lastInt = lastInt + 1;
+                        base = lastInt + ".";
+                    } else {
+                        String prefix = base.substring(0, lastDot + 1);
+                        String last = base.substring(lastDot + 1);
+                        int lastInt = Integer.parseInt(last);
+                        lastInt = lastInt + 1;
+                        base = prefix + lastInt + ".";
                     }
                 }
-                break;
-            } else {
-                throw new RuntimeException();
+                pfafBase[channel] = base;
+                pfafIndex[channel] = 1;
             }
+            pfafstetter[channel] = pfafBase[channel] + pfafIndex[channel];
         }
     }
 
-    private void createLine( List<Coordinate> lineCoordinatesList, int hackindex ) {
-        if (lineCoordinatesList.size() < 2) {
-            return;
+    /**
+     * Creates the line features of the channels in parallel.
+     */
+    private List<SimpleFeature> createFeatures( final int[] strahler, final double[] upstreamLength, final String[] pfafstetter ) {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("net");
+        b.setCRS(inFlow.getCoordinateReferenceSystem());
+        b.add("the_geom", LineString.class);
+        b.add(NetworkChannel.HACKNAME, Integer.class);
+        b.add(NetworkChannel.STRAHLERNAME, Integer.class);
+        b.add(NetworkChannel.PFAFNAME, String.class);
+        b.add(NetworkChannel.UPSTREAMLENGTHNAME, Double.class);
+        if (inDem != null) {
+            b.add(NetworkChannel.STARTELEVNAME, Double.class);
+            b.add(NetworkChannel.ENDELEVNAME, Double.class);
         }
-        if (hackindex > maxHack) {
-            maxHack = hackindex;
+        final SimpleFeatureType type = b.buildFeatureType();
+
+        // the elevations are read sequentially, the iterator is not thread safe
+        final double[] startElev = new double[channelsNum];
+        final double[] endElev = new double[channelsNum];
+        if (inDem != null) {
+            RandomIter demIter = CoverageUtilities.getRandomIterator(inDem);
+            for( int channel = 0; channel < channelsNum; channel++ ) {
+                int[] cells = channelCells.get(channel);
+                // lines go downstream, while cells were collected upstream
+                int startCell = cells[cells.length - 1];
+                int endCell = cells[0];
+                startElev[channel] = demIter.getSampleDouble(startCell % cols, startCell / cols, 0);
+                endElev[channel] = demIter.getSampleDouble(endCell % cols, endCell / cols, 0);
+            }
+            demIter.done();
         }
-        LineString newNetLine = gf.createLineString(lineCoordinatesList.toArray(new Coordinate[0]));
-        newNetLine = (LineString) newNetLine.reverse();
-        Object[] values;
-        if (inDem == null) {
-            values = new Object[]{newNetLine, hackindex, 0, "-"};
-        } else {
-            Point startPoint = newNetLine.getStartPoint();
-            Point endPoint = newNetLine.getEndPoint();
-            Point2D p = new Point2D.Double();
-            double[] value = new double[1];
-            p.setLocation(startPoint.getX(), startPoint.getY());
-            inDem.evaluate(p, value);
-            double startElev = value[0];
-            p.setLocation(endPoint.getX(), endPoint.getY());
-            inDem.evaluate(p, value);
-            double endElev = value[0];
-            values = new Object[]{newNetLine, hackindex, 0, "-", startElev, endElev};
+
+        final SimpleFeature[] features = new SimpleFeature[channelsNum];
+        int threads = Math.max(1, Math.min(getDefaultThreadsNum(), channelsNum / 100));
+        final int chunk = (int) Math.ceil(channelsNum / (double) threads);
+        pm.beginTask("Create vectors...", threads);
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+        for( int t = 0; t < threads; t++ ) {
+            final int from = t * chunk;
+            final int to = Math.min(channelsNum, from + chunk);
+            Runnable runner = new Runnable(){
+                public void run() {
+                    GeometryFactory gf = GeometryUtilities.gf();
+                    SimpleFeatureBuilder networkBuilder = new SimpleFeatureBuilder(type);
+                    for( int channel = from; channel < to; channel++ ) {
+                        int[] cells = channelCells.get(channel);
+                        Coordinate[] coordinates = new Coordinate[cells.length];
+                        for( int i = 0; i < cells.length; i++ ) {
+                            int cell = cells[cells.length - 1 - i];
+                            coordinates[i] = CoverageUtilities.coordinateFromColRow(cell % cols, cell / cols, gridGeometry);
+                        }
+                        LineString line = gf.createLineString(coordinates);
+                        Object[] values;
+                        if (inDem == null) {
+                            values = new Object[]{line, channelHack[channel], strahler[channel], pfafstetter[channel],
+                                    upstreamLength[channel]};
+                        } else {
+                            values = new Object[]{line, channelHack[channel], strahler[channel], pfafstetter[channel],
+                                    upstreamLength[channel], startElev[channel], endElev[channel]};
+                        }
+                        networkBuilder.addAll(values);
+                        features[channel] = networkBuilder.buildFeature(null);
+                    }
+                    synchronized (pm) {
+                        pm.worked(1);
+                    }
+                }
+            };
+            fixedThreadPool.execute(runner);
         }
-        networkBuilder.addAll(values);
-        SimpleFeature netFeature = networkBuilder.buildFeature(null);
-        synchronized (networkList) {
-            networkList.add(netFeature);
+        try {
+            fixedThreadPool.shutdown();
+            fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+            fixedThreadPool.shutdownNow();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
+        pm.done();
+        return Arrays.asList(features);
     }
 
     public static void main( String[] args ) throws Exception {
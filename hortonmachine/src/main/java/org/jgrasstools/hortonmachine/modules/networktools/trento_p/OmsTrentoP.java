@@ -47,6 +47,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pG_DE
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pGamma_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pJMax_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pMaxJunction_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pMaxTheta_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pMinDischarge_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSTRENTOP_pMinG_DESCRIPTION;
@@ -287,6 +288,10 @@ public class OmsTrentoP extends JGTModel {
     @In
     public Integer tpMaxCalibration = null;
 
+    @Description(OMSTRENTOP_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSTRENTOP_dt_DESCRIPTION)
     @Unit("minutes")
     @In
@@ -399,7 +404,7 @@ public class OmsTrentoP extends JGTModel {
             outFillDegree = new LinkedHashMap<DateTime, HashMap<Integer, double[]>>();
             // initialize the NetworkCalibration.
             network = new NetworkCalibration.Builder(pm, networkPipes, dt, inRain, outDischarge, outFillDegree, warningBuilder,
-                    tpMaxCalibration, foundTp).celerityFactor(pCelerityFactor).tMax(tMax).build();
+                    tpMaxCalibration, foundTp).celerityFactor(pCelerityFactor).tMax(tMax).threads(pMaxThreads).build();
             network.geoSewer();
             outTpMax = ((NetworkCalibration) network).getTpMax();
 
@@ -32,12 +32,22 @@ import static org.jgrasstools.hortonmachine.modules.networktools.trento_p.utils.
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jgrasstools.gears.libs.modules.ModelsEngine;
+import org.jgrasstools.gears.libs.monitor.DummyProgressMonitor;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.utils.math.NumericsUtilities;
 import org.jgrasstools.gears.utils.sorting.QuickSortAlgorithm;
@@ -95,10 +105,6 @@ public class NetworkCalibration implements Network {
      */
     private final HashMap<DateTime, double[]> inRain;
 
-    /*
-     * Flag to exit if a pipe is full.
-     */
-    boolean isFill = false;
     /*
      * Dati relativi alla rete
      */
@@ -150,14 +156,49 @@ public class NetworkCalibration implements Network {
      * Is the number of data rain to use.
      */
     private int nTime;
-    /*
-     * True if there is an infinite loop.
-     */
-    private boolean infiniteLoop = false;
     /*
      * Max number of iteration to search the solution.
      */
     private final static int MAX_NUMBER_ITERATION = 1000;
+    /*
+     * The number of threads to use.
+     */
+    private final int threads;
+    /*
+     * The matrices of discarded evaluations, ready to be reused.
+     */
+    private final LinkedList<double[][]> matrixPool = new LinkedList<double[][]>();
+
+    /*
+     * The state of the evaluation of the network for one rain time.
+     */
+    private static class Evaluation {
+        private final int tp;
+        private final double[][] timeDischarge;
+        private final double[][] timeFillDegree;
+        /*
+         * The warnings of this evaluation, added to the global ones if the evaluation is used.
+         */
+        private final StringBuilder warnings = new StringBuilder();
+        /*
+         * Flag to exit if a pipe is full.
+         */
+        private boolean isFill = false;
+        private double qMax = 0;
+
+        private Evaluation( int tp, double[][] timeDischarge, double[][] timeFillDegree ) {
+            this.tp = tp;
+            this.timeDischarge = timeDischarge;
+            this.timeFillDegree = timeFillDegree;
+        }
+    }
+
+    /*
+     * Thrown if the delay of a pipe doesn't converge.
+     */
+    private static class InfiniteLoopException extends ArithmeticException {
+        private static final long serialVersionUID = 1L;
+    }
 
     /**
         * Builder for the Calibration class.
@@ -210,6 +251,10 @@ public class NetworkCalibration implements Network {
          *  max number of time step.
          */
         private int tMax = (int) DEFAULT_TMAX;
+        /*
+         * The number of threads to use.
+         */
+        private int threads = 1;
         /**
          * Initialize the object with the needed parameters
          * 
@@ -264,6 +309,22 @@ public class NetworkCalibration implements Network {
             return this;
         }
 
+        /**
+         * Set the number of threads to use.
+         * 
+         * <p>
+         * If the maximum rain time is searched, several rain times are
+         * evaluated at once, else the pipes that don't drain one into the
+         * other are verified at once.
+         * </p>
+         * 
+         * @param threads the number of threads.
+         */
+        public Builder threads( int threads ) {
+            this.threads = threads;
+            return this;
+        }
+
         /**
          * Create a NetworkCalibration Object.
          * 
@@ -289,6 +350,7 @@ public class NetworkCalibration implements Network {
         this.strBuilder = builder.strBuilder;
         this.tpMaxCalibration = builder.tpMaxCalibration;
         this.foundMaxrainTime = builder.foundMaxrainTime;
+        this.threads = builder.threads;
         if (builder.networkPipe != null) {
             this.networkPipes = builder.networkPipe;
         } else {
@@ -370,6 +432,44 @@ public class NetworkCalibration implements Network {
         return matrix;
     }
 
+    /*
+     * Get a result matrix from the pool, or create it if the pool is empty.
+     */
+    private double[][] takeMatrix() {
+        double[][] matrix = matrixPool.poll();
+        if (matrix == null) {
+            matrix = createMatrix();
+        }
+        return matrix;
+    }
+
+    /*
+     * Give the matrices of a discarded evaluation back to the pool.
+     */
+    private void recycle( Evaluation evaluation ) {
+        for( int column = 0; column < networkPipes.length + 1; column++ ) {
+            resetColumn(evaluation.timeDischarge, column);
+            resetColumn(evaluation.timeFillDegree, column);
+        }
+        matrixPool.add(evaluation.timeDischarge);
+        matrixPool.add(evaluation.timeFillDegree);
+    }
+
+    /*
+     * Bring a column of a result matrix back to the state of createMatrix().
+     */
+    private void resetColumn( double[][] matrix, int column ) {
+        double time = rainData[0][0];
+        for( int i = 0; i < matrix.length; ++i ) {
+            if (column == 0) {
+                matrix[i][0] = time;
+                time += dt;
+            } else {
+                matrix[i][column] = 0;
+            }
+        }
+    }
+
     /**
      * verify of the no-head pipes.
      * 
@@ -380,16 +480,16 @@ public class NetworkCalibration implements Network {
      * @param k  ID of the pipe where evaluate the discharge.
      * @param cDelays delay matrix (for the evalutation of the flow wave).
      * @param net matrix that contains value of the network.
+     * @param qPartial a matrix as big as timeDischarge, set to 0. It is set back to 0 before returning.
+     * @param warnings where to put the warning messages.
      * @return 
      */
     private double internalPipeVerify( int k, double[] cDelays, double[][] net, double[][] timeDischarge,
-            double[][] timeFillDegree, int tp ) {
+            double[][] timeFillDegree, double[][] qPartial, int tp, StringBuilder warnings ) {
 
         int num;
         double localdelay, olddelay, qMax, B, known, theta, u;
-        double[][] qPartial;
 
-        qPartial = new double[timeDischarge.length][timeDischarge[0].length];
         calculateDelays(k, cDelays, net);
         // First attempt local delay [min]
         localdelay = 1;
@@ -399,48 +499,57 @@ public class NetworkCalibration implements Network {
         double maxtheta = networkPipes[0].getMaxTheta();
         double tolerance = networkPipes[0].getTolerance();
         int count = 0;
-        do {
-            olddelay = localdelay;
-            qMax = 0;
-            // Updates delays
-            for( int i = 0; i < net.length; i++ ) {
-                net[i][2] += localdelay;
-            };
-
-            for( int j = 0; j < net.length; ++j ) {
-                num = (int) net[j][0];
-                getHydrograph(num, qPartial, olddelay, net[j][2], tp);
+        try {
+            do {
+                olddelay = localdelay;
+                qMax = 0;
+                // Updates delays
+                for( int i = 0; i < net.length; i++ ) {
+                    net[i][2] += localdelay;
+                };
+
+                for( int j = 0; j < net.length; ++j ) {
+                    num = (int) net[j][0];
+                    getHydrograph(num, qPartial, olddelay, net[j][2], tp);
 
-            }
+                }
 
-            getHydrograph(k, qPartial, olddelay, 0, tp);
-            qMax = ModelsEngine.sumDoublematrixColumns(k, qPartial, timeDischarge, 0, qPartial[0].length - 1, pm);
-            if (qMax <= 1)
-                qMax = 1;
-            // Resets delays
-            for( int i = 0; i < net.length; i++ ) {
-                net[i][2] -= localdelay;
-            }
-            calculateFillDegree(k, timeDischarge, timeFillDegree);
-            B = qMax / (CUBICMETER2LITER * networkPipes[k].getKs() * sqrt(networkPipes[k].verifyPipeSlope / METER2CM));
-            known = (B * TWO_THIRTEENOVERTHREE) / pow(networkPipes[k].diameterToVerify / METER2CM, EIGHTOVERTHREE);
-            theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, strBuilder);
-            // Average velocity in pipe [ m / s ]
-            u = qMax * 80 / (pow(networkPipes[k].diameterToVerify, 2) * (theta - sin(theta)));
-            localdelay = networkPipes[k].getLenght() / (celerityfactor1 * u * MINUTE2SEC);
-            count++;
-            // verify if it's an infiniteloop.
-            if (count > MAX_NUMBER_ITERATION) {
-                infiniteLoop = true;
-                throw new ArithmeticException();
+                getHydrograph(k, qPartial, olddelay, 0, tp);
+                qMax = ModelsEngine.sumDoublematrixColumns(k, qPartial, timeDischarge, 0, qPartial[0].length - 1, pm);
+                if (qMax <= 1)
+                    qMax = 1;
+                // Resets delays
+                for( int i = 0; i < net.length; i++ ) {
+                    net[i][2] -= localdelay;
+                }
+                calculateFillDegree(k, timeDischarge, timeFillDegree, warnings);
+                B = qMax / (CUBICMETER2LITER * networkPipes[k].getKs() * sqrt(networkPipes[k].verifyPipeSlope / METER2CM));
+                known = (B * TWO_THIRTEENOVERTHREE) / pow(networkPipes[k].diameterToVerify / METER2CM, EIGHTOVERTHREE);
+                theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, warnings);
+                // Average velocity in pipe [ m / s ]
+                u = qMax * 80 / (pow(networkPipes[k].diameterToVerify, 2) * (theta - sin(theta)));
+                localdelay = networkPipes[k].getLenght() / (celerityfactor1 * u * MINUTE2SEC);
+                count++;
+                // verify if it's an infiniteloop.
+                if (count > MAX_NUMBER_ITERATION) {
+                    throw new InfiniteLoopException();
+                }
+            } while( abs(localdelay - olddelay) / olddelay >= tolerance );
+        } finally {
+            // clean the columns used, so that the matrix can be used for the next pipe
+            for( int i = 0; i < qPartial.length; i++ ) {
+                for( int j = 0; j < net.length; ++j ) {
+                    qPartial[i][(int) net[j][0]] = 0;
+                }
+                qPartial[i][k] = 0;
             }
-        } while( abs(localdelay - olddelay) / olddelay >= tolerance );
+        }
         cDelays[k] = localdelay;
         return qMax;
 
     }
 
-    private void calculateFillDegree( int k, double[][] timeDischarge, double[][] timeFillDegree ) {
+    private void calculateFillDegree( int k, double[][] timeDischarge, double[][] timeFillDegree, StringBuilder warnings ) {
         double accuracy = networkPipes[0].getAccuracy();
         int jMax = networkPipes[0].getjMax();
         double minG = networkPipes[0].getMinG();
@@ -454,7 +563,7 @@ public class NetworkCalibration implements Network {
             if (q > NumericsUtilities.machineFEpsilon()) {
                 double B = q / (CUBICMETER2LITER * networkPipes[k].getKs() * sqrt(networkPipes[k].verifyPipeSlope / METER2CM));
                 double known = (B * TWO_THIRTEENOVERTHREE) / pow(networkPipes[k].diameterToVerify / METER2CM, EIGHTOVERTHREE);
-                double theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, strBuilder);
+                double theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, warnings);
                 timeFillDegree[i][k] = angleToFillDegree(theta);
             } else {
                 timeFillDegree[i][k] = 0.0;
@@ -566,8 +675,11 @@ public class NetworkCalibration implements Network {
      *            ID of the pipe where evaluate the discharge.
      * @param cDelays
      *            delay matrix (for the evalutation of the flow wave).
+     * @param warnings
+     *            where to put the warning messages.
      */
-    private double headPipeVerify( int k, double[] cDelays, double[][] timeDischarge, double[][] timeFillDegree, int tp ) {
+    private double headPipeVerify( int k, double[] cDelays, double[][] timeDischarge, double[][] timeFillDegree, int tp,
+            StringBuilder warnings ) {
 
         double olddelay = 0;
         double qMax = 0;
@@ -589,10 +701,10 @@ public class NetworkCalibration implements Network {
             if (qMax <= 1) {
                 qMax = 1;
             }
-            calculateFillDegree(k, timeDischarge, timeFillDegree);
+            calculateFillDegree(k, timeDischarge, timeFillDegree, warnings);
             B = qMax / (CUBICMETER2LITER * networkPipes[k].getKs() * Math.sqrt(networkPipes[k].verifyPipeSlope / METER2CM));
             known = (B * TWO_THIRTEENOVERTHREE) / Math.pow(networkPipes[k].diameterToVerify / METER2CM, EIGHTOVERTHREE);
-            theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, strBuilder);
+            theta = Utility.thisBisection(maxtheta, known, TWOOVERTHREE, minG, accuracy, jMax, pm, warnings);
             double tmp1 = 0;
             double tmp2 = 0;
             if (k - 1 >= 0) {
@@ -606,8 +718,7 @@ public class NetworkCalibration implements Network {
             localdelay = tmp2 / (celerityfactor1 * u * MINUTE2SEC);
             count++;
             if (count > MAX_NUMBER_ITERATION) {
-                infiniteLoop = true;
-                throw new ArithmeticException();
+                throw new InfiniteLoopException();
             }
 
         } while( Math.abs(localdelay - olddelay) / olddelay >= tolerance );
@@ -667,34 +778,114 @@ public class NetworkCalibration implements Network {
      */
     @Override
     public void geoSewer() throws Exception {
-        if (!foundMaxrainTime) {
-            evaluateDischarge(lastTimeDischarge, lastTimeFillDegree, tpMaxCalibration);
-        } else {
-            /*
-             *  start to evaluate the discharge from 15 minutes,evaluate the nearsted value to 15 minutes.
-             */
-            int minTime = (int) ModelsEngine.approximate2Multiple(INITIAL_TIME, dt);
-            double qMax = 0;
-            for( int i = minTime; i < tpMaxCalibration; i = i + dt ) {
-                tpMax = i;
-                double[][] timeDischarge = createMatrix();
-                double[][] timeFillDegree = createMatrix();
-                double q = evaluateDischarge(timeDischarge, timeFillDegree, i);
+        ExecutorService fixedThreadPool = null;
+        if (threads > 1) {
+            fixedThreadPool = Executors.newFixedThreadPool(threads);
+        }
+        try {
+            if (!foundMaxrainTime) {
+                Evaluation evaluation = new Evaluation(tpMaxCalibration, lastTimeDischarge, lastTimeFillDegree);
+                evaluateDischarge(evaluation, fixedThreadPool, pm);
+                strBuilder.append(evaluation.warnings);
+            } else {
+                searchMaxRainTime(fixedThreadPool);
+            }
+        } finally {
+            if (fixedThreadPool != null) {
+                fixedThreadPool.shutdownNow();
+            }
+        }
+        getNetData();
+
+    }
+
+    /*
+     * Search the rain time which gives the maximum discharge.
+     *
+     * With more threads, a batch of consecutive rain times is evaluated at once. The
+     * results are then examined in order of rain time, so the search stops exactly where
+     * the one by one search would, and the evaluations after that point are discarded.
+     */
+    private void searchMaxRainTime( ExecutorService fixedThreadPool ) throws Exception {
+        /*
+         *  start to evaluate the discharge from 15 minutes,evaluate the nearsted value to 15 minutes.
+         */
+        int minTime = (int) ModelsEngine.approximate2Multiple(INITIAL_TIME, dt);
+        int batchSize = fixedThreadPool != null ? threads : 1;
+        double qMax = 0;
+        Evaluation best = null;
+        // the initial matrices are empty and can be used as the others
+        matrixPool.add(lastTimeDischarge);
+        matrixPool.add(lastTimeFillDegree);
+
+        boolean stop = false;
+        int i = minTime;
+        while( !stop && i < tpMaxCalibration ) {
+            List<Evaluation> batch = new ArrayList<Evaluation>();
+            for( ; batch.size() < batchSize && i < tpMaxCalibration; i = i + dt ) {
+                batch.add(new Evaluation(i, takeMatrix(), takeMatrix()));
+            }
+
+            if (fixedThreadPool == null) {
+                evaluateDischarge(batch.get(0), null, pm);
+            } else {
+                LinkedList<Future< ? >> futures = new LinkedList<Future< ? >>();
+                for( final Evaluation evaluation : batch ) {
+                    futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                        public Object call() throws Exception {
+                            evaluateDischarge(evaluation, null, new DummyProgressMonitor());
+                            return null;
+                        }
+                    }));
+                }
+                waitFor(futures);
+                pm.message("Evaluated rain times up to " + (i - dt));
+            }
+
+            for( Evaluation evaluation : batch ) {
+                if (stop) {
+                    recycle(evaluation);
+                    continue;
+                }
+                tpMax = evaluation.tp;
+                strBuilder.append(evaluation.warnings);
+                double q = evaluation.qMax;
                 if (q > qMax) {
                     qMax = q;
-                    lastTimeDischarge = timeDischarge;
-                    lastTimeFillDegree = timeFillDegree;
-                } else if (q < qMax) {
-                    break;
+                    if (best != null) {
+                        recycle(best);
+                    }
+                    best = evaluation;
+                } else {
+                    recycle(evaluation);
+                    if (q < qMax) {
+                        stop = true;
+                    }
                 }
-                if (isFill) {
-                    break;
+                if (evaluation.isFill) {
+                    stop = true;
                 }
             }
-
         }
-        getNetData();
+        if (best != null) {
+            lastTimeDischarge = best.timeDischarge;
+            lastTimeFillDegree = best.timeFillDegree;
+        }
+        matrixPool.clear();
+    }
 
+    private void waitFor( List<Future< ? >> futures ) throws Exception {
+        try {
+            for( Future< ? > future : futures ) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
     }
     /*
      * Fill the two output HashMap.
@@ -843,52 +1034,44 @@ public class NetworkCalibration implements Network {
 
     }
 
-    private double evaluateDischarge( double[][] timeDischarge, double[][] timeFillDegree, int tp ) {
-        /* l Tratto che si sta progettando. */
-        int l;
-        /*
-         * matrice che per ciascun area non di testa, contiene i dati geometrici
-         * degli stati a monte, che direttamente o indirettamente, drenano in
-         * esso
-         */
-        double[][] net;
+    /*
+     * Evaluate the discharge and the fill degree of all the pipes for a rain time.
+     *
+     * The pipes are verified in order of magnitude. If an executor is supplied, the pipes
+     * are grouped by their distance from the head pipes and the pipes of a group, which
+     * don't depend one on the other, are verified at once. Since the one by one
+     * verification stops at the first pipe that fails, the pipes that come after it in
+     * the magnitude order are then not verified or discarded.
+     */
+    private double evaluateDischarge( final Evaluation evaluation, ExecutorService fixedThreadPool,
+            final IJGTProgressMonitor monitor ) throws Exception {
+        final int length = networkPipes.length;
         /*
          * contiene la magnitude dei vari stati.
          */
-        double[] magnitude = new double[networkPipes.length];
+        final double[] magnitude = new double[length];
         /*
          * vettore che contiene l'indice dei versanti.
          */
-        double[] one = new double[networkPipes.length];
+        final double[] one = new double[length];
         /*
          * vettore che contiene gli stati riceventi, compresa almeno un'uscita
          */
-        double[] two = new double[networkPipes.length];
-        /*
-         *Max discharge at this iteration; 
-         */
-        double qMax = 0;
+        double[] two = new double[length];
 
         // initialize the discharge array
 
-        for( int i = 0; i < networkPipes.length; i++ ) {
+        for( int i = 0; i < length; i++ ) {
             /* Indice degli stati */
             one[i] = i;
             /* Indice degli stati riceventi, compresa almeno un'uscita */
             two[i] = networkPipes[i].getIndexPipeWhereDrain();
         }
         /* Calcola la magnitude di ciascun stato */
-        Utility.pipeMagnitude(magnitude, two, pm);/*
-                                                  * Calcola la magnitude di
-                                                  * ciascun stato
-                                                  */
+        Utility.pipeMagnitude(magnitude, two, monitor);
 
         /* al vettore two vengono assegnati gli elementi di magnitude */
-        for( int i = 0; i < two.length; i++ ) /*
-                                              * al vettore two vengono assegnati
-                                              * gli elementi di magnitude
-                                              */
-        {
+        for( int i = 0; i < two.length; i++ ) {
             two[i] = magnitude[i];
         }
 
@@ -896,106 +1079,173 @@ public class NetworkCalibration implements Network {
          * Ordina gli elementi del vettore magnitude in ordine crescente, e
          * posiziona nello stesso ordine gli elementi di one
          */
-        QuickSortAlgorithm t = new QuickSortAlgorithm(pm);
+        QuickSortAlgorithm t = new QuickSortAlgorithm(monitor);
         t.sort(magnitude, one);
 
-        int k = 0;
-        // tratto che si sta analizzando o progettando
-        l = (int) one[k];
-        pm.beginTask(msg.message("trentoP.begin"), networkPipes.length - 1);
-        isFill = false;
-        double[] cDelays = new double[networkPipes.length];
-        double maxFill = angleToFillDegree(networkPipes[k].getMaxTheta());
-        while( magnitude[k] == 1 ) {
-            try {
-
-                double q = headPipeVerify(l, cDelays, timeDischarge, timeFillDegree, tp);
-                if (q > qMax) {
-                    qMax = q;
+        monitor.beginTask(msg.message("trentoP.begin"), length - 1);
+        final double[] cDelays = new double[length];
+        final double[] pipesQ = new double[length];
+        final StringBuilder[] pipesWarnings = new StringBuilder[length];
+        final ArithmeticException[] pipesErrors = new ArithmeticException[length];
+        // position in the magnitude order of the first pipe that fails
+        int failed = length;
+        if (fixedThreadPool == null) {
+            double[][] qPartial = new double[nTime][length + 1];
+            for( int k = 0; k < length; k++ ) {
+                verifyPipe(k, one, magnitude, cDelays, evaluation, qPartial, pipesQ, pipesWarnings, pipesErrors);
+                if (pipesErrors[k] != null) {
+                    failed = k;
+                    break;
+                }
+                monitor.worked(1);
+            }
+        } else {
+            /*
+             * the level of a pipe is its maximum distance from a head pipe, pipes
+             * of the same level don't drain one into the other.
+             */
+            int[] level = new int[length];
+            int levelsNum = 0;
+            for( int k = 0; k < length; k++ ) {
+                int l = (int) one[k];
+                int down = networkPipes[l].getIndexPipeWhereDrain();
+                if (down != OUT_INDEX_PIPE && level[down] < level[l] + 1) {
+                    level[down] = level[l] + 1;
                 }
-                // Passo allo stato successivo
-                k++;
+                levelsNum = Math.max(levelsNum, level[l] + 1);
+            }
 
-                if (k < magnitude.length) {
-                    /*
-                     * Il prossimo tratto da progettare, ovviamente se avra
-                     * magnitude=1
-                     */
-                    l = (int) one[k];
-                } else {
-                    break;
+            boolean[] verified = new boolean[length];
+            double[][][] qPartials = new double[threads][][];
+            for( int currentLevel = 0; currentLevel < levelsNum; currentLevel++ ) {
+                final List<Integer> positions = new ArrayList<Integer>();
+                for( int k = 0; k < failed; k++ ) {
+                    if (level[(int) one[k]] == currentLevel) {
+                        positions.add(k);
+                    }
                 }
-                pm.worked(1);
-            } catch (ArithmeticException e) {
-                if (infiniteLoop) {
-                    strBuilder.append(msg.message("trentoP.error.infiniteLoop"));
-                } else {
-                    NumberFormat formatter = new DecimalFormat("#.###");
-                    String limit = formatter.format(maxFill);
-                    strBuilder.append(" ");
-                    strBuilder.append(msg.message("trentoP.warning.emptydegree")); //$NON-NLS-2$
-                    strBuilder.append(limit);
-                    strBuilder.append(" ");
-                    strBuilder.append(msg.message("trentoP.warning.emptydegree2"));
-                    strBuilder.append(networkPipes[l - 1].getId());
-                    strBuilder.append(" ");
-                    strBuilder.append("tp " + tp);
-                    strBuilder.append("\n");
-                    isFill = true;
+                if (positions.size() == 0) {
+                    continue;
                 }
-                break;
 
+                final AtomicInteger next = new AtomicInteger(0);
+                LinkedList<Future< ? >> futures = new LinkedList<Future< ? >>();
+                int workers = Math.min(threads, positions.size());
+                for( int w = 0; w < workers; w++ ) {
+                    if (qPartials[w] == null) {
+                        qPartials[w] = new double[nTime][length + 1];
+                    }
+                    final double[][] qPartial = qPartials[w];
+                    futures.add(fixedThreadPool.submit(new Runnable(){
+                        public void run() {
+                            int index;
+                            while( (index = next.getAndIncrement()) < positions.size() ) {
+                                verifyPipe(positions.get(index), one, magnitude, cDelays, evaluation, qPartial, pipesQ,
+                                        pipesWarnings, pipesErrors);
+                                synchronized (monitor) {
+                                    monitor.worked(1);
+                                }
+                            }
+                        }
+                    }));
+                }
+                waitFor(futures);
+
+                for( int k : positions ) {
+                    verified[k] = true;
+                    if (pipesErrors[k] != null && k < failed) {
+                        failed = k;
+                    }
+                }
             }
 
+            // the pipes after the failed one would have not been verified
+            for( int k = failed + 1; k < length; k++ ) {
+                if (verified[k]) {
+                    int l = (int) one[k];
+                    resetColumn(evaluation.timeDischarge, l);
+                    resetColumn(evaluation.timeFillDegree, l);
+                }
+            }
         }
 
         /*
-         * ----- INIZIO CICLO WHILE PER LA PROGETTAZIONE DELLE AREE NON DI TESTA
-         * -----
-         * 
-         * Magnitude > 1 AREE NON DI TESTA
+         *Max discharge at this iteration; 
          */
-        if (!isFill) {
-            while( k < magnitude.length ) {
-
-                try {
-                    net = new double[(int) (magnitude[k] - 1)][9];
-                    scanNetwork(k, l, one, net);
-                    double q = internalPipeVerify(l, cDelays, net, timeDischarge, timeFillDegree, tp);
-                    if (q > qMax) {
-                        qMax = q;
-                    }
-                    /* Passo allo stato successivo */
-                    k++;
-                    /* se non sono arrivato alla fine */
-                    if (k < magnitude.length) {
-                        /* Prossimo stato da progettare */
-                        l = (int) one[k];
-                    } else {
-                        break;
-                    }
-                    pm.worked(1);
-                } catch (ArithmeticException e) {
-                    // if there is an infinite loop.
-                    if (infiniteLoop) {
-                        strBuilder.append(msg.message("trentoP.error.infiniteLoop"));
-                    } else {
-                        // if a pipe is fill.
-                        strBuilder.append(msg.message("trentoP.warning.emptydegree")); //$NON-NLS-2$
-                        strBuilder.append(maxFill);
-                        strBuilder.append(" ");
-                        strBuilder.append(msg.message("trentoP.warning.emptydegree2"));
-                        strBuilder.append(networkPipes[l].getId());
-                        strBuilder.append(" ");
-                        strBuilder.append("tp " + tp);
-                        strBuilder.append("\n");
-                        isFill = true;
-                    }
-                    break;
-                }
+        double qMax = 0;
+        for( int k = 0; k < length && k <= failed; k++ ) {
+            evaluation.warnings.append(pipesWarnings[k]);
+            if (k < failed && pipesQ[k] > qMax) {
+                qMax = pipesQ[k];
             }
         }
+        if (failed < length) {
+            appendFailure(evaluation, failed, (int) one[failed], magnitude[failed] == 1, pipesErrors[failed]);
+        }
+        evaluation.qMax = qMax;
         return qMax;
     }
 
+    /*
+     * Verify the pipe at the position k of the magnitude order, the head pipes are the
+     * ones with magnitude 1. The error, if any, is kept to be handled in order.
+     */
+    private void verifyPipe( int k, double[] one, double[] magnitude, double[] cDelays, Evaluation evaluation,
+            double[][] qPartial, double[] pipesQ, StringBuilder[] pipesWarnings, ArithmeticException[] pipesErrors ) {
+        /* l Tratto che si sta progettando. */
+        int l = (int) one[k];
+        StringBuilder warnings = new StringBuilder();
+        pipesWarnings[k] = warnings;
+        try {
+            if (magnitude[k] == 1) {
+                pipesQ[k] = headPipeVerify(l, cDelays, evaluation.timeDischarge, evaluation.timeFillDegree, evaluation.tp,
+                        warnings);
+            } else {
+                /*
+                 * matrice che per ciascun area non di testa, contiene i dati geometrici
+                 * degli stati a monte, che direttamente o indirettamente, drenano in
+                 * esso
+                 */
+                double[][] net = new double[(int) (magnitude[k] - 1)][9];
+                scanNetwork(k, l, one, net);
+                pipesQ[k] = internalPipeVerify(l, cDelays, net, evaluation.timeDischarge, evaluation.timeFillDegree, qPartial,
+                        evaluation.tp, warnings);
+            }
+        } catch (ArithmeticException e) {
+            pipesErrors[k] = e;
+        }
+    }
+
+    private void appendFailure( Evaluation evaluation, int k, int l, boolean isHead, ArithmeticException error ) {
+        StringBuilder warnings = evaluation.warnings;
+        double maxFill = angleToFillDegree(networkPipes[0].getMaxTheta());
+        if (error instanceof InfiniteLoopException) {
+            warnings.append(msg.message("trentoP.error.infiniteLoop"));
+        } else if (isHead) {
+            NumberFormat formatter = new DecimalFormat("#.###");
+            String limit = formatter.format(maxFill);
+            warnings.append(" ");
+            warnings.append(msg.message("trentoP.warning.emptydegree")); //$NON-NLS-2$
+            warnings.append(limit);
+            warnings.append(" ");
+            warnings.append(msg.message("trentoP.warning.emptydegree2"));
+            warnings.append(networkPipes[l - 1].getId());
+            warnings.append(" ");
+            warnings.append("tp " + evaluation.tp);
+            warnings.append("\n");
+            evaluation.isFill = true;
+        } else {
+            // if a pipe is fill.
+            warnings.append(msg.message("trentoP.warning.emptydegree")); //$NON-NLS-2$
+            warnings.append(maxFill);
+            warnings.append(" ");
+            warnings.append(msg.message("trentoP.warning.emptydegree2"));
+            warnings.append(networkPipes[l].getId());
+            warnings.append(" ");
+            warnings.append("tp " + evaluation.tp);
+            warnings.append("\n");
+            evaluation.isFill = true;
+        }
+    }
+
 }
@@ -33,6 +33,8 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSCB_pFirst_DES
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSCB_pLast_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -46,8 +48,12 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.math.CoupledFieldsMoments;
+import org.jgrasstools.gears.utils.math.statistics.FixedBinHistogram;
+import org.jgrasstools.gears.utils.math.statistics.ImageAccumulatorEngine;
+import org.jgrasstools.gears.utils.math.statistics.StreamingStatistics;
 
 @Description(OMSCB_DESCRIPTION)
 @Author(name = OMSCB_AUTHORNAMES, contact = OMSCB_AUTHORCONTACTS)
@@ -101,8 +107,63 @@ public class OmsCb extends JGTModel {
             map2RI = inRaster2.getRenderedImage();
         }
 
-        outCb = new CoupledFieldsMoments().process(map1RI, map2RI, pBins, pFirst, pLast, pm, binmode);
+        if (pBins <= 1) {
+            // classes of equal values need the sorted data
+            outCb = new CoupledFieldsMoments().process(map1RI, map2RI, pBins, pFirst, pLast, pm, binmode);
+            return;
+        }
+
+        int threads = getDefaultThreadsNum();
+        StreamingStatistics statistics = new StreamingStatistics();
+        ImageAccumulatorEngine.accumulate(map1RI, null, statistics, threads, pm);
+        if (statistics.getCount() == 0) {
+            throw new ModelsIllegalargumentException("No valid data found in the first map.", this);
+        }
 
+        // pBins - 1 intervals between min and max, as in the sorted version
+        FixedBinHistogram histogram = new FixedBinHistogram(statistics.getMin(), statistics.getMax(), pBins - 1, Math.max(
+                1, pLast));
+        ImageAccumulatorEngine.accumulate(map1RI, map2RI, histogram, threads, pm);
+        outCb = histogramToCb(histogram);
+    }
+
+    /**
+     * Converts the binned power sums to the moments table of {@link CoupledFieldsMoments}.
+     * 
+     * <p>Empty bins are skipped and the moments are centered the same way as in
+     * the sorted implementation.</p>
+     */
+    private double[][] histogramToCb( FixedBinHistogram histogram ) {
+        int first = pFirst == 1 ? 2 : pFirst;
+        List<double[]> rowsList = new ArrayList<double[]>();
+        for( int h = 0; h < histogram.getBinsNum(); h++ ) {
+            long count = histogram.getCount(h);
+            if (count == 0) {
+                continue;
+            }
+            double[] row = new double[pLast - pFirst + 3];
+            row[0] = histogram.getMean(h);
+            row[1] = count;
+            long coupledCount = histogram.getCoupledCount(h);
+            if (coupledCount == 0) {
+                pm.errorMessage("No valid data were processed, setting moment value to zero.");
+                rowsList.add(row);
+                continue;
+            }
+            row[2] = histogram.getCoupledMoment(h, 1, 0.0);
+            for( int k = first; k <= pLast; k++ ) {
+                double center = row[1];
+                double moment;
+                if (k == 2) {
+                    moment = histogram.getCoupledMoment(h, 2, 0.0) - center * center;
+                } else {
+                    moment = histogram.getCoupledMoment(h, k, center);
+                }
+                row[k - first + 3] = moment;
+            }
+            rowsList.add(row);
+        }
+        return rowsList.toArray(new double[rowsList.size()][]);
     }
 
 }
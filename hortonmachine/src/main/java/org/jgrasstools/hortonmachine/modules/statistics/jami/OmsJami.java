@@ -55,19 +55,24 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_outInter
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pBins_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pHtmax_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pHtmin_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pNum_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_pType_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSJAMI_tCurrent_DESCRIPTION;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -194,6 +199,10 @@ public class OmsJami extends JGTModel {
     @In
     public HashMap<Integer, double[]> inMeteo = null;
 
+    @Description(OMSJAMI_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSJAMI_outInterpolatedBand_DESCRIPTION)
     @Out
     public HashMap<Integer, double[]> outInterpolatedBand = null;
@@ -279,10 +288,36 @@ public class OmsJami extends JGTModel {
     private HashMap<Integer, Integer> basinindex2basinidMap;
 
     /**
-     * Map of the list of station ids found for every elevation band of the
+     * The indexes of the stations found for every elevation band of the
      * stations elevation.
      */
-    private HashMap<Integer, List<Integer>> bin2StationsListMap;
+    private int[][] binStations;
+
+    /**
+     * For every basin and stations bin, the indexes of the stations of the bin
+     * ordered by distance from the basin baricenter.
+     */
+    private int[][][] nearestStations;
+
+    /**
+     * The distances of the {@link #nearestStations}.
+     */
+    private double[][][] nearestDistances;
+
+    /**
+     * The station data values of the current timestep.
+     */
+    private double[] statValues;
+
+    /**
+     * The interpolated values for every basin and band, referenced by {@link #outInterpolatedBand}.
+     */
+    private double[][] interpolatedBands;
+
+    /**
+     * The interpolated values for every basin, referenced by {@link #outInterpolated}.
+     */
+    private double[][] interpolatedBasins;
 
     /**
      * Map of station ids and their geometry.
@@ -326,6 +361,98 @@ public class OmsJami extends JGTModel {
 
         checkNull(inAltimetry, inAreas, inMeteo, inStations);
 
+        currentTimestamp = formatter.parseDateTime(tCurrent);
+
+        if (interpolatedBasins == null) {
+            initGeometry();
+        }
+
+        /*
+         * get values for current timestep and order them with the stations ids
+         */
+        for( int i = 0; i < statValues.length; i++ ) {
+            statValues[i] = doubleNovalue;
+        }
+        Set<Integer> stationIdSet = inMeteo.keySet();
+        for( Integer stationId : stationIdSet ) {
+            int id = stationId;
+            double[] value = inMeteo.get(id);
+            Integer index = stationid2StationindexMap.get((int) id);
+            if (index == null)
+                continue;
+            statValues[index] = value[0];
+        }
+
+        if (pType == DTDAY || pType == DTMONTH) {
+            /*
+             * calculate the DT month and day for each station
+             */
+            rangeT(statValues);
+        }
+
+        final int basinNum = interpolatedBasins.length;
+        final AtomicInteger nextBasin = new AtomicInteger(0);
+        pm.beginTask("Interpolating over bands and basins...", basinNum);
+        Callable<Object> worker = new Callable<Object>(){
+            public Object call() throws Exception {
+                // every bin gives at most pNum stations
+                int[] activeStations = new int[pBins * pNum];
+                int i;
+                while( (i = nextBasin.getAndIncrement()) < basinNum ) {
+                    try {
+                        int cont = selectStations(i, activeStations);
+                        interpolatedBasins[i][0] = interpolateBasin(i, activeStations, cont, interpolatedBands[i]);
+                    } catch (RuntimeException e) {
+                        // stop the other workers, the timestep is failed anyway
+                        nextBasin.set(basinNum);
+                        throw e;
+                    }
+                    synchronized (pm) {
+                        pm.worked(1);
+                    }
+                }
+                return null;
+            }
+        };
+        int threads = Math.min(Math.max(pMaxThreads, 1), basinNum);
+        if (threads > 1) {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for( int i = 0; i < threads; i++ ) {
+                futures.add(fixedThreadPool.submit(worker));
+            }
+            try {
+                for( Future<Object> future : futures ) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            } finally {
+                fixedThreadPool.shutdownNow();
+            }
+        } else {
+            worker.call();
+        }
+        pm.done();
+    }
+
+    /**
+     * Prepares everything that doesn't change between timesteps.
+     *
+     * <p>
+     * Stations and basins are read, the band's elevation matrix and the
+     * stations bins are created and for every basin and bin the stations
+     * are ordered by distance from the basin baricenter. The output maps
+     * are created here too and their arrays are overwritten at every timestep.
+     * </p>
+     *
+     * @throws Exception
+     */
+    private void initGeometry() throws Exception {
         // check fascie num
         int fascieNum = 0;
         for( EIAreas area : inAreas ) {
@@ -337,10 +464,6 @@ public class OmsJami extends JGTModel {
         // increment by one. Fascie start from 0, so 0-5 are 6 fascie
         fascieNum++;
 
-        currentTimestamp = formatter.parseDateTime(tCurrent);
-
-        outInterpolatedBand = new HashMap<Integer, double[]>();
-        outInterpolated = new HashMap<Integer, double[]>();
         /*
          * get stations
          */
@@ -437,386 +560,459 @@ public class OmsJami extends JGTModel {
         }
 
         /*
-         * find all stations inside a elevation band for every basin
+         * find all stations inside a elevation band
          */
-        pm.beginTask("Finding all stations inside a elevation band for every basin.", stationBinsArrays.length - 1);
-        bin2StationsListMap = new HashMap<Integer, List<Integer>>();
+        pm.beginTask("Finding all stations inside a elevation band.", stationBinsArrays.length - 1);
+        binStations = new int[pBins][];
         for( int i = 0; i < stationBinsArrays.length - 1; i++ ) {
-            List<Integer> stationsIds = new ArrayList<Integer>();
+            int count = 0;
+            int[] stationIndexes = new int[statId.length];
             for( int j = 0; j < statId.length; j++ ) {
-                double id = statId[j];
                 double elev = statElev[j];
                 if (elev >= stationBinsArrays[i] && elev < stationBinsArrays[i + 1]) {
-                    stationsIds.add((int) id);
+                    stationIndexes[count++] = j;
                 }
             }
-            bin2StationsListMap.put(i, stationsIds);
+            binStations[i] = Arrays.copyOf(stationIndexes, count);
             pm.worked(1);
         }
         pm.done();
 
         /*
-         * get values for current timestep and order them with the stations ids
+         * order the stations of every bin by distance from every basin
          */
-        double[] statValues = new double[stationCoordinates.size()];
-        for( int i = 0; i < statValues.length; i++ ) {
-            statValues[i] = doubleNovalue;
-        }
-        Set<Integer> stationIdSet = inMeteo.keySet();
-        for( Integer stationId : stationIdSet ) {
-            int id = stationId;
-            double[] value = inMeteo.get(id);
-            Integer index = stationid2StationindexMap.get((int) id);
-            if (index == null)
-                continue;
-            statValues[index] = value[0];
-        }
-
-        // number of active stations for every basin
-        int[] activeStationsPerBasin = new int[basinBaricenterCoordinates.size()];
-        int[][] stazBacMatrix = createStationBasinsMatrix(statValues, activeStationsPerBasin);
-        int[][] stations = new int[stazBacMatrix.length][stazBacMatrix[0].length];
-        int contStations = 0;
-        // riempimento vettori/matrici
-        for( int i = 0; i < stazBacMatrix[0].length; i++ ) { // indice bacino
-            contStations = 0;
-            for( int j = 0; j < stazBacMatrix.length; j++ ) { // indice stazione
-                if (stazBacMatrix[j][i] == 1) {
-                    stations[contStations][i] = j;
-                    contStations += 1;
+        pm.beginTask("Ordering the stations by distance for every basin.", basinNum);
+        nearestStations = new int[basinNum][pBins][];
+        nearestDistances = new double[basinNum][pBins][];
+        for( int i = 0; i < basinNum; i++ ) {
+            Coordinate basinBaricenterCoordinate = basinBaricenterCoordinates.get(i);
+            for( int b = 0; b < pBins; b++ ) {
+                int[] stationIndexes = binStations[b];
+                final double[] distances = new double[stationIndexes.length];
+                Integer[] order = new Integer[stationIndexes.length];
+                for( int k = 0; k < stationIndexes.length; k++ ) {
+                    Coordinate stationCoord = stationId2CoordinateMap.get((int) statId[stationIndexes[k]]);
+                    distances[k] = basinBaricenterCoordinate.distance(stationCoord);
+                    order[k] = k;
+                }
+                // the sort is stable, so stations at the same distance keep the bin order
+                Arrays.sort(order, new Comparator<Integer>(){
+                    public int compare( Integer o1, Integer o2 ) {
+                        return Double.compare(distances[o1], distances[o2]);
+                    }
+                });
+                int[] nearest = new int[order.length];
+                double[] nearestDistance = new double[order.length];
+                for( int k = 0; k < order.length; k++ ) {
+                    nearest[k] = stationIndexes[order[k]];
+                    nearestDistance[k] = distances[order[k]];
                 }
+                nearestStations[i][b] = nearest;
+                nearestDistances[i][b] = nearestDistance;
             }
+            pm.worked(1);
         }
+        pm.done();
 
-        int bandsNum = bandsBasins.length;
-        if (pType == DTDAY || pType == DTMONTH) {
-            /*
-             * calculate the DT month and day for each station
-             */
-            // System.out.println("Calculating the dayly and monthly Dt for each station...");
-            rangeT(statValues);
+        statValues = new double[stationCoordinates.size()];
+        outInterpolatedBand = new HashMap<Integer, double[]>();
+        outInterpolated = new HashMap<Integer, double[]>();
+        interpolatedBands = new double[basinNum][];
+        interpolatedBasins = new double[basinNum][];
+        for( int i = 0; i < basinNum; i++ ) {
+            interpolatedBands[i] = new double[fascieNum];
+            interpolatedBasins[i] = new double[1];
+            int basinid = basinindex2basinidMap.get(i);
+            outInterpolatedBand.put(basinid, interpolatedBands[i]);
+            outInterpolated.put(basinid, interpolatedBasins[i]);
         }
+    }
 
-        pm.beginTask("Interpolating over bands and basins...", basinBaricenterCoordinates.size());
-
-        // System.out.println("---");
-        // for (int s = 0; s < minTempPerStation.length; s++) {
-        // if (minTempPerStation[s] != 0) {
-        // System.out.println("Temperature: "
-        // + maxTempPerStation[s] + " "
-        // + minTempPerStation[s]);
-        //
-        // }
-        // }
+    /**
+     * Collects the stations to use for a basin in the current timestep.
+     *
+     * <p>
+     * For every bin the nearest pNum stations that have a value are taken. If
+     * not enough stations were collected, also stations that don't have values
+     * are added, since their value won't be considered. The stations that
+     * provide data are then left at the beginning of the array, in ascending
+     * elevation order.
+     * </p>
+     *
+     * @param basinIndex the index of the basin.
+     * @param activeStations the array to fill with the indexes of the active stations.
+     * @return the number of active stations.
+     */
+    private int selectStations( int basinIndex, int[] activeStations ) {
+        int count = 0;
+        for( int b = 0; b < pBins; b++ ) {
+            int[] nearest = nearestStations[basinIndex][b];
+            double[] distances = nearestDistances[basinIndex][b];
+            int found = 0;
+            double lastDistance = -1;
+            for( int k = 0; k < nearest.length; k++ ) {
+                int station = nearest[k];
+                if (isNovalue(statValues[station])) {
+                    continue;
+                }
+                if (found > 0 && distances[k] == lastDistance) {
+                    // stations at the same distance, the last one in the bin is used
+                    activeStations[count - 1] = station;
+                    continue;
+                }
+                if (found == pNum) {
+                    break;
+                }
+                activeStations[count++] = station;
+                lastDistance = distances[k];
+                found++;
+            }
 
-        for( int i = 0; i < basinBaricenterCoordinates.size(); i++ ) {
-            pm.worked(1);
-            // interpolated value for every band
-            double[] interpolatedMeteoForBand = new double[bandsNum];
-            double interpolatedMeteoForBasin = 0;
-
-            int cont = 0;
-            double h;
-            int[] jj_av;
-
-            // trova le stazioni che forniscono dati
-            jj_av = new int[activeStationsPerBasin[i]]; // costruisco un nuovo
-            // vettore jj_av con le
-            // stazioni del bacino in studio
-            for( int j = 0; j < activeStationsPerBasin[i]; j++ ) {
-                if (pType != DTDAY && pType != DTMONTH) {
-                    if (!isNovalue(statValues[stations[j][i]])) {
-                        jj_av[cont] = stations[j][i]; // registro le stazioni
-                        // attive
-                        cont += 1;
-                    }
-                } else {
-                    // se per la stazione j del bacino i minT e maxT sono
-                    // diversi da
-                    // NODATA
-                    if (!isNovalue(minTempPerStation[stations[j][i]]) && isNovalue(maxTempPerStation[stations[j][i]])) {
-                        // jj conterrà le stazioni che hanno dati di escursione
-                        // termica
-                        // giornaliera
-                        jj_av[cont] = stations[j][i]; // registro le stazioni
-                        // attive
-                        cont += 1;
+            if (found < pNum) {
+                /*
+                 * the previous list based search compared the filler index
+                 * with pNum minus the growing number of selected stations,
+                 * so only half of the missing stations (rounded up) are added.
+                 */
+                int fillers = (pNum - found + 1) / 2;
+                int[] stationIndexes = binStations[b];
+                int added = 0;
+                for( int k = 0; k < stationIndexes.length && added < fillers; k++ ) {
+                    if (isNovalue(statValues[stationIndexes[k]])) {
+                        activeStations[count++] = stationIndexes[k];
+                        added++;
                     }
                 }
+                synchronized (pm) {
+                    pm.message("Found only " + found + " for basin " + basinindex2basinidMap.get(basinIndex) + " and bandid "
+                            + b + ".");
+                }
             }
+        }
 
-            // caso 0. se non c'e' nessuna stazione, cerco che il programma
-            // sopravviva
-            if (cont == 0) {
-                if (pType == TEMPERATURE) { // caso dei dati di temperatura
+        // stations indexes follow the elevation order
+        Arrays.sort(activeStations, 0, count);
+
+        // trova le stazioni che forniscono dati
+        int cont = 0;
+        for( int j = 0; j < count; j++ ) {
+            int station = activeStations[j];
+            if (pType != DTDAY && pType != DTMONTH) {
+                if (!isNovalue(statValues[station])) {
+                    activeStations[cont] = station;
+                    cont += 1;
+                }
+            } else {
+                // se per la stazione j del bacino i minT e maxT sono
+                // diversi da
+                // NODATA
+                if (!isNovalue(minTempPerStation[station]) && isNovalue(maxTempPerStation[station])) {
+                    activeStations[cont] = station;
+                    cont += 1;
+                }
+            }
+        }
+        return cont;
+    }
+
+    /**
+     * Interpolates the current timestep over the bands of a basin.
+     *
+     * @param i the index of the basin.
+     * @param jj_av the active stations of the basin, in ascending elevation order.
+     * @param cont the number of active stations.
+     * @param interpolatedMeteoForBand the array to fill with the interpolated value for every band.
+     * @return the interpolated value for the basin.
+     */
+    private double interpolateBasin( int i, int[] jj_av, int cont, double[] interpolatedMeteoForBand ) {
+        int bandsNum = interpolatedMeteoForBand.length;
+        for( int f = 0; f < bandsNum; f++ ) {
+            interpolatedMeteoForBand[f] = 0.0;
+        }
+        double interpolatedMeteoForBasin = 0;
+        double h;
+
+        // caso 0. se non c'e' nessuna stazione, cerco che il programma
+        // sopravviva
+        if (cont == 0) {
+            if (pType == TEMPERATURE) { // caso dei dati di temperatura
+                synchronized (pm) {
                     pm.errorMessage("ERRORE: PER IL BACINO " + i
                             + " NON SONO DISPONIBILI DATI DI TEMPERATURA, PER QUESTO BACINO STAND-BY");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche metto il
-                        // dato a -100
-                        interpolatedMeteoForBand[f] = doubleNovalue;
-                    }
-                    interpolatedMeteoForBasin = doubleNovalue;
-                } else if (pType == PRESSURE) { // caso dei dati di pressione
+                }
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche metto il
+                    // dato a -100
+                    interpolatedMeteoForBand[f] = doubleNovalue;
+                }
+                interpolatedMeteoForBasin = doubleNovalue;
+            } else if (pType == PRESSURE) { // caso dei dati di pressione
+                synchronized (pm) {
                     pm.message("  -> Per il bacino " + i + " non sono disponibili dati di pressione, uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche considero
-                        // un'adiabatica
-                        interpolatedMeteoForBand[f] = 1013.25 * Math.exp(-(bandsBasins[f][i]) * 0.00013);
-                        interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
-                                * basinAreasPerFascias[i][f] / basinAreas[i];
-                    }
-                } else if (pType == HUMIDITY) { // caso dei dati di umidità
+                }
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche considero
+                    // un'adiabatica
+                    interpolatedMeteoForBand[f] = 1013.25 * Math.exp(-(bandsBasins[f][i]) * 0.00013);
+                    interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
+                            * basinAreasPerFascias[i][f] / basinAreas[i];
+                }
+            } else if (pType == HUMIDITY) { // caso dei dati di umidità
+                synchronized (pm) {
                     pm.message("  -> Per il bacino " + i + " non sono disponibili dati di umidita', uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche metto NODATA
-                        interpolatedMeteoForBand[f] = defaultRh;
-                    }
-                    interpolatedMeteoForBasin = defaultRh;
-                } else if (pType == WIND) { // caso dei dati di velocità del vento
+                }
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche metto NODATA
+                    interpolatedMeteoForBand[f] = defaultRh;
+                }
+                interpolatedMeteoForBasin = defaultRh;
+            } else if (pType == WIND) { // caso dei dati di velocità del vento
+                synchronized (pm) {
                     pm.message("  -> Per il bacino " + i
                             + " non sono disponibili dati di velocita' del vento, uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche metto NODATA
-                        interpolatedMeteoForBand[f] = defaultW;
-                    }
-                    interpolatedMeteoForBasin = defaultW;
-                } else if (pType == DTDAY) { // caso dei dati di escursione termica
-                    // giornaliera
+                }
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche metto NODATA
+                    interpolatedMeteoForBand[f] = defaultW;
+                }
+                interpolatedMeteoForBasin = defaultW;
+            } else if (pType == DTDAY) { // caso dei dati di escursione termica
+                // giornaliera
+                synchronized (pm) {
                     pm.message("  -> Per il bacino " + i
                             + " non sono disponibili dati di escursione termica giornaliera', uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
-                        // altimetriche del bacino
-                        // assegno all'escursione termica giornaliera il dato
-                        // DTd
-                        // messo nel file dei parametri
-                        interpolatedMeteoForBand[f] = defaultDtday;
-                    }
-                    interpolatedMeteoForBasin = defaultDtday;
-                } else if (pType == DTMONTH) { // caso dei dati di escursione termica
-                    // mensile
+                }
+                for( int f = 0; f < bandsNum; f++ ) { // per tutte le fasce
+                    // altimetriche del bacino
+                    // assegno all'escursione termica giornaliera il dato
+                    // DTd
+                    // messo nel file dei parametri
+                    interpolatedMeteoForBand[f] = defaultDtday;
+                }
+                interpolatedMeteoForBasin = defaultDtday;
+            } else if (pType == DTMONTH) { // caso dei dati di escursione termica
+                // mensile
+                synchronized (pm) {
                     pm.message("  -> Per il bacino " + i
                             + " non sono disponibili dati di escursione termica mensile', uso valori di default");
-                    for( int f = 0; f < bandsNum; f++ ) {
-                        /*
-                         *  per tutte le fasce
-                         * altimetriche del bacino
-                         */
-                        // assegno all'escursione termica media mensile il
-                        // datoDTm
-                        // messo nel file dei parametri
-                        interpolatedMeteoForBand[f] = defaultDtmonth;
-                    }
-                    interpolatedMeteoForBasin = defaultDtmonth;
                 }
+                for( int f = 0; f < bandsNum; f++ ) {
+                    /*
+                     *  per tutte le fasce
+                     * altimetriche del bacino
+                     */
+                    // assegno all'escursione termica media mensile il
+                    // datoDTm
+                    // messo nel file dei parametri
+                    interpolatedMeteoForBand[f] = defaultDtmonth;
+                }
+                interpolatedMeteoForBasin = defaultDtmonth;
+            }
 
-            } else if (cont == 1) {
-                // caso 1. c'e' solo una stazione presente . modello di
-                // atmosfera
-                // standard per T e P, valori costanti per RH e V
-                for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
+        } else if (cont == 1) {
+            // caso 1. c'e' solo una stazione presente . modello di
+            // atmosfera
+            // standard per T e P, valori costanti per RH e V
+            for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
+                // altimetriche
+                if (pType == TEMPERATURE) { // trasformo la temp in K e calcolo T
+                    // con
+                    // l'adiabatica semplice
+                    interpolatedMeteoForBand[f] = (statValues[jj_av[0]] + tk)
+                            * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * GAMMA / (statValues[jj_av[0]] + tk)) - tk;
+                } else if (pType == PRESSURE) { // calcolo P con il gradiente
+                    // adiabatico
+                    interpolatedMeteoForBand[f] = statValues[jj_av[0]]
+                            * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * 0.00013);
+                } else if (pType == DTDAY) {
+                    // se ho una sola stazione assegno il valore della
+                    // stazione a tutto il
+                    // bacino
+                    // altimetriche del bacino assegno il valore di
+                    // escursione massima
+                    // giornaliera
+                    interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]];
+                    if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
+                        interpolatedMeteoForBand[f] = defaultDtday;
+                    }
+                } else if (pType == DTMONTH) {
+                    // se ho una sola stazione assegno il valore della
+                    // stazione a tutto il
+                    // bacino
+                    // altimetriche del bacino assegno il valore di
+                    // escursione massima mensile
+                    interpolatedMeteoForBand[f] = DTmonth[jj_av[0]];
+                } else { // RH e V sono costanti al variare delle fasce
                     // altimetriche
-                    if (pType == TEMPERATURE) { // trasformo la temp in K e calcolo T
-                        // con
-                        // l'adiabatica semplice
-                        interpolatedMeteoForBand[f] = (statValues[jj_av[0]] + tk)
-                                * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * GAMMA / (statValues[jj_av[0]] + tk)) - tk;
-                    } else if (pType == PRESSURE) { // calcolo P con il gradiente
-                        // adiabatico
-                        interpolatedMeteoForBand[f] = statValues[jj_av[0]]
-                                * Math.exp(-(bandsBasins[f][i] - statElev[jj_av[0]]) * 0.00013);
+                    interpolatedMeteoForBand[f] = statValues[jj_av[0]];
+                }
+
+                interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
+                        * basinAreasPerFascias[i][f] / basinAreas[i];
+            }
+        } else {
+            // caso 2. ci sono almeno 2 stazioni (a quote inferiori alla
+            // stazioni piu' bassa considero atmosfera standard come a quote
+            // superiori alla staz. piu' alta, in mezzo calcolo LAPSE RATE)
+            // alloca L (vettore di dimensioni numero di stazioni attive-1)
+            double[] lapseRate = new double[cont - 1];
+
+            for( int j = 0; j < cont - 1; j++ ) { // le stazioni sono in
+                // ordine di
+                // quota
+                // L[j] e' il lapse rate tra la stazione j e j+1, puo'
+                // essere
+                // calcolato dai dati per j che va da 1 a n-1, dove n e' il
+                // numero di stazioni (cont)
+                lapseRate[j] = (statValues[jj_av[j]] - statValues[jj_av[j + 1]])
+                        / (statElev[jj_av[j + 1]] - statElev[jj_av[j]]);
+            }
+
+            for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
+                // altimetriche
+
+                // per le fasce altimetriche con quote piu' basse della
+                // quota
+                // della stazione piu' bassa prendo i dati della stazione
+                // più bassa
+                if (bandsBasins[f][i] <= statElev[jj_av[0]]) {
+                    if (pType == TEMPERATURE) { // T
+                        interpolatedMeteoForBand[f] = statValues[jj_av[0]] - GAMMA * (bandsBasins[f][i] - statElev[jj_av[0]]);
+                    } else if (pType == PRESSURE) { // P
+                        interpolatedMeteoForBand[f] = statValues[jj_av[0]] - (statValues[jj_av[0]] * 0.00013)
+                                * (bandsBasins[f][i] - statElev[jj_av[0]]);
                     } else if (pType == DTDAY) {
-                        // se ho una sola stazione assegno il valore della
-                        // stazione a tutto il
-                        // bacino
-                        // altimetriche del bacino assegno il valore di
-                        // escursione massima
-                        // giornaliera
                         interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]];
                         if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
                             interpolatedMeteoForBand[f] = defaultDtday;
                         }
                     } else if (pType == DTMONTH) {
-                        // se ho una sola stazione assegno il valore della
-                        // stazione a tutto il
-                        // bacino
-                        // altimetriche del bacino assegno il valore di
-                        // escursione massima mensile
                         interpolatedMeteoForBand[f] = DTmonth[jj_av[0]];
-                    } else { // RH e V sono costanti al variare delle fasce
-                        // altimetriche
+                    } else { // RH e V
                         interpolatedMeteoForBand[f] = statValues[jj_av[0]];
                     }
 
-                    interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
-                            * basinAreasPerFascias[i][f] / basinAreas[i];
-                }
-            } else {
-                // caso 2. ci sono almeno 2 stazioni (a quote inferiori alla
-                // stazioni piu' bassa considero atmosfera standard come a quote
-                // superiori alla staz. piu' alta, in mezzo calcolo LAPSE RATE)
-                // alloca L (vettore di dimensioni numero di stazioni attive-1)
-                double[] lapseRate = new double[cont - 1];
-
-                for( int j = 0; j < cont - 1; j++ ) { // le stazioni sono in
-                    // ordine di
-                    // quota
-                    // L[j] e' il lapse rate tra la stazione j e j+1, puo'
-                    // essere
-                    // calcolato dai dati per j che va da 1 a n-1, dove n e' il
-                    // numero di stazioni (cont)
-                    lapseRate[j] = (statValues[jj_av[j]] - statValues[jj_av[j + 1]])
-                            / (statElev[jj_av[j + 1]] - statElev[jj_av[j]]);
-                }
-
-                for( int f = 0; f < bandsNum; f++ ) { // ciclo sulle fascie
-                    // altimetriche
-
-                    // per le fasce altimetriche con quote piu' basse della
+                    // per le fasce altimetriche con quote piu' alte della
                     // quota
-                    // della stazione piu' bassa prendo i dati della stazione
-                    // più bassa
-                    if (bandsBasins[f][i] <= statElev[jj_av[0]]) {
-                        if (pType == TEMPERATURE) { // T
-                            interpolatedMeteoForBand[f] = statValues[jj_av[0]] - GAMMA * (bandsBasins[f][i] - statElev[jj_av[0]]);
-                        } else if (pType == PRESSURE) { // P
-                            interpolatedMeteoForBand[f] = statValues[jj_av[0]] - (statValues[jj_av[0]] * 0.00013)
-                                    * (bandsBasins[f][i] - statElev[jj_av[0]]);
-                        } else if (pType == DTDAY) {
-                            interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]];
-                            if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
-                                interpolatedMeteoForBand[f] = defaultDtday;
-                            }
-                        } else if (pType == DTMONTH) {
-                            interpolatedMeteoForBand[f] = DTmonth[jj_av[0]];
-                        } else { // RH e V
-                            interpolatedMeteoForBand[f] = statValues[jj_av[0]];
+                    // della stazione piu' alta prendo i dati della stazione
+                    // più alta
+                } else if (bandsBasins[f][i] >= statElev[jj_av[cont - 1]]) {
+                    if (pType == TEMPERATURE) { // T
+                        interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - GAMMA
+                                * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
+                    } else if (pType == PRESSURE) { // P
+                        interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - (statValues[jj_av[cont - 1]] * 0.00013)
+                                * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
+                    } else if (pType == DTDAY) {
+                        interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[cont - 1]] - minTempPerStation[jj_av[cont - 1]];
+                        if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
+                            interpolatedMeteoForBand[f] = defaultDtday;
                         }
+                    } else if (pType == DTMONTH) {
+                        interpolatedMeteoForBand[f] = DTmonth[jj_av[cont - 1]];
+                    } else { // RH e V
+                        interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]];
+                    }
 
-                        // per le fasce altimetriche con quote piu' alte della
-                        // quota
-                        // della stazione piu' alta prendo i dati della stazione
-                        // più alta
-                    } else if (bandsBasins[f][i] >= statElev[jj_av[cont - 1]]) {
-                        if (pType == TEMPERATURE) { // T
-                            interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - GAMMA
-                                    * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
-                        } else if (pType == PRESSURE) { // P
-                            interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]] - (statValues[jj_av[cont - 1]] * 0.00013)
-                                    * (bandsBasins[f][i] - statElev[jj_av[cont - 1]]);
-                        } else if (pType == DTDAY) {
-                            interpolatedMeteoForBand[f] = maxTempPerStation[jj_av[cont - 1]] - minTempPerStation[jj_av[cont - 1]];
-                            if ((maxTempPerStation[jj_av[0]] - minTempPerStation[jj_av[0]]) <= 0) {
-                                interpolatedMeteoForBand[f] = defaultDtday;
-                            }
-                        } else if (pType == DTMONTH) {
-                            interpolatedMeteoForBand[f] = DTmonth[jj_av[cont - 1]];
-                        } else { // RH e V
-                            interpolatedMeteoForBand[f] = statValues[jj_av[cont - 1]];
+                } else {
+                    int k = cont - 1;
+                    if (pType == DTDAY) {
+                        // per le fasce altimetriche intermedie devo
+                        // interpolare tra la min e
+                        // la max delle stazioni
+                        do {
+                            k -= 1;
+                            h = statElev[jj_av[k]];
+                        } while( bandsBasins[f][i] <= h );
+
+                        // for (int j = 0; j < cont; j++) {
+                        // if (f ==0 && i == 100) {
+                        // System.out.println(j + " "+ statElev[jj_av[j]]);
+                        // }
+                        // }
+
+                        // interpolatedMeteoForBand[f] =
+                        // ((maxTempPerStation[jj_av[k]] -
+                        // minTempPerStation[jj_av[k]])
+                        // * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) +
+                        // (maxTempPerStation[jj_av[k + 1]] -
+                        // minTempPerStation[jj_av[k + 1]])
+                        // * (bandsBasins[f][i] - statElev[jj_av[k]]))
+                        // / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
+                        interpolatedMeteoForBand[f] = ((maxTempPerStation[jj_av[k + 1]] - minTempPerStation[jj_av[k + 1]]) - (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]))
+                                * (bandsBasins[f][i] - statElev[jj_av[k]])
+                                / (statElev[jj_av[k + 1]] - statElev[jj_av[k]])
+                                + (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]);
+                        // if (i == 100) {
+                        // System.out.println("Banda " + f + " "
+                        // + bandsBasins[f][i]);
+                        // System.out.println("stazione1 " + k);
+                        // System.out.println("elevazione: "
+                        // + statElev[jj_av[k]]);
+                        // System.out.println("stazione2 " + k + 1);
+                        // System.out.println("max: "
+                        // + maxTempPerStation[jj_av[k + 1]]);
+                        // System.out.println("min: "
+                        // + minTempPerStation[jj_av[k + 1]]);
+                        // // System.out.println(statElev[jj_av[k + 1]]);
+                        // }
+
+                        if (interpolatedMeteoForBand[f] <= 0) {
+                            interpolatedMeteoForBand[f] = defaultDtday;
                         }
-
+                    } else if (pType == DTMONTH) {
+                        // per le fasce altimetriche intermedie devo
+                        // interpolare tra la min e
+                        // la max delle stazioni
+                        do {
+                            k -= 1;
+                            h = statElev[jj_av[k]];
+                        } while( bandsBasins[f][i] <= h );
+                        interpolatedMeteoForBand[f] = (DTmonth[jj_av[k]] * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) + DTmonth[jj_av[k + 1]]
+                                * (bandsBasins[f][i] - statElev[jj_av[k]]))
+                                / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
                     } else {
-                        int k = cont - 1;
-                        if (pType == DTDAY) {
-                            // per le fasce altimetriche intermedie devo
-                            // interpolare tra la min e
-                            // la max delle stazioni
-                            do {
-                                k -= 1;
-                                h = statElev[jj_av[k]];
-                            } while( bandsBasins[f][i] <= h );
-
-                            // for (int j = 0; j < cont; j++) {
-                            // if (f ==0 && i == 100) {
-                            // System.out.println(j + " "+ statElev[jj_av[j]]);
-                            // }
-                            // }
-
-                            // interpolatedMeteoForBand[f] =
-                            // ((maxTempPerStation[jj_av[k]] -
-                            // minTempPerStation[jj_av[k]])
-                            // * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) +
-                            // (maxTempPerStation[jj_av[k + 1]] -
-                            // minTempPerStation[jj_av[k + 1]])
-                            // * (bandsBasins[f][i] - statElev[jj_av[k]]))
-                            // / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
-                            interpolatedMeteoForBand[f] = ((maxTempPerStation[jj_av[k + 1]] - minTempPerStation[jj_av[k + 1]]) - (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]))
-                                    * (bandsBasins[f][i] - statElev[jj_av[k]])
-                                    / (statElev[jj_av[k + 1]] - statElev[jj_av[k]])
-                                    + (maxTempPerStation[jj_av[k]] - minTempPerStation[jj_av[k]]);
-                            // if (i == 100) {
-                            // System.out.println("Banda " + f + " "
-                            // + bandsBasins[f][i]);
-                            // System.out.println("stazione1 " + k);
-                            // System.out.println("elevazione: "
-                            // + statElev[jj_av[k]]);
-                            // System.out.println("stazione2 " + k + 1);
-                            // System.out.println("max: "
-                            // + maxTempPerStation[jj_av[k + 1]]);
-                            // System.out.println("min: "
-                            // + minTempPerStation[jj_av[k + 1]]);
-                            // // System.out.println(statElev[jj_av[k + 1]]);
-                            // }
-
-                            if (interpolatedMeteoForBand[f] <= 0) {
-                                interpolatedMeteoForBand[f] = defaultDtday;
-                            }
-                        } else if (pType == DTMONTH) {
-                            // per le fasce altimetriche intermedie devo
-                            // interpolare tra la min e
-                            // la max delle stazioni
-                            do {
-                                k -= 1;
-                                h = statElev[jj_av[k]];
-                            } while( bandsBasins[f][i] <= h );
-                            interpolatedMeteoForBand[f] = (DTmonth[jj_av[k]] * (statElev[jj_av[k + 1]] - bandsBasins[f][i]) + DTmonth[jj_av[k + 1]]
-                                    * (bandsBasins[f][i] - statElev[jj_av[k]]))
-                                    / (statElev[jj_av[k + 1]] - statElev[jj_av[k]]);
-                        } else {
-                            do {
-                                k -= 1;
-                                h = statElev[jj_av[k]];
-                            } while( bandsBasins[f][i] <= h );
-                            interpolatedMeteoForBand[f] = statValues[jj_av[k]] - lapseRate[k]
-                                    * (bandsBasins[f][i] - statElev[jj_av[k]]);
-                        }
+                        do {
+                            k -= 1;
+                            h = statElev[jj_av[k]];
+                        } while( bandsBasins[f][i] <= h );
+                        interpolatedMeteoForBand[f] = statValues[jj_av[k]] - lapseRate[k]
+                                * (bandsBasins[f][i] - statElev[jj_av[k]]);
                     }
-
-                    interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
-                            * basinAreasPerFascias[i][f] / basinAreas[i];
                 }
 
-                // ADDED
-                // controllo su RH>100 e v=0
-                if (pType == HUMIDITY) { // RH
-                    double MAX_HUMIDITY = 100;
-                    double MIN_HUMIDITY = 5;
-                    for( int f = 0; f < bandsNum; f++ ) {
-                        if (interpolatedMeteoForBand[f] > MAX_HUMIDITY)
-                            interpolatedMeteoForBand[f] = MAX_HUMIDITY;
-                        if (interpolatedMeteoForBand[f] < MIN_HUMIDITY)
-                            interpolatedMeteoForBand[f] = MIN_HUMIDITY;
-                    }
-                    if (interpolatedMeteoForBasin > MAX_HUMIDITY)
-                        interpolatedMeteoForBasin = MAX_HUMIDITY;
-                    if (interpolatedMeteoForBasin < MIN_HUMIDITY)
-                        interpolatedMeteoForBasin = MIN_HUMIDITY;
-                } else if (pType == WIND) { // V
-                    double MIN_WIND = 0.01;
-                    for( int f = 0; f < bandsNum; f++ ) {
-                        if (interpolatedMeteoForBand[f] < MIN_WIND)
-                            interpolatedMeteoForBand[f] = MIN_WIND;
-                    }
-                    if (interpolatedMeteoForBasin < MIN_WIND)
-                        interpolatedMeteoForBasin = MIN_WIND;
-                }
+                interpolatedMeteoForBasin = interpolatedMeteoForBasin + interpolatedMeteoForBand[f]
+                        * basinAreasPerFascias[i][f] / basinAreas[i];
+            }
 
+            // ADDED
+            // controllo su RH>100 e v=0
+            if (pType == HUMIDITY) { // RH
+                double MAX_HUMIDITY = 100;
+                double MIN_HUMIDITY = 5;
+                for( int f = 0; f < bandsNum; f++ ) {
+                    if (interpolatedMeteoForBand[f] > MAX_HUMIDITY)
+                        interpolatedMeteoForBand[f] = MAX_HUMIDITY;
+                    if (interpolatedMeteoForBand[f] < MIN_HUMIDITY)
+                        interpolatedMeteoForBand[f] = MIN_HUMIDITY;
+                }
+                if (interpolatedMeteoForBasin > MAX_HUMIDITY)
+                    interpolatedMeteoForBasin = MAX_HUMIDITY;
+                if (interpolatedMeteoForBasin < MIN_HUMIDITY)
+                    interpolatedMeteoForBasin = MIN_HUMIDITY;
+            } else if (pType == WIND) { // V
+                double MIN_WIND = 0.01;
+                for( int f = 0; f < bandsNum; f++ ) {
+                    if (interpolatedMeteoForBand[f] < MIN_WIND)
+                        interpolatedMeteoForBand[f] = MIN_WIND;
+                }
+                if (interpolatedMeteoForBasin < MIN_WIND)
+                    interpolatedMeteoForBasin = MIN_WIND;
             }
-            int basinid = ((Number) basinFeatures.get(i).getAttribute(basinIdFieldIndex)).intValue();
-            outInterpolatedBand.put(basinid, interpolatedMeteoForBand);
-            outInterpolated.put(basinid, new double[]{interpolatedMeteoForBasin});
+
         }
-        pm.done();
+
+        return interpolatedMeteoForBasin;
     }
 
     private void calculateAreas( int fascieNum ) {
@@ -875,171 +1071,6 @@ public class OmsJami extends JGTModel {
         }
     }
 
-    /**
-     * Creates the stations per basins matrix.
-     * 
-     * <p>
-     * The matrix is a bitmap of the stations that will be used for every basin,
-     * following the schema:
-     * </p>
-     * <table>
-     * <tr>
-     * <td></td>
-     * <td>basin1</td>
-     * <td>basin2</td>
-     * <td>basin3</td>
-     * <td>basin...</td>
-     * <tr>
-     * <td>station1</td>
-     * <td>1</td>
-     * <td>0</td>
-     * <td>1</td>
-     * <td>0...</td>
-     * <tr>
-     * <td>station2</td>
-     * <td>1</td>
-     * <td>0</td>
-     * <td>1</td>
-     * <td>0...</td>
-     * <tr>
-     * <td>station3</td>
-     * <td>0</td>
-     * <td>1</td>
-     * <td>1</td>
-     * <td>0...</td>
-     * <tr>
-     * <td>station...</td>
-     * <td>0</td>
-     * <td>0</td>
-     * <td>0</td>
-     * <td>0...</td>
-     * </tr>
-     * </table>
-     * <p>
-     * In the above case basin1 will use station1 and station2, while basin2
-     * will use only station3, and so on.
-     * </p>
-     * 
-     * @param statValues
-     *            the station data values, properly ordered, containing
-     *            {@link JGrassConstants#defaultNovalue novalues}.
-     * @param activeStationsPerBasin
-     *            an array to be filled with the number of active stations per
-     *            basin.
-     * @return the matrix of active stations for every basin.
-     */
-    private int[][] createStationBasinsMatrix( double[] statValues, int[] activeStationsPerBasin ) {
-        int[][] stationsBasins = new int[stationCoordinates.size()][basinBaricenterCoordinates.size()];
-        Set<Integer> bandsIdSet = bin2StationsListMap.keySet();
-        Integer[] bandsIdArray = (Integer[]) bandsIdSet.toArray(new Integer[bandsIdSet.size()]);
-        // for every basin
-        for( int i = 0; i < basinBaricenterCoordinates.size(); i++ ) {
-            Coordinate basinBaricenterCoordinate = basinBaricenterCoordinates.get(i);
-            // for every stations band
-            int activeStationsForThisBasin = 0;
-            for( int j = 0; j < bandsIdArray.length; j++ ) {
-                int bandId = bandsIdArray[j];
-                List<Integer> stationIdsForBand = bin2StationsListMap.get(bandId);
-
-                /*
-                 * search for the nearest stations that have values.
-                 */
-                List<Integer> stationsToUse = extractStationsToUse(basinBaricenterCoordinate, stationIdsForBand,
-                        stationId2CoordinateMap, statValues, stationid2StationindexMap);
-                if (stationsToUse.size() < pNum) {
-                    pm.message("Found only " + stationsToUse.size() + " for basin " + basinindex2basinidMap.get(i)
-                            + " and bandid " + bandId + ".");
-                }
-
-                /*
-                 * now we have the list of stations to use. With this list we
-                 * need to enable (1) the proper matrix positions inside the
-                 * stations-basins matrix.
-                 */
-                // i is the column (basin) index
-                // the station id index can be taken from the idStationIndexMap
-                // System.out.print("STATIONS for basin " + basinindex2basinidMap.get(i) + ": ");
-                for( Integer stationIdToEnable : stationsToUse ) {
-                    int stIndex = stationid2StationindexMap.get(stationIdToEnable);
-                    stationsBasins[stIndex][i] = 1;
-
-                    // System.out.print(stationIdToEnable + ", ");
-                }
-                // System.out.println();
-                activeStationsForThisBasin = activeStationsForThisBasin + stationsToUse.size();
-            }
-
-            activeStationsPerBasin[i] = activeStationsForThisBasin;
-        }
-
-        return stationsBasins;
-    }
-    /**
-     * @param basinBaricenterCoordinate the basin baricenter coordinate used to 
-     *                      Calculate distances with stations.
-     * @param stationIdsToSearch the list of stations.
-     * @param stationId2CoordinateMap
-     * @param statValues the array of data to consider. Used to identify stations
-     *                      that have no data for an instant.
-     * @param idStationIndexMap
-     * @return the list of needed nearest stations.
-     */
-    private List<Integer> extractStationsToUse( Coordinate basinBaricenterCoordinate, List<Integer> stationIdsToSearch,
-            HashMap<Integer, Coordinate> stationId2CoordinateMap, double[] statValues, HashMap<Integer, Integer> idStationIndexMap ) {
-
-        List<Integer> stationsToUse = new ArrayList<Integer>();
-        List<Integer> stationsLeftOver = new ArrayList<Integer>();
-        Map<Double, Integer> sortedByDistanceStationsMap = new TreeMap<Double, Integer>();
-        for( Integer stId : stationIdsToSearch ) {
-            /*
-             * check the values of the stations. If there are novalues and there
-             * are enough stations left, disable them
-             */
-            double currentValue = statValues[stationid2StationindexMap.get(stId)];
-            if (isNovalue(currentValue)) {
-                // if the station has a novalue, jump over it, even without
-                // adding the station.
-                // out.println("Jump over station: " + stId);
-                stationsLeftOver.add(stId);
-                continue;
-            }
-
-            /*
-             * if it gets here, the station has a value. 
-             * Put it to the list of stations to be checked 
-             * for which is nearer. 
-             */
-            Coordinate stationCoord = stationId2CoordinateMap.get(stId);
-            double distance = basinBaricenterCoordinate.distance(stationCoord);
-            sortedByDistanceStationsMap.put(distance, stId);
-        }
-        Collection<Integer> statIds = sortedByDistanceStationsMap.values();
-        Iterator<Integer> iterator = statIds.iterator();
-        for( int i = 0; i < statIds.size(); i++ ) {
-            if (iterator.hasNext() && i < pNum) {
-                stationsToUse.add(iterator.next());
-            } else if (iterator.hasNext() && i >= pNum) {
-                stationsLeftOver.add(iterator.next());
-            } else {
-                System.out.println("SHOULD THIS EVER HAPPEN???");
-                break;
-            }
-        }
-
-        /*
-         * if not enough stations were collected, add also stations that
-         * don't have values. Those stations are taken in random way, 
-         * since their value won't be considered.  
-         */
-        if (stationsToUse.size() < pNum) {
-            for( int i = 0; i < pNum - stationsToUse.size(); i++ ) {
-                stationsToUse.add(stationsLeftOver.get(i));
-            }
-        }
-
-        return stationsToUse;
-    }
-
     /**
      * Fills the elevation and id arrays for the stations, ordering in ascending
      * elevation order.
@@ -0,0 +1,507 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.modules.statistics.kerneldensity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.math.FastFourierTransform;
+
+/**
+ * Convolution of a grid of weights with a density kernel.
+ * 
+ * <p>
+ * The density in a cell is the sum of the weights of the surrounding cells, each multiplied
+ * by the kernel value at its offset. Depending on the kernel and on the number of weighted cells
+ * the cheapest of four exact strategies is used:
+ * <ul>
+ * <li>{@link #SPLAT}: the kernel is added around every weighted cell, for sparse inputs;</li>
+ * <li>{@link #RUNS}: every kernel row is split in runs of constant value, which are summed through
+ *      row prefix sums, for binary and box kernels;</li>
+ * <li>{@link #SEPARABLE}: a row and a column pass, for kernels that are the outer product of two
+ *      vectors, as square gaussian and box kernels;</li>
+ * <li>{@link #FFT}: tiled overlap-save convolution through the fast Fourier transform, for any
+ *      other kernel.</li>
+ * </ul>
+ * All the strategies but the splatting work on independent bands of rows or tiles and are split
+ * among threads.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class KernelDensityEngine {
+
+    /**
+     * Let the engine pick the cheapest strategy.
+     */
+    public static final int AUTO = -1;
+    /**
+     * Add the kernel around every weighted cell.
+     */
+    public static final int SPLAT = 0;
+    /**
+     * Sum runs of constant kernel values through row prefix sums.
+     */
+    public static final int RUNS = 1;
+    /**
+     * Separate row and column passes.
+     */
+    public static final int SEPARABLE = 2;
+    /**
+     * Tiled convolution through the fast Fourier transform.
+     */
+    public static final int FFT = 3;
+
+    private static final int MIN_FFT_SIZE = 64;
+
+    private final double[] kernel;
+    private final int radius;
+    private final int side;
+
+    /* the runs of constant value of every kernel row: row, first col, last col, value index */
+    private final int[] runs;
+    private final double[] runValues;
+    private final int runsNum;
+    private int kernelCellsNum;
+
+    /* the factors of a separable kernel, null if it is not separable */
+    private double[] rowFactors;
+    private double[] colFactors;
+
+    /**
+     * Constructor.
+     * 
+     * @param kernel the kernel values in row major order, of side <code>2 * radius + 1</code>.
+     * @param radius the radius of the kernel.
+     */
+    public KernelDensityEngine( double[] kernel, int radius ) {
+        side = 2 * radius + 1;
+        if (kernel.length != side * side) {
+            throw new IllegalArgumentException("The kernel size doesn't match the radius.");
+        }
+        this.kernel = kernel;
+        this.radius = radius;
+
+        List<double[]> runsList = new ArrayList<double[]>();
+        for( int r = 0; r < side; r++ ) {
+            int c = 0;
+            while( c < side ) {
+                double value = kernel[r * side + c];
+                int end = c;
+                while( end + 1 < side && kernel[r * side + end + 1] == value ) {
+                    end++;
+                }
+                if (value != 0.0) {
+                    runsList.add(new double[]{r, c, end, value});
+                    kernelCellsNum = kernelCellsNum + end - c + 1;
+                }
+                c = end + 1;
+            }
+        }
+        runsNum = runsList.size();
+        runs = new int[runsNum * 3];
+        runValues = new double[runsNum];
+        for( int i = 0; i < runsNum; i++ ) {
+            double[] run = runsList.get(i);
+            runs[i * 3] = (int) run[0];
+            runs[i * 3 + 1] = (int) run[1];
+            runs[i * 3 + 2] = (int) run[2];
+            runValues[i] = run[3];
+        }
+
+        findFactors();
+    }
+
+    /**
+     * Checks if the kernel is the outer product of a column and a row vector.
+     */
+    private void findFactors() {
+        int pivot = 0;
+        double max = 0;
+        for( int i = 0; i < kernel.length; i++ ) {
+            if (Math.abs(kernel[i]) > max) {
+                max = Math.abs(kernel[i]);
+                pivot = i;
+            }
+        }
+        if (max == 0) {
+            return;
+        }
+        int pivotRow = pivot / side;
+        int pivotCol = pivot % side;
+        double[] rows = new double[side];
+        double[] cols = new double[side];
+        for( int i = 0; i < side; i++ ) {
+            rows[i] = kernel[i * side + pivotCol] / kernel[pivot];
+            cols[i] = kernel[pivotRow * side + i];
+        }
+        double tolerance = max * 1E-9;
+        for( int r = 0; r < side; r++ ) {
+            for( int c = 0; c < side; c++ ) {
+                if (Math.abs(kernel[r * side + c] - rows[r] * cols[c]) > tolerance) {
+                    return;
+                }
+            }
+        }
+        rowFactors = rows;
+        colFactors = cols;
+    }
+
+    /**
+     * @return <code>true</code> if the kernel can be applied as separate row and column passes.
+     */
+    public boolean isSeparable() {
+        return rowFactors != null;
+    }
+
+    /**
+     * Chooses the cheapest strategy for a grid.
+     * 
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     * @param weightedCells the number of cells with a weight different from 0.
+     * @return one of {@link #SPLAT}, {@link #RUNS}, {@link #SEPARABLE}, {@link #FFT}.
+     */
+    public int chooseStrategy( int cols, int rows, long weightedCells ) {
+        double cells = (double) cols * rows;
+        int strategy = SPLAT;
+        double cost = (double) weightedCells * kernelCellsNum;
+
+        double runsCost = cells * (runsNum + 1);
+        if (runsCost < cost) {
+            strategy = RUNS;
+            cost = runsCost;
+        }
+        if (isSeparable()) {
+            double separableCost = cells * 2.0 * side;
+            if (separableCost < cost) {
+                strategy = SEPARABLE;
+                cost = separableCost;
+            }
+        }
+        int fftSize = getFftSize(cols, rows);
+        int tileSize = fftSize - 2 * radius;
+        double tiles = Math.ceil((double) cols / tileSize) * Math.ceil((double) rows / tileSize);
+        // two tiles per complex transform, forward and inverse transforms of rows and cols
+        double logSize = Integer.numberOfTrailingZeros(fftSize);
+        double fftCost = Math.ceil(tiles / 2.0) * (12.0 * fftSize * fftSize * logSize + 6.0 * fftSize * fftSize);
+        if (fftCost < cost) {
+            strategy = FFT;
+        }
+        return strategy;
+    }
+
+    /**
+     * Convolves a grid of weights with the kernel.
+     * 
+     * @param weights the weights in row major order, 0 for cells that don't contribute.
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     * @param strategy the strategy to use or {@link #AUTO}.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the density grid in row major order.
+     */
+    public double[] convolve( double[] weights, int cols, int rows, int strategy, int threads, IJGTProgressMonitor pm ) {
+        if (strategy == AUTO) {
+            long weightedCells = 0;
+            for( double weight : weights ) {
+                if (weight != 0.0) {
+                    weightedCells++;
+                }
+            }
+            strategy = chooseStrategy(cols, rows, weightedCells);
+        }
+        double[] density = new double[cols * rows];
+        switch( strategy ) {
+        case SPLAT:
+            splat(weights, cols, rows, density, pm);
+            break;
+        case RUNS:
+            sumRuns(weights, cols, rows, density, threads, pm);
+            break;
+        case SEPARABLE:
+            if (!isSeparable()) {
+                throw new IllegalArgumentException("The kernel is not separable.");
+            }
+            convolveSeparable(weights, cols, rows, density, threads, pm);
+            break;
+        case FFT:
+            convolveFft(weights, cols, rows, density, threads, pm);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown strategy: " + strategy);
+        }
+        return density;
+    }
+
+    private void splat( double[] weights, int cols, int rows, double[] density, IJGTProgressMonitor pm ) {
+        pm.beginTask("Estimating kernel density...", rows);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double weight = weights[r * cols + c];
+                if (weight == 0.0) {
+                    continue;
+                }
+                int fromKr = Math.max(-radius, -r);
+                int toKr = Math.min(radius, rows - 1 - r);
+                int fromKc = Math.max(-radius, -c);
+                int toKc = Math.min(radius, cols - 1 - c);
+                for( int kr = fromKr; kr <= toKr; kr++ ) {
+                    int kernelRow = (kr + radius) * side + radius;
+                    int outRow = (r + kr) * cols + c;
+                    for( int kc = fromKc; kc <= toKc; kc++ ) {
+                        density[outRow + kc] += kernel[kernelRow + kc] * weight;
+                    }
+                }
+            }
+            pm.worked(1);
+        }
+        pm.done();
+    }
+
+    private void sumRuns( final double[] weights, final int cols, final int rows, final double[] density, int threads,
+            final IJGTProgressMonitor pm ) {
+        // prefix sums of every row, cols + 1 values per row
+        final double[] prefix = new double[rows * (cols + 1)];
+        for( int r = 0; r < rows; r++ ) {
+            int base = r * (cols + 1);
+            for( int c = 0; c < cols; c++ ) {
+                prefix[base + c + 1] = prefix[base + c] + weights[r * cols + c];
+            }
+        }
+        runBands(rows, threads, pm, new BandRunner(){
+            public void run( int fromRow, int toRow ) {
+                for( int r = fromRow; r < toRow; r++ ) {
+                    for( int i = 0; i < runsNum; i++ ) {
+                        // the run covers the input row r - kr and the input cols c - kcTo .. c - kcFrom
+                        int inRow = r - (runs[i * 3] - radius);
+                        if (inRow < 0 || inRow >= rows) {
+                            continue;
+                        }
+                        int kcFrom = runs[i * 3 + 1] - radius;
+                        int kcTo = runs[i * 3 + 2] - radius;
+                        double value = runValues[i];
+                        int base = inRow * (cols + 1);
+                        int outRow = r * cols;
+                        for( int c = 0; c < cols; c++ ) {
+                            int from = Math.max(0, c - kcTo);
+                            int to = Math.min(cols - 1, c - kcFrom);
+                            if (from <= to) {
+                                density[outRow + c] += value * (prefix[base + to + 1] - prefix[base + from]);
+                            }
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void convolveSeparable( final double[] weights, final int cols, final int rows, final double[] density,
+            int threads, final IJGTProgressMonitor pm ) {
+        final double[] rowPass = new double[cols * rows];
+        runBands(rows, threads, pm, new BandRunner(){
+            public void run( int fromRow, int toRow ) {
+                for( int r = fromRow; r < toRow; r++ ) {
+                    int base = r * cols;
+                    for( int c = 0; c < cols; c++ ) {
+                        double sum = 0;
+                        int fromKc = Math.max(-radius, c - cols + 1);
+                        int toKc = Math.min(radius, c);
+                        for( int kc = fromKc; kc <= toKc; kc++ ) {
+                            sum += colFactors[kc + radius] * weights[base + c - kc];
+                        }
+                        rowPass[base + c] = sum;
+                    }
+                }
+            }
+        });
+        runBands(rows, threads, pm, new BandRunner(){
+            public void run( int fromRow, int toRow ) {
+                for( int r = fromRow; r < toRow; r++ ) {
+                    int fromKr = Math.max(-radius, r - rows + 1);
+                    int toKr = Math.min(radius, r);
+                    int base = r * cols;
+                    for( int kr = fromKr; kr <= toKr; kr++ ) {
+                        double factor = rowFactors[kr + radius];
+                        int inBase = (r - kr) * cols;
+                        for( int c = 0; c < cols; c++ ) {
+                            density[base + c] += factor * rowPass[inBase + c];
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private int getFftSize( int cols, int rows ) {
+        int size = FastFourierTransform.nextPowerOf2(Math.max(MIN_FFT_SIZE, 4 * side));
+        int wholeGrid = FastFourierTransform.nextPowerOf2(Math.max(cols, rows) + 2 * radius);
+        return Math.min(size, wholeGrid);
+    }
+
+    /**
+     * Overlap-save convolution: every output tile is computed from the input tile enlarged by the
+     * kernel radius, so the wrap around of the circular convolution only touches the discarded
+     * border. Two tiles are packed in the real and imaginary parts of one transform, since the
+     * kernel is real.
+     */
+    private void convolveFft( final double[] weights, final int cols, final int rows, final double[] density, int threads,
+            final IJGTProgressMonitor pm ) {
+        final int size = getFftSize(cols, rows);
+        final int tileSize = size - 2 * radius;
+        final FastFourierTransform fft = new FastFourierTransform(size);
+
+        // the kernel placed with its center at the origin, wrapping around
+        final double[] kernelRe = new double[size * size];
+        final double[] kernelIm = new double[size * size];
+        for( int kr = -radius; kr <= radius; kr++ ) {
+            for( int kc = -radius; kc <= radius; kc++ ) {
+                int r = (kr + size) % size;
+                int c = (kc + size) % size;
+                kernelRe[r * size + c] = kernel[(kr + radius) * side + kc + radius];
+            }
+        }
+        fft.transform2D(kernelRe, kernelIm, false);
+
+        final int tileCols = (cols + tileSize - 1) / tileSize;
+        int tileRows = (rows + tileSize - 1) / tileSize;
+        final int tilesNum = tileCols * tileRows;
+        final int pairsNum = (tilesNum + 1) / 2;
+
+        pm.beginTask("Estimating kernel density...", pairsNum);
+        final AtomicInteger nextPair = new AtomicInteger(0);
+        Runnable worker = new Runnable(){
+            public void run() {
+                double[] re = new double[size * size];
+                double[] im = new double[size * size];
+                int pair;
+                while( (pair = nextPair.getAndIncrement()) < pairsNum ) {
+                    int tile1 = pair * 2;
+                    int tile2 = tile1 + 1 < tilesNum ? tile1 + 1 : -1;
+                    fillTile(weights, cols, rows, tile1, tileCols, tileSize, size, re);
+                    if (tile2 >= 0) {
+                        fillTile(weights, cols, rows, tile2, tileCols, tileSize, size, im);
+                    } else {
+                        java.util.Arrays.fill(im, 0.0);
+                    }
+                    fft.transform2D(re, im, false);
+                    for( int i = 0; i < re.length; i++ ) {
+                        double pRe = re[i] * kernelRe[i] - im[i] * kernelIm[i];
+                        double pIm = re[i] * kernelIm[i] + im[i] * kernelRe[i];
+                        re[i] = pRe;
+                        im[i] = pIm;
+                    }
+                    fft.transform2D(re, im, true);
+                    readTile(re, tile1, tileCols, tileSize, size, cols, rows, density);
+                    if (tile2 >= 0) {
+                        readTile(im, tile2, tileCols, tileSize, size, cols, rows, density);
+                    }
+                    synchronized (pm) {
+                        pm.worked(1);
+                    }
+                }
+            }
+        };
+        runWorkers(worker, Math.min(threads, pairsNum));
+        pm.done();
+    }
+
+    private void fillTile( double[] weights, int cols, int rows, int tile, int tileCols, int tileSize, int size, double[] data ) {
+        int fromRow = (tile / tileCols) * tileSize - radius;
+        int fromCol = (tile % tileCols) * tileSize - radius;
+        for( int r = 0; r < size; r++ ) {
+            int inRow = fromRow + r;
+            for( int c = 0; c < size; c++ ) {
+                int inCol = fromCol + c;
+                if (inRow < 0 || inRow >= rows || inCol < 0 || inCol >= cols) {
+                    data[r * size + c] = 0.0;
+                } else {
+                    data[r * size + c] = weights[inRow * cols + inCol];
+                }
+            }
+        }
+    }
+
+    private void readTile( double[] data, int tile, int tileCols, int tileSize, int size, int cols, int rows, double[] density ) {
+        int fromRow = (tile / tileCols) * tileSize;
+        int fromCol = (tile % tileCols) * tileSize;
+        int toRow = Math.min(fromRow + tileSize, rows);
+        int toCol = Math.min(fromCol + tileSize, cols);
+        for( int r = fromRow; r < toRow; r++ ) {
+            int dataRow = (r - fromRow + radius) * size + radius - fromCol;
+            for( int c = fromCol; c < toCol; c++ ) {
+                density[r * cols + c] = data[dataRow + c];
+            }
+        }
+    }
+
+    private interface BandRunner {
+        void run( int fromRow, int toRow );
+    }
+
+    private static final int BAND_ROWS = 16;
+
+    /**
+     * Runs bands of rows on the threads.
+     */
+    private void runBands( int rows, int threads, final IJGTProgressMonitor pm, final BandRunner runner ) {
+        final int rowsNum = rows;
+        final int bandsNum = (rows + BAND_ROWS - 1) / BAND_ROWS;
+        final AtomicInteger nextBand = new AtomicInteger(0);
+        pm.beginTask("Estimating kernel density...", bandsNum);
+        Runnable worker = new Runnable(){
+            public void run() {
+                int band;
+                while( (band = nextBand.getAndIncrement()) < bandsNum ) {
+                    int fromRow = band * BAND_ROWS;
+                    runner.run(fromRow, Math.min(fromRow + BAND_ROWS, rowsNum));
+                    synchronized (pm) {
+                        pm.worked(1);
+                    }
+                }
+            }
+        };
+        runWorkers(worker, Math.min(threads, bandsNum));
+        pm.done();
+    }
+
+    private static void runWorkers( Runnable worker, int threads ) {
+        if (threads > 1) {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            for( int i = 0; i < threads; i++ ) {
+                fixedThreadPool.execute(worker);
+            }
+            try {
+                fixedThreadPool.shutdown();
+                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+                fixedThreadPool.shutdownNow();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        } else {
+            worker.run();
+        }
+    }
+}
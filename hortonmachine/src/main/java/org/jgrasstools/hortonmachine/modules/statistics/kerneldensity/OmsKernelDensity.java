@@ -30,6 +30,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_inMap_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_outDensity_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_pKernel_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_pRadius_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
@@ -38,7 +39,6 @@ import java.awt.image.WritableRaster;
 import javax.media.jai.KernelJAI;
 import javax.media.jai.iterator.RandomIter;
 import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -54,7 +54,6 @@ import oms3.annotations.Status;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jaitools.media.jai.kernel.KernelFactory;
 import org.jaitools.media.jai.kernel.KernelFactory.ValueType;
-import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
@@ -84,6 +83,10 @@ public class OmsKernelDensity extends JGTModel {
     @In
     public boolean doConstant = false;
 
+    @Description(OMSKERNELDENSITY_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSKERNELDENSITY_outDensity_DESCRIPTION)
     @Out
     public GridCoverage2D outDensity = null;
@@ -130,50 +133,36 @@ public class OmsKernelDensity extends JGTModel {
         RenderedImage inImg = inMap.getRenderedImage();
         RandomIter inIter = RandomIterFactory.create(inImg, null);
 
-        WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, JGTConstants.doubleNovalue);
-        WritableRandomIter outIter = RandomIterFactory.createWritable(outWR, null);
-
         float[] kernelData = kernel.getKernelData();
+        int side = 2 * pRadius + 1;
+        // the kernel is applied with its columns along the rows of the map
+        double[] kernelValues = new double[side * side];
+        for( int kc = 0; kc < side; kc++ ) {
+            for( int kr = 0; kr < side; kr++ ) {
+                kernelValues[kr * side + kc] = kernelData[kc * side + kr];
+            }
+        }
 
-        pm.beginTask("Estimating kernel density...", cols - 2 * pRadius);
-        for( int c = pRadius; c < cols - pRadius; c++ ) {
-            for( int r = pRadius; r < rows - pRadius; r++ ) {
+        // only the cells that have the whole kernel inside the map contribute
+        double[] weights = new double[cols * rows];
+        for( int r = pRadius; r < rows - pRadius; r++ ) {
+            for( int c = pRadius; c < cols - pRadius; c++ ) {
                 double inputValue = inIter.getSampleDouble(c, r, 0);
                 if (isNovalue(inputValue)) {
                     continue;
                 }
-
                 if (doConstant)
                     inputValue = 1.0;
-
-                int k = 0;
-                for( int kc = -pRadius; kc <= pRadius; kc++ ) {
-                    for( int kr = -pRadius; kr <= pRadius; kr++, k++ ) {
-                        // data[gridCoords.y + j][gridCoords.x + i] += cdata[k] * centreValue;
-                        double outputValue = outIter.getSampleDouble(c + kc, r + kr, 0);
-                        if (isNovalue(outputValue)) {
-                            outputValue = 0;
-                        }
-                        outputValue = outputValue + kernelData[k] * inputValue;
-                        outIter.setSample(c + kc, r + kr, 0, outputValue);
-                    }
-                }
-            }
-            pm.worked(1);
-        }
-        pm.done();
-
-        pm.beginTask("Finalizing...", cols);
-        for( int c = 0; c < cols; c++ ) {
-            for( int r = 0; r < rows; r++ ) {
-                double outputValue = outIter.getSampleDouble(c, r, 0);
-                if (isNovalue(outputValue)) {
-                    outIter.setSample(c, r, 0, 0.0);
-                }
+                weights[r * cols + c] = inputValue;
             }
-            pm.worked(1);
         }
-        pm.done();
+        inIter.done();
+
+        KernelDensityEngine engine = new KernelDensityEngine(kernelValues, pRadius);
+        double[] density = engine.convolve(weights, cols, rows, KernelDensityEngine.AUTO, pMaxThreads, pm);
+
+        WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null, null);
+        outWR.setSamples(0, 0, cols, rows, 0, density);
 
         outDensity = CoverageUtilities.buildCoverage("kerneldensity", outWR, regionMap, inMap.getCoordinateReferenceSystem());
     }
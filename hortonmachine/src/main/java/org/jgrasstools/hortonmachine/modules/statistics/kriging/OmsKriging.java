@@ -404,6 +404,8 @@ public class OmsKriging extends JGTModel {
              */
 
             if (!areAllEquals && n1 > 1) {
+                // the covariance matrix is the same for all the points, decompose it once
+                LinearSystem linearSystem = new LinearSystem(covarianceMatrix);
                 // pm.beginTask(msg.message("kriging.working"),inInterpolate.size());
                 while( idIterator.hasNext() ) {
                     double sum = 0.;
@@ -423,7 +425,6 @@ public class OmsKriging extends JGTModel {
                      * solve the linear system, where the result is the weight.
                      */
                     ColumnVector knownTermColumn = new ColumnVector(knownTerm);
-                    LinearSystem linearSystem = new LinearSystem(covarianceMatrix);
                     ColumnVector solution = linearSystem.solve(knownTermColumn, true);
                     // Matrix a = new Matrix(covarianceMatrix);
                     // Matrix b = new Matrix(knownTerm, knownTerm.length);
@@ -0,0 +1,326 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.HillSlopeDuffy;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.IHillSlope;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.core.PfafstetterNumber;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy.DuffyInputs;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy.DuffyModel;
+import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.adige.duffy.RungeKuttaFelberg;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.joda.time.DateTime;
+import org.opengis.feature.simple.SimpleFeature;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Test the duffy model on a synthetic network of hillslopes.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestDuffyModel extends HMTestCase {
+
+    /**
+     * The final conditions of two consecutive hourly intervals on the network of
+     * {@link #createHillslopes(int, long)} with 3 levels, as given by the solver
+     * that allocated its arrays at every step.
+     */
+    private static final double[][] EXPECTED_CONDITIONS = {
+            {0.5737095396933567, 0.21205802179095842, 0.325727842771389, 0.11039144144827441,
+                    0.06546851649945062, 0.13446265403078927, 0.0972237864059176, 0.06646044660597399,
+                    0.028529524222459607, 0.028534278534474773, 0.009447918663163196, 0.009454965130336388,
+                    0.009460248691007115, 0.009304550815242927, 47979.07697305686, 30166.00235597541,
+                    59011.94697675244, 58063.23248965849, 28804.058621073153, 50907.65568848069,
+                    32961.32134063513, 60093.39511759083, 37598.5287475279, 73247.38639187251,
+                    71743.29363441351, 35414.364395709956, 62333.95181759339, 40168.302708065414},
+            {0.5266855463279982, 0.19467386124067287, 0.29901413786735004, 0.1013340610475888,
+                    0.060072125561388495, 0.12342707526611127, 0.08920551335069463, 0.06100855801941297,
+                    0.026187901893793622, 0.026194316146800276, 0.00867273725049411, 0.008675618120482237,
+                    0.008683829751712679, 0.008536310174683487, 44006.141824488164, 27808.353740054863,
+                    54671.30411794266, 54057.306837809854, 26947.226720755418, 47853.77746480066,
+                    31130.571361549577, 55152.08763206876, 34496.12945940593, 67230.783206188,
+                    65849.6515334259, 32490.524693274703, 57209.50848963719, 36855.84615496049}};
+
+    public void testEvalIsIndependentOfThreads() throws Exception {
+        // 255 hillslopes, the lowest levels are split among the threads
+        List<IHillSlope> hillslopes = createHillslopes(8, 1L);
+        int hillslopesNum = hillslopes.size();
+        double[] input = createInitialConditions(hillslopes);
+        Random random = new Random(2L);
+        for( int i = 0; i < input.length; i++ ) {
+            input[i] = input[i] * (0.5 + random.nextDouble());
+        }
+        double[] rain = new double[hillslopesNum];
+        for( int i = 0; i < rain.length; i++ ) {
+            rain[i] = random.nextDouble() * 10.0;
+        }
+
+        int[] routings = {DuffyModel.ROUTING_CHEZY_NONEXPL, DuffyModel.ROUTING_CHEZY, DuffyModel.ROUTING_MANNING};
+        for( int routing : routings ) {
+            DuffyModel serialModel = new DuffyModel(hillslopes, routing, 1, pm, false);
+            double[] expected = serialModel.eval(0.0, input.clone(), rain, null, false);
+
+            DuffyModel parallelModel = new DuffyModel(hillslopes, routing, 4, pm, false);
+            parallelModel.openThreadPool();
+            try {
+                // the pool is reused by the evaluations
+                for( int run = 0; run < 3; run++ ) {
+                    double[] output = new double[input.length];
+                    parallelModel.eval(0.0, input.clone(), rain, null, false, output);
+                    for( int i = 0; i < expected.length; i++ ) {
+                        assertEquals(expected[i], output[i], 0.0);
+                    }
+                }
+            } finally {
+                parallelModel.closeThreadPool();
+            }
+        }
+    }
+
+    public void testRungeKuttaFelberg() throws Exception {
+        List<IHillSlope> hillslopes = createHillslopes(3, 1L);
+        double[] initialConditions = createInitialConditions(hillslopes);
+        double[] rain = new double[hillslopes.size()];
+        for( int i = 0; i < rain.length; i++ ) {
+            rain[i] = 2.0 + i;
+        }
+
+        for( int threads = 1; threads <= 2; threads++ ) {
+            DuffyModel duffy = new DuffyModel(hillslopes, DuffyModel.ROUTING_CHEZY, threads, pm, false);
+            RungeKuttaFelberg rungeKuttaFelberg = new RungeKuttaFelberg(duffy, 1e-2, 10 / 60., pm, false);
+
+            DateTime timestamp = JGTConstants.utcDateFormatterYYYYMMDDHHMM.parseDateTime("2005-05-01 00:00");
+            double[] conditions = initialConditions.clone();
+            for( int interval = 0; interval < EXPECTED_CONDITIONS.length; interval++ ) {
+                rungeKuttaFelberg.solve(timestamp, 60, 30.0, conditions, rain, null);
+                conditions = rungeKuttaFelberg.getFinalCond();
+
+                double[] expected = EXPECTED_CONDITIONS[interval];
+                assertEquals(expected.length, conditions.length);
+                for( int i = 0; i < expected.length; i++ ) {
+                    assertEquals(expected[i], conditions[i], DELTA);
+                }
+                timestamp = timestamp.plusMinutes(60);
+            }
+        }
+    }
+
+    /**
+     * Create the initial conditions the way the adige engine does without boundary conditions.
+     */
+    private double[] createInitialConditions( List<IHillSlope> hillslopes ) {
+        int hillslopesNum = hillslopes.size();
+        double[] initialConditions = new double[4 * hillslopesNum];
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            HillSlopeDuffy hillslope = (HillSlopeDuffy) hillslopes.get(i);
+            double discharge = hillslope.getUpstreamArea(null) / 1000000.0 * 0.01;
+            initialConditions[i] = 0.3 * discharge;
+            initialConditions[i + hillslopesNum] = 0.7 * discharge;
+            double maxSaturatedVolume = hillslope.getParameters().getS2max();
+            initialConditions[i + 2 * hillslopesNum] = 0.2 * maxSaturatedVolume;
+            initialConditions[i + 3 * hillslopesNum] = 0.25 * maxSaturatedVolume;
+        }
+        return initialConditions;
+    }
+
+    /**
+     * Create a binary tree of hillslopes, ordered from the outlet upstream.
+     *
+     * <p>The areas are kept below the threshold of the discharge distributors.</p>
+     *
+     * @param levels the levels of the tree.
+     * @param seed the seed of the hillslope sizes and slopes.
+     * @return the hillslopes for the duffy model.
+     */
+    private List<IHillSlope> createHillslopes( int levels, long seed ) {
+        DuffyInputs duffyInputs = new DuffyInputs();
+        duffyInputs.pEtrate = 2.0;
+
+        Random random = new Random(seed);
+        int hillslopesNum = (1 << levels) - 1;
+        SyntheticHillSlope[] synthetic = new SyntheticHillSlope[hillslopesNum];
+        for( int i = 0; i < hillslopesNum; i++ ) {
+            double area = 100000.0 + random.nextDouble() * 300000.0;
+            double linkLength = 100.0 + random.nextDouble() * 400.0;
+            double linkSlope = 0.01 + random.nextDouble() * 0.09;
+            synthetic[i] = new SyntheticHillSlope(i + 1, "1." + (i + 1), area, linkLength, linkSlope);
+            if (i > 0) {
+                SyntheticHillSlope downstream = synthetic[(i - 1) / 2];
+                downstream.addConnectedUpstreamElementWithCheck(synthetic[i]);
+                synthetic[i].addConnectedDownstreamElementWithCheck(downstream);
+            }
+        }
+        List<IHillSlope> hillslopes = new ArrayList<IHillSlope>();
+        for( SyntheticHillSlope hillSlope : synthetic ) {
+            hillslopes.add(new HillSlopeDuffy(hillSlope, duffyInputs));
+        }
+        return hillslopes;
+    }
+
+    /**
+     * A hillslope that is not backed by features.
+     */
+    private static class SyntheticHillSlope implements IHillSlope {
+        private final int hillslopeId;
+        private final PfafstetterNumber pfafstetterNumber;
+        private final double area;
+        private final double linkLength;
+        private final double linkSlope;
+        private final List<IHillSlope> upstreamElements = new ArrayList<IHillSlope>();
+        private IHillSlope downstreamElement = null;
+
+        public SyntheticHillSlope( int hillslopeId, String pfafstetterNumber, double area, double linkLength, double linkSlope ) {
+            this.hillslopeId = hillslopeId;
+            this.pfafstetterNumber = new PfafstetterNumber(pfafstetterNumber);
+            this.area = area;
+            this.linkLength = linkLength;
+            this.linkSlope = linkSlope;
+        }
+
+        public int getHillslopeId() {
+            return hillslopeId;
+        }
+
+        public SimpleFeature getLinkFeature() {
+            return null;
+        }
+
+        public double getLinkLength() {
+            return linkLength;
+        }
+
+        public double getLinkSlope() {
+            return linkSlope;
+        }
+
+        public double getLinkWidth( double coefficient, double exponent, double sdResiduals ) {
+            return coefficient * Math.pow(getUpstreamArea(null) / 1000000.0, exponent);
+        }
+
+        public double getLinkChezi( double coefficient, double exponent ) {
+            return coefficient * Math.pow(linkSlope, exponent);
+        }
+
+        public SimpleFeature getHillslopeFeature() {
+            return null;
+        }
+
+        public double getHillslopeArea() {
+            return area;
+        }
+
+        public double getBaricenterElevation() {
+            return -1;
+        }
+
+        public Coordinate getHillslopeClosure() {
+            return null;
+        }
+
+        public Geometry getGeometry( List<PfafstetterNumber> limit, IJGTProgressMonitor pm, boolean doMonitor ) {
+            return null;
+        }
+
+        public double getUpstreamArea( List<PfafstetterNumber> limit ) {
+            double upstreamArea = area;
+            for( IHillSlope upstream : upstreamElements ) {
+                upstreamArea = upstreamArea + upstream.getUpstreamArea(limit);
+            }
+            return upstreamArea;
+        }
+
+        public PfafstetterNumber getPfafstetterNumber() {
+            return pfafstetterNumber;
+        }
+
+        public IHillSlope getFirstOfMaiorBasinElement() {
+            return null;
+        }
+
+        public boolean addConnectedUpstreamElementWithCheck( IHillSlope element ) {
+            upstreamElements.add(element);
+            return true;
+        }
+
+        public boolean addConnectedDownstreamElementWithCheck( IHillSlope element ) {
+            downstreamElement = element;
+            return true;
+        }
+
+        public IHillSlope getUpstreamElementAtPfafstetter( PfafstetterNumber pNum ) {
+            return null;
+        }
+
+        public IHillSlope getConnectedDownstreamElement() {
+            return downstreamElement;
+        }
+
+        public List<IHillSlope> getConnectedUpstreamElements() {
+            return upstreamElements;
+        }
+
+        public void getAllUpstreamElements( List<IHillSlope> elems, List<PfafstetterNumber> limit ) {
+            elems.add(this);
+            for( IHillSlope upstream : upstreamElements ) {
+                upstream.getAllUpstreamElements(elems, limit);
+            }
+        }
+
+        public void getAllUpstreamElementsGeometries( List<Geometry> elems, List<PfafstetterNumber> limit,
+                IHillSlope firstOfMaiorBasin ) {
+        }
+
+        public int compare( IHillSlope ue1, IHillSlope ue2 ) {
+            PfafstetterNumber p1 = ue1.getPfafstetterNumber();
+            PfafstetterNumber p2 = ue2.getPfafstetterNumber();
+            return p1.compare(p1, p2);
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + hillslopeId;
+            result = prime * result + pfafstetterNumber.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if (obj instanceof IHillSlope) {
+                IHillSlope other = (IHillSlope) obj;
+                return pfafstetterNumber.compare(pfafstetterNumber, other.getPfafstetterNumber()) == 0;
+            }
+            return false;
+        }
+
+        public String toString() {
+            return pfafstetterNumber.toString();
+        }
+    }
+
+}
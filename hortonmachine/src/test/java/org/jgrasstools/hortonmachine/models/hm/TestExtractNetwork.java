@@ -144,6 +144,7 @@ public class TestExtractNetwork extends HMTestCase {
             if (featureMate.getAttribute(NetworkChannel.PFAFNAME, String.class).equals("1")) {
                 assertEquals(1, featureMate.getAttribute(NetworkChannel.HACKNAME, Integer.class).intValue());
                 assertEquals(2, featureMate.getAttribute(NetworkChannel.STRAHLERNAME, Integer.class).intValue());
+                assertEquals(234.8528, featureMate.getAttribute(NetworkChannel.UPSTREAMLENGTHNAME, Double.class), 0.0001);
                 assertEquals(
                         "LINESTRING (1640845 5139885, 1640815 5139885, 1640785 5139885, 1640755 5139885, 1640725 5139885, 1640695 5139915)",
                         featureMate.getGeometry().toText());
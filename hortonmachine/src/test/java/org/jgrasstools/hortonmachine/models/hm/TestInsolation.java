@@ -60,4 +60,28 @@ public class TestInsolation extends HMTestCase {
         checkMatrixEqual(insolationCoverage.getRenderedImage(), HMTestMaps.outInsolation, 0.1);
     }
 
+    public void testInsolationPeriods() throws Exception {
+        double[][] elevationData = HMTestMaps.mapData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.envelopeParams;
+        CoordinateReferenceSystem crs = HMTestMaps.crs3004;
+        GridCoverage2D elevationCoverage = CoverageUtilities.buildCoverage("elevation", elevationData, envelopeParams, crs, true);
+
+        OmsInsolation insolation = new OmsInsolation();
+        insolation.inElev = elevationCoverage;
+        insolation.tStartDate = START_DATE;
+        insolation.tEndDate = END_DATE;
+        insolation.doMonthly = true;
+        insolation.doSeasonal = true;
+        insolation.pMaxThreads = 2;
+        insolation.pm = pm;
+        insolation.process();
+
+        checkMatrixEqual(insolation.outIns.getRenderedImage(), HMTestMaps.outInsolation, 0.1);
+        // all the days are in january and in winter
+        assertEquals(1, insolation.outInsMonthly.size());
+        checkMatrixEqual(insolation.outInsMonthly.get(0).getRenderedImage(), HMTestMaps.outInsolation, 0.1);
+        assertEquals(1, insolation.outInsSeasonal.size());
+        checkMatrixEqual(insolation.outInsSeasonal.get(0).getRenderedImage(), HMTestMaps.outInsolation, 0.1);
+    }
+
 }
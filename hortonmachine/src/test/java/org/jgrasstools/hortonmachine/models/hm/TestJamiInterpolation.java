@@ -0,0 +1,306 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.jgrasstools.gears.io.eicalculator.EIAltimetry;
+import org.jgrasstools.gears.io.eicalculator.EIAreas;
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.hortonmachine.modules.statistics.jami.OmsJami;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Test jami on a small set of stations and basins.
+ *
+ * <p>
+ * The expected values are the ones given by the version of jami
+ * that selected the stations and interpolated the basins inside a
+ * single loop for every timestep.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+@SuppressWarnings("nls")
+public class TestJamiInterpolation extends HMTestCase {
+
+    private static final String[] TIMESTEPS = {"2005-05-01 00:00", "2005-05-01 01:00"};
+
+    private SimpleFeatureCollection stations;
+    private SimpleFeatureCollection basins;
+    private List<EIAltimetry> altimetry;
+    private List<EIAreas> areas;
+
+    protected void setUp() throws Exception {
+        GeometryFactory gf = GeometryUtilities.gf();
+
+        // 12 stations on a 4x3 grid, from 100 to 1200 meters
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("stations");
+        b.add("the_geom", Point.class);
+        b.add("id", Integer.class);
+        b.add("elev", Double.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        SimpleFeature[] stationFeatures = new SimpleFeature[12];
+        for( int i = 0; i < stationFeatures.length; i++ ) {
+            Point point = gf.createPoint(new Coordinate((i % 4) * 1000.0, (i / 4) * 1000.0));
+            builder.addAll(new Object[]{point, i + 1, 100.0 + i * 100.0});
+            stationFeatures[i] = builder.buildFeature(null);
+        }
+        stations = FeatureUtilities.createFeatureCollection(stationFeatures);
+
+        // 3 basins with 3 altimetric bands each
+        b = new SimpleFeatureTypeBuilder();
+        b.setName("basins");
+        b.add("the_geom", Polygon.class);
+        b.add("netnum", Integer.class);
+        type = b.buildFeatureType();
+        builder = new SimpleFeatureBuilder(type);
+        double[][] centroids = {{500.0, 500.0}, {2500.0, 1500.0}, {1500.0, 2500.0}};
+        SimpleFeature[] basinFeatures = new SimpleFeature[centroids.length];
+        altimetry = new ArrayList<EIAltimetry>();
+        areas = new ArrayList<EIAreas>();
+        for( int i = 0; i < centroids.length; i++ ) {
+            double x = centroids[i][0];
+            double y = centroids[i][1];
+            Polygon polygon = (Polygon) gf.toGeometry(new Envelope(x - 200.0, x + 200.0, y - 200.0, y + 200.0));
+            builder.addAll(new Object[]{polygon, i + 1});
+            basinFeatures[i] = builder.buildFeature(null);
+
+            for( int band = 0; band < 3; band++ ) {
+                EIAltimetry eiAltimetry = new EIAltimetry();
+                eiAltimetry.basinId = i + 1;
+                eiAltimetry.altimetricBandId = band;
+                eiAltimetry.elevationValue = 150.0 + band * 450.0 + i * 50.0;
+                eiAltimetry.bandRange = 450.0;
+                altimetry.add(eiAltimetry);
+
+                EIAreas eiAreas = new EIAreas();
+                eiAreas.basinId = i + 1;
+                eiAreas.altimetricBandId = band;
+                eiAreas.energyBandId = 0;
+                eiAreas.areaValue = (band + 1) * 1000.0 + i * 100.0;
+                areas.add(eiAreas);
+            }
+        }
+        basins = FeatureUtilities.createFeatureCollection(basinFeatures);
+    }
+
+    public void testTemperature() throws Exception {
+        double[][] expectedBasins = {//
+        {15.829241666666668, 15.617857142857144, 15.228651515151514}, //
+                {13.941741666666665, 13.617857142857144, 13.228651515151515}};
+        double[][][] expectedBands = {//
+        {{19.42545, 17.0, 13.85}, {19.1, 16.625, 13.7}, {19.12545, 15.8, 13.37455}}, //
+                {{17.42545, 15.0, 12.075}, {17.1, 14.625, 11.7}, {17.12545, 13.8, 11.37455}}};
+
+        for( int threads = 1; threads <= 3; threads += 2 ) {
+            checkJami(JGTConstants.TEMPERATURE, threads, expectedBasins, expectedBands);
+        }
+    }
+
+    public void testHumidity() throws Exception {
+        double[][] expectedBasins = {//
+        {66.33333333333333, 67.71428571428572, 68.84848484848484}, //
+                {56.333333333333336, 57.71428571428571, 58.848484848484844}};
+        double[][][] expectedBands = {//
+        {{44.0, 60.0, 78.0}, {44.0, 62.0, 80.0}, {48.0, 64.0, 80.0}}, //
+                {{34.0, 50.0, 68.0}, {34.0, 52.0, 70.0}, {38.0, 54.0, 70.0}}};
+
+        for( int threads = 1; threads <= 3; threads += 2 ) {
+            checkJami(JGTConstants.HUMIDITY, threads, expectedBasins, expectedBands);
+        }
+    }
+
+    /**
+     * Daily temperature range with fewer stations with values than pNum.
+     *
+     * <p>
+     * The first timestep is the minimum temperature hour, the second the
+     * maximum temperature hour. At the last timestep a station that had only
+     * the minimum temperature gets a novalue maximum and, having no value,
+     * can enter the interpolation only as a filler of its band. For a
+     * missing count of n stations, (n + 1) / 2 fillers are taken.
+     * </p>
+     */
+    public void testDtday() throws Exception {
+        String[] timesteps = {"2005-05-01 05:00", "2005-05-01 13:00", "2005-05-01 16:00"};
+        for( int threads = 1; threads <= 3; threads += 2 ) {
+            /*
+             * the first band has no station with values at the last timestep,
+             * the two fillers are stations that never had values, so no station
+             * is used and the default range is given.
+             */
+            OmsJami jami = dtdayJami(threads);
+            for( int t = 0; t < timesteps.length; t++ ) {
+                jami.inMeteo = dtdayMeteo(t, 2);
+                jami.tCurrent = timesteps[t];
+                jami.process();
+                for( int basinId = 1; basinId <= 3; basinId++ ) {
+                    assertEquals(jami.defaultDtday, jami.outInterpolated.get(basinId)[0], DELTA);
+                    for( double band : jami.outInterpolatedBand.get(basinId) ) {
+                        assertEquals(jami.defaultDtday, band, DELTA);
+                    }
+                }
+            }
+
+            /*
+             * in the second band one station is missing and the filler is
+             * the station that has only the minimum temperature, which gives
+             * a novalue range.
+             */
+            jami = dtdayJami(threads);
+            for( int t = 0; t < timesteps.length; t++ ) {
+                jami.inMeteo = dtdayMeteo(t, 2, 4);
+                jami.tCurrent = timesteps[t];
+                jami.process();
+                for( int basinId = 1; basinId <= 3; basinId++ ) {
+                    double basin = jami.outInterpolated.get(basinId)[0];
+                    if (t < 2) {
+                        assertEquals(jami.defaultDtday, basin, DELTA);
+                    } else {
+                        assertTrue(JGTConstants.isNovalue(basin));
+                    }
+                    for( double band : jami.outInterpolatedBand.get(basinId) ) {
+                        if (t < 2) {
+                            assertEquals(jami.defaultDtday, band, DELTA);
+                        } else {
+                            assertTrue(JGTConstants.isNovalue(band));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private OmsJami dtdayJami( int threads ) {
+        OmsJami jami = new OmsJami();
+        jami.pm = pm;
+        jami.inStations = stations;
+        jami.inInterpolate = basins;
+        jami.inAltimetry = altimetry;
+        jami.inAreas = areas;
+        jami.fStationid = "id";
+        jami.fStationelev = "elev";
+        jami.fBasinid = "netnum";
+        jami.pNum = 4;
+        jami.pBins = 3;
+        jami.pType = JGTConstants.DTDAY;
+        jami.pMaxThreads = threads;
+        return jami;
+    }
+
+    /**
+     * The temperatures of a timestep. The stations with index 0, 1 and 3
+     * never have values, the given stations have a value only at the first
+     * timestep.
+     */
+    private HashMap<Integer, double[]> dtdayMeteo( int timestep, int... minimumOnly ) {
+        HashMap<Integer, double[]> meteo = new HashMap<Integer, double[]>();
+        stations: for( int i = 0; i < 12; i++ ) {
+            if (i == 0 || i == 1 || i == 3) {
+                continue;
+            }
+            for( int index : minimumOnly ) {
+                if (index == i && timestep > 0) {
+                    continue stations;
+                }
+            }
+            double value = 10.0 + timestep * 5.0 - i * 0.5;
+            meteo.put(i + 1, new double[]{value});
+        }
+        return meteo;
+    }
+
+    private void checkJami( int type, int threads, double[][] expectedBasins, double[][][] expectedBands ) throws Exception {
+        OmsJami jami = new OmsJami();
+        jami.pm = pm;
+        jami.inStations = stations;
+        jami.inInterpolate = basins;
+        jami.inAltimetry = altimetry;
+        jami.inAreas = areas;
+        jami.fStationid = "id";
+        jami.fStationelev = "elev";
+        jami.fBasinid = "netnum";
+        jami.pNum = 2;
+        jami.pBins = 3;
+        jami.pType = type;
+        jami.pMaxThreads = threads;
+
+        for( int t = 0; t < TIMESTEPS.length; t++ ) {
+            jami.inMeteo = meteo(type, t);
+            jami.tCurrent = TIMESTEPS[t];
+            jami.process();
+
+            for( int i = 0; i < expectedBasins[t].length; i++ ) {
+                int basinId = i + 1;
+                assertEquals(expectedBasins[t][i], jami.outInterpolated.get(basinId)[0], DELTA);
+                double[] bands = jami.outInterpolatedBand.get(basinId);
+                assertEquals(expectedBands[t][i].length, bands.length);
+                for( int band = 0; band < bands.length; band++ ) {
+                    assertEquals(expectedBands[t][i][band], bands[band], DELTA);
+                }
+            }
+        }
+    }
+
+    /**
+     * The station data of a timestep. In the second one a station
+     * is missing and one has a novalue, which changes the stations
+     * chosen for the first basin.
+     */
+    private HashMap<Integer, double[]> meteo( int type, int timestep ) {
+        HashMap<Integer, double[]> meteo = new HashMap<Integer, double[]>();
+        for( int i = 0; i < 12; i++ ) {
+            double elev = 100.0 + i * 100.0;
+            double value;
+            if (type == JGTConstants.TEMPERATURE) {
+                value = 20.0 - timestep * 2.0 - elev * 0.006 + (i % 3) * 0.3;
+            } else {
+                value = 40.0 + i * 4.0 - timestep * 10.0;
+            }
+            if (timestep == 1) {
+                if (i == 4) {
+                    continue;
+                }
+                if (i == 9) {
+                    value = JGTConstants.doubleNovalue;
+                }
+            }
+            meteo.put(i + 1, new double[]{value});
+        }
+        return meteo;
+    }
+
+}
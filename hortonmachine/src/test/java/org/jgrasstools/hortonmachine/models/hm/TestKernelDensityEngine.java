@@ -0,0 +1,100 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.hortonmachine.models.hm;
+
+import java.util.Random;
+
+import org.jgrasstools.hortonmachine.modules.statistics.kerneldensity.KernelDensityEngine;
+import org.jgrasstools.hortonmachine.utils.HMTestCase;
+
+/**
+ * Test for the {@link KernelDensityEngine} strategies.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestKernelDensityEngine extends HMTestCase {
+
+    private static final int RADIUS = 3;
+    private static final int COLS = 57;
+    private static final int ROWS = 41;
+
+    public void testBinaryKernel() throws Exception {
+        int side = 2 * RADIUS + 1;
+        double[] kernel = new double[side * side];
+        for( int r = 0; r < side; r++ ) {
+            for( int c = 0; c < side; c++ ) {
+                int dr = r - RADIUS;
+                int dc = c - RADIUS;
+                if (dr * dr + dc * dc <= RADIUS * RADIUS) {
+                    kernel[r * side + c] = 1.0;
+                }
+            }
+        }
+        checkStrategies(new KernelDensityEngine(kernel, RADIUS), false);
+    }
+
+    public void testGaussianKernel() throws Exception {
+        int side = 2 * RADIUS + 1;
+        double[] kernel = new double[side * side];
+        for( int r = 0; r < side; r++ ) {
+            for( int c = 0; c < side; c++ ) {
+                int dr = r - RADIUS;
+                int dc = c - RADIUS;
+                kernel[r * side + c] = Math.exp(-(dr * dr + 2.0 * dc * dc) / 4.0);
+            }
+        }
+        KernelDensityEngine engine = new KernelDensityEngine(kernel, RADIUS);
+        assertTrue(engine.isSeparable());
+        checkStrategies(engine, true);
+    }
+
+    public void testAsymmetricKernel() throws Exception {
+        int side = 2 * RADIUS + 1;
+        double[] kernel = new double[side * side];
+        Random random = new Random(7);
+        for( int i = 0; i < kernel.length; i++ ) {
+            kernel[i] = random.nextDouble();
+        }
+        KernelDensityEngine engine = new KernelDensityEngine(kernel, RADIUS);
+        assertFalse(engine.isSeparable());
+        checkStrategies(engine, false);
+    }
+
+    private void checkStrategies( KernelDensityEngine engine, boolean separable ) {
+        Random random = new Random(13);
+        double[] weights = new double[COLS * ROWS];
+        for( int i = 0; i < weights.length; i++ ) {
+            if (random.nextDouble() < 0.2) {
+                weights[i] = random.nextDouble() * 10.0;
+            }
+        }
+
+        double[] expected = engine.convolve(weights, COLS, ROWS, KernelDensityEngine.SPLAT, 1, pm);
+        int[] strategies = separable ? new int[]{KernelDensityEngine.RUNS, KernelDensityEngine.SEPARABLE,
+                KernelDensityEngine.FFT} : new int[]{KernelDensityEngine.RUNS, KernelDensityEngine.FFT};
+        for( int strategy : strategies ) {
+            for( int threads = 1; threads <= 3; threads += 2 ) {
+                double[] density = engine.convolve(weights, COLS, ROWS, strategy, threads, pm);
+                for( int i = 0; i < expected.length; i++ ) {
+                    assertEquals(expected[i], density[i], 1E-9);
+                }
+            }
+        }
+    }
+
+}
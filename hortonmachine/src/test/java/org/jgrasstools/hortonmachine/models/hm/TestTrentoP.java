@@ -3,7 +3,9 @@ package org.jgrasstools.hortonmachine.models.hm;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -295,6 +297,86 @@ public class TestTrentoP extends HMTestCase {
      * @throws IOException
      */
      public void testVerify1() throws Exception {
+         verify1(1);
+     }
+
+     /**
+     *
+     * Check that the verify mode gives the same results with more threads.
+     *
+     * @throws Exception
+     */
+     public void testVerify1Threads() throws Exception {
+         verify1(4);
+     }
+
+    /**
+     * Check that the search of the rain time giving the maximum discharge,
+     * with a rain built from the a and n parameters, gives the same results
+     * with more threads.
+     *
+     * @throws Exception
+     */
+    public void testVerifyRainTimeSearchThreads() throws Exception {
+        OmsTrentoP trentoP1 = verifyRainTimeSearch(1);
+        OmsTrentoP trentoP4 = verifyRainTimeSearch(4);
+
+        assertNotNull(trentoP1.outTpMax);
+        assertEquals(trentoP1.outTpMax, trentoP4.outTpMax);
+        checkSameOutput(trentoP1.outDischarge, trentoP4.outDischarge);
+        checkSameOutput(trentoP1.outFillDegree, trentoP4.outFillDegree);
+    }
+
+    private OmsTrentoP verifyRainTimeSearch( int threads ) throws Exception {
+        double[] globalparameters = INTERNAL_PARAMETERS;
+
+        OmsTrentoP trento_P = new OmsTrentoP();
+        trento_P.pMode = 1; // verify
+        trento_P.pMaxThreads = threads;
+        trento_P.pMaxJunction = (int) globalparameters[1];
+        trento_P.pJMax = (int) globalparameters[2];
+        trento_P.pAccuracy = globalparameters[3];
+        trento_P.tpMax = globalparameters[6];
+        trento_P.pEpsilon = globalparameters[7];
+        trento_P.pMaxTheta = 6.28;
+        trento_P.pCelerityFactor = Constants.DEFAULT_CELERITY_FACTOR;
+        trento_P.pExponent = globalparameters[12];
+        trento_P.pTolerance = 0.01;
+        trento_P.pGamma = globalparameters[15];
+        trento_P.pEspInflux = globalparameters[16];
+        trento_P.pOutPipe = 16;
+        // the rain is built from a and n, the rain time is searched up to tpMaxCalibration
+        trento_P.pA = a;
+        trento_P.pN = n;
+        trento_P.dt = 5;
+        trento_P.tpMaxCalibration = 90;
+        URL net = this.getClass().getClassLoader().getResource("TestTrentoP1Verifica.shp");
+        File netFile = new File(net.toURI());
+        OmsShapefileFeatureReader netReader = new OmsShapefileFeatureReader();
+        netReader.file = netFile.getAbsolutePath();
+        netReader.readFeatureCollection();
+        trento_P.inPipes = netReader.geodata;
+        trento_P.process();
+        return trento_P;
+    }
+
+    /*
+     * The rain dates start from the current time, so the outputs are compared in order.
+     */
+    private void checkSameOutput( HashMap<DateTime, HashMap<Integer, double[]>> expected,
+            HashMap<DateTime, HashMap<Integer, double[]>> actual ) {
+        assertEquals(expected.size(), actual.size());
+        Iterator<HashMap<Integer, double[]>> actualIterator = actual.values().iterator();
+        for( HashMap<Integer, double[]> expectedValues : expected.values() ) {
+            HashMap<Integer, double[]> actualValues = actualIterator.next();
+            assertEquals(expectedValues.keySet(), actualValues.keySet());
+            for( Entry<Integer, double[]> entry : expectedValues.entrySet() ) {
+                assertTrue(Arrays.equals(entry.getValue(), actualValues.get(entry.getKey())));
+            }
+        }
+    }
+
+     private void verify1( int threads ) throws Exception {
     
             URL rainUrl = this.getClass().getClassLoader().getResource("rain_trentop.csv"); //$NON-NLS-1$
      File rainFile = new File(rainUrl.toURI());
@@ -305,6 +387,7 @@ public class TestTrentoP extends HMTestCase {
      OmsTrentoP trento_P = new OmsTrentoP();
      // set parameters;
      trento_P.pMode = 1; // verify
+     trento_P.pMaxThreads = threads;
      trento_P.pMaxJunction = (int) globalparameters[1];
      trento_P.pJMax = (int) globalparameters[2];
      trento_P.pAccuracy = globalparameters[3];
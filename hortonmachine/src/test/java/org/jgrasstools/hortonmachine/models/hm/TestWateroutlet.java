@@ -20,14 +20,26 @@ package org.jgrasstools.hortonmachine.models.hm;
 import java.util.HashMap;
 
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.utils.PrintUtilities;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.OmsExtractBasin;
+import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.OmsMultiWateroutlet;
 import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.OmsWateroutlet;
 import org.jgrasstools.hortonmachine.utils.HMTestCase;
 import org.jgrasstools.hortonmachine.utils.HMTestMaps;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
 /**
  * Test the {@link OmsWateroutlet} module.
  * 
@@ -80,4 +92,50 @@ public class TestWateroutlet extends HMTestCase {
         checkMatrixEqual(basinCoverage.getRenderedImage(), HMTestMaps.basinWateroutletData, 0);
     }
 
+    public void testMultiWateroutlet() throws Exception {
+
+        double[][] flowData = HMTestMaps.flowData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.envelopeParams;
+        CoordinateReferenceSystem crs = HMTestMaps.crs;
+        GridCoverage2D flowCoverage = CoverageUtilities.buildCoverage("flow", flowData, envelopeParams, crs, true);
+
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("outlets");
+        b.setCRS(crs);
+        b.add("the_geom", Point.class);
+        b.add("id", Integer.class);
+        SimpleFeatureType type = b.buildFeatureType();
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        GeometryFactory gf = GeometryUtilities.gf();
+        // the outlet of the whole basin and one inside it
+        builder.addAll(new Object[]{gf.createPoint(new Coordinate(1640724.0, 5139885.0)), 1});
+        SimpleFeature outlet = builder.buildFeature(null);
+        builder.addAll(new Object[]{gf.createPoint(new Coordinate(1640815.0, 5139915.0)), 2});
+        SimpleFeature nestedOutlet = builder.buildFeature(null);
+        SimpleFeatureCollection outlets = FeatureUtilities.createFeatureCollection(outlet, nestedOutlet);
+
+        OmsMultiWateroutlet multiWateroutlet = new OmsMultiWateroutlet();
+        multiWateroutlet.pm = pm;
+        multiWateroutlet.inFlow = flowCoverage;
+        multiWateroutlet.inOutlets = outlets;
+        multiWateroutlet.fId = "id";
+        multiWateroutlet.pMaxThreads = 2;
+
+        multiWateroutlet.process();
+
+        GridCoverage2D basinsCoverage = multiWateroutlet.outBasins;
+
+        double N = Double.NaN;
+        double[][] expected = {{N, N, N, N, N, N, N, N, N, N}, //
+                {N, N, N, N, N, 1.0, 1.0, 2.0, 1.0, N}, //
+                {N, N, N, N, 1.0, 1.0, 2.0, 1.0, 1.0, N}, //
+                {N, N, N, 1.0, 1.0, 2.0, 1.0, 1.0, 1.0, N}, //
+                {N, N, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, N}, //
+                {N, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, N}, //
+                {N, N, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, N}, //
+                {N, N, N, N, N, N, N, N, N, N} //
+        };
+        checkMatrixEqual(basinsCoverage.getRenderedImage(), expected, 0);
+    }
+
 }
@@ -153,6 +153,7 @@ public class GearsMessages {
     public static final String OMSGRASSLEGACYREADER_inWindow_DESCRIPTION = "The region to read.";
     public static final String OMSGRASSLEGACYREADER_outGC_DESCRIPTION = "The read output map as limited coverage version.";
     public static final String OMSGRASSLEGACYREADER_geodata_DESCRIPTION = "The read output map data.";
+    public static final String OMSGRASSLEGACYREADER_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
 
     public static final String OMSMATRIXCHARTER_DESCRIPTION = "Utility class for charting matrix data.";
     public static final String OMSMATRIXCHARTER_DOCUMENTATION = "";
@@ -287,12 +288,13 @@ public class GearsMessages {
     public static final String OMSWINDOWSAMPLER_AUTHORNAMES = "Andrea Antonello";
     public static final String OMSWINDOWSAMPLER_AUTHORCONTACTS = "www.hydrologis.com";
     public static final String OMSWINDOWSAMPLER_inGeodata_DESCRIPTION = "The input coverage.";
-    public static final String OMSWINDOWSAMPLER_pMode_DESCRIPTION = "The mode to use: average (0 = default), sum (1), max (2), min (3).";
+    public static final String OMSWINDOWSAMPLER_pMode_DESCRIPTION = "The mode to use: average (0 = default), sum (1), max (2), min (3), median (4), standard deviation (5).";
     public static final String OMSWINDOWSAMPLER_pRows_DESCRIPTION = "The windows rows to use (default is 3).";
     public static final String OMSWINDOWSAMPLER_pCols_DESCRIPTION = "The window cols to use (default is 3).";
     public static final String OMSWINDOWSAMPLER_pMinvalid_DESCRIPTION = "Minimum percentage of valid surrounding cells needed to validate the maximum.";
     public static final String OMSWINDOWSAMPLER_pXstep_DESCRIPTION = "The cols to move the window forward (default is = pCols).";
     public static final String OMSWINDOWSAMPLER_pYstep_DESCRIPTION = "The rows to move the window forward (default is = pRows).";
+    public static final String OMSWINDOWSAMPLER_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String OMSWINDOWSAMPLER_outGeodata_DESCRIPTION = "The output coverage.";
 
     public static final String OMSMAXIMAFINDER_DESCRIPTION = "Module to find local maxima.";
@@ -331,6 +333,8 @@ public class GearsMessages {
     public static final String OMSRASTERREADER_pRows_DESCRIPTION = "The optional requested numer of rows.";
     public static final String OMSRASTERREADER_pCols_DESCRIPTION = "The optional requested numer of cols.";
     public static final String OMSRASTERREADER_doLegacyGrass_DESCRIPTION = "Optional flag to force a legacy GRASS driver usage.";
+    public static final String OMSRASTERREADER_pMaxThreads_DESCRIPTION = "Max threads to use for the legacy GRASS driver (default 1)";
+    public static final String OMSRASTERREADER_doCache_DESCRIPTION = "Flag to keep the read raster in a cache shared by all readers (the raster must not be modified).";
     public static final String OMSRASTERREADER_outRaster_DESCRIPTION = "The read output raster map.";
 
     public static final String OMSGRASSLEGACYWRITER_DESCRIPTION = "Legacy class for writing grass rasters.";
@@ -346,6 +350,7 @@ public class GearsMessages {
     public static final String OMSGRASSLEGACYWRITER_geodata_DESCRIPTION = "The map that needs to be written.";
     public static final String OMSGRASSLEGACYWRITER_inWindow_DESCRIPTION = "The region for the map to be written.";
     public static final String OMSGRASSLEGACYWRITER_file_DESCRIPTION = "The file to the map to be written (the cell file).";
+    public static final String OMSGRASSLEGACYWRITER_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
 
     public static final String OMSEIENERGYWRITER_DESCRIPTION = "Utility class for writing energy data to csv files.";
     public static final String OMSEIENERGYWRITER_DOCUMENTATION = "";
@@ -447,6 +452,7 @@ public class GearsMessages {
     public static final String OMSVECTORTRANSFORMER_inVector_DESCRIPTION = "The feature collection that has to be transformed.";
     public static final String OMSVECTORTRANSFORMER_pTransX_DESCRIPTION = "The translation along the X axis.";
     public static final String OMSVECTORTRANSFORMER_pTransY_DESCRIPTION = "The translation along the Y axis.";
+    public static final String OMSVECTORTRANSFORMER_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String OMSVECTORTRANSFORMER_outVector_DESCRIPTION = "The transformed feature collection.";
 
     public static final String OMSVECTORFIELDROUNDER_DESCRIPTION = "Module that rounds a defined field attribute.";
@@ -585,7 +591,7 @@ public class GearsMessages {
     public static final String OMSRASTERDIFF_doNegatives_DESCRIPTION = "Allow negative values.";
     public static final String OMSRASTERDIFF_outRaster_DESCRIPTION = "The output raster.";
 
-    public static final String OMSVECTOROVERLAYOPERATORS_DESCRIPTION = "A module that performs overlay operations on a pure geometric layer. The resulting feature layer does not consider original attributes tables.";
+    public static final String OMSVECTOROVERLAYOPERATORS_DESCRIPTION = "A module that performs overlay operations on vector layers. The attributes of both layers are carried to the resulting features, unless the result is dissolved.";
     public static final String OMSVECTOROVERLAYOPERATORS_DOCUMENTATION = "";
     public static final String OMSVECTOROVERLAYOPERATORS_KEYWORDS = "JTS, Overlay, Union, Intersect, SymDifference, Difference";
     public static final String OMSVECTOROVERLAYOPERATORS_LABEL = VECTORPROCESSING;
@@ -597,6 +603,8 @@ public class GearsMessages {
     public static final String OMSVECTOROVERLAYOPERATORS_inMap1_DESCRIPTION = "The first vector map.";
     public static final String OMSVECTOROVERLAYOPERATORS_inMap2_DESCRIPTION = "The second vector map.";
     public static final String OMSVECTOROVERLAYOPERATORS_pType_DESCRIPTION = "The overlay type to perform.";
+    public static final String OMSVECTOROVERLAYOPERATORS_doDissolve_DESCRIPTION = "Flag to dissolve the result into a pure geometric layer without attributes.";
+    public static final String OMSVECTOROVERLAYOPERATORS_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION = "The resulting vector map.";
 
     public static final String OMSSCANLINERASTERIZER_DESCRIPTION = "Module for polygon vector to raster conversion.";
@@ -678,6 +686,8 @@ public class GearsMessages {
     public static final String OMSMAPCALC_AUTHORCONTACTS = "http://www.hydrologis.com";
     public static final String OMSMAPCALC_inRasters_DESCRIPTION = "The maps that are used in the calculation.";
     public static final String OMSMAPCALC_pFunction_DESCRIPTION = "The function to process.";
+    public static final String OMSMAPCALC_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
+    public static final String OMSMAPCALC_doInPlace_DESCRIPTION = "Write the result into the output map of the previous run, if it has the same size (the previous output is overwritten).";
     public static final String OMSMAPCALC_outRaster_DESCRIPTION = "The resulting map picked from the inserted function.";
 
     public static final String OMSMOSAIC12_DESCRIPTION = "Module for patching max 12 rasters.";
@@ -718,6 +728,7 @@ public class GearsMessages {
     public static final String OMSBUFFER_doSinglesided_DESCRIPTION = "Flag to toggle singlesided buffer.";
     public static final String OMSBUFFER_pJoinstyle_DESCRIPTION = "The join style to use.";
     public static final String OMSBUFFER_pCapstyle_DESCRIPTION = "The cap style to use.";
+    public static final String OMSBUFFER_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String OMSBUFFER_outMap_DESCRIPTION = "The buffered vector map.";
 
     public static final String OMSVECTORFILTER_DESCRIPTION = "Module that creates a subset of a vector based on a filtered vector.";
@@ -933,6 +944,7 @@ public class GearsMessages {
     public static final String OMSVECTORSIMPLIFIER_inVector_DESCRIPTION = "The vector to be simplified.";
     public static final String OMSVECTORSIMPLIFIER_pType_DESCRIPTION = "The simplification type: TopologyPreservingSimplifier = 0, Douglas Peucker = 1 (default = 0).";
     public static final String OMSVECTORSIMPLIFIER_pTolerance_DESCRIPTION = "The distance tolerance for the simplification.";
+    public static final String OMSVECTORSIMPLIFIER_pMaxThreads_DESCRIPTION = "Max threads to use (default 1)";
     public static final String OMSVECTORSIMPLIFIER_outVector_DESCRIPTION = "The simplified vector.";
 
     public static final String OMSCOVERAGELISTER_DESCRIPTION = "A module that reads rasters.";
@@ -1044,6 +1056,7 @@ public class GearsMessages {
     public static final String OMSRASTERSUMMARY_inRaster_DESCRIPTION = "The map to analize.";
     public static final String OMSRASTERSUMMARY_pBins_DESCRIPTION = "The number of bins for the histogram (default = 100).";
     public static final String OMSRASTERSUMMARY_doHistogram_DESCRIPTION = "Flag that defines if the histogram should be done also (default = false).";
+    public static final String OMSRASTERSUMMARY_doQuantiles_DESCRIPTION = "Flag that defines if the quantiles should be estimated also (default = false).";
     public static final String OMSRASTERSUMMARY_outMin_DESCRIPTION = "The min value.";
     public static final String OMSRASTERSUMMARY_outMax_DESCRIPTION = "The max value.";
     public static final String OMSRASTERSUMMARY_outMean_DESCRIPTION = "The mean value.";
@@ -1051,6 +1064,7 @@ public class GearsMessages {
     public static final String OMSRASTERSUMMARY_outRange_DESCRIPTION = "The range value.";
     public static final String OMSRASTERSUMMARY_outSum_DESCRIPTION = "The sum value.";
     public static final String OMSRASTERSUMMARY_outCb_DESCRIPTION = "The histogram.";
+    public static final String OMSRASTERSUMMARY_outQuantiles_DESCRIPTION = "The estimated 5, 25, 50, 75 and 95 percent quantiles.";
 
     public static final String IDVALUESARRAY2IDVALUESCONVERTER_DESCRIPTION = "Utility class for converting from 'id1 value1[]' to 'id1 value1' by averaging.";
     public static final String IDVALUESARRAY2IDVALUESCONVERTER_DOCUMENTATION = "";
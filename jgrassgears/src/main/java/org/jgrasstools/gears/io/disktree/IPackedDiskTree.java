@@ -0,0 +1,95 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+/**
+ * Interface for the packed DiskTree I/O modules.
+ * 
+ * <p>
+ * Different from the {@link IDiskTree} format, which stores a serialized {@link com.vividsolutions.jts.index.strtree.STRtree},
+ * the packed format stores a static Hilbert R-tree as a flat array of nodes that can be
+ * queried directly from a memory mapped file, without ever loading it.
+ * </p>
+ * 
+ * <p>
+ * The packed disktree binary file is defined as follows (big endian):
+ * 
+ * <ul>
+ *  <li>4 bytes containing the chars 'jgpt'</li>
+ *  <li>4 bytes for the format version</li>
+ *  <li>4 bytes for the node size, i.e. the max number of children of a node</li>
+ *  <li>4 bytes for the number of geometries</li>
+ *  <li>4 bytes for the number of levels of the tree</li>
+ *  <li>8 bytes containing the address at which the geometries start</li>
+ *  <li>8 bytes containing the address at which the geometries end</li>
+ *  <li>4 * 8 bytes for the bounds of all the geometries (minx, miny, maxx, maxy)</li>
+ *  <li>4 bytes for the index of the first node of every level, the root level first</li>
+ *  <li>then the nodes of all the levels, the root level first. Every node has 4 * 8 bytes
+ *      for its envelope and 8 bytes for the index of its first child node (or the address of the 
+ *      geometry for the leaves, which are the last level)</li>
+ *  <li>after the nodes, the geometries are stored in the order of the leaves. Every geometry has 
+ *      4 bytes for the size of its WKB, the WKB, 4 bytes for the size of the UTF-8 representation 
+ *      of its user data (-1 if there is none) and the user data bytes</li>
+ * </ul>
+ * 
+ * <p>
+ * The leaves are sorted by the Hilbert value of the center of their envelope, so that 
+ * geometries near in space are near also in the file.
+ * </p>
+ * 
+ * <p>Example usage:
+ * 
+ * <pre>
+ * PackedDiskTreeWriter writer = new PackedDiskTreeWriter("/home/moovida/TMP/index.jgpt");
+ * writer.writeGeometries(new Geometry[]{pol, line, point});
+ *
+ * PackedDiskTreeReader reader = new PackedDiskTreeReader("/home/moovida/TMP/index.jgpt");
+ * reader.open();
+ * List&lt;Geometry&gt; geometries = reader.query(new Envelope(200, 300, 300, 400));
+ * reader.close();
+ * </pre>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public interface IPackedDiskTree {
+    /**
+     * The chars identifying the file.
+     */
+    byte[] MAGIC = {'j', 'g', 'p', 't'};
+
+    /**
+     * The version of the format.
+     */
+    int VERSION = 1;
+
+    /**
+     * Byte size of the fixed part of the header.
+     */
+    int HEADER_SIZE = 4 + 4 + 4 + 4 + 4 + 8 + 8 + 4 * 8;
+
+    /**
+     * Byte size of a node.
+     */
+    int NODE_SIZE = 4 * 8 + 8;
+
+    /**
+     * The default max number of children of a node.
+     */
+    int DEFAULT_NODE_CAPACITY = 16;
+}
@@ -0,0 +1,285 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.ItemVisitor;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKBReader;
+
+/**
+ * Reader for the packed Hilbert R-tree disk index.
+ * 
+ * <p>
+ * The file is memory mapped and the tree is walked directly on the mapped nodes, 
+ * so opening is immediate also for huge files and only the geometries that match 
+ * a query are decoded.
+ * </p>
+ * 
+ * <p>The reader is not thread safe.</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ * @see IPackedDiskTree
+ */
+public class PackedDiskTreeReader implements IPackedDiskTree {
+
+    /**
+     * Size of the mapped segments of the geometries part of the file.
+     */
+    private static final long SEGMENT_SIZE = 1l << 30;
+
+    private final String path;
+
+    private RandomAccessFile raf = null;
+    private FileChannel channel;
+
+    private int nodeCapacity;
+    private int geometriesCount;
+    private int[] levelStarts;
+    private int leavesStart;
+    private int nodesNum;
+    private long geometriesStart;
+    private long geometriesEnd;
+    private Envelope bounds;
+
+    private ByteBuffer nodes;
+    private ByteBuffer[] segments;
+
+    private final WKBReader wkbReader = new WKBReader();
+    private byte[] geometryBytes = new byte[256];
+    private int[] rangesStack;
+
+    /**
+     * Constructor.
+     * 
+     * @param path the path from which to read.
+     */
+    public PackedDiskTreeReader( String path ) {
+        this.path = path;
+    }
+
+    /**
+     * Opens the file and maps it.
+     * 
+     * @throws IOException
+     */
+    public void open() throws IOException {
+        File file = new File(path);
+        raf = new RandomAccessFile(file, "r");
+        channel = raf.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        for( int i = 0; i < magic.length; i++ ) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("The file is not a packed disktree: " + path);
+            }
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported packed disktree version: " + version);
+        }
+        nodeCapacity = header.getInt();
+        geometriesCount = header.getInt();
+        int levelsNum = header.getInt();
+        geometriesStart = header.getLong();
+        geometriesEnd = header.getLong();
+        double minX = header.getDouble();
+        double minY = header.getDouble();
+        double maxX = header.getDouble();
+        double maxY = header.getDouble();
+        bounds = geometriesCount > 0 ? new Envelope(minX, maxX, minY, maxY) : new Envelope();
+
+        ByteBuffer levels = ByteBuffer.allocate(4 * levelsNum);
+        readFully(levels, HEADER_SIZE);
+        levels.flip();
+        levelStarts = new int[levelsNum];
+        for( int i = 0; i < levelsNum; i++ ) {
+            levelStarts[i] = levels.getInt();
+        }
+
+        long nodesPosition = HEADER_SIZE + 4l * levelsNum;
+        long nodesSize = geometriesStart - nodesPosition;
+        if (nodesSize > Integer.MAX_VALUE) {
+            throw new IOException("The index is too large to be mapped.");
+        }
+        nodesNum = (int) (nodesSize / NODE_SIZE);
+        leavesStart = nodesNum - geometriesCount;
+        nodes = channel.map(FileChannel.MapMode.READ_ONLY, nodesPosition, nodesSize);
+
+        int segmentsNum = (int) ((geometriesEnd - geometriesStart + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        segments = new ByteBuffer[segmentsNum];
+        for( int i = 0; i < segmentsNum; i++ ) {
+            long start = geometriesStart + i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, geometriesEnd - start));
+        }
+
+        // every level can leave at most nodeCapacity ranges on the stack
+        rangesStack = new int[2 * (levelsNum + 1) * nodeCapacity];
+    }
+
+    /**
+     * @return the number of geometries in the file.
+     */
+    public int getGeometriesCount() {
+        return geometriesCount;
+    }
+
+    /**
+     * @return the bounds of all the geometries.
+     */
+    public Envelope getBounds() {
+        return new Envelope(bounds);
+    }
+
+    /**
+     * Reads the geometries whose envelope intersects the given envelope.
+     * 
+     * @param envelope the query envelope.
+     * @return the list of matching geometries.
+     * @throws IOException
+     */
+    public List<Geometry> query( Envelope envelope ) throws IOException {
+        final List<Geometry> result = new ArrayList<Geometry>();
+        query(envelope, new ItemVisitor(){
+            public void visitItem( Object item ) {
+                result.add((Geometry) item);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Visits the geometries whose envelope intersects the given envelope.
+     * 
+     * @param envelope the query envelope.
+     * @param visitor the visitor that gets the matching {@link Geometry}s.
+     * @throws IOException
+     */
+    public void query( Envelope envelope, ItemVisitor visitor ) throws IOException {
+        if (geometriesCount == 0 || !envelope.intersects(bounds)) {
+            return;
+        }
+        double qMinX = envelope.getMinX();
+        double qMinY = envelope.getMinY();
+        double qMaxX = envelope.getMaxX();
+        double qMaxY = envelope.getMaxY();
+
+        // depth first on ranges of sibling nodes, starting from the root level
+        int top = 0;
+        rangesStack[top++] = 0;
+        rangesStack[top++] = levelStarts.length > 1 ? levelStarts[1] : nodesNum;
+        while( top > 0 ) {
+            int end = rangesStack[--top];
+            int start = rangesStack[--top];
+            for( int node = start; node < end; node++ ) {
+                int position = node * NODE_SIZE;
+                if (nodes.getDouble(position) > qMaxX || nodes.getDouble(position + 8) > qMaxY
+                        || nodes.getDouble(position + 16) < qMinX || nodes.getDouble(position + 24) < qMinY) {
+                    continue;
+                }
+                long offset = nodes.getLong(position + 32);
+                if (node >= leavesStart) {
+                    long next = node + 1 < nodesNum ? nodes.getLong(position + NODE_SIZE + 32) : geometriesEnd;
+                    visitor.visitItem(readGeometry(offset, (int) (next - offset)));
+                } else {
+                    int firstChild = (int) offset;
+                    rangesStack[top++] = firstChild;
+                    rangesStack[top++] = Math.min(firstChild + nodeCapacity, levelEnd(firstChild));
+                }
+            }
+        }
+    }
+
+    private int levelEnd( int node ) {
+        for( int i = 1; i < levelStarts.length; i++ ) {
+            if (node < levelStarts[i]) {
+                return levelStarts[i];
+            }
+        }
+        return nodesNum;
+    }
+
+    private Geometry readGeometry( long position, int size ) throws IOException {
+        if (geometryBytes.length < size) {
+            geometryBytes = new byte[Math.max(size, geometryBytes.length * 2)];
+        }
+        long relative = position - geometriesStart;
+        int segment = (int) (relative / SEGMENT_SIZE);
+        int segmentPosition = (int) (relative % SEGMENT_SIZE);
+        ByteBuffer buffer = segments[segment];
+        if (segmentPosition + size <= buffer.capacity()) {
+            buffer.position(segmentPosition);
+            buffer.get(geometryBytes, 0, size);
+        } else {
+            // the geometry crosses the end of a mapped segment
+            readFully(ByteBuffer.wrap(geometryBytes, 0, size), position);
+        }
+
+        ByteBuffer bytes = ByteBuffer.wrap(geometryBytes, 0, size);
+        int wkbSize = bytes.getInt();
+        byte[] wkb = new byte[wkbSize];
+        bytes.get(wkb);
+        Geometry geometry;
+        try {
+            geometry = wkbReader.read(wkb);
+        } catch (ParseException e) {
+            throw new IOException("Unable to read the geometry at: " + position);
+        }
+        int userDataSize = bytes.getInt();
+        if (userDataSize >= 0) {
+            geometry.setUserData(new String(geometryBytes, bytes.position(), userDataSize, "UTF-8"));
+        }
+        return geometry;
+    }
+
+    private void readFully( ByteBuffer buffer, long position ) throws IOException {
+        while( buffer.hasRemaining() ) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file: " + path);
+            }
+            position = position + read;
+        }
+    }
+
+    /**
+     * Closes the filehandle.
+     * 
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        nodes = null;
+        segments = null;
+        if (raf != null)
+            raf.close();
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.disktree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Writer for the packed Hilbert R-tree disk index.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ * @see IPackedDiskTree
+ */
+public class PackedDiskTreeWriter implements IPackedDiskTree {
+
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    private final String path;
+
+    private int nodeCapacity = DEFAULT_NODE_CAPACITY;
+
+    /**
+     * Constructor.
+     * 
+     * @param path the path to which the index will be written.
+     */
+    public PackedDiskTreeWriter( String path ) {
+        this.path = path;
+    }
+
+    /**
+     * Set the max number of children of a node.
+     * 
+     * @param nodeCapacity the node capacity, at least 2.
+     */
+    public void setNodeCapacity( int nodeCapacity ) {
+        if (nodeCapacity < 2) {
+            throw new IllegalArgumentException("The node capacity has to be at least 2.");
+        }
+        this.nodeCapacity = nodeCapacity;
+    }
+
+    /**
+     * Writes an array of {@link Geometry}s to the disk.
+     * 
+     * <p>Empty geometries are skipped. The user data of the geometries are
+     * stored as strings.</p>
+     * 
+     * @param geometries the array of geoms to write.
+     * @throws IOException
+     */
+    public void writeGeometries( Geometry[] geometries ) throws IOException {
+        int count = 0;
+        for( Geometry geometry : geometries ) {
+            if (!geometry.isEmpty()) {
+                count++;
+            }
+        }
+        Geometry[] items = new Geometry[count];
+        double[] envelopes = new double[count * 4];
+        Envelope bounds = new Envelope();
+        int index = 0;
+        for( Geometry geometry : geometries ) {
+            if (geometry.isEmpty()) {
+                continue;
+            }
+            Envelope envelope = geometry.getEnvelopeInternal();
+            envelopes[index * 4] = envelope.getMinX();
+            envelopes[index * 4 + 1] = envelope.getMinY();
+            envelopes[index * 4 + 2] = envelope.getMaxX();
+            envelopes[index * 4 + 3] = envelope.getMaxY();
+            bounds.expandToInclude(envelope);
+            items[index++] = geometry;
+        }
+
+        int[] order = hilbertOrder(envelopes, bounds);
+
+        /*
+         * sizes of the levels, from the leaves up to the root
+         */
+        int levelsNum = 0;
+        int[] levelSizes = new int[32];
+        int levelSize = count;
+        if (count > 0) {
+            while( true ) {
+                levelSizes[levelsNum++] = levelSize;
+                if (levelSize == 1) {
+                    break;
+                }
+                levelSize = (levelSize + nodeCapacity - 1) / nodeCapacity;
+            }
+        }
+        // the levels are stored from the root to the leaves
+        int[] levelStarts = new int[levelsNum];
+        int nodesNum = 0;
+        for( int level = 0; level < levelsNum; level++ ) {
+            levelStarts[level] = nodesNum;
+            nodesNum = nodesNum + levelSizes[levelsNum - 1 - level];
+        }
+        long nodesPosition = HEADER_SIZE + 4l * levelsNum;
+        long geometriesStart = nodesPosition + (long) NODE_SIZE * nodesNum;
+
+        double[] nodeEnvelopes = new double[nodesNum * 4];
+        long[] nodeOffsets = new long[nodesNum];
+
+        File file = new File(path);
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to overwrite the file: " + path);
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel();
+
+            /*
+             * the geometries, in the order of the leaves
+             */
+            channel.position(geometriesStart);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            WKBWriter wkbWriter2D = new WKBWriter(2);
+            WKBWriter wkbWriter3D = new WKBWriter(3);
+            int leavesStart = nodesNum - count;
+            long fileIndex = geometriesStart;
+            for( int i = 0; i < count; i++ ) {
+                int item = order[i];
+                Geometry geometry = items[item];
+                boolean is3D = !Double.isNaN(geometry.getCoordinate().z);
+                byte[] wkb = is3D ? wkbWriter3D.write(geometry) : wkbWriter2D.write(geometry);
+                Object userData = geometry.getUserData();
+                byte[] userDataBytes = userData != null ? userData.toString().getBytes("UTF-8") : null;
+
+                out.writeInt(wkb.length);
+                out.write(wkb);
+                if (userDataBytes != null) {
+                    out.writeInt(userDataBytes.length);
+                    out.write(userDataBytes);
+                } else {
+                    out.writeInt(-1);
+                }
+
+                int node = leavesStart + i;
+                System.arraycopy(envelopes, item * 4, nodeEnvelopes, node * 4, 4);
+                nodeOffsets[node] = fileIndex;
+                fileIndex = fileIndex + 8 + wkb.length + (userDataBytes != null ? userDataBytes.length : 0);
+            }
+            out.flush();
+            long geometriesEnd = fileIndex;
+
+            /*
+             * the upper levels, every node covering a run of children
+             */
+            for( int level = levelsNum - 2; level >= 0; level-- ) {
+                int childStart = levelStarts[level + 1];
+                int childEnd = level + 2 < levelsNum ? levelStarts[level + 2] : nodesNum;
+                int node = levelStarts[level];
+                for( int child = childStart; child < childEnd; child = child + nodeCapacity, node++ ) {
+                    int last = Math.min(child + nodeCapacity, childEnd);
+                    double minX = Double.POSITIVE_INFINITY;
+                    double minY = Double.POSITIVE_INFINITY;
+                    double maxX = Double.NEGATIVE_INFINITY;
+                    double maxY = Double.NEGATIVE_INFINITY;
+                    for( int c = child; c < last; c++ ) {
+                        minX = Math.min(minX, nodeEnvelopes[c * 4]);
+                        minY = Math.min(minY, nodeEnvelopes[c * 4 + 1]);
+                        maxX = Math.max(maxX, nodeEnvelopes[c * 4 + 2]);
+                        maxY = Math.max(maxY, nodeEnvelopes[c * 4 + 3]);
+                    }
+                    nodeEnvelopes[node * 4] = minX;
+                    nodeEnvelopes[node * 4 + 1] = minY;
+                    nodeEnvelopes[node * 4 + 2] = maxX;
+                    nodeEnvelopes[node * 4 + 3] = maxY;
+                    nodeOffsets[node] = child;
+                }
+            }
+
+            /*
+             * header and nodes
+             */
+            channel.position(0);
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodeCapacity);
+            out.writeInt(count);
+            out.writeInt(levelsNum);
+            out.writeLong(geometriesStart);
+            out.writeLong(geometriesEnd);
+            if (count > 0) {
+                out.writeDouble(bounds.getMinX());
+                out.writeDouble(bounds.getMinY());
+                out.writeDouble(bounds.getMaxX());
+                out.writeDouble(bounds.getMaxY());
+            } else {
+                for( int i = 0; i < 4; i++ ) {
+                    out.writeDouble(Double.NaN);
+                }
+            }
+            for( int levelStart : levelStarts ) {
+                out.writeInt(levelStart);
+            }
+            for( int node = 0; node < nodesNum; node++ ) {
+                out.writeDouble(nodeEnvelopes[node * 4]);
+                out.writeDouble(nodeEnvelopes[node * 4 + 1]);
+                out.writeDouble(nodeEnvelopes[node * 4 + 2]);
+                out.writeDouble(nodeEnvelopes[node * 4 + 3]);
+                out.writeLong(nodeOffsets[node]);
+            }
+            out.flush();
+        } finally {
+            if (raf != null)
+                raf.close();
+        }
+    }
+
+    /**
+     * Sorts the items by the Hilbert value of their envelope centers.
+     * 
+     * @param envelopes the envelopes of the items as minx, miny, maxx, maxy.
+     * @param bounds the bounds of all the items.
+     * @return the indexes of the items in Hilbert order.
+     */
+    private static int[] hilbertOrder( double[] envelopes, Envelope bounds ) {
+        int count = envelopes.length / 4;
+        double width = bounds.getWidth();
+        double height = bounds.getHeight();
+        long[] keys = new long[count];
+        for( int i = 0; i < count; i++ ) {
+            double centerX = (envelopes[i * 4] + envelopes[i * 4 + 2]) / 2.0;
+            double centerY = (envelopes[i * 4 + 1] + envelopes[i * 4 + 3]) / 2.0;
+            int x = width > 0 ? (int) (HILBERT_MAX * (centerX - bounds.getMinX()) / width) : 0;
+            int y = height > 0 ? (int) (HILBERT_MAX * (centerY - bounds.getMinY()) / height) : 0;
+            // the hilbert value in the upper bits, the index in the lower ones, flipped to sort unsigned
+            keys[i] = ((hilbert(x, y) << 32) | i) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for( int i = 0; i < count; i++ ) {
+            order[i] = (int) (keys[i] & 0xFFFFFFFFl);
+        }
+        return order;
+    }
+
+    /**
+     * Hilbert value of a position on a 2^16 x 2^16 grid.
+     * 
+     * <p>Non recursive bit twiddling version from "Fast Hilbert curve generation,
+     * sorting, and range queries" (rawrunprotected.com).</p>
+     */
+    static long hilbert( int x, int y ) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >>> 1);
+        int B = (a >>> 1) ^ a;
+        int C = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int D = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 2)) ^ (b & (b >>> 2)));
+        B = ((a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2)));
+        C ^= ((a & (c >>> 2)) ^ (b & (d >>> 2)));
+        D ^= ((b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 4)) ^ (b & (b >>> 4)));
+        B = ((a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4)));
+        C ^= ((a & (c >>> 4)) ^ (b & (d >>> 4)));
+        D ^= ((b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >>> 8)) ^ (b & (d >>> 8)));
+        D ^= ((b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8)));
+
+        a = C ^ (C >>> 1);
+        b = D ^ (D >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        return ((long) (interleave(i1) << 1 | interleave(i0))) & 0xFFFFFFFFl;
+    }
+
+    private static int interleave( int value ) {
+        value = (value | (value << 8)) & 0x00FF00FF;
+        value = (value | (value << 4)) & 0x0F0F0F0F;
+        value = (value | (value << 2)) & 0x33333333;
+        value = (value | (value << 1)) & 0x55555555;
+        return value;
+    }
+}
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import org.geotools.feature.DefaultFeatureCollection;
 
@@ -57,11 +56,25 @@ public class DxfBLOCKS {
         polygonEntities = new DefaultFeatureCollection();
     }
 
-    public static DxfBLOCKS readBlocks( RandomAccessFile raf ) throws IOException {
+    /**
+     * Constructor for entities that are added to existing collections.
+     * 
+     * @param pointEntities the collection to which the points are added.
+     * @param lineEntities the collection to which the lines are added.
+     * @param polygonEntities the collection to which the polygons are added.
+     */
+    public DxfBLOCKS( DefaultFeatureCollection pointEntities, DefaultFeatureCollection lineEntities,
+            DefaultFeatureCollection polygonEntities ) {
+        this.pointEntities = pointEntities;
+        this.lineEntities = lineEntities;
+        this.polygonEntities = polygonEntities;
+    }
+
+    public static DxfBLOCKS readBlocks( DxfGroupReader reader ) throws IOException {
         DxfBLOCKS blocks = new DxfBLOCKS();
         try {
             DxfGroup group = null;
-            while( null != (group = DxfGroup.readGroup(raf)) && !group.equals(DxfFile.ENDSEC) ) {
+            while( null != (group = DxfGroup.readGroup(reader)) && !group.equals(DxfFile.ENDSEC) ) {
             }
         } catch (IOException ioe) {
             throw ioe;
@@ -69,29 +82,32 @@ public class DxfBLOCKS {
         return blocks;
     }
 
-    public static DxfBLOCKS readEntities( RandomAccessFile raf ) throws IOException {
-        DxfBLOCKS dxfEntities = new DxfBLOCKS();
+    public static DxfBLOCKS readEntities( DxfGroupReader reader ) throws IOException {
+        return readEntities(reader, new DxfBLOCKS());
+    }
+
+    public static DxfBLOCKS readEntities( DxfGroupReader reader, DxfBLOCKS dxfEntities ) throws IOException {
         try {
             DxfGroup group = new DxfGroup(2, "BLOCKS");
-            while( !group.equals(DxfFile.ENDSEC) ) {
+            while( group != null && !group.equals(DxfFile.ENDSEC) ) {
                 // System.out.println("Group " + group.getCode() + " " + group.getValue());
                 if (group.getCode() == 0) {
                     if (group.getValue().equals("POINT")) {
-                        group = DxfPOINT.readEntity(raf, dxfEntities.pointEntities);
+                        group = DxfPOINT.readEntity(reader, dxfEntities.pointEntities);
                     } else if (group.getValue().equals("TEXT")) {
-                        group = DxfTEXT.readEntity(raf, dxfEntities.pointEntities);
+                        group = DxfTEXT.readEntity(reader, dxfEntities.pointEntities);
                     } else if (group.getValue().equals("LINE")) {
-                        group = DxfLINE.readEntity(raf, dxfEntities.lineEntities);
+                        group = DxfLINE.readEntity(reader, dxfEntities.lineEntities);
                     } else if (group.getValue().equals("POLYLINE")) {
-                        group = DxfPOLYLINE.readEntity(raf, dxfEntities.lineEntities);
+                        group = DxfPOLYLINE.readEntity(reader, dxfEntities.lineEntities);
                     } else if (group.getValue().equals("TEXT")) {
-                        group = DxfTEXT.readEntity(raf, dxfEntities.pointEntities);
+                        group = DxfTEXT.readEntity(reader, dxfEntities.pointEntities);
                     } else {
-                        group = DxfGroup.readGroup(raf);
+                        group = DxfGroup.readGroup(reader);
                     }
                 } else {
                     System.out.println("Group " + group.getCode() + " " + group.getValue() + " UNKNOWN");
-                    group = DxfGroup.readGroup(raf);
+                    group = DxfGroup.readGroup(reader);
                 }
             }
         } catch (IOException ioe) {
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 /**
  * Dxf section between the HEADER and the TABLES sections.
@@ -35,11 +34,11 @@ public class DxfCLASSES {
 
     public DxfCLASSES() {}
 
-    public static DxfCLASSES readClasses(RandomAccessFile raf) throws IOException {
+    public static DxfCLASSES readClasses(DxfGroupReader reader) throws IOException {
         DxfCLASSES classes = new DxfCLASSES();
         try {
             DxfGroup group = null;
-            while (null != (group = DxfGroup.readGroup(raf)) &&
+            while (null != (group = DxfGroup.readGroup(reader)) &&
                                 !group.equals(DxfFile.ENDSEC)) {}
         } catch(IOException ioe) {throw ioe;}
         return classes;
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
@@ -48,30 +47,47 @@ public class DxfENTITIES {
         polygonEntities = new DefaultFeatureCollection();
     }
 
-    public static DxfENTITIES readEntities( RandomAccessFile raf ) throws IOException {
-        DxfENTITIES dxfEntities = new DxfENTITIES();
+    /**
+     * Constructor for entities that are added to existing collections.
+     * 
+     * @param pointEntities the collection to which the points are added.
+     * @param lineEntities the collection to which the lines are added.
+     * @param polygonEntities the collection to which the polygons are added.
+     */
+    public DxfENTITIES( DefaultFeatureCollection pointEntities, DefaultFeatureCollection lineEntities,
+            DefaultFeatureCollection polygonEntities ) {
+        this.pointEntities = pointEntities;
+        this.lineEntities = lineEntities;
+        this.polygonEntities = polygonEntities;
+    }
+
+    public static DxfENTITIES readEntities( DxfGroupReader reader ) throws IOException {
+        return readEntities(reader, new DxfENTITIES());
+    }
+
+    public static DxfENTITIES readEntities( DxfGroupReader reader, DxfENTITIES dxfEntities ) throws IOException {
         try {
             DxfGroup group = new DxfGroup(2, "ENTITIES");
             String nomVariable;
-            while( !group.equals(DxfFile.ENDSEC) ) {
+            while( group != null && !group.equals(DxfFile.ENDSEC) ) {
                 // System.out.println("Group " + group.getCode() + " " + group.getValue());
                 if (group.getCode() == 0) {
                     if (group.getValue().equals("POINT")) {
-                        group = DxfPOINT.readEntity(raf, dxfEntities.pointEntities);
+                        group = DxfPOINT.readEntity(reader, dxfEntities.pointEntities);
                     } else if (group.getValue().equals("TEXT")) {
-                        group = DxfTEXT.readEntity(raf, dxfEntities.pointEntities);
+                        group = DxfTEXT.readEntity(reader, dxfEntities.pointEntities);
                     } else if (group.getValue().equals("LINE")) {
-                        group = DxfLINE.readEntity(raf, dxfEntities.lineEntities);
+                        group = DxfLINE.readEntity(reader, dxfEntities.lineEntities);
                     } else if (group.getValue().equals("POLYLINE")) {
-                        group = DxfPOLYLINE.readEntity(raf, dxfEntities.lineEntities);
+                        group = DxfPOLYLINE.readEntity(reader, dxfEntities.lineEntities);
                     } else if (group.getValue().equals("LWPOLYLINE")) {
-                        group = DxfLWPOLYLINE.readEntity(raf, dxfEntities.lineEntities);
+                        group = DxfLWPOLYLINE.readEntity(reader, dxfEntities.lineEntities);
                     } else {
-                        group = DxfGroup.readGroup(raf);
+                        group = DxfGroup.readGroup(reader);
                     }
                 } else {
                     System.out.println("Group " + group.getCode() + " " + group.getValue() + " UNKNOWN");
-                    group = DxfGroup.readGroup(raf);
+                    group = DxfGroup.readGroup(reader);
                 }
             }
         } catch (IOException ioe) {
@@ -26,7 +26,6 @@ package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -168,47 +167,39 @@ public class DxfFile {
     }
 
     public static DxfFile createFromFile( File file, CoordinateReferenceSystem crs ) throws IOException {
-        RandomAccessFile raf = new RandomAccessFile(file, "r");
-        return createFromFile(raf, crs);
+        DxfGroupReader reader = new DxfGroupReader(file);
+        return createFromFile(reader, crs);
     }
 
-    public static DxfFile createFromFile( RandomAccessFile raf, CoordinateReferenceSystem crs ) throws IOException {
+    public static DxfFile createFromFile( DxfGroupReader reader, CoordinateReferenceSystem crs ) throws IOException {
         DxfFile dxfFile = new DxfFile(crs);
         initializeDXF_SCHEMA(crs);
 
-        dxfFile.pointFeatures = new DefaultFeatureCollection();
-        dxfFile.lineFeatures = new DefaultFeatureCollection();
-        dxfFile.polygonFeatures = new DefaultFeatureCollection();
+        DefaultFeatureCollection pointFeatures = new DefaultFeatureCollection();
+        DefaultFeatureCollection lineFeatures = new DefaultFeatureCollection();
+        DefaultFeatureCollection polygonFeatures = new DefaultFeatureCollection();
+        dxfFile.pointFeatures = pointFeatures;
+        dxfFile.lineFeatures = lineFeatures;
+        dxfFile.polygonFeatures = polygonFeatures;
 
         DxfGroup group = null;
-        while( null != (group = DxfGroup.readGroup(raf)) ) {
+        while( null != (group = DxfGroup.readGroup(reader)) ) {
             if (group.equals(SECTION)) {
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
                 System.out.println("SECTION " + group.getValue());
                 if (group.equals(HEADER)) {
-                    dxfFile.header = DxfHEADER.readHeader(raf);
+                    dxfFile.header = DxfHEADER.readHeader(reader);
                 } else if (group.equals(CLASSES)) {
-                    dxfFile.classes = DxfCLASSES.readClasses(raf);
+                    dxfFile.classes = DxfCLASSES.readClasses(reader);
                 } else if (group.equals(TABLES)) {
-                    dxfFile.tables = DxfTABLES.readTables(raf);
+                    dxfFile.tables = DxfTABLES.readTables(reader);
                 } else if (group.equals(BLOCKS)) {
-                    dxfFile.blocks = DxfBLOCKS.readEntities(raf);
-                    // dxfFile.datasets.put("BLOCKS", dxfFile.blocks.entities);
-                    ((DefaultFeatureCollection) dxfFile.pointFeatures)
-                            .addAll((SimpleFeatureCollection) dxfFile.blocks.pointEntities);
-                    ((DefaultFeatureCollection) dxfFile.lineFeatures)
-                            .addAll((SimpleFeatureCollection) dxfFile.blocks.lineEntities);
-                    ((DefaultFeatureCollection) dxfFile.polygonFeatures)
-                            .addAll((SimpleFeatureCollection) dxfFile.blocks.polygonEntities);
+                    // the features are added straight to the file collections
+                    dxfFile.blocks = DxfBLOCKS.readEntities(reader, new DxfBLOCKS(pointFeatures, lineFeatures,
+                            polygonFeatures));
                 } else if (group.equals(ENTITIES)) {
-                    dxfFile.entities = DxfENTITIES.readEntities(raf);
-                    // dxfFile.datasets.put("ENTITIES", dxfFile.entities.entities);
-                    ((DefaultFeatureCollection) dxfFile.pointFeatures)
-                            .addAll((SimpleFeatureCollection) dxfFile.entities.pointEntities);
-                    ((DefaultFeatureCollection) dxfFile.lineFeatures)
-                            .addAll((SimpleFeatureCollection) dxfFile.entities.lineEntities);
-                    ((DefaultFeatureCollection) dxfFile.polygonFeatures)
-                            .addAll((SimpleFeatureCollection) dxfFile.entities.polygonEntities);
+                    dxfFile.entities = DxfENTITIES.readEntities(reader, new DxfENTITIES(pointFeatures, lineFeatures,
+                            polygonFeatures));
                 } else if (group.equals(OBJECTS)) {
                     // objects = DxfOBJECTS.readObjects(br);
                     System.out.println("Jump objects: " + group.getValue());
@@ -226,7 +217,7 @@ public class DxfFile {
                 // " UNKNOWN");
             }
         }
-        raf.close();
+        reader.close();
         return dxfFile;
     }
 
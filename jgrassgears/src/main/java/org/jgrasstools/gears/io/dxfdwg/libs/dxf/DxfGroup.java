@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Locale;
@@ -51,11 +50,32 @@ public class DxfGroup {
     private String value;
     private long address;
 
+    // the value of numeric groups, parsed while reading the file
+    private boolean isNumber = false;
+    private boolean isInteger = false;
+    private double number;
+
     public DxfGroup( int code, String value ) {
         this.code = code;
         this.value = value;
     }
 
+    /**
+     * Constructor for groups whose value has already been parsed as a number.
+     * 
+     * <p>The string value is created only if requested.</p>
+     * 
+     * @param code the group code.
+     * @param number the value.
+     * @param isInteger if <code>true</code>, the value is an integer.
+     */
+    DxfGroup( int code, double number, boolean isInteger ) {
+        this.code = code;
+        this.number = number;
+        this.isInteger = isInteger;
+        this.isNumber = true;
+    }
+
     public DxfGroup( String code, String value ) throws NumberFormatException {
         try {
             this.code = Integer.parseInt(code);
@@ -72,22 +92,38 @@ public class DxfGroup {
         this.code = code;
     }
     public String getValue() {
+        if (value == null && isNumber) {
+            if (isInteger) {
+                value = Long.toString((long) number);
+            } else {
+                value = Double.toString(number);
+            }
+        }
         return value;
     }
     public int getIntValue() {
+        if (isNumber) {
+            return (int) number;
+        }
         return Integer.parseInt(value.trim());
     }
     public float getFloatValue() {
+        if (isNumber) {
+            return (float) number;
+        }
         return Float.parseFloat(value.trim());
     }
     public double getDoubleValue() {
+        if (isNumber) {
+            return number;
+        }
         return Double.parseDouble(value.trim());
     }
     // public void setValue() {this.value = value;}
     public long getAddress() {
         return address;
     }
-    private void setAddress( long address ) {
+    void setAddress( long address ) {
         this.address = address;
     }
 
@@ -97,7 +133,7 @@ public class DxfGroup {
         int result = 1;
         result = prime * result + (int) (address ^ (address >>> 32));
         result = prime * result + code;
-        result = prime * result + ((value == null) ? 0 : value.hashCode());
+        result = prime * result + ((getValue() == null) ? 0 : getValue().hashCode());
         return result;
     }
 
@@ -105,7 +141,7 @@ public class DxfGroup {
         if (!(other instanceof DxfGroup)) {
             return false;
         }
-        if (code == ((DxfGroup) other).getCode() && value.equals(((DxfGroup) other).getValue())) {
+        if (code == ((DxfGroup) other).getCode() && getValue().equals(((DxfGroup) other).getValue())) {
             return true;
         } else
             return false;
@@ -115,7 +151,7 @@ public class DxfGroup {
         String codeString = "    " + Integer.toString(code);
         int stringLength = codeString.length();
         codeString = codeString.substring(stringLength - (code < 1000 ? 3 : 4), stringLength);
-        return codeString + "\r\n" + value + "\r\n";
+        return codeString + "\r\n" + getValue() + "\r\n";
     }
 
     public static String int34car( int code ) {
@@ -161,16 +197,11 @@ public class DxfGroup {
             return toString(code, value.toString());
     }
 
-    public static DxfGroup readGroup( RandomAccessFile raf ) throws IOException {
+    public static DxfGroup readGroup( DxfGroupReader reader ) throws IOException {
         try {
-            long pos = raf.getFilePointer();
-            String line1 = raf.readLine();
-            String line2 = raf.readLine();
-            DxfGroup dxfGroup = new DxfGroup(Integer.parseInt(line1.trim()), line2);
-            dxfGroup.setAddress(pos);
-            return dxfGroup;
+            return reader.readGroup();
         } catch (IOException ioe) {
-            raf.close();
+            reader.close();
             throw ioe;
         }
     }
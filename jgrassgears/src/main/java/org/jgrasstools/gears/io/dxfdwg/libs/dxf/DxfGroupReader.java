@@ -0,0 +1,382 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A reader of the {@link DxfGroup groups} of a dxf file.
+ *
+ * <p>
+ * The file is read through a large buffer and the code and value lines are
+ * tokenized straight from the bytes: the codes are parsed as ints, the values of
+ * numeric groups as numbers, without creating strings for them, and the values of
+ * the codes that name things, as entity types, layers and line types, are taken from
+ * a small cache, since they repeat all over the file.
+ * </p>
+ * <p>
+ * Lines are decoded as latin-1 and may end with CR, LF or CRLF.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class DxfGroupReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int CACHE_SIZE = 1024;
+
+    /**
+     * The max number of significant digits of numbers parsed without creating a string.
+     */
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for( int i = 1; i < POWERS_OF_TEN.length; i++ ) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition = 0;
+    private int bufferLimit = 0;
+    private long bufferAddress = 0;
+
+    private char[] line = new char[256];
+    private int lineLength = 0;
+    private double parsedNumber;
+
+    private final String[] valuesCache = new String[CACHE_SIZE];
+
+    public DxfGroupReader( File file ) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    public DxfGroupReader( InputStream inputStream ) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * Read the next group.
+     *
+     * @return the group or <code>null</code>, if the end of the file has been reached.
+     * @throws IOException
+     * @throws NumberFormatException if the code of the group is not a number.
+     */
+    public DxfGroup readGroup() throws IOException {
+        long address = bufferAddress + bufferPosition;
+        if (!readLine()) {
+            return null;
+        }
+        int code = parseCode();
+        if (!readLine()) {
+            lineLength = 0;
+        }
+
+        DxfGroup group = null;
+        if (isDoubleCode(code)) {
+            if (parseDouble()) {
+                group = new DxfGroup(code, parsedNumber, false);
+            }
+        } else if (isIntegerCode(code)) {
+            if (parseInteger()) {
+                group = new DxfGroup(code, parsedNumber, true);
+            }
+        }
+        if (group == null) {
+            String value;
+            if (isNameCode(code)) {
+                value = getCachedValue();
+            } else {
+                value = new String(line, 0, lineLength);
+            }
+            group = new DxfGroup(code, value);
+        }
+        group.setAddress(address);
+        return group;
+    }
+
+    /**
+     * Close the file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    /**
+     * Read the next line into {@link #line}.
+     *
+     * @return <code>false</code> if the end of the file has been reached before any char.
+     * @throws IOException
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean readAny = false;
+        while( true ) {
+            if (bufferPosition == bufferLimit && !fillBuffer()) {
+                return readAny;
+            }
+            readAny = true;
+            int b = buffer[bufferPosition++] & 0xFF;
+            if (b == '\n') {
+                return true;
+            } else if (b == '\r') {
+                if (bufferPosition == bufferLimit && !fillBuffer()) {
+                    return true;
+                }
+                if (buffer[bufferPosition] == '\n') {
+                    bufferPosition++;
+                }
+                return true;
+            }
+            if (lineLength == line.length) {
+                char[] newLine = new char[line.length * 2];
+                System.arraycopy(line, 0, newLine, 0, lineLength);
+                line = newLine;
+            }
+            line[lineLength++] = (char) b;
+        }
+    }
+
+    private boolean fillBuffer() throws IOException {
+        bufferAddress += bufferLimit;
+        bufferPosition = 0;
+        bufferLimit = 0;
+        int read;
+        do {
+            read = inputStream.read(buffer, 0, buffer.length);
+        } while( read == 0 );
+        if (read < 0) {
+            return false;
+        }
+        bufferLimit = read;
+        return true;
+    }
+
+    private int parseCode() {
+        int start = 0;
+        int end = lineLength;
+        while( start < end && line[start] <= ' ' ) {
+            start++;
+        }
+        while( end > start && line[end - 1] <= ' ' ) {
+            end--;
+        }
+        boolean isNegative = false;
+        int i = start;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            isNegative = line[i] == '-';
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(new String(line, start, end - start));
+        }
+        int code = 0;
+        for( ; i < end; i++ ) {
+            char c = line[i];
+            if (c < '0' || c > '9') {
+                return Integer.parseInt(new String(line, start, end - start));
+            }
+            code = code * 10 + (c - '0');
+        }
+        return isNegative ? -code : code;
+    }
+
+    /**
+     * Parse the line as an integer into {@link #parsedNumber}.
+     *
+     * @return <code>false</code> if the line is not a plain integer.
+     */
+    private boolean parseInteger() {
+        int start = 0;
+        int end = lineLength;
+        while( start < end && line[start] <= ' ' ) {
+            start++;
+        }
+        while( end > start && line[end - 1] <= ' ' ) {
+            end--;
+        }
+        boolean isNegative = false;
+        if (start < end && (line[start] == '-' || line[start] == '+')) {
+            isNegative = line[start] == '-';
+            start++;
+        }
+        if (start == end || end - start > MAX_FAST_DIGITS) {
+            return false;
+        }
+        long value = 0;
+        for( int i = start; i < end; i++ ) {
+            char c = line[i];
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        parsedNumber = isNegative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Parse the line as a decimal number into {@link #parsedNumber}.
+     *
+     * <p>Only numbers that can be converted exactly, as by {@link Double#parseDouble(String)},
+     * are parsed: the significant digits have to fit a double mantissa and the
+     * power of ten has to be exact.</p>
+     *
+     * @return <code>false</code> if the line could not be parsed.
+     */
+    private boolean parseDouble() {
+        int i = 0;
+        int end = lineLength;
+        while( i < end && line[i] <= ' ' ) {
+            i++;
+        }
+        while( end > i && line[end - 1] <= ' ' ) {
+            end--;
+        }
+        boolean isNegative = false;
+        if (i < end && (line[i] == '-' || line[i] == '+')) {
+            isNegative = line[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean isDecimal = false;
+        for( ; i < end; i++ ) {
+            char c = line[i];
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa != 0 || c != '0') {
+                    significantDigits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (isDecimal) {
+                    exponent--;
+                }
+            } else if (c == '.' && !isDecimal) {
+                isDecimal = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0 || significantDigits > MAX_FAST_DIGITS) {
+            return false;
+        }
+        if (i < end) {
+            char c = line[i];
+            if (c != 'e' && c != 'E') {
+                return false;
+            }
+            i++;
+            boolean isNegativeExponent = false;
+            if (i < end && (line[i] == '-' || line[i] == '+')) {
+                isNegativeExponent = line[i] == '-';
+                i++;
+            }
+            if (i == end || end - i > 3) {
+                return false;
+            }
+            int exp = 0;
+            for( ; i < end; i++ ) {
+                c = line[i];
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+                exp = exp * 10 + (c - '0');
+            }
+            exponent += isNegativeExponent ? -exp : exp;
+        }
+
+        double value = mantissa;
+        if (exponent < 0) {
+            if (-exponent >= POWERS_OF_TEN.length) {
+                return false;
+            }
+            value = value / POWERS_OF_TEN[-exponent];
+        } else if (exponent > 0) {
+            if (exponent >= POWERS_OF_TEN.length) {
+                return false;
+            }
+            value = value * POWERS_OF_TEN[exponent];
+        }
+        parsedNumber = isNegative ? -value : value;
+        return true;
+    }
+
+    /**
+     * Get the value of the line from the cache, adding it if missing.
+     */
+    private String getCachedValue() {
+        int hash = 0;
+        for( int i = 0; i < lineLength; i++ ) {
+            hash = 31 * hash + line[i];
+        }
+        int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String cached = valuesCache[index];
+        if (cached != null && cached.length() == lineLength) {
+            boolean isEqual = true;
+            for( int i = 0; i < lineLength; i++ ) {
+                if (cached.charAt(i) != line[i]) {
+                    isEqual = false;
+                    break;
+                }
+            }
+            if (isEqual) {
+                return cached;
+            }
+        }
+        String value = new String(line, 0, lineLength);
+        valuesCache[index] = value;
+        return value;
+    }
+
+    /**
+     * @return <code>true</code> for the codes of floating point values.
+     */
+    private static boolean isDoubleCode( int code ) {
+        return (code >= 10 && code <= 59) || (code >= 110 && code <= 149) || (code >= 210 && code <= 239)
+                || (code >= 460 && code <= 469) || (code >= 1010 && code <= 1059);
+    }
+
+    /**
+     * @return <code>true</code> for the codes of integer and boolean values.
+     */
+    private static boolean isIntegerCode( int code ) {
+        return (code >= 60 && code <= 99) || (code >= 160 && code <= 179) || (code >= 270 && code <= 299)
+                || (code >= 370 && code <= 389) || (code >= 400 && code <= 409) || (code >= 420 && code <= 429)
+                || (code >= 440 && code <= 459) || (code >= 1060 && code <= 1071);
+    }
+
+    /**
+     * @return <code>true</code> for the codes whose values name things and repeat in the file.
+     */
+    private static boolean isNameCode( int code ) {
+        return code == 0 || code == 2 || (code >= 6 && code <= 9) || code == 100 || code == 1001;
+    }
+
+}
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -204,12 +203,12 @@ public class DxfHEADER {
         headerTable.put(nomVariable, groups);
     }
 
-    public static DxfHEADER readHeader(RandomAccessFile raf) throws IOException {
+    public static DxfHEADER readHeader(DxfGroupReader reader) throws IOException {
         DxfHEADER header = new DxfHEADER();
         try {
             DxfGroup group = null;
             String nomVariable = null;
-            while (null != (group = DxfGroup.readGroup(raf)) &&
+            while (null != (group = DxfGroup.readGroup(reader)) &&
                                 !group.equals(DxfFile.ENDSEC)) {
                 if (group.getCode()==9) {
                     nomVariable = group.getValue();
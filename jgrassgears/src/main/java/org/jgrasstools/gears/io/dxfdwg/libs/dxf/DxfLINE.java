@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
@@ -49,7 +48,7 @@ public class DxfLINE extends DxfENTITY {
         super("DEFAULT");
     }
 
-    public static DxfGroup readEntity( RandomAccessFile raf,
+    public static DxfGroup readEntity( DxfGroupReader reader,
             DefaultFeatureCollection entities ) throws IOException {
 
         double x1 = Double.NaN, y1 = Double.NaN, z1 = Double.NaN;
@@ -66,7 +65,7 @@ public class DxfLINE extends DxfENTITY {
         Double text_height = new Double(0.0);
         String text_style = "";
 
-        while( null != (group = DxfGroup.readGroup(raf)) && group.getCode() != 0 ) {
+        while( null != (group = DxfGroup.readGroup(reader)) && group.getCode() != 0 ) {
             if (group.getCode() == 8)
                 layer = group.getValue();
             else if (group.getCode() == 6)
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -48,7 +47,7 @@ public class DxfPOINT extends DxfENTITY {
         super("DEFAULT");
     }
 
-    public static DxfGroup readEntity( RandomAccessFile raf,
+    public static DxfGroup readEntity( DxfGroupReader reader,
             DefaultFeatureCollection entities )
             throws IOException {
 
@@ -64,7 +63,7 @@ public class DxfPOINT extends DxfENTITY {
         Double text_height = new Double(0.0);
         String text_style = "";
 
-        while( null != (group = DxfGroup.readGroup(raf)) && group.getCode() != 0 ) {
+        while( null != (group = DxfGroup.readGroup(reader)) && group.getCode() != 0 ) {
             if (group.getCode() == 8)
                 layer = group.getValue();
             else if (group.getCode() == 6)
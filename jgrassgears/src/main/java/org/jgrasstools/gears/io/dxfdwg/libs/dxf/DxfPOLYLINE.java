@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -50,7 +49,7 @@ public class DxfPOLYLINE extends DxfENTITY {
         super("DEFAULT");
     }
 
-    public static DxfGroup readEntity( RandomAccessFile raf,
+    public static DxfGroup readEntity( DxfGroupReader reader,
             DefaultFeatureCollection entities ) throws IOException {
 
         SimpleFeatureBuilder builder = new SimpleFeatureBuilder(DxfFile.DXF_LINESCHEMA);
@@ -70,32 +69,32 @@ public class DxfPOLYLINE extends DxfENTITY {
         while( !group.equals(DxfFile.ENDSEC) ) {
             if (group.getCode() == 8) {
                 layer = group.getValue();
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             } else if (group.getCode() == 6) {
                 ltype = group.getValue();
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             } else if (group.getCode() == 38) {
                 elevation = new Double(group.getDoubleValue());
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             } else if (group.getCode() == 39) {
                 thickness = new Double(group.getDoubleValue());
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             } else if (group.getCode() == 62) {
                 color = new Integer(group.getIntValue());
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             } else if (group.getCode() == 70) {
                 if ((group.getIntValue() & 1) == 1)
                     geomType = "Polygon";
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             } else if (group.equals(VERTEX)) {
-                group = DxfVERTEX.readEntity(raf, coordList);
+                group = DxfVERTEX.readEntity(reader, coordList);
             } else if (group.equals(SEQEND)) {
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             } else if (group.getCode() == 0) {
                 // 0 group different from VERTEX and different from SEQEND
                 break;
             } else {
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
             }
         }
         if (geomType.equals("LineString")) {
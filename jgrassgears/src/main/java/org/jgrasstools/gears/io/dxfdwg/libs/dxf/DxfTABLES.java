@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -72,47 +71,47 @@ public class DxfTABLES {
         vPort = new HashMap();
     }
 
-    public static DxfTABLES readTables(RandomAccessFile raf) throws IOException {
+    public static DxfTABLES readTables(DxfGroupReader reader) throws IOException {
         DxfTABLES tables = new DxfTABLES();
         DxfGroup group = null;
         String nomVariable = null;
         // It�ration sur chaque table
-        while (null != (group = DxfGroup.readGroup(raf)) && !group.equals(DxfFile.ENDSEC)) {
+        while (null != (group = DxfGroup.readGroup(reader)) && !group.equals(DxfFile.ENDSEC)) {
             Map map = null;
             if (group.equals(TABLE)) {
                 // Lecture du groupe portant le nom de la table
-                group = DxfGroup.readGroup(raf);
+                group = DxfGroup.readGroup(reader);
                 if (group.equals(APPID)) {
                     //System.out.println("\tTABLE APPID");
-                    tables.appId = DxfTABLE_APPID_ITEM.readTable(raf);
+                    tables.appId = DxfTABLE_APPID_ITEM.readTable(reader);
                 }
                 else if (group.equals(DIMSTYLE)) {
                     //System.out.println("\tTABLE DIMSTYLE");
-                    tables.dimStyle = DxfTABLE_DIMSTYLE_ITEM.readTable(raf);
+                    tables.dimStyle = DxfTABLE_DIMSTYLE_ITEM.readTable(reader);
                 }
                 else if (group.equals(LTYPE)) {
                     //System.out.println("\tTABLE LTYPE");
-                    tables.lType = DxfTABLE_LTYPE_ITEM.readTable(raf);
+                    tables.lType = DxfTABLE_LTYPE_ITEM.readTable(reader);
                 }
                 else if (group.equals(LAYER)) {
                     //System.out.println("\tTABLE LAYER");
-                    tables.layer = DxfTABLE_LAYER_ITEM.readTable(raf);
+                    tables.layer = DxfTABLE_LAYER_ITEM.readTable(reader);
                 }
                 else if (group.equals(STYLE)) {
                     //System.out.println("\tTABLE STYLE");
-                    tables.style = DxfTABLE_STYLE_ITEM.readTable(raf);
+                    tables.style = DxfTABLE_STYLE_ITEM.readTable(reader);
                 }
                 else if (group.equals(UCS)) {
                     //System.out.println("\tTABLE UCS");
-                    tables.ucs = DxfTABLE_UCS_ITEM.readTable(raf);
+                    tables.ucs = DxfTABLE_UCS_ITEM.readTable(reader);
                 }
                 else if (group.equals(VIEW)) {
                     //System.out.println("\tTABLE VIEW");
-                    tables.view= DxfTABLE_VIEW_ITEM.readTable(raf);
+                    tables.view= DxfTABLE_VIEW_ITEM.readTable(reader);
                 }
                 else if (group.equals(VPORT)) {
                     //System.out.println("\tTABLE VPORT");
-                    tables.vPort= DxfTABLE_VPORT_ITEM.readTable(raf);
+                    tables.vPort= DxfTABLE_VPORT_ITEM.readTable(reader);
                 }
                 else if (group.getCode() == 999) {
                     //System.out.println("Commentaire : " + group.getValue());
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -43,12 +42,12 @@ public class DxfTABLE_DIMSTYLE_ITEM extends DxfTABLE_ITEM {
         super(name, flags);
     }
 
-    public static Map readTable(RandomAccessFile raf) throws IOException {
+    public static Map readTable(DxfGroupReader reader) throws IOException {
         DxfTABLE_DIMSTYLE_ITEM item = new DxfTABLE_DIMSTYLE_ITEM("DEFAULT", 0);
         Map table  = new LinkedHashMap();
         try {
             DxfGroup group;
-            while (null != (group = DxfGroup.readGroup(raf)) && !group.equals(ENDTAB)) {
+            while (null != (group = DxfGroup.readGroup(reader)) && !group.equals(ENDTAB)) {
                 if (group.equals(DIMSTYLE)) {
                     item = new DxfTABLE_DIMSTYLE_ITEM("DEFAULT", 0);
                 }
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -58,12 +57,12 @@ public class DxfTABLE_LAYER_ITEM extends DxfTABLE_ITEM {
     public int getcolorNumber() {return colorNumber;}
     public void setColorNumber(int colorNumber) {this.colorNumber = colorNumber;}
 
-    public static Map readTable(RandomAccessFile raf) throws IOException {
+    public static Map readTable(DxfGroupReader reader) throws IOException {
         DxfTABLE_LAYER_ITEM item = new DxfTABLE_LAYER_ITEM("DEFAULT", 0);
         Map table  = new LinkedHashMap();
         try {
             DxfGroup group;
-            while (null != (group = DxfGroup.readGroup(raf)) && !group.equals(ENDTAB)) {
+            while (null != (group = DxfGroup.readGroup(reader)) && !group.equals(ENDTAB)) {
                 if (group.equals(LAYER)) {
                     item = new DxfTABLE_LAYER_ITEM("DEFAULT", 0);
                 }
@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -68,13 +67,13 @@ public class DxfTABLE_LTYPE_ITEM extends DxfTABLE_ITEM {
     public float[] getPattern() {return pattern;}
     public void setPattern(float[] pattern) {this.pattern = pattern;}
 
-    public static Map readTable(RandomAccessFile raf) throws IOException {
+    public static Map readTable(DxfGroupReader reader) throws IOException {
         DxfTABLE_LTYPE_ITEM item = new DxfTABLE_LTYPE_ITEM("DEFAULT", 0);
         Map table  = new LinkedHashMap();
         try {
             DxfGroup group;
             int patternDashCount = 0;
-            while (null != (group = DxfGroup.readGroup(raf)) && !group.equals(ENDTAB)) {
+            while (null != (group = DxfGroup.readGroup(reader)) && !group.equals(ENDTAB)) {
                 if (group.equals(LTYPE)) {
                     item = new DxfTABLE_LTYPE_ITEM("DEFAULT", 0);
                 }
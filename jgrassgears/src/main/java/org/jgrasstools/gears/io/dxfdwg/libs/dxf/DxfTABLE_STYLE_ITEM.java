@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -105,12 +104,12 @@ public class DxfTABLE_STYLE_ITEM extends DxfTABLE_ITEM {
         this.bigFontFileName = bigFontFileName;
     }
 
-    public static Map readTable(RandomAccessFile raf) throws IOException {
+    public static Map readTable(DxfGroupReader reader) throws IOException {
         DxfTABLE_STYLE_ITEM item = new DxfTABLE_STYLE_ITEM("DEFAULT", 0);
         Map table  = new LinkedHashMap();
         try {
             DxfGroup group;
-            while (null != (group = DxfGroup.readGroup(raf)) && !group.equals(ENDTAB)) {
+            while (null != (group = DxfGroup.readGroup(reader)) && !group.equals(ENDTAB)) {
                 if (group.equals(STYLE)) {
                     item = new DxfTABLE_STYLE_ITEM("DEFAULT", 0);
                 }
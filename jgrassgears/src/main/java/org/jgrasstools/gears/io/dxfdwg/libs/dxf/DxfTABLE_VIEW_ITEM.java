@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -115,12 +114,12 @@ public class DxfTABLE_VIEW_ITEM extends DxfTABLE_ITEM {
     public void setTwistAngle(float twistAngle) {this.twistAngle = twistAngle;}
     public void setViewMode(int viewMode) {this.viewMode = viewMode;}
 
-    public static Map readTable(RandomAccessFile raf) throws IOException {
+    public static Map readTable(DxfGroupReader reader) throws IOException {
         DxfTABLE_VIEW_ITEM item = new DxfTABLE_VIEW_ITEM("DEFAULT", 0);
         Map table  = new LinkedHashMap();
         try {
             DxfGroup group;
-            while (null != (group = DxfGroup.readGroup(raf)) && !group.equals(ENDTAB)) {
+            while (null != (group = DxfGroup.readGroup(reader)) && !group.equals(ENDTAB)) {
                 if (group.equals(VIEW)) {
                     item = new DxfTABLE_VIEW_ITEM("DEFAULT", 0);
                 }
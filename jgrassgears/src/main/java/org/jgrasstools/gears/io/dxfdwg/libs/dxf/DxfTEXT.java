@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
@@ -47,7 +46,7 @@ public class DxfTEXT extends DxfENTITY {
         super("DEFAULT");
     }
 
-    public static DxfGroup readEntity( RandomAccessFile raf,
+    public static DxfGroup readEntity( DxfGroupReader reader,
             DefaultFeatureCollection entities ) throws IOException {
         SimpleFeatureBuilder builder = new SimpleFeatureBuilder(DxfFile.DXF_POINTSCHEMA);
         String layer = "";
@@ -61,7 +60,7 @@ public class DxfTEXT extends DxfENTITY {
 
         double x = Double.NaN, y = Double.NaN, z = Double.NaN;
         DxfGroup group;
-        while( null != (group = DxfGroup.readGroup(raf)) && group.getCode() != 0 ) {
+        while( null != (group = DxfGroup.readGroup(reader)) && group.getCode() != 0 ) {
             if (group.getCode() == 8)
                 layer = group.getValue();
             else if (group.getCode() == 6)
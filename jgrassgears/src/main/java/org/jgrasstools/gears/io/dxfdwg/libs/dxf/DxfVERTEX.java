@@ -25,7 +25,6 @@
 package org.jgrasstools.gears.io.dxfdwg.libs.dxf;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateList;
@@ -42,13 +41,13 @@ public class DxfVERTEX extends DxfENTITY {
 
     public DxfVERTEX() {super("DEFAULT");}
 
-    public static DxfGroup readEntity(RandomAccessFile raf, CoordinateList coordList)
+    public static DxfGroup readEntity(DxfGroupReader reader, CoordinateList coordList)
                                                             throws IOException {
         Coordinate coord;
         double x=Double.NaN, y=Double.NaN, z=Double.NaN;
         DxfGroup group;
         try {
-            while (null != (group = DxfGroup.readGroup(raf)) && group.getCode()!=0) {
+            while (null != (group = DxfGroup.readGroup(reader)) && group.getCode()!=0) {
                 if (group.getCode()==10) x = group.getDoubleValue();
                 else if (group.getCode()==20) y = group.getDoubleValue();
                 else if (group.getCode()==30) z = group.getDoubleValue();
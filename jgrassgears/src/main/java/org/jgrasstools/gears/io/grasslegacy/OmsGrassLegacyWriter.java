@@ -29,6 +29,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYWRITER_UI;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYWRITER_file_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYWRITER_geodata_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYWRITER_inWindow_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSGRASSLEGACYWRITER_pMaxThreads_DESCRIPTION;
 
 import java.io.File;
 
@@ -72,6 +73,10 @@ public class OmsGrassLegacyWriter extends JGTModel {
     @In
     public String file = null;
 
+    @Description(OMSGRASSLEGACYWRITER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     private boolean hasWritten = false;
 
     @Execute
@@ -85,6 +90,7 @@ public class OmsGrassLegacyWriter extends JGTModel {
         try {
             writer.setOutputDataObject(new double[0][0]);
             writer.setDataWindow(inWindow);
+            writer.setParameter("threads", pMaxThreads);
             writer.open(mapEnvironment.getCELL().getAbsolutePath());
             writer.write(geodata);
         } finally {
@@ -17,9 +17,18 @@
  */
 package org.jgrasstools.gears.io.grasslegacy.io;
 
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
-import java.util.BitSet;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.Deflater;
 
 import org.jgrasstools.gears.io.grasslegacy.utils.Window;
@@ -36,6 +45,11 @@ public class CompressesRasterWriter {
 
     private static final String ERROR_IN_WRITING_RASTER = "Error in writing raster: ";
 
+    /**
+     * The number of rows compressed together.
+     */
+    private static final int ROWS_BLOCK_SIZE = 32;
+
     private int outputToDiskType = 0;
 
 
@@ -47,6 +61,11 @@ public class CompressesRasterWriter {
 
     private Window dataWindow = null;
 
+    private int threads = 1;
+
+    /* the rows written so far */
+    private int writtenRows = 0;
+
     /**
      * Preparing the environment for compressing and writing the map to disk
      * 
@@ -96,6 +115,13 @@ public class CompressesRasterWriter {
      * header is re-written with the right rowaddresses (at the begin we do not know how much
      * compression will influence).
      * 
+     * <p>
+     * Rows are compressed in blocks of {@link #ROWS_BLOCK_SIZE}. With more than one thread the
+     * blocks are compressed on a pool of workers, while the calling thread writes them in row
+     * order, together with the null file rows and the row addresses. The written files are the
+     * same for any number of threads.
+     * </p>
+     * 
      * @param theCreatedFile - handler for the main map file
      * @param theCreatedNullFile - handler for the file of the null map (in cell_misc)
      * @param rastermatrix - the data matrix
@@ -103,152 +129,219 @@ public class CompressesRasterWriter {
      * @throws RasterWritingFailureException
      */
     private boolean compressAndWrite( RandomAccessFile theCreatedFile, RandomAccessFile theCreatedNullFile,
-            double[][] rastermatrix ) throws RasterWritingFailureException {
+            final double[][] rastermatrix ) throws RasterWritingFailureException {
+        // set the number of bytes needed for the values to write to disk
+        final int numberofbytes = outputToDiskType * 4;
+        final int rows = rastermatrix.length;
+        int blocksNum = (rows + ROWS_BLOCK_SIZE - 1) / ROWS_BLOCK_SIZE;
+        final LinkedBlockingQueue<Deflater> deflaters = new LinkedBlockingQueue<Deflater>();
+        ExecutorService fixedThreadPool = null;
+        writtenRows = 0;
         try {
-            // set the number of bytes needed for the values to write to disk
-            int numberofbytes = outputToDiskType * 4;
-
-            /*
-             * the underlying byte array is needed as input to the deflater create it with the size
-             * of the column * numberofbytes (8 for double, 4 for float), which is made to define
-             * how we write to disk
-             */
-            byte[] rowAsBytes = new byte[rastermatrix[0].length * numberofbytes];
-            ByteBuffer rowAsByteBuffer = ByteBuffer.wrap(rowAsBytes);
+            theCreatedFile.seek(pointerInFilePosition);
+            if (threads > 1) {
+                fixedThreadPool = Executors.newFixedThreadPool(threads);
+                /*
+                 * keep a limited number of blocks in flight, so that the compressed data don't
+                 * pile up in memory if the disk is slower than the workers
+                 */
+                LinkedList<Future<CompressedBlock>> inFlight = new LinkedList<Future<CompressedBlock>>();
+                int nextBlock = 0;
+                while( nextBlock < blocksNum || !inFlight.isEmpty() ) {
+                    while( nextBlock < blocksNum && inFlight.size() < 2 * threads ) {
+                        final int fromRow = nextBlock * ROWS_BLOCK_SIZE;
+                        inFlight.add(fixedThreadPool.submit(new Callable<CompressedBlock>(){
+                            public CompressedBlock call() throws Exception {
+                                return compressBlock(rastermatrix, fromRow, numberofbytes, deflaters);
+                            }
+                        }));
+                        nextBlock++;
+                    }
+                    writeBlock(theCreatedFile, theCreatedNullFile, inFlight.removeFirst().get());
+                }
+            } else {
+                for( int block = 0; block < blocksNum; block++ ) {
+                    CompressedBlock compressedBlock = compressBlock(rastermatrix, block * ROWS_BLOCK_SIZE, numberofbytes,
+                            deflaters);
+                    writeBlock(theCreatedFile, theCreatedNullFile, compressedBlock);
+                }
+            }
 
             /*
-             * let's get started with the serious stuff. The null file is a bitmap representing with
-             * 0's the nulls and with 1's existing values. Important is that for example 12 numbers
-             * in a row will use 2 bytes in the nulls file, but fill only 12 n=bits. Therefore we
-             * need to padd it.
+             * now that all the compressed rows are written to file, we have to write their
+             * addresses in the header
              */
-            int numberOfValuesPerRow = rastermatrix[0].length;
-            int rest = numberOfValuesPerRow % 8;
-            int paddings = 0;
-            if (rest != 0) {
-                paddings = 8 - rest;
+            ByteBuffer header = ByteBuffer.allocate(rowaddresses.length * 4);
+            for( int i = 0; i < rowaddresses.length; i++ ) {
+                header.putInt((int) rowaddresses[i]);
             }
-            BitSet nullbits = new BitSet(numberOfValuesPerRow + paddings);
-
-            // iterate over the number of rows to compress every row and
-            // write the result to disk
-            // if (logger.isDebugEnabled())
-            // logger.debug("rows x cols = " + rastermatrix.length + " x "
-            // + rastermatrix[0].length);
-            int k = 0;
-
-            for( int i = 0; i < rastermatrix.length; i++ ) {
-                for( int j = 0; j < rastermatrix[0].length; j++ ) {
-                    // if it is NOT an NAN or if it is NOT a Novalue, then write the
-                    // value
-                    if (!Double.isNaN(rastermatrix[i][j])) {
-                        // since we have to reread all the values, let's get the
-                        // range
-                        if (rastermatrix[i][j] < range[0])
-                            range[0] = rastermatrix[i][j];
-                        if (rastermatrix[i][j] > range[1])
-                            range[1] = rastermatrix[i][j];
-
-                        // convert the double row in a sequence of byte as needed by
-                        // the
-                        // deflater
-                        if (numberofbytes == 8) {
-                            rowAsByteBuffer.putDouble(rastermatrix[i][j]);
-                        } else {
-                            // the check on other formats is no longer needed, since
-                            // it
-                            // would jump out at the begin of this method
-                            rowAsByteBuffer.putFloat((float) rastermatrix[i][j]);
-                        }
-
-                        /*
-                         * ...and create the bitarray for the nullmap (in this case 0 is ok, so we
-                         * just increment the counter k
-                         */
-                        k++;
-                    }
-                    // if it is a novalue, set the value and add the set the bit in
-                    // the null-bitmap to true
-                    else {
-                        // put in the map the placeholder = 0.0 ...
-                        if (numberofbytes == 8) {
-                            rowAsByteBuffer.putDouble(0.0);
-                        } else {
-                            // the check on other formats is no longer needed, since
-                            // it
-                            // would jump out at the begin of this method
-                            rowAsByteBuffer.putFloat(0f);
-                        }
-                        // ...and set the bit for the nullmap
-                        nullbits.set(k);
-                        k++;
-                    }
-
+            theCreatedFile.seek(1);
+            theCreatedFile.write(header.array());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RasterWritingFailureException(ERROR_IN_WRITING_RASTER + cause.getLocalizedMessage());
+        } catch (Exception e) {
+            throw new RasterWritingFailureException(ERROR_IN_WRITING_RASTER + e.getLocalizedMessage());
+        } finally {
+            boolean workersStopped = true;
+            if (fixedThreadPool != null) {
+                fixedThreadPool.shutdownNow();
+                try {
+                    /*
+                     * the deflate loop doesn't check for interruption, so workers still running
+                     * hold a deflater until their block is done. If they can't be waited for, the
+                     * deflaters are left to the garbage collector.
+                     */
+                    fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                workersStopped = fixedThreadPool.isTerminated();
+            }
+            if (workersStopped) {
+                for( Deflater deflater : deflaters ) {
+                    deflater.end();
                 }
+            }
+        }
+        return true;
+    }
 
-                /*
-                 * now the bitset is complete... just need to write it to disk to create in one time
-                 * the row (in cell_misc)
-                 */
-                int l = 0;
-                byte[] bytearray = new byte[(numberOfValuesPerRow + paddings) / 8];
-
-                for( int e = 0; e < (numberOfValuesPerRow + paddings) / 8; e++ ) {
-                    bytearray[e] = (byte) 0;
-                    for( int f = 0; f < 8; f++ ) {
-                        if (nullbits.get(l)) {
-                            bytearray[e] += (byte) Math.pow(2.0, (double) (7 - f));
-                        }
-                        l++;
+    /**
+     * Converts a block of rows to bytes, compresses them and creates their null file rows.
+     * 
+     * @param rastermatrix the data matrix.
+     * @param fromRow the first row of the block.
+     * @param numberofbytes the bytes per value, 8 for double and 4 for float.
+     * @param deflaters the pool of deflaters to take from and give back to.
+     * @return the compressed block.
+     */
+    private static CompressedBlock compressBlock( double[][] rastermatrix, int fromRow, int numberofbytes,
+            LinkedBlockingQueue<Deflater> deflaters ) {
+        int toRow = Math.min(fromRow + ROWS_BLOCK_SIZE, rastermatrix.length);
+        int numberOfValuesPerRow = rastermatrix[0].length;
+        /*
+         * The null file is a bitmap representing with 1's the nulls and with 0's existing values.
+         * Important is that for example 12 numbers in a row will use 2 bytes in the nulls file, but
+         * fill only 12 bits. Therefore we need to pad it.
+         */
+        int nullBytesPerRow = (numberOfValuesPerRow + 7) / 8;
+
+        CompressedBlock block = new CompressedBlock(toRow - fromRow);
+        block.nullRows = new byte[(toRow - fromRow) * nullBytesPerRow];
+
+        /*
+         * the underlying byte array is needed as input to the deflater create it with the size of
+         * the column * numberofbytes (8 for double, 4 for float), which is made to define how we
+         * write to disk
+         */
+        byte[] rowAsBytes = new byte[numberOfValuesPerRow * numberofbytes];
+        ByteBuffer rowAsByteBuffer = ByteBuffer.wrap(rowAsBytes);
+        /* lenght *2 since not always compressing gives the needed result :) */
+        byte[] output = new byte[rowAsBytes.length * 2 + 64];
+        int outputLength = 0;
+
+        Deflater compresser = deflaters.poll();
+        if (compresser == null) {
+            compresser = new Deflater();
+        }
+        try {
+            for( int i = fromRow; i < toRow; i++ ) {
+                double[] row = rastermatrix[i];
+                int nullOffset = (i - fromRow) * nullBytesPerRow;
+                rowAsByteBuffer.clear();
+                for( int j = 0; j < numberOfValuesPerRow; j++ ) {
+                    double value = row[j];
+                    if (!Double.isNaN(value)) {
+                        // since we have to reread all the values, let's get the range
+                        if (value < block.min)
+                            block.min = value;
+                        if (value > block.max)
+                            block.max = value;
+                    } else {
+                        // put in the map the placeholder = 0.0 and set the bit for the nullmap
+                        value = 0.0;
+                        block.nullRows[nullOffset + (j >> 3)] |= (byte) (0x80 >>> (j & 7));
+                    }
+                    if (numberofbytes == 8) {
+                        rowAsByteBuffer.putDouble(value);
+                    } else {
+                        rowAsByteBuffer.putFloat((float) value);
                     }
                 }
 
-                theCreatedNullFile.write(bytearray);
-                nullbits.clear();
-                k = 0;
-
-                /*
-                 * now the row is converted to an array of bytes (ByteBuffer's method wrap applies
-                 * changes on the ByteBuffer to the bytearray and vice versa. We can start with the
-                 * deflater.
-                 */
-                byte[] output = new byte[rowAsBytes.length * 2];
-                /* lenght *2 since not always compressing gives the needed result :) */
-                Deflater compresser = new Deflater();
-                compresser.setInput(rowAsBytes);
-                compresser.finish();
-                int compressedDataLength = compresser.deflate(output);
-
-                /*
-                 * now write to file the compressed row and set the right rowaddress.
-                 */
-                theCreatedFile.seek(pointerInFilePosition);
                 /*
                  * jgrass always uses compression, so the first byte of the row will always be 49,
                  * i.e. 1 which means that the row is compressed
                  */
-                theCreatedFile.write(49);
-                theCreatedFile.write(output, 0, compressedDataLength);
+                if (output.length - outputLength < rowAsBytes.length * 2 + 64) {
+                    output = Arrays.copyOf(output, output.length * 2 + rowAsBytes.length * 2 + 64);
+                }
+                output[outputLength++] = 49;
+                compresser.reset();
+                compresser.setInput(rowAsBytes);
+                compresser.finish();
+                while( !compresser.finished() ) {
+                    if (outputLength == output.length) {
+                        output = Arrays.copyOf(output, output.length * 2);
+                    }
+                    outputLength += compresser.deflate(output, outputLength, output.length - outputLength);
+                }
+                block.rowEnds[i - fromRow] = outputLength;
+            }
+        } finally {
+            deflaters.offer(compresser);
+        }
+        block.data = output;
+        block.dataLength = outputLength;
+        return block;
+    }
 
-                rowaddresses[i + 1] = pointerInFilePosition = theCreatedFile.getFilePointer();
+    /**
+     * Writes a compressed block at the current position and records its row addresses.
+     */
+    private void writeBlock( RandomAccessFile theCreatedFile, RandomAccessFile theCreatedNullFile, CompressedBlock block )
+            throws IOException {
+        theCreatedFile.write(block.data, 0, block.dataLength);
+        theCreatedNullFile.write(block.nullRows);
+        for( int i = 0; i < block.rowEnds.length; i++ ) {
+            rowaddresses[writtenRows + 1] = pointerInFilePosition + block.rowEnds[i];
+            writtenRows++;
+        }
+        pointerInFilePosition = pointerInFilePosition + block.dataLength;
 
-                rowAsByteBuffer.clear();
-            }
+        if (block.min < range[0])
+            range[0] = block.min;
+        if (block.max > range[1])
+            range[1] = block.max;
+    }
 
-            /*
-             * now that all the compressed rows are written to file, we have to write their
-             * addresses in the header
-             */
-            theCreatedFile.seek(1);
-            for( int i = 0; i < rowaddresses.length; i++ ) {
-                theCreatedFile.writeInt((int) rowaddresses[i]);
-            }
-        } catch (Exception e) {
-            throw new RasterWritingFailureException(ERROR_IN_WRITING_RASTER + e.getLocalizedMessage());
+    /**
+     * A block of compressed rows, ready to be written.
+     */
+    private static class CompressedBlock {
+        /* the compressed rows, each with its compression flag byte */
+        private byte[] data;
+        private int dataLength;
+        /* the end of every row in data */
+        private final int[] rowEnds;
+        private byte[] nullRows;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        CompressedBlock( int rows ) {
+            rowEnds = new int[rows];
         }
-        return true;
     }
 
+    /**
+     * Set the threads to use to compress the rows.
+     * 
+     * @param threads the number of threads.
+     */
+    public void setThreads( int threads ) {
+        this.threads = threads;
+    }
 
     public Window getDataWindow() {
         return dataWindow;
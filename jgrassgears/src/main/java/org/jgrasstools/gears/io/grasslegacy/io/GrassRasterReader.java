@@ -23,12 +23,19 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -121,6 +128,17 @@ public class GrassRasterReader extends MapReader {
 
     private double[][] outputData;
 
+    /**
+     * The number of data window rows decoded together by a worker in mapped batch mode.
+     */
+    private static final int ROWS_BATCH_SIZE = 64;
+
+    /**
+     * The threads used in mapped batch mode. With a single thread the map is read row by row
+     * through the {@link RandomAccessFile}s.
+     */
+    private int threads = 0;
+
     /** Creates a new instance of GrassRasterReader */
     public GrassRasterReader() {
         super(MapReader.RASTER_READER);
@@ -265,6 +283,9 @@ public class GrassRasterReader extends MapReader {
                 // dataWindow.toString());
 
                 try {
+                    if (threads > 1 && readMappedBatches(monitor)) {
+                        return moreData;
+                    }
                     /* Byte array that will hold a complete null row */
                     byte[] nullRow = null;
                     /* The rowDataArray holds the unpacked row data */
@@ -417,7 +438,9 @@ public class GrassRasterReader extends MapReader {
     }
 
     /**
-     * utility to set particular parameters
+     * utility to set particular parameters. Supported keys are "novalue", "matrixtype" and
+     * "threads", the latter being an {@link Integer} that enables the mapped batch mode if bigger
+     * than 1.
      */
     public void setParameter( String key, Object obj ) {
         if (key.equals("novalue")) { //$NON-NLS-1$
@@ -425,6 +448,9 @@ public class GrassRasterReader extends MapReader {
         } else if (key.equals("matrixtype")) { //$NON-NLS-1$
             Integer dmtype = (Integer) obj;
             matrixType = dmtype.intValue();
+        } else if (key.equals("threads")) { //$NON-NLS-1$
+            Integer threadsNum = (Integer) obj;
+            threads = threadsNum.intValue();
         }
     }
 
@@ -791,6 +817,372 @@ public class GrassRasterReader extends MapReader {
         return true;
     }
 
+    /**
+     * Reads the data window by mapping the cell and null files and decoding batches of rows in
+     * parallel.
+     * 
+     * <p>
+     * The row addresses of compressed maps are known from the header, so every row can be decoded
+     * independently. Every worker owns a view of the mapped files, an {@link Inflater} that is
+     * reset and reused for all its rows and the buffers for the packed and unpacked rows. Values
+     * are decoded straight into the preallocated output matrix.
+     * </p>
+     * 
+     * <p>
+     * The mappings live only for the time of the read and are released before returning, so
+     * that the files are not kept locked after the reader is closed.
+     * </p>
+     * 
+     * @param monitor the progress monitor.
+     * @return <code>false</code> if the files can't be mapped, in which case nothing has been
+     *         read.
+     * @throws IOException
+     * @throws DataFormatException
+     */
+    private boolean readMappedBatches( IJGTProgressMonitor monitor ) throws IOException, DataFormatException {
+        ByteBuffer cells = null;
+        ByteBuffer nulls = null;
+        try {
+            cells = mapFile(cellFile);
+            if (cells == null) {
+                return false;
+            }
+            if (nullFile != null) {
+                nulls = mapFile(nullFile);
+                if (nulls == null) {
+                    return false;
+                }
+            }
+            decodeMappedBatches(cells, nulls, monitor);
+            return true;
+        } finally {
+            unmap(cells);
+            unmap(nulls);
+        }
+    }
+
+    /**
+     * Decodes all the rows of the data window from the mapped files.
+     * 
+     * <p>
+     * Returns only once all the workers have stopped, so that the mapped buffers can be released
+     * safely afterwards.
+     * </p>
+     */
+    private void decodeMappedBatches( final ByteBuffer cells, final ByteBuffer nulls, final IJGTProgressMonitor monitor )
+            throws IOException, DataFormatException {
+        final int dataRows = dataWindow.getRows();
+        final int dataCols = dataWindow.getCols();
+        int fileRows = fileWindow.getRows();
+        int fileCols = fileWindow.getCols();
+
+        /* Map file row and col for every data window row and col, -1 if outside of the file */
+        final int[] dataRow2FileRow = new int[dataRows];
+        double filenorth = fileWindow.getNorth();
+        double filensres = fileWindow.getNSResolution();
+        double datanorth = dataWindow.getNorth();
+        double datansres = dataWindow.getNSResolution();
+        for( int row = 0; row < dataRows; row++ ) {
+            int filerow = (int) Math.floor((filenorth - (datanorth - (row * datansres))) / filensres);
+            dataRow2FileRow[row] = filerow < 0 || filerow >= fileRows ? -1 : filerow;
+        }
+        final int[] dataCol2FileCol = new int[dataCols];
+        double filewest = fileWindow.getWest();
+        double fileewres = fileWindow.getWEResolution();
+        double datawest = dataWindow.getWest();
+        double dataewres = dataWindow.getWEResolution();
+        for( int col = 0; col < dataCols; col++ ) {
+            int filecol = (int) Math.floor(((datawest + (col * dataewres)) - filewest) / fileewres);
+            dataCol2FileCol[col] = filecol < 0 || filecol >= fileCols ? -1 : filecol;
+        }
+
+        final int batchesNum = (dataRows + ROWS_BATCH_SIZE - 1) / ROWS_BATCH_SIZE;
+        final AtomicInteger nextBatch = new AtomicInteger(0);
+        final Exception[] failure = new Exception[1];
+
+        monitor.beginTask(GearsMessageHandler.getInstance().message("grass.legacy.reading") + filename, batchesNum); //$NON-NLS-1$
+        int workersNum = Math.min(threads, batchesNum);
+        Runnable[] workers = new Runnable[workersNum];
+        for( int i = 0; i < workersNum; i++ ) {
+            workers[i] = new Runnable(){
+                public void run() {
+                    RowDecoder decoder = new RowDecoder(cells.duplicate(), nulls != null ? nulls.duplicate() : null);
+                    try {
+                        int batch;
+                        while( (batch = nextBatch.getAndIncrement()) < batchesNum ) {
+                            synchronized (failure) {
+                                if (failure[0] != null) {
+                                    return;
+                                }
+                            }
+                            int from = batch * ROWS_BATCH_SIZE;
+                            int to = Math.min(from + ROWS_BATCH_SIZE, dataRows);
+                            for( int row = from; row < to; row++ ) {
+                                decoder.fillDataRow(dataRow2FileRow[row], dataCol2FileCol, outputData[row]);
+                            }
+                            synchronized (monitor) {
+                                monitor.worked(1);
+                            }
+                        }
+                    } catch (Exception e) {
+                        synchronized (failure) {
+                            if (failure[0] == null) {
+                                failure[0] = e;
+                            }
+                        }
+                    } finally {
+                        decoder.dispose();
+                    }
+                }
+            };
+        }
+        if (workersNum > 1) {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(workersNum);
+            for( Runnable worker : workers ) {
+                fixedThreadPool.execute(worker);
+            }
+            fixedThreadPool.shutdown();
+            boolean interrupted = false;
+            while( !fixedThreadPool.isTerminated() ) {
+                try {
+                    fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
+                    /*
+                     * the workers stop at the next batch, but they still have to be waited for
+                     * before the mapped files can be released
+                     */
+                    interrupted = true;
+                    synchronized (failure) {
+                        if (failure[0] == null) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (workersNum == 1) {
+            workers[0].run();
+        }
+        monitor.done();
+
+        if (failure[0] instanceof IOException) {
+            throw (IOException) failure[0];
+        } else if (failure[0] instanceof DataFormatException) {
+            throw (DataFormatException) failure[0];
+        } else if (failure[0] != null) {
+            throw new IOException(failure[0].getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Maps a whole file read only.
+     * 
+     * @param file the file to map.
+     * @return the mapped buffer or <code>null</code> if the file is too big to be mapped at once.
+     * @throws IOException
+     */
+    private ByteBuffer mapFile( RandomAccessFile file ) throws IOException {
+        FileChannel channel = file.getChannel();
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            return null;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    /**
+     * Releases a mapped buffer without waiting for the garbage collector, which on some systems
+     * keeps the file locked until then.
+     * 
+     * <p>
+     * The buffer, and any duplicate of it, must not be used afterwards. If the running vm doesn't
+     * allow to release it, the mapping is left to the garbage collector.
+     * </p>
+     * 
+     * @param buffer the mapped buffer, can be <code>null</code>.
+     */
+    private static void unmap( ByteBuffer buffer ) {
+        if (!(buffer instanceof MappedByteBuffer)) {
+            return;
+        }
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner); //$NON-NLS-1$
+            }
+        } catch (Exception e) {
+            // not supported by this vm, the garbage collector will release it
+        }
+    }
+
+    /**
+     * Decodes the rows of the map file for a single worker of the mapped batch mode.
+     * 
+     * <p>
+     * The decoding follows {@link GrassRasterReader#getMapRow(int, ByteBuffer, boolean)} and
+     * {@link GrassRasterReader#readNullValueAtRowCol(int, int)}, but works on mapped buffers and
+     * keeps all its buffers between rows.
+     * </p>
+     */
+    private class RowDecoder {
+        private final ByteBuffer cells;
+        private final ByteBuffer nulls;
+        private final Inflater inflater = new Inflater();
+        private final int fileCols = fileWindow.getCols();
+        /* The unpacked floating point row */
+        private final byte[] rowBytes = new byte[fileCols * numberOfBytesPerValue];
+        private final ByteBuffer rowBuffer = ByteBuffer.wrap(rowBytes);
+        /* The row as it is stored in the file, grown as needed */
+        private byte[] packedBytes = new byte[fileCols * numberOfBytesPerValue + 1];
+        private final double[] fileValues = new double[fileCols];
+        private final byte[] nullBytes = new byte[(fileCols + 7) / 8];
+        private int decodedRow = -1;
+
+        RowDecoder( ByteBuffer cells, ByteBuffer nulls ) {
+            this.cells = cells;
+            this.nulls = nulls;
+        }
+
+        /**
+         * Fills a row of the data window.
+         * 
+         * @param filerow the map file row, -1 for rows outside of the file.
+         * @param dataCol2FileCol the map file col of every data window col, -1 if outside.
+         * @param dataRow the row to fill.
+         * @throws DataFormatException
+         */
+        void fillDataRow( int filerow, int[] dataCol2FileCol, double[] dataRow ) throws DataFormatException {
+            if (filerow < 0) {
+                for( int col = 0; col < dataRow.length; col++ ) {
+                    dataRow[col] = Double.NaN;
+                }
+                return;
+            }
+            /* Consecutive data rows often fall in the same file row */
+            if (filerow != decodedRow) {
+                decodeRow(filerow);
+                if (nulls != null) {
+                    nulls.position(filerow * nullBytes.length);
+                    nulls.get(nullBytes);
+                }
+                decodedRow = filerow;
+            }
+            for( int col = 0; col < dataRow.length; col++ ) {
+                int filecol = dataCol2FileCol[col];
+                if (filecol < 0 || (nulls != null && (nullBytes[filecol >> 3] & (0x80 >>> (filecol & 7))) != 0)) {
+                    dataRow[col] = Double.NaN;
+                    continue;
+                }
+                double cell = fileValues[filecol];
+                if (rasterMapType > 0 && cell == 0 && isOldIntegerMap) {
+                    dataRow[col] = Double.NaN;
+                    continue;
+                }
+                if (reclassTable != null) {
+                    cell = ((Integer) reclassTable.elementAt((int) cell)).doubleValue();
+                }
+                dataRow[col] = cell;
+            }
+        }
+
+        private void decodeRow( int filerow ) throws DataFormatException {
+            if (rasterMapType < 0) {
+                if (compressed == 1) {
+                    int start = (int) addressesofrows[filerow];
+                    int length = (int) (addressesofrows[filerow + 1] - addressesofrows[filerow]) - 1;
+                    cells.position(start);
+                    int firstbyte = (cells.get() & 0xff);
+                    if (firstbyte == 49) {
+                        /* The row is compressed. */
+                        cells.get(packedBytes(length), 0, length);
+                        inflater.reset();
+                        inflater.setInput(packedBytes, 0, length);
+                        inflater.inflate(rowBytes);
+                    } else if (firstbyte == 48) {
+                        /* The row is NOT compressed */
+                        cells.get(rowBytes, 0, length);
+                    }
+                } else {
+                    cells.position(filerow * rowBytes.length);
+                    cells.get(rowBytes);
+                }
+                if (rasterMapType == -2) {
+                    for( int i = 0; i < fileCols; i++ ) {
+                        fileValues[i] = rowBuffer.getDouble(i * 8);
+                    }
+                } else {
+                    for( int i = 0; i < fileCols; i++ ) {
+                        fileValues[i] = rowBuffer.getFloat(i * 4);
+                    }
+                }
+            } else {
+                if (compressed == 1) {
+                    int length = (int) (addressesofrows[filerow + 1] - addressesofrows[filerow]) - 1;
+                    cells.position((int) addressesofrows[filerow]);
+                    int bytespervalue = (cells.get() & 0xff);
+                    cells.get(packedBytes(length), 0, length);
+                    if (length == bytespervalue * fileCols) {
+                        /* There is no compression in this row */
+                        for( int i = 0; i < fileCols; i++ ) {
+                            fileValues[i] = readInteger(packedBytes, i * bytespervalue, bytespervalue);
+                        }
+                    } else {
+                        /* Run length encoded couples of count and value */
+                        int couples = length / (1 + bytespervalue);
+                        int index = 0;
+                        for( int i = 0; i < couples; i++ ) {
+                            int position = i * (1 + bytespervalue);
+                            int count = (packedBytes[position] & 0xff);
+                            int cellValue = readInteger(packedBytes, position + 1, bytespervalue);
+                            int end = Math.min(index + count, fileCols);
+                            while( index < end ) {
+                                fileValues[index++] = cellValue;
+                            }
+                        }
+                    }
+                } else {
+                    int filerowsize = fileCols * rasterMapType;
+                    cells.position(filerow * filerowsize);
+                    cells.get(packedBytes(filerowsize), 0, filerowsize);
+                    for( int i = 0; i < fileCols; i++ ) {
+                        fileValues[i] = readInteger(packedBytes, i * rasterMapType, rasterMapType);
+                    }
+                }
+            }
+        }
+
+        private byte[] packedBytes( int length ) {
+            if (packedBytes.length < length) {
+                packedBytes = new byte[length];
+            }
+            return packedBytes;
+        }
+
+        void dispose() {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads a big endian integer of 1, 2 or 4 bytes, as done in
+     * {@link #readCompressedIntegerRowByNumber(ByteBuffer, int, long[], RandomAccessFile)}.
+     */
+    private static int readInteger( byte[] bytes, int position, int bytespervalue ) {
+        if (bytespervalue == 1) {
+            return bytes[position] & 0xff;
+        } else if (bytespervalue == 2) {
+            return (short) (((bytes[position] & 0xff) << 8) | (bytes[position + 1] & 0xff));
+        } else if (bytespervalue == 4) {
+            return ((bytes[position] & 0xff) << 24) | ((bytes[position + 1] & 0xff) << 16)
+                    | ((bytes[position + 2] & 0xff) << 8) | (bytes[position + 3] & 0xff);
+        }
+        return 0;
+    }
+
     /**
      * reads a row of data from the file into a byte array.
      * 
@@ -60,6 +60,11 @@ public class GrassRasterWriter extends MapWriter {
      */
     private int outputToDiskType = 2;
 
+    /**
+     * the threads used to compress the rows
+     */
+    private int threads = 1;
+
 
     /**
      * 
@@ -119,6 +124,7 @@ public class GrassRasterWriter extends MapWriter {
          */
         CompressesRasterWriter crwriter = new CompressesRasterWriter(outputToDiskType, range, pointerInFilePosition,
                 rowaddresses, dataWindow);
+        crwriter.setThreads(threads);
         crwriter.compressAndWriteObj(theCreatedFile, theCreatedNullFile, dataObject);
         // not sure I have to do this, have to check sooner or later
         outputToDiskType = crwriter.getOutputToDiskType();
@@ -335,9 +341,14 @@ public class GrassRasterWriter extends MapWriter {
     /*
      * (non-Javadoc)
      * 
-     * @see jgrass.io.MapWriter#setParameter(java.lang.String, java.lang.Object)
+     * @see jgrass.io.MapWriter#setParameter(java.lang.String, java.lang.Object) the supported key
+     *      is "threads", an {@link Integer} defining the threads used to compress the rows
      */
     public void setParameter( String key, Object obj ) {
+        if (key.equals("threads")) { //$NON-NLS-1$
+            Integer threadsNum = (Integer) obj;
+            threads = threadsNum.intValue();
+        }
     }
 
     public void setDataWindow( Window window ) {
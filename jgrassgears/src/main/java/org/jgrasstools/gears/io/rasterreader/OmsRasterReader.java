@@ -25,7 +25,9 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_LABEL;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_LICENSE;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_STATUS;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_doCache_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_doLegacyGrass_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_fileNovalue_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_file_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_geodataNovalue_DESCRIPTION;
@@ -63,7 +65,9 @@ import static org.jgrasstools.gears.utils.coverage.CoverageUtilities.getRegionPa
 import static org.jgrasstools.gears.utils.coverage.CoverageUtilities.gridGeometryFromRegionParams;
 import static org.jgrasstools.gears.utils.coverage.CoverageUtilities.makeRegionParamsMap;
 
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.io.File;
@@ -107,12 +111,14 @@ import org.geotools.gce.grassraster.format.GrassCoverageFormatFactory;
 import org.geotools.gce.image.WorldImageReader;
 import org.geotools.geometry.GeneralEnvelope;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.jgrasstools.gears.io.grasslegacy.GrassLegacyGridCoverage2D;
 import org.jgrasstools.gears.io.grasslegacy.OmsGrassLegacyReader;
 import org.jgrasstools.gears.io.grasslegacy.utils.GrassLegacyUtilities;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.files.FileUtilities;
 import org.jgrasstools.gears.utils.math.NumericsUtilities;
@@ -187,6 +193,14 @@ public class OmsRasterReader extends JGTModel {
     @In
     public Boolean doLegacyGrass = false;
 
+    @Description(OMSRASTERREADER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(OMSRASTERREADER_doCache_DESCRIPTION)
+    @In
+    public boolean doCache = false;
+
     @Description(OMSRASTERREADER_outRaster_DESCRIPTION)
     @Out
     public GridCoverage2D outRaster = null;
@@ -247,6 +261,27 @@ public class OmsRasterReader extends JGTModel {
                             .getSimpleName());
 
         File mapFile = new File(file);
+        String cacheKey = null;
+        if (doCache && !doEnvelope && !pType.equals(JPG) && !pType.equals(PNG) && mapFile.exists()) {
+            cacheKey = RasterReadCache.getKey(mapFile, getCacheRequest(true));
+            GridCoverage2D cachedRaster = RasterReadCache.get(cacheKey);
+            GeneralEnvelope cachedEnvelope = RasterReadCache.getOriginalEnvelope(cacheKey);
+            if (cachedRaster == null && hasBoundsRequest()) {
+                // a window of the whole map is cut without resampling
+                String mapKey = RasterReadCache.getKey(mapFile, getCacheRequest(false));
+                GridCoverage2D mapRaster = RasterReadCache.get(mapKey);
+                if (mapRaster != null) {
+                    cachedRaster = cutWindow(mapRaster);
+                    cachedEnvelope = RasterReadCache.getOriginalEnvelope(mapKey);
+                }
+            }
+            if (cachedRaster != null) {
+                outRaster = cachedRaster;
+                originalEnvelope = cachedEnvelope;
+                return;
+            }
+        }
+
         try {
             pm.beginTask("Reading coverage: " + mapFile.getName(), IJGTProgressMonitor.UNKNOWN);
 
@@ -265,12 +300,107 @@ public class OmsRasterReader extends JGTModel {
             } else {
                 throw new ModelsIllegalargumentException("Data type not supported: " + pType, this.getClass().getSimpleName());
             }
+
+            // maps too big for the cache are left to the tile cache of the image
+            if (cacheKey != null && outRaster != null && !(outRaster instanceof GrassLegacyGridCoverage2D)
+                    && RasterReadCache.fits(outRaster)) {
+                outRaster = loadInMemory(outRaster);
+                RasterReadCache.put(cacheKey, outRaster, originalEnvelope);
+            }
         } finally {
             pm.done();
         }
 
     }
 
+    /**
+     * Describe what changes the coverage read from the file.
+     * 
+     * @param withRegion if <code>true</code>, the requested region is part of the description.
+     * @return the description.
+     */
+    private String getCacheRequest( boolean withRegion ) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(fileNovalue).append(',').append(geodataNovalue).append(',').append(doLegacyGrass);
+        if (withRegion) {
+            sb.append(',').append(pNorth).append(',').append(pSouth).append(',').append(pWest).append(',').append(pEast);
+            sb.append(',').append(pXres).append(',').append(pYres).append(',').append(pRows).append(',').append(pCols);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Copy the data of a coverage that might be still backed by the file.
+     */
+    private GridCoverage2D loadInMemory( GridCoverage2D coverage ) {
+        RenderedImage renderedImage = coverage.getRenderedImage();
+        if (JGTConstants.doesOverFlow(renderedImage.getWidth(), renderedImage.getHeight())) {
+            return coverage;
+        }
+        // the data are a copy of the image
+        Raster data = renderedImage.getData();
+        WritableRaster writableRaster;
+        if (data instanceof WritableRaster && data.getMinX() == 0 && data.getMinY() == 0) {
+            writableRaster = (WritableRaster) data;
+        } else {
+            writableRaster = data.createCompatibleWritableRaster(data.getWidth(), data.getHeight());
+            writableRaster.setRect(-data.getMinX(), -data.getMinY(), data);
+        }
+        RegionMap regionMap = getRegionParamsFromGridCoverage(coverage);
+        return buildCoverage(coverage.getName().toString(), writableRaster, regionMap, coverage.getCoordinateReferenceSystem());
+    }
+
+    /**
+     * Cut the requested region from the coverage of the whole map.
+     * 
+     * @return the coverage of the region or <code>null</code>, if the region is not aligned
+     *          with the cells of the map or not contained in it.
+     */
+    private GridCoverage2D cutWindow( GridCoverage2D mapCoverage ) {
+        RegionMap mapRegion = getRegionParamsFromGridCoverage(mapCoverage);
+        double xres;
+        double yres;
+        int cols;
+        int rows;
+        if (hasResolutionRequest()) {
+            xres = pXres;
+            yres = pYres;
+            cols = (int) Math.round((pEast - pWest) / xres);
+            rows = (int) Math.round((pNorth - pSouth) / yres);
+        } else {
+            cols = pCols;
+            rows = pRows;
+            xres = (pEast - pWest) / cols;
+            yres = (pNorth - pSouth) / rows;
+        }
+        if (!NumericsUtilities.dEq(xres, mapRegion.getXres()) || !NumericsUtilities.dEq(yres, mapRegion.getYres())) {
+            return null;
+        }
+        double colOffset = (pWest - mapRegion.getWest()) / xres;
+        double rowOffset = (mapRegion.getNorth() - pNorth) / yres;
+        int firstCol = (int) Math.round(colOffset);
+        int firstRow = (int) Math.round(rowOffset);
+        if (!NumericsUtilities.dEq(colOffset, firstCol, 1E-6) || !NumericsUtilities.dEq(rowOffset, firstRow, 1E-6)) {
+            return null;
+        }
+        if (cols <= 0 || rows <= 0 || firstCol < 0 || firstRow < 0 || firstCol + cols > mapRegion.getCols()
+                || firstRow + rows > mapRegion.getRows()) {
+            return null;
+        }
+
+        RenderedImage mapImage = mapCoverage.getRenderedImage();
+        Raster data = mapImage.getData(new Rectangle(mapImage.getMinX() + firstCol, mapImage.getMinY() + firstRow, cols, rows));
+        WritableRaster windowRaster = data.createCompatibleWritableRaster(cols, rows);
+        windowRaster.setRect(-data.getMinX(), -data.getMinY(), data);
+
+        double west = mapRegion.getWest() + firstCol * mapRegion.getXres();
+        double north = mapRegion.getNorth() - firstRow * mapRegion.getYres();
+        HashMap<String, Double> windowParams = makeRegionParamsMap(north, north - rows * mapRegion.getYres(), west, west
+                + cols * mapRegion.getXres(), mapRegion.getXres(), mapRegion.getYres(), cols, rows);
+        return buildCoverage(mapCoverage.getName().toString(), windowRaster, windowParams,
+                mapCoverage.getCoordinateReferenceSystem());
+    }
+
     private void readGrass( File mapFile ) throws Exception {
         JGrassMapEnvironment mapEnvironment = new JGrassMapEnvironment(new File(file));
         CoordinateReferenceSystem crs = mapEnvironment.getCoordinateReferenceSystem();
@@ -314,6 +444,7 @@ public class OmsRasterReader extends JGTModel {
                 OmsGrassLegacyReader reader = new OmsGrassLegacyReader();
                 reader.file = file;
                 reader.pm = pm;
+                reader.pMaxThreads = pMaxThreads;
                 reader.inWindow = GrassLegacyUtilities.jgrassRegion2legacyWindow(readRegion);
                 reader.readCoverage();
                 outRaster = reader.outGC;
@@ -488,8 +619,24 @@ public class OmsRasterReader extends JGTModel {
      * @throws Exception
      */
     public static GridCoverage2D readRaster( String path ) throws Exception {
+        return readRaster(path, false);
+    }
+
+    /**
+     * Utility method to quickly read a grid in default mode.
+     * 
+     * <p>If cached, reading the same file again costs nothing, but the coverage is
+     * shared by all the readers and must therefore not be modified.</p>
+     * 
+     * @param path the path to the file.
+     * @param doCache if <code>true</code>, the coverage is read through the {@link RasterReadCache}.
+     * @return the read coverage.
+     * @throws Exception
+     */
+    public static GridCoverage2D readRaster( String path, boolean doCache ) throws Exception {
         OmsRasterReader reader = new OmsRasterReader();
         reader.file = path;
+        reader.doCache = doCache;
         reader.process();
         GridCoverage2D geodata = reader.outRaster;
         return geodata;
@@ -0,0 +1,200 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.rasterreader;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.geometry.GeneralEnvelope;
+
+/**
+ * A process wide cache of the coverages read by {@link OmsRasterReader}.
+ *
+ * <p>
+ * Coverages are kept by the key built in {@link #getKey(File, String)}, which
+ * contains the modification time of the file, so that a file that changes is
+ * read again. The cache is bounded by the memory used by its coverages, the
+ * least recently used being removed first, and since the coverages are
+ * referenced softly, they are also freed whenever memory is needed.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class RasterReadCache {
+
+    private static long maxBytes = Runtime.getRuntime().maxMemory() / 4;
+    private static long currentBytes = 0;
+
+    private static final LinkedHashMap<String, CacheEntry> key2EntryMap = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+
+    private RasterReadCache() {
+    }
+
+    /**
+     * Create the key of a coverage.
+     *
+     * @param file the file the coverage is read from.
+     * @param request a description of everything else that changes the coverage read from the file.
+     * @return the key.
+     * @throws IOException
+     */
+    public static String getKey( File file, String request ) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(file.getCanonicalPath());
+        sb.append('|').append(file.lastModified());
+        sb.append('|').append(file.length());
+        sb.append('|').append(request);
+        return sb.toString();
+    }
+
+    /**
+     * Get a cached coverage.
+     *
+     * @param key the key of the coverage.
+     * @return the coverage or <code>null</code>, if it isn't in the cache.
+     */
+    public static synchronized GridCoverage2D get( String key ) {
+        CacheEntry entry = key2EntryMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+        GridCoverage2D coverage = entry.coverageReference.get();
+        if (coverage == null) {
+            remove(key);
+        }
+        return coverage;
+    }
+
+    /**
+     * Get the original envelope of the file of a cached coverage.
+     *
+     * @param key the key of the coverage.
+     * @return the envelope or <code>null</code>, if the coverage isn't in the cache.
+     */
+    public static synchronized GeneralEnvelope getOriginalEnvelope( String key ) {
+        CacheEntry entry = key2EntryMap.get(key);
+        if (entry == null) {
+            return null;
+        }
+        return entry.originalEnvelope;
+    }
+
+    /**
+     * Add a coverage to the cache.
+     *
+     * <p>The coverage has to be held in memory, since it is shared among all the readers
+     * of the same file, which must not modify it.</p>
+     *
+     * @param key the key of the coverage.
+     * @param coverage the coverage.
+     * @param originalEnvelope the original envelope of the file.
+     */
+    public static synchronized void put( String key, GridCoverage2D coverage, GeneralEnvelope originalEnvelope ) {
+        long bytes = getBytes(coverage);
+        if (bytes > maxBytes) {
+            return;
+        }
+        remove(key);
+        CacheEntry entry = new CacheEntry();
+        entry.coverageReference = new SoftReference<GridCoverage2D>(coverage);
+        entry.originalEnvelope = originalEnvelope;
+        entry.bytes = bytes;
+        key2EntryMap.put(key, entry);
+        currentBytes += bytes;
+        evict();
+    }
+
+    /**
+     * Check if a coverage could be cached, before loading it in memory.
+     *
+     * @param coverage the coverage, possibly still backed by the file.
+     * @return <code>true</code> if the memory needed by the coverage is within the bound of the cache.
+     */
+    public static synchronized boolean fits( GridCoverage2D coverage ) {
+        return getBytes(coverage) <= maxBytes;
+    }
+
+    /**
+     * Set the memory that the cached coverages may use.
+     *
+     * @param maxBytes the max number of bytes.
+     */
+    public static synchronized void setMaxBytes( long maxBytes ) {
+        RasterReadCache.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Remove all the cached coverages.
+     */
+    public static synchronized void clear() {
+        key2EntryMap.clear();
+        currentBytes = 0;
+    }
+
+    private static void remove( String key ) {
+        CacheEntry removed = key2EntryMap.remove(key);
+        if (removed != null) {
+            currentBytes -= removed.bytes;
+        }
+    }
+
+    /**
+     * Remove the coverages freed by the garbage collector and then the least
+     * recently used, until the cache fits the memory.
+     */
+    private static void evict() {
+        Iterator<Map.Entry<String, CacheEntry>> iterator = key2EntryMap.entrySet().iterator();
+        while( iterator.hasNext() ) {
+            CacheEntry entry = iterator.next().getValue();
+            if (entry.coverageReference.get() == null) {
+                currentBytes -= entry.bytes;
+                iterator.remove();
+            }
+        }
+        iterator = key2EntryMap.entrySet().iterator();
+        while( currentBytes > maxBytes && iterator.hasNext() ) {
+            CacheEntry entry = iterator.next().getValue();
+            currentBytes -= entry.bytes;
+            iterator.remove();
+        }
+    }
+
+    private static long getBytes( GridCoverage2D coverage ) {
+        RenderedImage renderedImage = coverage.getRenderedImage();
+        SampleModel sampleModel = renderedImage.getSampleModel();
+        long sampleBytes = DataBuffer.getDataTypeSize(sampleModel.getDataType()) / 8;
+        return sampleBytes * sampleModel.getNumBands() * renderedImage.getWidth() * (long) renderedImage.getHeight();
+    }
+
+    private static class CacheEntry {
+        SoftReference<GridCoverage2D> coverageReference;
+        GeneralEnvelope originalEnvelope;
+        long bytes;
+    }
+
+}
@@ -0,0 +1,481 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.io.rasterwriter;
+
+import java.awt.image.Raster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+import org.geotools.referencing.CRS;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+
+/**
+ * A writer of GeoTIFF files that takes the map row by row while it is computed.
+ *
+ * <p>
+ * The rows are collected in a band as high as a tile, which, once complete,
+ * is handed over to a background thread that deflates its tiles and writes them
+ * to disk, while the next band is filled. The bands waiting to be written are
+ * bounded, so at any time the memory used is that of a few bands, whatever the
+ * size of the map.
+ * </p>
+ * <p>
+ * The file is a tiled, deflate compressed, 64 bit float GeoTIFF, with the
+ * novalue written as <code>nan</code>. Rows are appended from north to south and
+ * the file is complete only after {@link #close()}.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class StreamingGeoTiffWriter {
+
+    /**
+     * The default width and height of the tiles.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * The bands that can be waiting to be written.
+     */
+    private static final int QUEUE_SIZE = 2;
+
+    private static final double[] END = new double[0];
+
+    private static final short TYPE_ASCII = 2;
+    private static final short TYPE_SHORT = 3;
+    private static final short TYPE_LONG = 4;
+    private static final short TYPE_DOUBLE = 12;
+
+    private static final long MAX_OFFSET = 0xFFFFFFFFL;
+
+    private final RandomAccessFile raf;
+    private final RegionMap regionMap;
+    private final CoordinateReferenceSystem crs;
+    private final int cols;
+    private final int rows;
+    private final int tileSize;
+    private final int paddedCols;
+    private final int tilesAcross;
+    private final long[] tileOffsets;
+    private final long[] tileByteCounts;
+
+    private final BlockingQueue<double[]> filledBands = new ArrayBlockingQueue<double[]>(QUEUE_SIZE);
+    private final BlockingQueue<double[]> freeBands = new ArrayBlockingQueue<double[]>(QUEUE_SIZE + 2);
+    private int createdBands = 0;
+    private final Thread ioThread;
+    private volatile Exception ioException;
+
+    private double[] currentBand;
+    private double[] rowBuffer;
+    private int currentRow = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor with the default tile size.
+     *
+     * @param file the file to write.
+     * @param regionMap the region of the map.
+     * @param crs the {@link CoordinateReferenceSystem} of the map.
+     * @throws IOException
+     */
+    public StreamingGeoTiffWriter( File file, RegionMap regionMap, CoordinateReferenceSystem crs ) throws IOException {
+        this(file, regionMap, crs, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param file the file to write.
+     * @param regionMap the region of the map.
+     * @param crs the {@link CoordinateReferenceSystem} of the map.
+     * @param tileSize the width and height of the tiles, a multiple of 16.
+     * @throws IOException
+     */
+    public StreamingGeoTiffWriter( File file, RegionMap regionMap, CoordinateReferenceSystem crs, int tileSize )
+            throws IOException {
+        if (tileSize <= 0 || tileSize % 16 != 0) {
+            throw new IllegalArgumentException("The tile size has to be a multiple of 16: " + tileSize);
+        }
+        this.regionMap = regionMap;
+        this.crs = crs;
+        this.tileSize = tileSize;
+        cols = regionMap.getCols();
+        rows = regionMap.getRows();
+        tilesAcross = (cols + tileSize - 1) / tileSize;
+        int tilesDown = (rows + tileSize - 1) / tileSize;
+        paddedCols = tilesAcross * tileSize;
+        tileOffsets = new long[tilesAcross * tilesDown];
+        tileByteCounts = new long[tilesAcross * tilesDown];
+
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to overwrite the file: " + file.getAbsolutePath());
+        }
+        raf = new RandomAccessFile(file, "rw");
+        // big endian header, the offset of the directory is set on close
+        raf.writeShort(0x4D4D);
+        raf.writeShort(42);
+        raf.writeInt(0);
+
+        ioThread = new Thread(new Runnable(){
+            public void run() {
+                writeBands();
+            }
+        }, "GeoTIFF writer: " + file.getName());
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    /**
+     * Append a row to the map.
+     *
+     * @param row the values of the row, of which the first <code>cols</code> are used.
+     * @throws IOException if the row can't be written.
+     */
+    public void writeRow( double[] row ) throws IOException {
+        if (closed) {
+            throw new IOException("The writer has already been closed.");
+        }
+        if (currentRow >= rows) {
+            throw new IOException("All the rows of the map have already been written.");
+        }
+        if (row.length < cols) {
+            throw new IllegalArgumentException("The row has " + row.length + " values, while the map has " + cols + " cols.");
+        }
+        checkIoException();
+
+        if (currentBand == null) {
+            currentBand = nextFreeBand();
+        }
+        int bandRow = currentRow % tileSize;
+        int start = bandRow * paddedCols;
+        System.arraycopy(row, 0, currentBand, start, cols);
+        Arrays.fill(currentBand, start + cols, start + paddedCols, Double.NaN);
+        currentRow++;
+
+        if (currentRow == rows) {
+            Arrays.fill(currentBand, start + paddedCols, currentBand.length, Double.NaN);
+        }
+        if (bandRow == tileSize - 1 || currentRow == rows) {
+            putBand(currentBand);
+            currentBand = null;
+        }
+    }
+
+    /**
+     * Append the rows of a raster to the map.
+     *
+     * <p>The raster has to be as wide as the map, its rows are appended in order.</p>
+     *
+     * @param raster the raster holding the rows.
+     * @throws IOException if the rows can't be written.
+     */
+    public void writeRows( Raster raster ) throws IOException {
+        if (raster.getWidth() != cols) {
+            throw new IllegalArgumentException("The raster has " + raster.getWidth() + " cols, while the map has " + cols
+                    + ".");
+        }
+        if (rowBuffer == null) {
+            rowBuffer = new double[cols];
+        }
+        int minX = raster.getMinX();
+        int maxY = raster.getMinY() + raster.getHeight();
+        for( int y = raster.getMinY(); y < maxY; y++ ) {
+            raster.getSamples(minX, y, cols, 1, 0, rowBuffer);
+            writeRow(rowBuffer);
+        }
+    }
+
+    /**
+     * Complete the file.
+     *
+     * <p>If not all the rows have been written, the missing ones are filled with novalues.</p>
+     *
+     * @throws IOException if the file couldn't be completed.
+     */
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            try {
+                if (currentRow < rows && ioException == null) {
+                    double[] novalueRow = new double[cols];
+                    Arrays.fill(novalueRow, Double.NaN);
+                    while( currentRow < rows ) {
+                        writeRow(novalueRow);
+                    }
+                }
+            } finally {
+                closed = true;
+                putBand(END);
+                try {
+                    ioThread.join();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting for the tiles to be written.");
+                }
+            }
+            checkIoException();
+            writeDirectory();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private double[] nextFreeBand() throws IOException {
+        double[] band = freeBands.poll();
+        if (band == null) {
+            if (createdBands < QUEUE_SIZE + 2) {
+                createdBands++;
+                return new double[paddedCols * tileSize];
+            }
+            try {
+                band = freeBands.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for the tiles to be written.");
+            }
+        }
+        return band;
+    }
+
+    private void putBand( double[] band ) throws IOException {
+        try {
+            filledBands.put(band);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for the tiles to be written.");
+        }
+    }
+
+    private void checkIoException() throws IOException {
+        if (ioException != null) {
+            IOException e = new IOException("Error while writing the tiles: " + ioException.getLocalizedMessage());
+            e.initCause(ioException);
+            throw e;
+        }
+    }
+
+    /**
+     * Deflate and write the bands as they are filled, run by the background thread.
+     */
+    private void writeBands() {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        ByteBuffer tileBytes = ByteBuffer.allocate(tileSize * tileSize * 8);
+        DoubleBuffer tileValues = tileBytes.asDoubleBuffer();
+        byte[] compressed = new byte[64 * 1024];
+        int bandIndex = 0;
+        try {
+            double[] band;
+            while( (band = filledBands.take()) != END ) {
+                if (ioException != null) {
+                    // only drain, so that the producer never blocks
+                    freeBands.offer(band);
+                    continue;
+                }
+                try {
+                    for( int tx = 0; tx < tilesAcross; tx++ ) {
+                        tileValues.clear();
+                        for( int r = 0; r < tileSize; r++ ) {
+                            tileValues.put(band, r * paddedCols + tx * tileSize, tileSize);
+                        }
+                        deflater.reset();
+                        deflater.setInput(tileBytes.array(), 0, tileBytes.capacity());
+                        deflater.finish();
+
+                        int tileIndex = bandIndex * tilesAcross + tx;
+                        long offset = raf.getFilePointer();
+                        while( !deflater.finished() ) {
+                            int length = deflater.deflate(compressed);
+                            raf.write(compressed, 0, length);
+                        }
+                        long end = raf.getFilePointer();
+                        if (end > MAX_OFFSET) {
+                            throw new IOException("The map is too large to be written as a GeoTIFF of less than 4GB.");
+                        }
+                        tileOffsets[tileIndex] = offset;
+                        tileByteCounts[tileIndex] = end - offset;
+                    }
+                    bandIndex++;
+                } catch (Exception e) {
+                    ioException = e;
+                }
+                freeBands.offer(band);
+            }
+        } catch (InterruptedException e) {
+            ioException = e;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write the image file directory after the tiles and point the header to it.
+     */
+    private void writeDirectory() throws IOException {
+        List<IfdEntry> entries = new ArrayList<IfdEntry>();
+        entries.add(IfdEntry.longs(256, cols));
+        entries.add(IfdEntry.longs(257, rows));
+        entries.add(IfdEntry.shorts(258, 64));
+        // adobe deflate
+        entries.add(IfdEntry.shorts(259, 8));
+        // black is zero
+        entries.add(IfdEntry.shorts(262, 1));
+        entries.add(IfdEntry.shorts(277, 1));
+        entries.add(IfdEntry.shorts(284, 1));
+        entries.add(IfdEntry.longs(322, tileSize));
+        entries.add(IfdEntry.longs(323, tileSize));
+        entries.add(IfdEntry.longs(324, tileOffsets));
+        entries.add(IfdEntry.longs(325, tileByteCounts));
+        // floating point
+        entries.add(IfdEntry.shorts(339, 3));
+        // model pixel scale
+        entries.add(IfdEntry.doubles(33550, regionMap.getXres(), regionMap.getYres(), 0.0));
+        // model tiepoint
+        entries.add(IfdEntry.doubles(33922, 0.0, 0.0, 0.0, regionMap.getWest(), regionMap.getNorth(), 0.0));
+        entries.add(IfdEntry.shorts(34735, getGeoKeys()));
+        // gdal novalue
+        entries.add(IfdEntry.ascii(42113, "nan"));
+
+        long ifdOffset = raf.length();
+        if (ifdOffset % 2 != 0) {
+            raf.seek(ifdOffset);
+            raf.write(0);
+            ifdOffset++;
+        }
+        long dataOffset = ifdOffset + 2 + 12 * entries.size() + 4;
+        if (dataOffset > MAX_OFFSET) {
+            throw new IOException("The map is too large to be written as a GeoTIFF of less than 4GB.");
+        }
+        ByteArrayOutputStream ifdBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream ifd = new DataOutputStream(ifdBytes);
+        ifd.writeShort(entries.size());
+        for( IfdEntry entry : entries ) {
+            ifd.writeShort(entry.tag);
+            ifd.writeShort(entry.type);
+            ifd.writeInt(entry.count);
+            if (entry.data.length <= 4) {
+                ifd.write(entry.data);
+                for( int i = entry.data.length; i < 4; i++ ) {
+                    ifd.write(0);
+                }
+            } else {
+                ifd.writeInt((int) (dataOffset + dataBytes.size()));
+                dataBytes.write(entry.data);
+                if (dataBytes.size() % 2 != 0) {
+                    dataBytes.write(0);
+                }
+            }
+        }
+        // no further directories
+        ifd.writeInt(0);
+        ifd.flush();
+
+        raf.seek(ifdOffset);
+        raf.write(ifdBytes.toByteArray());
+        raf.write(dataBytes.toByteArray());
+        raf.seek(4);
+        raf.writeInt((int) ifdOffset);
+    }
+
+    private int[] getGeoKeys() {
+        Integer epsg = null;
+        try {
+            if (crs != null) {
+                epsg = CRS.lookupEpsgCode(crs, true);
+            }
+        } catch (Exception e) {
+            // written without the reference system code
+        }
+        boolean isGeographic = crs instanceof GeographicCRS;
+        if (epsg == null) {
+            return new int[]{//
+            1, 1, 0, 2, //
+                    1024, 0, 1, isGeographic ? 2 : 1, // model type
+                    1025, 0, 1, 1 // raster type: pixel is area
+            };
+        }
+        return new int[]{//
+        1, 1, 0, 3, //
+                1024, 0, 1, isGeographic ? 2 : 1, // model type
+                1025, 0, 1, 1, // raster type: pixel is area
+                isGeographic ? 2048 : 3072, 0, 1, epsg // geographic or projected type
+        };
+    }
+
+    /**
+     * An entry of the image file directory, with its values already in big endian order.
+     */
+    private static class IfdEntry {
+        final int tag;
+        final short type;
+        final int count;
+        final byte[] data;
+
+        IfdEntry( int tag, short type, int count, byte[] data ) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.data = data;
+        }
+
+        static IfdEntry shorts( int tag, int... values ) {
+            ByteBuffer buffer = ByteBuffer.allocate(2 * values.length);
+            for( int value : values ) {
+                buffer.putShort((short) value);
+            }
+            return new IfdEntry(tag, TYPE_SHORT, values.length, buffer.array());
+        }
+
+        static IfdEntry longs( int tag, long... values ) {
+            ByteBuffer buffer = ByteBuffer.allocate(4 * values.length);
+            for( long value : values ) {
+                buffer.putInt((int) value);
+            }
+            return new IfdEntry(tag, TYPE_LONG, values.length, buffer.array());
+        }
+
+        static IfdEntry doubles( int tag, double... values ) {
+            ByteBuffer buffer = ByteBuffer.allocate(8 * values.length);
+            for( double value : values ) {
+                buffer.putDouble(value);
+            }
+            return new IfdEntry(tag, TYPE_DOUBLE, values.length, buffer.array());
+        }
+
+        static IfdEntry ascii( int tag, String value ) {
+            byte[] chars = value.getBytes();
+            byte[] data = Arrays.copyOf(chars, chars.length + 1);
+            return new IfdEntry(tag, TYPE_ASCII, data.length, data);
+        }
+    }
+
+}
@@ -64,6 +64,9 @@ import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
+import org.jgrasstools.gears.utils.features.pipeline.ShapefileFeatureSink;
 import org.opengis.feature.simple.SimpleFeatureType;
 
 @Description(OMSSHAPEFILEFEATUREWRITER_DESCRIPTION)
@@ -145,6 +148,22 @@ public class OmsShapefileFeatureWriter extends JGTModel {
         writer.writeFeatureCollection();
     }
 
+    /**
+     * Run a {@link FeaturePipeline} and write its features to a shapefile as they leave the chain.
+     * 
+     * <p>Features are not collected in memory, so that a shapefile can be read, processed and
+     * written without loading it.</p>
+     * 
+     * @param path the path of the shapefile to create.
+     * @param pipeline the pipeline giving the features.
+     * @param pm the progress monitor.
+     * @return the number of written features.
+     * @throws Exception
+     */
+    public static int writeShapefile( String path, FeaturePipeline pipeline, IJGTProgressMonitor pm ) throws Exception {
+        return pipeline.run(new ShapefileFeatureSink(path), "Writing features to shapefile...", pm);
+    }
+
     public static void writeEmptyShapefile( String path, SimpleFeatureType schema ) throws IOException {
         OmsShapefileFeatureWriter writer = new OmsShapefileFeatureWriter();
         writer.file = path;
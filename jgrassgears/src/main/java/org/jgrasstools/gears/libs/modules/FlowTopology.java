@@ -0,0 +1,434 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.media.jai.iterator.RandomIter;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * The flow topology of a flowdirections map.
+ *
+ * <p>
+ * The upstream relationships are kept in compressed sparse row form (the
+ * upstream cells of cell <code>i</code> are the ones between {@link #getUpstreamStart(int)}
+ * and {@link #getUpstreamEnd(int)}), together with an order of the valid cells
+ * in which every cell comes after all the cells that flow into it. The flow
+ * itself is kept as one byte per cell, so that the whole index needs about 13 bytes
+ * per cell.
+ * </p>
+ * <p>
+ * Cells are addressed by their index <code>row * cols + col</code>.
+ * </p>
+ * <p>
+ * The topology can be saved to disk next to the flow map it was created from
+ * and reused through {@link #getCached(File, RandomIter, int, int, IJGTProgressMonitor)}.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class FlowTopology {
+
+    /**
+     * The extension used for the cache file of the topology.
+     */
+    public static final String CACHE_EXTENSION = ".topology";
+
+    private static final int MAGIC = 0x4A475446;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 4 + 8 + 8 + 4 + 4;
+
+    private static final byte NOFLOW = 0;
+    private static final byte OUTLET = 10;
+
+    private final int cols;
+    private final int rows;
+    private final byte[] flow;
+    private final int[] upstreamOffsets;
+    private final int[] upstreamCells;
+    private final int[] order;
+
+    private FlowTopology( int cols, int rows, byte[] flow, int[] upstreamOffsets, int[] upstreamCells, int[] order ) {
+        this.cols = cols;
+        this.rows = rows;
+        this.flow = flow;
+        this.upstreamOffsets = upstreamOffsets;
+        this.upstreamCells = upstreamCells;
+        this.order = order;
+    }
+
+    /**
+     * Create the topology of a flowdirections map.
+     *
+     * @param flowIter the flowdirections map.
+     * @param cols the cols of the map.
+     * @param rows the rows of the map.
+     * @param pm the progress monitor.
+     * @return the topology.
+     */
+    public static FlowTopology build( RandomIter flowIter, int cols, int rows, IJGTProgressMonitor pm ) {
+        int size = cols * rows;
+        byte[] flow = new byte[size];
+        pm.beginTask("Building flow topology...", 2 * rows);
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                double value = flowIter.getSampleDouble(c, r, 0);
+                if (isNovalue(value)) {
+                    continue;
+                }
+                int flowValue = (int) value;
+                if ((flowValue >= 1 && flowValue <= 8) || flowValue == OUTLET) {
+                    flow[r * cols + c] = (byte) flowValue;
+                }
+            }
+            pm.worked(1);
+        }
+
+        // count the cells entering every cell
+        int[] upstreamOffsets = new int[size + 1];
+        int[] downstream = new int[size];
+        for( int i = 0; i < size; i++ ) {
+            downstream[i] = downstream(flow, cols, rows, i);
+            if (downstream[i] >= 0) {
+                upstreamOffsets[downstream[i] + 1]++;
+            }
+        }
+        for( int i = 0; i < size; i++ ) {
+            upstreamOffsets[i + 1] += upstreamOffsets[i];
+        }
+        int[] upstreamCells = new int[upstreamOffsets[size]];
+        int[] cursor = new int[size];
+        System.arraycopy(upstreamOffsets, 0, cursor, 0, size);
+        int validCount = 0;
+        for( int i = 0; i < size; i++ ) {
+            if (flow[i] != NOFLOW) {
+                validCount++;
+            }
+            int d = downstream[i];
+            if (d >= 0) {
+                upstreamCells[cursor[d]++] = i;
+            }
+        }
+
+        // sort topologically, the order array is used also as the queue
+        int[] order = new int[validCount];
+        // the insertion cursor is reused as counter of the unprocessed upstream cells
+        int[] remaining = cursor;
+        int tail = 0;
+        for( int i = 0; i < size; i++ ) {
+            if (flow[i] != NOFLOW) {
+                remaining[i] = upstreamOffsets[i + 1] - upstreamOffsets[i];
+                if (remaining[i] == 0) {
+                    order[tail++] = i;
+                }
+            }
+        }
+        int head = 0;
+        int progressStep = Math.max(1, validCount / rows);
+        while( head < tail ) {
+            int i = order[head++];
+            int d = downstream[i];
+            if (d >= 0 && --remaining[d] == 0) {
+                order[tail++] = d;
+            }
+            if (head % progressStep == 0) {
+                pm.worked(1);
+            }
+        }
+        if (tail < validCount) {
+            // cells on loops never get free, they are left out of the order
+            int[] tmp = new int[tail];
+            System.arraycopy(order, 0, tmp, 0, tail);
+            order = tmp;
+        }
+        pm.done();
+
+        return new FlowTopology(cols, rows, flow, upstreamOffsets, upstreamCells, order);
+    }
+
+    /**
+     * Get the topology of a flow map, using the cache file next to it if it is up to date.
+     *
+     * <p>If no valid cache is available, the topology is created and the cache is
+     * written (or rewritten) next to the flow map.</p>
+     *
+     * @param flowFile the file of the flowdirections map.
+     * @param flowIter the flowdirections map.
+     * @param cols the cols of the map.
+     * @param rows the rows of the map.
+     * @param pm the progress monitor.
+     * @return the topology.
+     * @throws IOException
+     */
+    public static FlowTopology getCached( File flowFile, RandomIter flowIter, int cols, int rows, IJGTProgressMonitor pm )
+            throws IOException {
+        File cacheFile = getCacheFile(flowFile);
+        if (cacheFile.exists()) {
+            FlowTopology topology = read(cacheFile, flowFile);
+            if (topology != null && topology.cols == cols && topology.rows == rows) {
+                return topology;
+            }
+        }
+        FlowTopology topology = build(flowIter, cols, rows, pm);
+        if (cacheFile.getParentFile() != null && cacheFile.getParentFile().canWrite()) {
+            topology.write(cacheFile, flowFile);
+        }
+        return topology;
+    }
+
+    /**
+     * Get the cache file used for a flow map.
+     *
+     * @param flowFile the file of the flowdirections map.
+     * @return the cache file.
+     */
+    public static File getCacheFile( File flowFile ) {
+        return new File(flowFile.getAbsolutePath() + CACHE_EXTENSION);
+    }
+
+    /**
+     * Write the topology to file.
+     *
+     * @param topologyFile the file to write to.
+     * @param flowFile the flow map file the topology was created from, used to
+     *              check the cache validity. Can be <code>null</code>.
+     * @throws IOException
+     */
+    public void write( File topologyFile, File flowFile ) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(topologyFile), 1 << 16));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(cols);
+            out.writeInt(rows);
+            out.writeLong(flowFile != null ? flowFile.lastModified() : -1);
+            out.writeLong(flowFile != null ? flowFile.length() : -1);
+            out.writeInt(upstreamCells.length);
+            out.writeInt(order.length);
+            out.write(flow);
+            for( int value : upstreamOffsets ) {
+                out.writeInt(value);
+            }
+            for( int value : upstreamCells ) {
+                out.writeInt(value);
+            }
+            for( int value : order ) {
+                out.writeInt(value);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read a topology from file.
+     *
+     * @param topologyFile the file to read.
+     * @param flowFile the flow map file the topology should belong to. If not <code>null</code>
+     *              and the file changed since the topology was written, <code>null</code>
+     *              is returned.
+     * @return the read topology or <code>null</code> if the file is not a valid or up to date topology.
+     * @throws IOException
+     */
+    public static FlowTopology read( File topologyFile, File flowFile ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(topologyFile, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            int cols = buffer.getInt();
+            int rows = buffer.getInt();
+            long lastModified = buffer.getLong();
+            long length = buffer.getLong();
+            if (flowFile != null && (lastModified != flowFile.lastModified() || length != flowFile.length())) {
+                return null;
+            }
+            int upstreamNum = buffer.getInt();
+            int orderNum = buffer.getInt();
+            int size = cols * rows;
+            long expected = HEADER_SIZE + (long) size + 4L * (size + 1 + upstreamNum + orderNum);
+            if (channel.size() != expected) {
+                return null;
+            }
+
+            byte[] flow = new byte[size];
+            buffer.get(flow);
+            ByteBuffer intsBuffer = buffer.slice();
+            IntBuffer ints = intsBuffer.asIntBuffer();
+            int[] upstreamOffsets = new int[size + 1];
+            ints.get(upstreamOffsets);
+            int[] upstreamCells = new int[upstreamNum];
+            ints.get(upstreamCells);
+            int[] order = new int[orderNum];
+            ints.get(order);
+            return new FlowTopology(cols, rows, flow, upstreamOffsets, upstreamCells, order);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int downstream( byte[] flow, int cols, int rows, int index ) {
+        int flowValue = flow[index];
+        if (flowValue < 1 || flowValue > 8) {
+            return -1;
+        }
+        Direction direction = Direction.forFlow(flowValue);
+        int col = index % cols + direction.col;
+        int row = index / cols + direction.row;
+        if (col < 0 || col >= cols || row < 0 || row >= rows) {
+            return -1;
+        }
+        int downstreamIndex = row * cols + col;
+        if (flow[downstreamIndex] == NOFLOW) {
+            return -1;
+        }
+        return downstreamIndex;
+    }
+
+    /**
+     * @return the cols of the flow map.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return the rows of the flow map.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get the cell index of a position.
+     *
+     * @param col the col.
+     * @param row the row.
+     * @return the index of the cell.
+     */
+    public int index( int col, int row ) {
+        return row * cols + col;
+    }
+
+    /**
+     * @param index the cell index.
+     * @return <code>true</code> if the cell has a valid flow value.
+     */
+    public boolean isValid( int index ) {
+        return flow[index] != NOFLOW;
+    }
+
+    /**
+     * @param index the cell index.
+     * @return <code>true</code> if the cell is marked as outlet.
+     */
+    public boolean isOutlet( int index ) {
+        return flow[index] == OUTLET;
+    }
+
+    /**
+     * @param index the cell index.
+     * @return <code>true</code> if the cell has a flow direction and no cell flows into it.
+     */
+    public boolean isSource( int index ) {
+        int flowValue = flow[index];
+        return flowValue >= 1 && flowValue <= 8 && getUpstreamCount(index) == 0;
+    }
+
+    /**
+     * @param index the cell index.
+     * @return the flow value of the cell or 0 for invalid cells.
+     */
+    public int getFlow( int index ) {
+        return flow[index];
+    }
+
+    /**
+     * Get the cell a cell flows into.
+     *
+     * @param index the cell index.
+     * @return the downstream cell index or -1 if the cell is an outlet or flows out of the valid map.
+     */
+    public int getDownstream( int index ) {
+        return downstream(flow, cols, rows, index);
+    }
+
+    /**
+     * @param index the cell index.
+     * @return the number of cells flowing into the cell.
+     */
+    public int getUpstreamCount( int index ) {
+        return upstreamOffsets[index + 1] - upstreamOffsets[index];
+    }
+
+    /**
+     * @param index the cell index.
+     * @return the position in {@link #getUpstreamCell(int)} of the first upstream cell.
+     */
+    public int getUpstreamStart( int index ) {
+        return upstreamOffsets[index];
+    }
+
+    /**
+     * @param index the cell index.
+     * @return the position in {@link #getUpstreamCell(int)} after the last upstream cell.
+     */
+    public int getUpstreamEnd( int index ) {
+        return upstreamOffsets[index + 1];
+    }
+
+    /**
+     * @param position the position between {@link #getUpstreamStart(int)} and {@link #getUpstreamEnd(int)}.
+     * @return the upstream cell index.
+     */
+    public int getUpstreamCell( int position ) {
+        return upstreamCells[position];
+    }
+
+    /**
+     * Get the valid cells ordered from the sources to the outlets.
+     *
+     * <p>Every cell comes after all the cells that flow into it. Cells that are
+     * part of a flow loop are not contained. The array is not copied, do not modify it.</p>
+     *
+     * @return the ordered cell indexes.
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.awt.image.Raster;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Horizon angles table of a digital elevation model.
+ *
+ * <p>
+ * For a fixed number of azimuths the horizon angle (the elevation angle
+ * under which the terrain hides the sky) is calculated once for every cell
+ * of the dem. Every azimuth is handled as a family of parallel lines that
+ * cover the whole grid, each line is swept once keeping the upper convex
+ * hull of the already visited profile points, so that the horizon of every
+ * cell is found in amortized constant time (Dozier's algorithm).
+ * </p>
+ * <p>
+ * Azimuths are measured clockwise from north, in radians. The table is
+ * kept as floats and occupies <code>cols * rows * azimuthsNum * 4</code> bytes.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class HorizonEngine {
+
+    private final double[] elevation;
+    private final int cols;
+    private final int rows;
+    private final double xRes;
+    private final double yRes;
+    private final int azimuthsNum;
+    private final double azimuthStep;
+
+    private float[] horizons;
+
+    /**
+     * Constructor.
+     *
+     * @param elevRaster the elevation raster. Novalues are ignored.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     * @param azimuthsNum the number of azimuths to consider, equally spaced over 360 degrees.
+     */
+    public HorizonEngine( Raster elevRaster, double xRes, double yRes, int azimuthsNum ) {
+        this(elevRaster.getSamples(elevRaster.getMinX(), elevRaster.getMinY(), elevRaster.getWidth(), elevRaster.getHeight(),
+                0, (double[]) null), elevRaster.getWidth(), elevRaster.getHeight(), xRes, yRes, azimuthsNum);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param elevation the elevation values in row major order.
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     * @param azimuthsNum the number of azimuths to consider, equally spaced over 360 degrees.
+     */
+    public HorizonEngine( double[] elevation, int cols, int rows, double xRes, double yRes, int azimuthsNum ) {
+        if (azimuthsNum < 1) {
+            throw new IllegalArgumentException("The number of azimuths has to be positive.");
+        }
+        if (elevation.length != cols * rows) {
+            throw new IllegalArgumentException("The elevation array doesn't match the grid size.");
+        }
+        this.elevation = elevation;
+        this.cols = cols;
+        this.rows = rows;
+        this.xRes = xRes;
+        this.yRes = yRes;
+        this.azimuthsNum = azimuthsNum;
+        azimuthStep = 2.0 * Math.PI / azimuthsNum;
+    }
+
+    /**
+     * Calculate the horizon table.
+     *
+     * @param threads the number of threads to use. Azimuths are processed in parallel.
+     * @param pm the progress monitor.
+     */
+    public void calculate( int threads, final IJGTProgressMonitor pm ) {
+        horizons = new float[azimuthsNum * cols * rows];
+
+        pm.beginTask("Calculating horizon angles...", azimuthsNum);
+        if (threads > 1) {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            for( int k = 0; k < azimuthsNum; k++ ) {
+                final int azimuthIndex = k;
+                Runnable runner = new Runnable(){
+                    public void run() {
+                        sweepAzimuth(azimuthIndex);
+                        synchronized (pm) {
+                            pm.worked(1);
+                        }
+                    }
+                };
+                fixedThreadPool.execute(runner);
+            }
+            try {
+                fixedThreadPool.shutdown();
+                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+                fixedThreadPool.shutdownNow();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        } else {
+            for( int k = 0; k < azimuthsNum; k++ ) {
+                sweepAzimuth(k);
+                pm.worked(1);
+            }
+        }
+        pm.done();
+    }
+
+    /**
+     * @return the number of azimuths of the table.
+     */
+    public int getAzimuthsNum() {
+        return azimuthsNum;
+    }
+
+    /**
+     * Get the azimuth of a table index.
+     *
+     * @param azimuthIndex the index of the azimuth.
+     * @return the azimuth in radians, clockwise from north.
+     */
+    public double getAzimuth( int azimuthIndex ) {
+        return azimuthIndex * azimuthStep;
+    }
+
+    /**
+     * Get the horizon angle for a tabulated azimuth.
+     *
+     * @param azimuthIndex the index of the azimuth.
+     * @param col the col of the cell.
+     * @param row the row of the cell.
+     * @return the horizon angle in radians. Negative values mean that the terrain
+     *          towards that direction is lower than the cell.
+     */
+    public float getHorizon( int azimuthIndex, int col, int row ) {
+        checkCalculated();
+        return horizons[azimuthIndex * cols * rows + row * cols + col];
+    }
+
+    /**
+     * Get the horizon angle for any azimuth, linearly interpolating between the
+     * tabulated azimuths.
+     *
+     * @param azimuth the azimuth in radians, clockwise from north.
+     * @param col the col of the cell.
+     * @param row the row of the cell.
+     * @return the horizon angle in radians.
+     */
+    public double getHorizon( double azimuth, int col, int row ) {
+        checkCalculated();
+        double position = azimuth / azimuthStep;
+        double floor = Math.floor(position);
+        double weight = position - floor;
+        int k1 = (int) floor % azimuthsNum;
+        if (k1 < 0) {
+            k1 = k1 + azimuthsNum;
+        }
+        int k2 = (k1 + 1) % azimuthsNum;
+        int cellIndex = row * cols + col;
+        int size = cols * rows;
+        return horizons[k1 * size + cellIndex] * (1.0 - weight) + horizons[k2 * size + cellIndex] * weight;
+    }
+
+    /**
+     * Checks if a cell sees the sky in a given direction.
+     *
+     * @param azimuth the azimuth in radians, clockwise from north.
+     * @param elevationAngle the elevation angle above the horizontal plane in radians.
+     * @param col the col of the cell.
+     * @param row the row of the cell.
+     * @return <code>true</code> if the direction is above the horizon.
+     */
+    public boolean isVisible( double azimuth, double elevationAngle, int col, int row ) {
+        return elevationAngle > getHorizon(azimuth, col, row);
+    }
+
+    private void checkCalculated() {
+        if (horizons == null) {
+            throw new IllegalStateException("The horizon table has not been calculated yet.");
+        }
+    }
+
+    /**
+     * Sweep all the lines of one azimuth.
+     *
+     * <p>The lines follow the dominant axis of the direction one cell at the time,
+     * so that every cell of the grid is visited exactly once per azimuth.</p>
+     */
+    private void sweepAzimuth( int azimuthIndex ) {
+        double azimuth = getAzimuth(azimuthIndex);
+        // direction towards the horizon in grid space (rows grow southwards)
+        double dCol = Math.sin(azimuth);
+        double dRow = -Math.cos(azimuth);
+        if (Math.abs(dCol) < 1E-12) {
+            dCol = 0.0;
+        }
+        if (Math.abs(dRow) < 1E-12) {
+            dRow = 0.0;
+        }
+
+        int offset = azimuthIndex * cols * rows;
+        boolean colDominant = Math.abs(dCol) >= Math.abs(dRow);
+        int lineLength = colDominant ? cols : rows;
+        int linesCross = colDominant ? rows : cols;
+        double slope = colDominant ? dRow / dCol : dCol / dRow;
+        boolean forward = colDominant ? dCol > 0 : dRow > 0;
+        double stepLength = colDominant ? Math.sqrt(xRes * xRes + slope * yRes * slope * yRes) : Math.sqrt(yRes * yRes
+                + slope * xRes * slope * xRes);
+
+        // the upper convex hull of the profile, as a stack
+        double[] hullT = new double[lineLength];
+        double[] hullZ = new double[lineLength];
+
+        long lastShift = Math.round((lineLength - 1) * slope);
+        int minShift = (int) Math.min(0, lastShift);
+        int maxShift = (int) Math.max(0, lastShift);
+
+        for( int line = -maxShift; line < linesCross - minShift; line++ ) {
+            int hullSize = 0;
+            for( int s = 0; s < lineLength; s++ ) {
+                // walk from the far end of the line towards its start
+                int step = forward ? lineLength - 1 - s : s;
+                int cross = line + (int) Math.round(step * slope);
+                if (cross < 0 || cross >= linesCross) {
+                    continue;
+                }
+                int col = colDominant ? step : cross;
+                int row = colDominant ? cross : step;
+                int index = row * cols + col;
+                double z = elevation[index];
+                if (isNovalue(z)) {
+                    horizons[offset + index] = Float.NaN;
+                    continue;
+                }
+                // distance along the direction towards the horizon
+                double t = forward ? step * stepLength : -step * stepLength;
+
+                while( hullSize >= 2 ) {
+                    double slopeTop = (hullZ[hullSize - 1] - z) / (hullT[hullSize - 1] - t);
+                    double slopeSecond = (hullZ[hullSize - 2] - z) / (hullT[hullSize - 2] - t);
+                    if (slopeTop <= slopeSecond) {
+                        hullSize--;
+                    } else {
+                        break;
+                    }
+                }
+                if (hullSize > 0) {
+                    double tangent = (hullZ[hullSize - 1] - z) / (hullT[hullSize - 1] - t);
+                    horizons[offset + index] = (float) Math.atan(tangent);
+                } else {
+                    horizons[offset + index] = 0f;
+                }
+                hullT[hullSize] = t;
+                hullZ[hullSize] = z;
+                hullSize++;
+            }
+        }
+    }
+
+}
@@ -40,12 +40,15 @@ import org.geotools.process.Process;
 import org.geotools.process.ProcessException;
 import org.jgrasstools.gears.io.rasterreader.OmsRasterReader;
 import org.jgrasstools.gears.io.rasterwriter.OmsRasterWriter;
+import org.jgrasstools.gears.io.rasterwriter.StreamingGeoTiffWriter;
 import org.jgrasstools.gears.io.vectorreader.OmsVectorReader;
 import org.jgrasstools.gears.io.vectorwriter.OmsVectorWriter;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.monitor.GeotoolsProgressMonitorAdapter;
 import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
 import org.jgrasstools.gears.libs.monitor.LogProgressMonitor;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.util.ProgressListener;
 
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -272,6 +275,31 @@ public class JGTModel implements Process {
         OmsRasterWriter.writeRaster(source, raster);
     }
 
+    /**
+     * Open a GeoTIFF file to which a raster can be written row by row while it is computed.
+     * 
+     * <p>This avoids keeping the whole output map in memory. The file is complete only
+     * after {@link StreamingGeoTiffWriter#close()} has been called.</p>
+     * <p>If the source is <code>null</code>, null will be returned.</p>
+     * 
+     * @param source the path of the tiff file to write to.
+     * @param regionMap the region of the raster.
+     * @param crs the {@link CoordinateReferenceSystem} of the raster.
+     * @return the writer to which to append the rows of the raster.
+     * @throws Exception
+     */
+    public static StreamingGeoTiffWriter openRasterStream( String source, RegionMap regionMap, CoordinateReferenceSystem crs )
+            throws Exception {
+        if (source == null)
+            return null;
+        String lowerSource = source.toLowerCase();
+        if (!lowerSource.endsWith(JGTConstants.GEOTIFF) && !lowerSource.endsWith(JGTConstants.GEOTIF)) {
+            throw new ModelsIllegalargumentException("Rasters can be streamed only to tiff files: " + source,
+                    JGTModel.class.getSimpleName());
+        }
+        return new StreamingGeoTiffWriter(new File(source), regionMap, crs);
+    }
+
     /**
      * Fast default writing of vector to source. 
      * 
@@ -0,0 +1,473 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.libs.modules;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.doubleNovalue;
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Moving window statistics of a grid.
+ *
+ * <p>
+ * The window slides along every row: at every step only the columns that leave and
+ * enter the window are updated, so the cost per cell is proportional to the window
+ * height and not to its area, and nothing is allocated per cell. Besides running sums
+ * for mean and standard deviation, the window keeps a histogram of the value ranks
+ * (Huang's median filter) as a binary indexed tree, which gives exact medians and
+ * percentiles in logarithmic time.
+ * </p>
+ * <p>
+ * Output rows are processed in bands, every band ranks only the values of the rows it
+ * touches, so the memory used by the histogram doesn't depend on the grid size.
+ * Bands are split among threads.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class WindowStatisticsEngine {
+
+    private static final int BAND_ROWS = 64;
+
+    /**
+     * The calculation applied to every position of the window.
+     */
+    public static interface WindowFunction {
+        /**
+         * @param window the current window.
+         * @param value the value of the cell the window is positioned on.
+         * @return the output value of the cell.
+         */
+        public double calculate( Window window, double value );
+    }
+
+    /**
+     * Mean of the valid values, novalue if there are none.
+     */
+    public static final WindowFunction MEAN = new WindowFunction(){
+        public double calculate( Window window, double value ) {
+            return window.getMean();
+        }
+    };
+
+    /**
+     * Sum of the valid values.
+     */
+    public static final WindowFunction SUM = new WindowFunction(){
+        public double calculate( Window window, double value ) {
+            return window.getSum();
+        }
+    };
+
+    /**
+     * Minimum of the valid values.
+     */
+    public static final WindowFunction MIN = new WindowFunction(){
+        public double calculate( Window window, double value ) {
+            return window.getMin();
+        }
+    };
+
+    /**
+     * Maximum of the valid values.
+     */
+    public static final WindowFunction MAX = new WindowFunction(){
+        public double calculate( Window window, double value ) {
+            return window.getMax();
+        }
+    };
+
+    /**
+     * Median of the valid values.
+     */
+    public static final WindowFunction MEDIAN = percentile(0.5);
+
+    /**
+     * Standard deviation of the valid values.
+     */
+    public static final WindowFunction STANDARD_DEVIATION = new WindowFunction(){
+        public double calculate( Window window, double value ) {
+            return window.getStandardDeviation();
+        }
+    };
+
+    /**
+     * Create a percentile function.
+     *
+     * @param fraction the percentile as fraction between 0 and 1.
+     * @return the function.
+     */
+    public static WindowFunction percentile( final double fraction ) {
+        if (fraction < 0 || fraction > 1) {
+            throw new IllegalArgumentException("The percentile has to be between 0 and 1.");
+        }
+        return new WindowFunction(){
+            public double calculate( Window window, double value ) {
+                return window.getPercentile(fraction);
+            }
+        };
+    }
+
+    private final double[] values;
+    private final int cols;
+    private final int rows;
+
+    /**
+     * Constructor.
+     *
+     * @param values the grid values in row major order. Novalues are ignored.
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     */
+    public WindowStatisticsEngine( double[] values, int cols, int rows ) {
+        if (values.length != cols * rows) {
+            throw new IllegalArgumentException("The values array doesn't match the grid size.");
+        }
+        this.values = values;
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Apply a function on a window centered on every cell of the grid.
+     *
+     * @param windowCols the cols of the window, odd.
+     * @param windowRows the rows of the window, odd.
+     * @param function the function to apply.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the output values in row major order.
+     */
+    public double[] calculate( int windowCols, int windowRows, WindowFunction function, int threads, IJGTProgressMonitor pm ) {
+        return calculate(windowCols, windowRows, windowCols / 2, windowRows / 2, 1, 1, function, threads, pm);
+    }
+
+    /**
+     * Apply a function on a window moved over the grid by fixed steps.
+     *
+     * <p>The output grid has <code>ceil(cols / xStep)</code> cols and <code>ceil(rows / yStep)</code> rows,
+     * the output cell <code>(c, r)</code> being the input cell <code>(c * xStep, r * yStep)</code>.
+     * Window cells that fall outside the grid are ignored.</p>
+     *
+     * @param windowCols the cols of the window.
+     * @param windowRows the rows of the window.
+     * @param keyCol the col of the window on which the cell is placed.
+     * @param keyRow the row of the window on which the cell is placed.
+     * @param xStep the cols to move the window forward.
+     * @param yStep the rows to move the window forward.
+     * @param function the function to apply.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the output values in row major order.
+     */
+    public double[] calculate( final int windowCols, final int windowRows, final int keyCol, final int keyRow, final int xStep,
+            final int yStep, final WindowFunction function, int threads, final IJGTProgressMonitor pm ) {
+        if (windowCols < 1 || windowRows < 1 || xStep < 1 || yStep < 1) {
+            throw new IllegalArgumentException("Window size and steps have to be positive.");
+        }
+        final int outCols = (cols + xStep - 1) / xStep;
+        final int outRows = (rows + yStep - 1) / yStep;
+        final double[] output = new double[outCols * outRows];
+
+        final int bandsNum = (outRows + BAND_ROWS - 1) / BAND_ROWS;
+        final AtomicInteger nextBand = new AtomicInteger(0);
+        pm.beginTask("Calculating window statistics...", bandsNum);
+        Runnable runner = new Runnable(){
+            public void run() {
+                int band;
+                while( (band = nextBand.getAndIncrement()) < bandsNum ) {
+                    int fromRow = band * BAND_ROWS;
+                    int toRow = Math.min(fromRow + BAND_ROWS, outRows);
+                    processBand(fromRow, toRow, outCols, windowCols, windowRows, keyCol, keyRow, xStep, yStep, function,
+                            output);
+                    synchronized (pm) {
+                        pm.worked(1);
+                    }
+                }
+            }
+        };
+        if (threads > 1) {
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            for( int i = 0; i < Math.min(threads, bandsNum); i++ ) {
+                fixedThreadPool.execute(runner);
+            }
+            try {
+                fixedThreadPool.shutdown();
+                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+                fixedThreadPool.shutdownNow();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        } else {
+            runner.run();
+        }
+        pm.done();
+        return output;
+    }
+
+    private void processBand( int fromRow, int toRow, int outCols, int windowCols, int windowRows, int keyCol, int keyRow,
+            int xStep, int yStep, WindowFunction function, double[] output ) {
+        // input rows touched by the band
+        int firstRow = Math.max(0, fromRow * yStep - keyRow);
+        int lastRow = Math.min(rows - 1, (toRow - 1) * yStep - keyRow + windowRows - 1);
+        if (firstRow > lastRow) {
+            Arrays.fill(output, fromRow * outCols, toRow * outCols, function.calculate(new Window(new double[0]), doubleNovalue));
+            return;
+        }
+
+        // rank the values of the band
+        double[] sorted = new double[(lastRow - firstRow + 1) * cols];
+        int validNum = 0;
+        for( int i = firstRow * cols; i < (lastRow + 1) * cols; i++ ) {
+            if (!isNovalue(values[i])) {
+                sorted[validNum++] = values[i];
+            }
+        }
+        Arrays.sort(sorted, 0, validNum);
+        int distinctNum = 0;
+        for( int i = 0; i < validNum; i++ ) {
+            if (distinctNum == 0 || sorted[i] != sorted[distinctNum - 1]) {
+                sorted[distinctNum++] = sorted[i];
+            }
+        }
+        double[] distinct = Arrays.copyOf(sorted, distinctNum);
+        int[] ranks = new int[(lastRow - firstRow + 1) * cols];
+        for( int i = 0; i < ranks.length; i++ ) {
+            double value = values[firstRow * cols + i];
+            ranks[i] = isNovalue(value) ? -1 : Arrays.binarySearch(distinct, value);
+        }
+
+        Window window = new Window(distinct);
+        for( int r = fromRow; r < toRow; r++ ) {
+            int row = r * yStep;
+            int windowFromRow = Math.max(firstRow, row - keyRow);
+            int windowToRow = Math.min(lastRow, row - keyRow + windowRows - 1);
+            window.clear();
+            // cols currently in the window
+            int inFrom = 0;
+            int inTo = -1;
+            for( int c = 0; c < outCols; c++ ) {
+                int col = c * xStep;
+                int newFrom = Math.max(0, col - keyCol);
+                int newTo = Math.min(cols - 1, col - keyCol + windowCols - 1);
+                for( int wc = inFrom; wc <= inTo; wc++ ) {
+                    if (wc < newFrom || wc > newTo) {
+                        updateColumn(window, ranks, wc, windowFromRow - firstRow, windowToRow - firstRow, -1);
+                    }
+                }
+                for( int wc = newFrom; wc <= newTo; wc++ ) {
+                    if (wc < inFrom || wc > inTo) {
+                        updateColumn(window, ranks, wc, windowFromRow - firstRow, windowToRow - firstRow, 1);
+                    }
+                }
+                inFrom = newFrom;
+                inTo = newTo;
+                output[r * outCols + c] = function.calculate(window, values[row * cols + col]);
+            }
+        }
+    }
+
+    private void updateColumn( Window window, int[] ranks, int col, int fromRow, int toRow, int sign ) {
+        for( int r = fromRow; r <= toRow; r++ ) {
+            int rank = ranks[r * cols + col];
+            if (rank >= 0) {
+                window.update(rank, sign);
+            }
+        }
+    }
+
+    /**
+     * The valid values currently inside the window.
+     *
+     * <p>Counts and sums are kept per value rank in binary indexed trees.</p>
+     */
+    public static class Window {
+        private final double[] distinct;
+        private final int[] counts;
+        private final double[] sums;
+        private final int highestStep;
+        /* values are shifted for the variance, to avoid cancellation */
+        private final double shift;
+        private int count;
+        private double sum;
+        private double shiftedSum;
+        private double shiftedSquaresSum;
+
+        private Window( double[] distinct ) {
+            this.distinct = distinct;
+            counts = new int[distinct.length + 1];
+            sums = new double[distinct.length + 1];
+            highestStep = distinct.length == 0 ? 0 : Integer.highestOneBit(distinct.length);
+            shift = distinct.length == 0 ? 0 : distinct[distinct.length / 2];
+        }
+
+        private void clear() {
+            if (count != 0) {
+                Arrays.fill(counts, 0);
+                Arrays.fill(sums, 0);
+            }
+            count = 0;
+            sum = 0;
+            shiftedSum = 0;
+            shiftedSquaresSum = 0;
+        }
+
+        private void update( int rank, int sign ) {
+            double value = distinct[rank];
+            double signedValue = sign * value;
+            for( int i = rank + 1; i < counts.length; i += i & -i ) {
+                counts[i] += sign;
+                sums[i] += signedValue;
+            }
+            count += sign;
+            sum += signedValue;
+            double shifted = value - shift;
+            shiftedSum += sign * shifted;
+            shiftedSquaresSum += sign * shifted * shifted;
+        }
+
+        /**
+         * @return the number of valid values.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of the values.
+         */
+        public double getSum() {
+            return sum;
+        }
+
+        /**
+         * @return the mean of the values or novalue if the window is empty.
+         */
+        public double getMean() {
+            if (count == 0) {
+                return doubleNovalue;
+            }
+            return sum / count;
+        }
+
+        /**
+         * @return the population standard deviation of the values or novalue if the window is empty.
+         */
+        public double getStandardDeviation() {
+            if (count == 0) {
+                return doubleNovalue;
+            }
+            double mean = shiftedSum / count;
+            double variance = shiftedSquaresSum / count - mean * mean;
+            return Math.sqrt(Math.max(0.0, variance));
+        }
+
+        /**
+         * @return the minimum value or positive infinity if the window is empty.
+         */
+        public double getMin() {
+            if (count == 0) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return getValueAt(0);
+        }
+
+        /**
+         * @return the maximum value or negative infinity if the window is empty.
+         */
+        public double getMax() {
+            if (count == 0) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            return getValueAt(count - 1);
+        }
+
+        /**
+         * Get a percentile as the value at position <code>floor(fraction * (count - 1))</code>
+         * of the sorted values, so that the median of an even number of values is the lower one.
+         *
+         * @param fraction the percentile as fraction between 0 and 1.
+         * @return the value or novalue if the window is empty.
+         */
+        public double getPercentile( double fraction ) {
+            if (count == 0) {
+                return doubleNovalue;
+            }
+            return getValueAt((int) Math.floor(fraction * (count - 1)));
+        }
+
+        /**
+         * Get the value at a position of the sorted values.
+         *
+         * @param index the position, between 0 and count - 1.
+         * @return the value.
+         */
+        public double getValueAt( int index ) {
+            int position = 0;
+            int remaining = index;
+            for( int step = highestStep; step > 0; step >>= 1 ) {
+                int next = position + step;
+                if (next < counts.length && counts[next] <= remaining) {
+                    position = next;
+                    remaining = remaining - counts[next];
+                }
+            }
+            return distinct[position];
+        }
+
+        /**
+         * @param value the threshold.
+         * @return the number of values greater or equal to the threshold.
+         */
+        public int getCountAtLeast( double value ) {
+            int below = 0;
+            for( int i = lowerRank(value); i > 0; i -= i & -i ) {
+                below += counts[i];
+            }
+            return count - below;
+        }
+
+        /**
+         * @param value the threshold.
+         * @return the sum of the values greater or equal to the threshold.
+         */
+        public double getSumAtLeast( double value ) {
+            double below = 0;
+            for( int i = lowerRank(value); i > 0; i -= i & -i ) {
+                below += sums[i];
+            }
+            return sum - below;
+        }
+
+        /**
+         * @return the number of distinct values lower than the given one.
+         */
+        private int lowerRank( double value ) {
+            int index = Arrays.binarySearch(distinct, value);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+}
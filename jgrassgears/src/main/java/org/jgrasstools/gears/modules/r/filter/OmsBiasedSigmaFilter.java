@@ -18,7 +18,6 @@
 package org.jgrasstools.gears.modules.r.filter;
 
 import static java.lang.Math.abs;
-import static java.lang.Math.min;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_AUTHORCONTACTS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_AUTHORNAMES;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_DRAFT;
@@ -28,7 +27,6 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.*;
 import java.awt.image.WritableRaster;
 
 import javax.media.jai.iterator.RandomIter;
-import javax.media.jai.iterator.WritableRandomIter;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -43,9 +41,10 @@ import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
-import org.jgrasstools.gears.libs.modules.GridNode;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.WindowStatisticsEngine;
+import org.jgrasstools.gears.libs.modules.WindowStatisticsEngine.Window;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 
@@ -62,6 +61,14 @@ public class OmsBiasedSigmaFilter extends JGTModel {
 	@In
 	public GridCoverage2D inGeodata;
 
+	@Description("The window size in cells, odd (default 3).")
+	@In
+	public int pWindow = 3;
+
+	@Description("Max threads to use (default 1)")
+	@In
+	public int pMaxThreads = 1;
+
 	@Description("The output raster")
 	@Out
 	public GridCoverage2D outGeodata;
@@ -69,76 +76,67 @@ public class OmsBiasedSigmaFilter extends JGTModel {
 	@Execute
 	public void process() throws Exception {
 		checkNull(inGeodata);
+		if (pWindow < 3 || pWindow % 2 == 0) {
+			throw new ModelsIllegalargumentException(
+					"The window size has to be an odd number greater than 1.",
+					this);
+		}
 
 		RegionMap regionMap = CoverageUtilities
 				.getRegionParamsFromGridCoverage(inGeodata);
 
 		int cols = regionMap.getCols();
 		int rows = regionMap.getRows();
-		double xres = regionMap.getXres();
-		double yres = regionMap.getYres();
 
 		RandomIter inIter = CoverageUtilities.getRandomIterator(inGeodata);
-		WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(
-				cols, rows, null, null, doubleNovalue);
-		WritableRandomIter outIter = CoverageUtilities
-				.getWritableRandomIterator(outWR);
-
-		pm.beginTask("Processing filter...", cols - 2);
-		for (int c = 1; c < cols - 1; c++) {
-			for (int r = 1; r < rows - 1; r++) {
-				GridNode node = new GridNode(inIter, cols, rows, xres, yres, c,
-						r);
-				if (node.isValid() && !node.touchesBound()) {
-					double[][] window = node.getWindow(3, false);
-
-					double elevation = node.elevation;
-					double sumUpper = 0;
-					double countUpper = 0;
-					double sumLower = 0;
-					double countLower = 0;
-
-					for (int i = 0; i < window.length; i++) {
-						for (int j = 0; j < window[0].length; j++) {
-							if (i == 1 && j == 1) {
-								continue;
-							}
-							if (window[i][j] >= elevation) {
-								sumUpper = sumUpper + window[i][j];
-								countUpper++;
+		double[] values = new double[cols * rows];
+		for (int r = 0; r < rows; r++) {
+			for (int c = 0; c < cols; c++) {
+				values[r * cols + c] = inIter.getSampleDouble(c, r, 0);
+			}
+		}
+		inIter.done();
+
+		final int windowCells = pWindow * pWindow;
+		WindowStatisticsEngine engine = new WindowStatisticsEngine(values,
+				cols, rows);
+		double[] filtered = engine.calculate(pWindow, pWindow,
+				new WindowStatisticsEngine.WindowFunction() {
+					public double calculate(Window window, double elevation) {
+						// only cells with a complete window are filtered
+						if (isNovalue(elevation)
+								|| window.getCount() < windowCells) {
+							return doubleNovalue;
+						}
+						// the cell itself is not part of the upper values
+						double countUpper = window.getCountAtLeast(elevation) - 1;
+						double sumUpper = window.getSumAtLeast(elevation)
+								- elevation;
+						double countLower = window.getCount() - 1 - countUpper;
+						double sumLower = window.getSum() - elevation
+								- sumUpper;
+
+						double avgUpper = sumUpper / countUpper;
+						double avgLower = sumLower / countLower;
+						if (countUpper == 0) {
+							return avgLower;
+						} else if (countLower == 0) {
+							return avgUpper;
+						} else {
+							double deltaUpper = abs(elevation - avgUpper);
+							double deltaLower = abs(elevation - avgLower);
+							if (deltaUpper < deltaLower) {
+								return avgUpper;
 							} else {
-								sumLower = sumLower + window[i][j];
-								countLower++;
+								return avgLower;
 							}
 						}
 					}
+				}, pMaxThreads, pm);
 
-					double avgUpper = sumUpper / countUpper;
-					double avgLower = sumLower / countLower;
-					double value = 0;
-					if (countUpper == 0) {
-						value = avgLower;
-					} else if (countLower == 0) {
-						value = avgUpper;
-					} else {
-						double deltaUpper = abs(elevation - avgUpper);
-						double deltaLower = abs(elevation - avgLower);
-						if (deltaUpper < deltaLower) {
-							value = avgUpper;
-						} else {
-							value = avgLower;
-						}
-					}
-					if (isNovalue(value)) {
-						throw new ModelsIllegalargumentException("Found NaN",
-								this);
-					}
-					outIter.setSample(c, r, 0, value);
-				}
-			}
-			pm.worked(1);
-		}
-		pm.done();
+		WritableRaster outWR = CoverageUtilities.createDoubleWritableRaster(
+				cols, rows, null, null, null);
+		outWR.setSamples(0, 0, cols, rows, 0, filtered);
 
 		outGeodata = CoverageUtilities.buildCoverage("sigma", outWR, regionMap,
 				inGeodata.getCoordinateReferenceSystem());
@@ -39,14 +39,10 @@ import static org.jgrasstools.gears.libs.modules.Variables.IDW;
 import static org.jgrasstools.gears.libs.modules.Variables.TPS;
 
 import java.awt.image.WritableRaster;
-import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import javax.media.jai.iterator.RandomIterFactory;
-import javax.media.jai.iterator.WritableRandomIter;
-
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
@@ -61,29 +57,25 @@ import oms3.annotations.Status;
 import oms3.annotations.UI;
 import oms3.annotations.Unit;
 
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.geometry.DirectPosition2D;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
-import org.jgrasstools.gears.modules.r.interpolation2d.core.IDWInterpolator;
-import org.jgrasstools.gears.modules.r.interpolation2d.core.ISurfaceInterpolator;
-import org.jgrasstools.gears.modules.r.interpolation2d.core.TPSInterpolator;
+import org.jgrasstools.gears.modules.r.interpolation2d.core.SurfaceInterpolationEngine;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.type.GeometryDescriptor;
-import org.opengis.geometry.DirectPosition;
+import org.opengis.referencing.operation.MathTransform2D;
 import org.opengis.referencing.operation.TransformException;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.index.strtree.STRtree;
 
 @Description(OMSSURFACEINTERPOLATOR_DESCRIPTION)
 @Documentation(OMSSURFACEINTERPOLATOR_DOCUMENTATION)
@@ -129,7 +121,17 @@ public class OmsSurfaceInterpolator extends JGTModel {
     @Out
     public GridCoverage2D outRaster = null;
 
-    private ISurfaceInterpolator interpolator;
+    /**
+     * The side of the blocks of cells that share the control points query.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * The max number of solved neighbourhoods kept per thread.
+     */
+    private static final int CACHE_SIZE = 1000;
+
+    private SurfaceInterpolationEngine engine;
 
     @Execute
     public void process() throws Exception {
@@ -142,40 +144,37 @@ public class OmsSurfaceInterpolator extends JGTModel {
 
         RegionMap regionMap = CoverageUtilities.gridGeometry2RegionParamsMap(inGrid);
         final int cols = regionMap.getCols();
-        int rows = regionMap.getRows();
+        final int rows = regionMap.getRows();
 
-        SimpleFeatureIterator featureIterator = inVector.features();
-        Coordinate[] coordinates = new Coordinate[inVector.size()];
-        final STRtree tree = new STRtree(coordinates.length);
+        int pointsNum = inVector.size();
+        double[] xs = new double[pointsNum];
+        double[] ys = new double[pointsNum];
+        double[] zs = new double[pointsNum];
 
+        SimpleFeatureIterator featureIterator = inVector.features();
         int index = 0;
-        pm.beginTask("Indexing control points...", coordinates.length);
-        while( featureIterator.hasNext() ) {
-            SimpleFeature feature = featureIterator.next();
-            Geometry geometry = (Geometry) feature.getDefaultGeometry();
-            coordinates[index] = geometry.getCoordinate();
-            double value = ((Number) feature.getAttribute(fCat)).doubleValue();
-            coordinates[index].z = value;
-
-            Envelope env = new Envelope(coordinates[index]);
-            tree.insert(env, coordinates[index]);
-
-            pm.worked(1);
+        pm.beginTask("Indexing control points...", pointsNum);
+        try {
+            while( featureIterator.hasNext() ) {
+                SimpleFeature feature = featureIterator.next();
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Coordinate coordinate = geometry.getCoordinate();
+                xs[index] = coordinate.x;
+                ys[index] = coordinate.y;
+                zs[index] = ((Number) feature.getAttribute(fCat)).doubleValue();
+                index++;
+                pm.worked(1);
+            }
+        } finally {
+            featureIterator.close();
         }
-        tree.build();
+        engine = new SurfaceInterpolationEngine(xs, ys, zs, pBuffer, !pMode.equals(IDW), CACHE_SIZE);
         pm.done();
 
-        pm.message("Indexed control points: " + coordinates.length);
+        pm.message("Indexed control points: " + pointsNum);
 
-        if (pMode.equals(IDW)) {
-            interpolator = new IDWInterpolator(pBuffer);
-        } else {
-            interpolator = new TPSInterpolator(pBuffer);
-        }
-
-        WritableRaster interpolatedWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null,
+        final WritableRaster interpolatedWR = CoverageUtilities.createDoubleWritableRaster(cols, rows, null, null,
                 JGTConstants.doubleNovalue);
-        final WritableRandomIter interpolatedIter = RandomIterFactory.createWritable(interpolatedWR, null);
 
         boolean doMultiThread = pMaxThreads > 1;
 
@@ -184,19 +183,18 @@ public class OmsSurfaceInterpolator extends JGTModel {
             fixedThreadPool = Executors.newFixedThreadPool(pMaxThreads);
 
         pm.beginTask("Performing interpolation...", rows);
-
-        final double[] eval = new double[1];
-        for( int r = 0; r < rows; r++ ) {
-            final int row = r;
+        for( int r = 0; r < rows; r = r + BLOCK_SIZE ) {
+            final int fromRow = r;
+            final int toRow = Math.min(rows, r + BLOCK_SIZE);
             if (doMultiThread) {
                 Runnable runner = new Runnable(){
                     public void run() {
-                        processing(cols, tree, interpolatedIter, eval, row);
+                        processing(cols, fromRow, toRow, interpolatedWR);
                     }
                 };
                 fixedThreadPool.execute(runner);
             } else {
-                processing(cols, tree, interpolatedIter, eval, row);
+                processing(cols, fromRow, toRow, interpolatedWR);
             }
         }
 
@@ -216,46 +214,59 @@ public class OmsSurfaceInterpolator extends JGTModel {
 
     }
 
-    private void processing( final int cols, final STRtree tree, final WritableRandomIter interpolatedIter, final double[] eval,
-            final int row ) {
+    /**
+     * Interpolates a stripe of rows block by block into a local buffer, which 
+     * is then written to the raster at once.
+     */
+    private void processing( final int cols, final int fromRow, final int toRow, final WritableRaster interpolatedWR ) {
         try {
-            for( int c = 0; c < cols; c++ ) {
-                final DirectPosition gridToWorld = inGrid.gridToWorld(new GridCoordinates2D(c, row));
-                // System.out.println(row + "/" + c);
-                boolean doProcess = true;
-                if (inMask != null) {
-                    inMask.evaluate(gridToWorld, eval);
-                    if (isNovalue(eval[0])) {
-                        doProcess = false;
+            MathTransform2D gridToCRS = inGrid.getGridToCRS2D();
+            int stripeRows = toRow - fromRow;
+            double[] stripeValues = new double[cols * stripeRows];
+            double[] gridPositions = new double[2 * BLOCK_SIZE * BLOCK_SIZE];
+            double[] worldPositions = new double[2 * BLOCK_SIZE * BLOCK_SIZE];
+            double[] blockXs = new double[BLOCK_SIZE * BLOCK_SIZE];
+            double[] blockYs = new double[BLOCK_SIZE * BLOCK_SIZE];
+            double[] blockValues = new double[BLOCK_SIZE * BLOCK_SIZE];
+            double[] eval = new double[1];
+
+            for( int fromCol = 0; fromCol < cols; fromCol = fromCol + BLOCK_SIZE ) {
+                int toCol = Math.min(cols, fromCol + BLOCK_SIZE);
+                int blockCols = toCol - fromCol;
+                int cellsNum = blockCols * stripeRows;
+                for( int r = 0; r < stripeRows; r++ ) {
+                    for( int c = 0; c < blockCols; c++ ) {
+                        int i = r * blockCols + c;
+                        gridPositions[2 * i] = fromCol + c;
+                        gridPositions[2 * i + 1] = fromRow + r;
                     }
                 }
-
-                if (doProcess) {
-                    final Coordinate currentCoord = new Coordinate();
-                    final double[] coord = gridToWorld.getCoordinate();
-                    currentCoord.x = coord[0];
-                    currentCoord.y = coord[1];
-
-                    final Envelope env = new Envelope(currentCoord.x - pBuffer, currentCoord.x + pBuffer, currentCoord.y
-                            - pBuffer, currentCoord.y + pBuffer);
-
-                    @SuppressWarnings("unchecked")
-                    final List<Coordinate> result = tree.query(env);
-                    // System.out.println(row + "/" + c + "  = " + result.size());
-
-                    // we need at least 3 points
-                    if (result.size() < 4) {
-                        continue;
+                gridToCRS.transform(gridPositions, 0, worldPositions, 0, cellsNum);
+                for( int i = 0; i < cellsNum; i++ ) {
+                    blockXs[i] = worldPositions[2 * i];
+                    blockYs[i] = worldPositions[2 * i + 1];
+                    if (inMask != null) {
+                        inMask.evaluate(new DirectPosition2D(blockXs[i], blockYs[i]), eval);
+                        if (isNovalue(eval[0])) {
+                            // marks the cell as not to process
+                            blockXs[i] = Double.NaN;
+                        }
                     }
+                }
 
-                    final double value = interpolator.getValue(result.toArray(new Coordinate[0]), currentCoord);
-                    synchronized (interpolatedIter) {
-                        interpolatedIter.setSample(c, row, 0, value);
-                    }
+                engine.interpolate(blockXs, blockYs, cellsNum, blockValues);
+
+                for( int r = 0; r < stripeRows; r++ ) {
+                    System.arraycopy(blockValues, r * blockCols, stripeValues, r * cols + fromCol, blockCols);
                 }
+            }
 
+            synchronized (interpolatedWR) {
+                interpolatedWR.setSamples(0, fromRow, cols, stripeRows, 0, stripeValues);
+            }
+            synchronized (pm) {
+                pm.worked(stripeRows);
             }
-            pm.worked(1);
         } catch (TransformException e) {
             e.printStackTrace();
         }
@@ -67,6 +67,41 @@ public class IDWInterpolator implements ISurfaceInterpolator {
 
     }
 
+    /**
+     * Evaluates the IDW surface in a position.
+     * 
+     * @param xs the x of the control points.
+     * @param ys the y of the control points.
+     * @param zs the values of the control points.
+     * @param n the number of control points.
+     * @param x the x of the position.
+     * @param y the y of the position.
+     * @param buffer the radius inside which control points are considered.
+     * @return the interpolated value.
+     */
+    public static double evaluate( double[] xs, double[] ys, double[] zs, int n, double x, double y, double buffer ) {
+        if (n == 0) {
+            return JGTConstants.doubleNovalue;
+        }
+        double sumdValue = 0;
+        double sumweight = 0;
+        for( int i = 0; i < n; i++ ) {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            double distance = Math.sqrt(dx * dx + dy * dy);
+            if (distance > buffer) {
+                continue;
+            }
+            if (distance < 0.00001) {
+                distance = 0.00001;
+            }
+            double weight = 1 / (distance * distance);
+            sumdValue = sumdValue + zs[i] * weight;
+            sumweight = sumweight + weight;
+        }
+        return sumdValue / sumweight;
+    }
+
     @Override
     public double getBuffer() {
         return buffer;
@@ -0,0 +1,267 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.interpolation2d.core;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+/**
+ * Block based surface interpolation engine for TPS and IDW.
+ * 
+ * <p>
+ * Cells are interpolated in blocks: the control points index is queried once per block
+ * and every cell then picks its neighbourhood among the block candidates. Since 
+ * neighbouring cells mostly share the same control points, the solved TPS weights
+ * are kept per control point set in a bounded LRU cache, so that the TPS system is 
+ * solved only once per distinct neighbourhood.
+ * </p>
+ * <p>
+ * The engine is thread safe, every thread gets its own cache and buffers.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class SurfaceInterpolationEngine {
+
+    /**
+     * The minimum number of control points needed to interpolate a cell.
+     */
+    public static final int MIN_CONTROL_POINTS = 4;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final double[] zs;
+    private final double buffer;
+    private final boolean doTps;
+    private final int cacheSize;
+    private final STRtree tree;
+
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>(){
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    /**
+     * Constructor.
+     * 
+     * @param xs the x of the control points.
+     * @param ys the y of the control points.
+     * @param zs the values of the control points.
+     * @param buffer the half side of the square around a cell in which control points are considered.
+     * @param doTps if <code>true</code>, TPS is used, else IDW.
+     * @param cacheSize the max number of solved neighbourhoods to keep per thread.
+     */
+    public SurfaceInterpolationEngine( double[] xs, double[] ys, double[] zs, double buffer, boolean doTps, int cacheSize ) {
+        this.xs = xs;
+        this.ys = ys;
+        this.zs = zs;
+        this.buffer = buffer;
+        this.doTps = doTps;
+        this.cacheSize = cacheSize;
+
+        tree = new STRtree(Math.max(2, xs.length));
+        for( int i = 0; i < xs.length; i++ ) {
+            tree.insert(new Envelope(xs[i], xs[i], ys[i], ys[i]), i);
+        }
+        tree.build();
+    }
+
+    /**
+     * Interpolate a block of cells.
+     * 
+     * <p>The block should be made of near cells, since the control points 
+     * index is queried for the bounds of the whole block.</p>
+     * 
+     * @param cellXs the x of the cell centers. Cells with <code>NaN</code> x are skipped.
+     * @param cellYs the y of the cell centers.
+     * @param n the number of cells to process.
+     * @param values the array to put the interpolated values into. Cells 
+     *          with too few control points get novalue.
+     */
+    public void interpolate( double[] cellXs, double[] cellYs, int n, double[] values ) {
+        workers.get().interpolate(cellXs, cellYs, n, values);
+    }
+
+    private static class NeighbourhoodKey {
+        private final int[] ids;
+        private final int hash;
+
+        NeighbourhoodKey( int[] ids ) {
+            this.ids = ids;
+            hash = Arrays.hashCode(ids);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals( Object obj ) {
+            return obj instanceof NeighbourhoodKey && Arrays.equals(ids, ((NeighbourhoodKey) obj).ids);
+        }
+    }
+
+    private static class Neighbourhood {
+        private final double[] xs;
+        private final double[] ys;
+        private final double[] weights;
+
+        Neighbourhood( double[] xs, double[] ys, double[] weights ) {
+            this.xs = xs;
+            this.ys = ys;
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * The per thread state.
+     */
+    private class Worker {
+        private final Map<NeighbourhoodKey, Neighbourhood> cache;
+        private int[] candidates = new int[64];
+        private int[] cellIds = new int[64];
+        private double[] cellXs = new double[64];
+        private double[] cellYs = new double[64];
+        private double[] cellZs = new double[64];
+
+        private int[] lastIds = new int[0];
+        private Neighbourhood lastNeighbourhood;
+
+        @SuppressWarnings("serial")
+        Worker() {
+            cache = new LinkedHashMap<NeighbourhoodKey, Neighbourhood>(16, 0.75f, true){
+                protected boolean removeEldestEntry( Map.Entry<NeighbourhoodKey, Neighbourhood> eldest ) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+
+        void interpolate( double[] blockXs, double[] blockYs, int n, double[] values ) {
+            Envelope blockEnvelope = new Envelope();
+            for( int i = 0; i < n; i++ ) {
+                if (!Double.isNaN(blockXs[i])) {
+                    blockEnvelope.expandToInclude(blockXs[i], blockYs[i]);
+                }
+            }
+            if (blockEnvelope.isNull()) {
+                Arrays.fill(values, 0, n, JGTConstants.doubleNovalue);
+                return;
+            }
+            blockEnvelope.expandBy(buffer);
+
+            @SuppressWarnings("unchecked")
+            List<Integer> result = tree.query(blockEnvelope);
+            int candidatesNum = result.size();
+            if (candidatesNum > candidates.length) {
+                candidates = new int[candidatesNum];
+                cellIds = new int[candidatesNum];
+                cellXs = new double[candidatesNum];
+                cellYs = new double[candidatesNum];
+                cellZs = new double[candidatesNum];
+            }
+            for( int i = 0; i < candidatesNum; i++ ) {
+                candidates[i] = result.get(i);
+            }
+            // sorted ids make the neighbourhoods comparable
+            Arrays.sort(candidates, 0, candidatesNum);
+
+            for( int i = 0; i < n; i++ ) {
+                double x = blockXs[i];
+                double y = blockYs[i];
+                if (Double.isNaN(x)) {
+                    values[i] = JGTConstants.doubleNovalue;
+                    continue;
+                }
+                int idsNum = 0;
+                for( int c = 0; c < candidatesNum; c++ ) {
+                    int id = candidates[c];
+                    if (Math.abs(xs[id] - x) <= buffer && Math.abs(ys[id] - y) <= buffer) {
+                        cellIds[idsNum++] = id;
+                    }
+                }
+                if (idsNum < MIN_CONTROL_POINTS) {
+                    values[i] = JGTConstants.doubleNovalue;
+                    continue;
+                }
+
+                if (doTps) {
+                    Neighbourhood neighbourhood = getNeighbourhood(idsNum);
+                    if (neighbourhood.weights == null) {
+                        values[i] = JGTConstants.doubleNovalue;
+                    } else {
+                        values[i] = TPSInterpolator.evaluate(neighbourhood.weights, neighbourhood.xs, neighbourhood.ys, idsNum,
+                                x, y);
+                    }
+                } else {
+                    for( int k = 0; k < idsNum; k++ ) {
+                        int id = cellIds[k];
+                        cellXs[k] = xs[id];
+                        cellYs[k] = ys[id];
+                        cellZs[k] = zs[id];
+                    }
+                    values[i] = IDWInterpolator.evaluate(cellXs, cellYs, cellZs, idsNum, x, y, buffer);
+                }
+            }
+        }
+
+        private Neighbourhood getNeighbourhood( int idsNum ) {
+            // most of the times the previous cell had the same control points
+            if (lastNeighbourhood != null && lastIds.length == idsNum) {
+                boolean same = true;
+                for( int k = 0; k < idsNum; k++ ) {
+                    if (lastIds[k] != cellIds[k]) {
+                        same = false;
+                        break;
+                    }
+                }
+                if (same) {
+                    return lastNeighbourhood;
+                }
+            }
+
+            int[] ids = Arrays.copyOf(cellIds, idsNum);
+            NeighbourhoodKey key = new NeighbourhoodKey(ids);
+            Neighbourhood neighbourhood = cache.get(key);
+            if (neighbourhood == null) {
+                double[] nXs = new double[idsNum];
+                double[] nYs = new double[idsNum];
+                for( int k = 0; k < idsNum; k++ ) {
+                    int id = ids[k];
+                    nXs[k] = xs[id];
+                    nYs[k] = ys[id];
+                    cellZs[k] = zs[id];
+                }
+                double[] weights = TPSInterpolator.solveWeights(nXs, nYs, cellZs, idsNum);
+                neighbourhood = new Neighbourhood(nXs, nYs, weights);
+                cache.put(key, neighbourhood);
+            }
+            lastIds = ids;
+            lastNeighbourhood = neighbourhood;
+            return neighbourhood;
+        }
+    }
+
+}
@@ -17,7 +17,6 @@
  */
 package org.jgrasstools.gears.modules.r.interpolation2d.core;
 
-import org.geotools.referencing.operation.matrix.GeneralMatrix;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 
 import com.vividsolutions.jts.geom.Coordinate;
@@ -49,136 +48,142 @@ public class TPSInterpolator implements ISurfaceInterpolator {
 
     public double getValue( Coordinate[] controlPoints, Coordinate interpolated ) {
         int controlPointsNum = controlPoints.length;
-        GeneralMatrix v = null;
-        try {
-            v = makeMatrix(controlPoints);
-        } catch (Exception e) {
-            return JGTConstants.doubleNovalue;
-        }
-        double a1 = v.getElement(v.getNumRow() - 3, 0);
-        double a2 = v.getElement(v.getNumRow() - 2, 0);
-        double a3 = v.getElement(v.getNumRow() - 1, 0);
-
-        double sum = 0;
+        double[] xs = new double[controlPointsNum];
+        double[] ys = new double[controlPointsNum];
+        double[] zs = new double[controlPointsNum];
         for( int i = 0; i < controlPointsNum; i++ ) {
-            double dist = interpolated.distance(controlPoints[i]);
-            sum = sum + (v.getElement(i, 0) * functionU(dist));
+            xs[i] = controlPoints[i].x;
+            ys[i] = controlPoints[i].y;
+            zs[i] = controlPoints[i].z;
         }
-
-        double value = (a1 + (a2 * interpolated.x) + (a3 * interpolated.y) + sum);
+        double[] weights = solveWeights(xs, ys, zs, controlPointsNum);
+        if (weights == null) {
+            return JGTConstants.doubleNovalue;
+        }
+        double value = evaluate(weights, xs, ys, controlPointsNum, interpolated.x, interpolated.y);
         interpolated.z = value;
         return value;
     }
 
-    private GeneralMatrix makeMatrix( Coordinate[] controlPoints ) {
-        int pointsNum = controlPoints.length;
-        GeneralMatrix L = new GeneralMatrix(pointsNum + 3, pointsNum + 3);
-
-        fillKsubMatrix(controlPoints, L);
-        fillPsubMatrix(controlPoints, L);
-        fillOsubMatrix(controlPoints, L);
-        L.invert();
-        GeneralMatrix V = fillVMatrix(0, controlPoints);
-        GeneralMatrix result = new GeneralMatrix(pointsNum + 3, 1);
-        result.mul(L, V);
-        return result;
-    }
-
     /**
-     * Calculates U function for distance.
+     * Solves the TPS system for a set of control points.
      * 
-     * @param distance distance
-     * @return log(distance)*distance<sup>2</sup> or 0 if distance = 0
-     */
-    private double functionU( double distance ) {
-        if (distance == 0) {
-            return 0;
-        }
-
-        return distance * distance * Math.log(distance);
-    }
-
-    /**
-     * Calculates U function where distance = ||p<sub>i</sub>, p<sub>j</sub>|| (from source points)
+     * <p>The returned vector contains the n point weights followed by the
+     * three coefficients of the affine part. It depends only on the control
+     * points and can be reused for every position they are used for.</p>
      * 
-     * @param p_i p_i
-     * @param p_j p_j
-     * @return log(distance)*distance<sub>2</sub> or 0 if distance = 0
+     * @param xs the x of the control points.
+     * @param ys the y of the control points.
+     * @param zs the values of the control points.
+     * @param n the number of control points to use.
+     * @return the weights or <code>null</code> if the system is singular.
      */
-    private double calculateFunctionU( Coordinate p_i, Coordinate p_j ) {
-        double distance = p_i.distance(p_j);
-        return functionU(distance);
-    }
-
-    /**
-     * Fill K submatrix (<a href="http://elonen.iki.fi/code/tpsdemo/index.html"> see more here</a>)
-     * 
-     * @param controlPoints 
-     * @param L
-     */
-    private void fillKsubMatrix( Coordinate[] controlPoints, GeneralMatrix L ) {
-        double alfa = 0;
-        int controlPointsNum = controlPoints.length;
-        for( int i = 0; i < controlPointsNum; i++ ) {
-            for( int j = i + 1; j < controlPointsNum; j++ ) {
-                double u = calculateFunctionU(controlPoints[i], controlPoints[j]);
-                L.setElement(i, j, u);
-                L.setElement(j, i, u);
-                alfa = alfa + (u * 2); // same for upper and lower part
+    public static double[] solveWeights( double[] xs, double[] ys, double[] zs, int n ) {
+        int size = n + 3;
+        double[] l = new double[size * size];
+        double[] v = new double[size];
+
+        // K submatrix, with zeros on the diagonal
+        for( int i = 0; i < n; i++ ) {
+            for( int j = i + 1; j < n; j++ ) {
+                double dx = xs[i] - xs[j];
+                double dy = ys[i] - ys[j];
+                double u = functionU(Math.sqrt(dx * dx + dy * dy));
+                l[i * size + j] = u;
+                l[j * size + i] = u;
             }
         }
+        // P submatrix and its transposed, the O submatrix stays zero
+        for( int i = 0; i < n; i++ ) {
+            l[i * size + n] = 1;
+            l[i * size + n + 1] = xs[i];
+            l[i * size + n + 2] = ys[i];
+            l[n * size + i] = 1;
+            l[(n + 1) * size + i] = xs[i];
+            l[(n + 2) * size + i] = ys[i];
+            v[i] = zs[i];
+        }
 
-        alfa = alfa / (controlPointsNum * controlPointsNum);
-    }
-
-    /**
-     * Fill L submatrix (<a href="http://elonen.iki.fi/code/tpsdemo/index.html"> see more here</a>)
-     */
-    private void fillPsubMatrix( Coordinate[] controlPoints, GeneralMatrix L ) {
-        int controlPointsNum = controlPoints.length;
-        for( int i = 0; i < controlPointsNum; i++ ) {
-            L.setElement(i, i, 0);
-
-            L.setElement(i, controlPointsNum + 0, 1);
-            L.setElement(i, controlPointsNum + 1, controlPoints[i].x);
-            L.setElement(i, controlPointsNum + 2, controlPoints[i].y);
-
-            L.setElement(controlPointsNum + 0, i, 1);
-            L.setElement(controlPointsNum + 1, i, controlPoints[i].x);
-            L.setElement(controlPointsNum + 2, i, controlPoints[i].y);
+        // gaussian elimination with partial pivoting
+        for( int k = 0; k < size; k++ ) {
+            int pivot = k;
+            double max = Math.abs(l[k * size + k]);
+            for( int i = k + 1; i < size; i++ ) {
+                double abs = Math.abs(l[i * size + k]);
+                if (abs > max) {
+                    max = abs;
+                    pivot = i;
+                }
+            }
+            if (max == 0.0) {
+                return null;
+            }
+            if (pivot != k) {
+                for( int j = k; j < size; j++ ) {
+                    double tmp = l[k * size + j];
+                    l[k * size + j] = l[pivot * size + j];
+                    l[pivot * size + j] = tmp;
+                }
+                double tmp = v[k];
+                v[k] = v[pivot];
+                v[pivot] = tmp;
+            }
+            double diagonal = l[k * size + k];
+            for( int i = k + 1; i < size; i++ ) {
+                double factor = l[i * size + k] / diagonal;
+                if (factor == 0.0) {
+                    continue;
+                }
+                int rowI = i * size;
+                int rowK = k * size;
+                for( int j = k + 1; j < size; j++ ) {
+                    l[rowI + j] = l[rowI + j] - factor * l[rowK + j];
+                }
+                v[i] = v[i] - factor * v[k];
+            }
+        }
+        for( int i = size - 1; i >= 0; i-- ) {
+            double sum = v[i];
+            for( int j = i + 1; j < size; j++ ) {
+                sum = sum - l[i * size + j] * v[j];
+            }
+            v[i] = sum / l[i * size + i];
         }
+        return v;
     }
 
     /**
-     * Fill O submatrix (<a href="http://elonen.iki.fi/code/tpsdemo/index.html"> see more here</a>)
+     * Evaluates the TPS surface in a position.
+     * 
+     * @param weights the weights as returned by {@link #solveWeights(double[], double[], double[], int)}.
+     * @param xs the x of the control points.
+     * @param ys the y of the control points.
+     * @param n the number of control points.
+     * @param x the x of the position.
+     * @param y the y of the position.
+     * @return the interpolated value.
      */
-    private void fillOsubMatrix( Coordinate[] controlPoints, GeneralMatrix L ) {
-        int controlPointsNum = controlPoints.length;
-        for( int i = controlPointsNum; i < (controlPointsNum + 3); i++ ) {
-            for( int j = controlPointsNum; j < (controlPointsNum + 3); j++ ) {
-                L.setElement(i, j, 0);
-            }
+    public static double evaluate( double[] weights, double[] xs, double[] ys, int n, double x, double y ) {
+        double sum = 0;
+        for( int i = 0; i < n; i++ ) {
+            double dx = x - xs[i];
+            double dy = y - ys[i];
+            sum = sum + weights[i] * functionU(Math.sqrt(dx * dx + dy * dy));
         }
+        return weights[n] + weights[n + 1] * x + weights[n + 2] * y + sum;
     }
 
     /**
-     * Fill V matrix (matrix of target values).
+     * Calculates U function for distance.
      * 
-     * @param dim 0 for dx, 1 for dy.
-     * @return V Matrix
+     * @param distance distance
+     * @return log(distance)*distance<sup>2</sup> or 0 if distance = 0
      */
-    private GeneralMatrix fillVMatrix( int dim, Coordinate[] controlPoints ) {
-        int controlPointsNum = controlPoints.length;
-        GeneralMatrix V = new GeneralMatrix(controlPointsNum + 3, 1);
-
-        for( int i = 0; i < controlPointsNum; i++ ) {
-            V.setElement(i, 0, controlPoints[i].z);
+    private static double functionU( double distance ) {
+        if (distance == 0) {
+            return 0;
         }
 
-        V.setElement(V.getNumRow() - 3, 0, 0);
-        V.setElement(V.getNumRow() - 2, 0, 0);
-        V.setElement(V.getNumRow() - 1, 0, 0);
-
-        return V;
+        return distance * distance * Math.log(distance);
     }
 }
@@ -0,0 +1,118 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.r.mapcalc;
+
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.jaitools.jiffle.Jiffle;
+import org.jaitools.jiffle.JiffleException;
+import org.jaitools.jiffle.runtime.JiffleDirectRuntime;
+
+/**
+ * A cache of compiled jiffle runtimes, kept by script.
+ *
+ * <p>
+ * Getting a runtime from a script means generating and compiling java source,
+ * which costs more than running the script on a small map. Runtimes that have
+ * been used are therefore given back to the cache and handed out again for
+ * the same script, one user at a time, so that a script run on many maps, or on
+ * many row stripes of the same map, is compiled only as many times as the
+ * runtimes used at the same time.
+ * </p>
+ * <p>
+ * Idle runtimes still reference the images they were bound to, so they are
+ * kept through soft references and the number of cached scripts is bounded.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class JiffleRuntimeCache {
+
+    private static final int MAX_SCRIPTS = 32;
+    private static final int MAX_IDLE_RUNTIMES = 16;
+
+    @SuppressWarnings("serial")
+    private static final LinkedHashMap<String, LinkedList<SoftReference<JiffleDirectRuntime>>> script2RuntimesMap = new LinkedHashMap<String, LinkedList<SoftReference<JiffleDirectRuntime>>>(
+            16, 0.75f, true){
+        protected boolean removeEldestEntry( Map.Entry<String, LinkedList<SoftReference<JiffleDirectRuntime>>> eldest ) {
+            return size() > MAX_SCRIPTS;
+        }
+    };
+
+    private JiffleRuntimeCache() {
+    }
+
+    /**
+     * Get a runtime for a script, compiling it only if no idle runtime is cached.
+     *
+     * <p>The runtime has to be given back through {@link #releaseRuntime(String, JiffleDirectRuntime)}
+     * when it is no longer used.</p>
+     *
+     * @param script the jiffle script.
+     * @return the runtime, still to be bound to the images.
+     * @throws JiffleException if the script doesn't compile.
+     */
+    public static JiffleDirectRuntime getRuntime( String script ) throws JiffleException {
+        synchronized (script2RuntimesMap) {
+            LinkedList<SoftReference<JiffleDirectRuntime>> runtimes = script2RuntimesMap.get(script);
+            while( runtimes != null && runtimes.size() > 0 ) {
+                JiffleDirectRuntime runtime = runtimes.removeFirst().get();
+                if (runtime != null) {
+                    return runtime;
+                }
+            }
+        }
+        Jiffle jiffle = new Jiffle();
+        jiffle.setScript(script);
+        jiffle.compile();
+        return jiffle.getRuntimeInstance();
+    }
+
+    /**
+     * Give back a runtime obtained through {@link #getRuntime(String)}.
+     *
+     * @param script the jiffle script of the runtime.
+     * @param runtime the runtime, which must not be used any more by the caller.
+     */
+    public static void releaseRuntime( String script, JiffleDirectRuntime runtime ) {
+        synchronized (script2RuntimesMap) {
+            LinkedList<SoftReference<JiffleDirectRuntime>> runtimes = script2RuntimesMap.get(script);
+            if (runtimes == null) {
+                runtimes = new LinkedList<SoftReference<JiffleDirectRuntime>>();
+                script2RuntimesMap.put(script, runtimes);
+            }
+            if (runtimes.size() < MAX_IDLE_RUNTIMES) {
+                runtimes.add(new SoftReference<JiffleDirectRuntime>(runtime));
+            }
+        }
+    }
+
+    /**
+     * Remove all the cached runtimes.
+     */
+    public static void clear() {
+        synchronized (script2RuntimesMap) {
+            script2RuntimesMap.clear();
+        }
+    }
+
+}
@@ -26,18 +26,30 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_LABEL;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_LICENSE;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_STATUS;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_doInPlace_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_inRasters_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_outRaster_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_pFunction_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSMAPCALC_pMaxThreads_DESCRIPTION;
 
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
 import java.awt.image.WritableRenderedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.PlanarImage;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -53,14 +65,9 @@ import oms3.annotations.Status;
 import oms3.annotations.UI;
 
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.jaitools.imageutils.ImageUtils;
-import org.jaitools.jiffle.Jiffle;
 import org.jaitools.jiffle.runtime.AffineCoordinateTransform;
 import org.jaitools.jiffle.runtime.CoordinateTransform;
 import org.jaitools.jiffle.runtime.JiffleDirectRuntime;
-import org.jaitools.jiffle.runtime.JiffleExecutor;
-import org.jaitools.jiffle.runtime.JiffleExecutorResult;
-import org.jaitools.jiffle.runtime.JiffleProgressListener;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
@@ -86,18 +93,24 @@ public class OmsMapcalc extends JGTModel {
     @In
     public String pFunction;
 
+    @Description(OMSMAPCALC_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(OMSMAPCALC_doInPlace_DESCRIPTION)
+    @In
+    public boolean doInPlace = false;
+
     @Description(OMSMAPCALC_outRaster_DESCRIPTION)
     @Out
     public GridCoverage2D outRaster = null;
 
-    private HashMap<String, Double> regionParameters = null;
+    /**
+     * The number of rows evaluated as one task.
+     */
+    private static final int STRIPE_ROWS = 64;
 
-    private CoordinateReferenceSystem crs;
-
-    private Rectangle2D worldBounds;
-
-    private long updateInterval;
-    private long totalCount = 100;
+    private WritableRaster outputBuffer;
 
     @SuppressWarnings("nls")
     @Execute
@@ -106,99 +119,127 @@ public class OmsMapcalc extends JGTModel {
             return;
         }
 
-        String script = pFunction;
-        script = script.trim();
-
-        Jiffle jiffle = new Jiffle();
-        jiffle.setScript(script);
-        jiffle.compile();
-        JiffleDirectRuntime jiffleRuntime = jiffle.getRuntimeInstance();
-
-        CoordinateTransform jiffleCRS = null;
-
-        // gather maps
-        for( GridCoverage2D mapGC : inRasters ) {
-            if (regionParameters == null) {
-                regionParameters = CoverageUtilities.getRegionParamsFromGridCoverage(mapGC);
-                crs = mapGC.getCoordinateReferenceSystem();
+        final String script = pFunction.trim();
 
-                worldBounds = mapGC.getEnvelope2D().getBounds2D();
-                Rectangle gridBounds = mapGC.getGridGeometry().getGridRange2D().getBounds();
+        if (inRasters == null || inRasters.size() == 0) {
+            throw new ModelsIllegalargumentException("No map has been supplied.", this.getClass().getSimpleName());
+        }
+        GridCoverage2D firstGC = inRasters.get(0);
+        HashMap<String, Double> regionParameters = CoverageUtilities.getRegionParamsFromGridCoverage(firstGC);
+        CoordinateReferenceSystem crs = firstGC.getCoordinateReferenceSystem();
+        Rectangle2D worldBounds = firstGC.getEnvelope2D().getBounds2D();
+        Rectangle gridBounds = firstGC.getGridGeometry().getGridRange2D().getBounds();
+        CoordinateTransform jiffleCRS = getTransform(worldBounds, gridBounds);
+
+        final int nCols = regionParameters.get(CoverageUtilities.COLS).intValue();
+        final int nRows = regionParameters.get(CoverageUtilities.ROWS).intValue();
+
+        if (!doInPlace || outputBuffer == null || outputBuffer.getWidth() != nCols || outputBuffer.getHeight() != nRows) {
+            outputBuffer = CoverageUtilities.createDoubleWritableRaster(nCols, nRows, null, null, null);
+        }
+        WritableRenderedImage destImg = new BufferedImage(PlanarImage.createColorModel(outputBuffer.getSampleModel()),
+                outputBuffer, false, null);
+
+        final int stripesNum = (nRows + STRIPE_ROWS - 1) / STRIPE_ROWS;
+        int threads = Math.max(1, Math.min(pMaxThreads, stripesNum));
+        final List<JiffleDirectRuntime> runtimes = new ArrayList<JiffleDirectRuntime>();
+        try {
+            String destName = null;
+            for( int i = 0; i < threads; i++ ) {
+                JiffleDirectRuntime jiffleRuntime = JiffleRuntimeCache.getRuntime(script);
+                runtimes.add(jiffleRuntime);
+                destName = bindRuntime(jiffleRuntime, worldBounds, regionParameters, jiffleCRS, destImg);
+            }
 
-                jiffleCRS = getTransform(worldBounds, gridBounds);
+            final double minX = worldBounds.getMinX();
+            final double minY = worldBounds.getMinY();
+            final double xRes = regionParameters.get(CoverageUtilities.XRES).doubleValue();
+            final double yRes = regionParameters.get(CoverageUtilities.YRES).doubleValue();
+            final AtomicInteger nextStripe = new AtomicInteger(0);
+            pm.beginTask("Processing maps...", stripesNum);
+            if (threads > 1) {
+                ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+                List<Future<Object>> futures = new ArrayList<Future<Object>>();
+                for( final JiffleDirectRuntime jiffleRuntime : runtimes ) {
+                    futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                        public Object call() throws Exception {
+                            evaluateStripes(jiffleRuntime, nextStripe, stripesNum, nCols, nRows, minX, minY, xRes, yRes);
+                            return null;
+                        }
+                    }));
+                }
+                try {
+                    for( Future<Object> future : futures ) {
+                        future.get();
+                    }
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw e;
+                } finally {
+                    fixedThreadPool.shutdownNow();
+                }
+            } else {
+                evaluateStripes(runtimes.get(0), nextStripe, stripesNum, nCols, nRows, minX, minY, xRes, yRes);
+            }
+            pm.done();
 
-                double xRes = regionParameters.get(CoverageUtilities.XRES).doubleValue();
-                double yRes = regionParameters.get(CoverageUtilities.YRES).doubleValue();
-                jiffleRuntime.setWorldByResolution(worldBounds, xRes, yRes);
+            outRaster = CoverageUtilities.buildCoverage(destName, outputBuffer, regionParameters, crs);
+        } finally {
+            for( JiffleDirectRuntime jiffleRuntime : runtimes ) {
+                JiffleRuntimeCache.releaseRuntime(script, jiffleRuntime);
             }
+        }
+    }
+
+    /**
+     * Bind a runtime to the input maps and the destination image.
+     *
+     * @return the name of the destination variable.
+     */
+    private String bindRuntime( JiffleDirectRuntime jiffleRuntime, Rectangle2D worldBounds,
+            HashMap<String, Double> regionParameters, CoordinateTransform jiffleCRS, WritableRenderedImage destImg )
+            throws Exception {
+        double xRes = regionParameters.get(CoverageUtilities.XRES).doubleValue();
+        double yRes = regionParameters.get(CoverageUtilities.YRES).doubleValue();
+        jiffleRuntime.setWorldByResolution(worldBounds, xRes, yRes);
+        for( GridCoverage2D mapGC : inRasters ) {
             RenderedImage renderedImage = mapGC.getRenderedImage();
             // add map
             String name = mapGC.getName().toString();
             jiffleRuntime.setSourceImage(name, renderedImage, jiffleCRS);
         }
-        if (regionParameters == null) {
-            throw new ModelsIllegalargumentException("No map has been supplied.", this.getClass().getSimpleName());
-        }
-        int nCols = regionParameters.get(CoverageUtilities.COLS).intValue();
-        int nRows = regionParameters.get(CoverageUtilities.ROWS).intValue();
-        long pixelsNum = (long) nCols * nRows;
-
-        if (pixelsNum < totalCount) {
-            totalCount = pixelsNum;
-        }
-        updateInterval = pixelsNum / totalCount;
-
         String destName = jiffleRuntime.getDestinationVarNames()[0];
-        WritableRenderedImage destImg = ImageUtils.createConstantImage(nCols, nRows, 0d);
         jiffleRuntime.setDestinationImage(destName, destImg, jiffleCRS);
+        return destName;
+    }
 
-        // create the executor
-        JiffleExecutor executor = new JiffleExecutor();
-        WaitingListener listener = new WaitingListener();
-        executor.addEventListener(listener);
-        listener.setNumTasks(1);
-
-        executor.submit(jiffleRuntime, new JiffleProgressListener(){
-            private long count = 0;
-            public void update( long done ) {
-                if (count == done) {
-                    pm.worked(1);
-                    count = count + updateInterval;
-                }
-            }
-
-            public void start() {
-                pm.beginTask("Processing maps...", (int) totalCount);
-            }
-
-            public void setUpdateInterval( double propPixels ) {
-            }
-
-            public void setUpdateInterval( long numPixels ) {
-            }
-
-            public void setTaskSize( long numPixels ) {
-                count = updateInterval;
+    /**
+     * Evaluate stripes of rows until there are none left.
+     *
+     * <p>The world positions are the ones the runtime would use evaluating the whole map.</p>
+     */
+    private void evaluateStripes( JiffleDirectRuntime jiffleRuntime, AtomicInteger nextStripe, int stripesNum, int nCols,
+            int nRows, double minX, double minY, double xRes, double yRes ) {
+        int stripe;
+        while( (stripe = nextStripe.getAndIncrement()) < stripesNum ) {
+            if (pm.isCanceled()) {
+                return;
             }
-
-            public long getUpdateInterval() {
-                if (updateInterval == 0) {
-                    return 1;
+            int fromRow = stripe * STRIPE_ROWS;
+            int toRow = Math.min(fromRow + STRIPE_ROWS, nRows);
+            for( int row = fromRow; row < toRow; row++ ) {
+                double y = minY + row * yRes;
+                for( int col = 0; col < nCols; col++ ) {
+                    jiffleRuntime.evaluate(minX + col * xRes, y);
                 }
-                return updateInterval;
             }
-
-            public void finish() {
-                pm.done();
+            synchronized (pm) {
+                pm.worked(1);
             }
-        });
-        listener.await();
-
-        JiffleExecutorResult result = listener.getResults().get(0);
-        Map<String, RenderedImage> imgMap = result.getImages();
-        RenderedImage destImage = imgMap.get(destName);
-        outRaster = CoverageUtilities.buildCoverage(destName, destImage, regionParameters, crs);
-        executor.shutdown();
+        }
     }
 
     private static CoordinateTransform getTransform( Rectangle2D worldBounds, Rectangle imageBounds ) {
@@ -42,10 +42,11 @@ import static org.jgrasstools.gears.utils.coverage.CoverageUtilities.gridGeometr
 import static org.jgrasstools.gears.utils.geometry.GeometryUtilities.getGeometryType;
 
 import java.awt.image.WritableRaster;
-import java.text.MessageFormat;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.media.jai.iterator.RandomIter;
 
@@ -62,32 +63,26 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 import oms3.annotations.UI;
 
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridGeometry2D;
 import org.geotools.coverage.grid.InvalidGridGeometryException;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.feature.FeatureIterator;
-import org.geotools.geometry.DirectPosition2D;
-import org.jgrasstools.gears.libs.exceptions.ModelsIOException;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
-import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.gears.utils.features.FeatureUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities.GEOMETRYTYPE;
+import org.jgrasstools.gears.utils.geometry.PolygonRasterizer;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.GeometryType;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.TransformException;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.LineString;
 
 @Description(OMSSCANLINERASTERIZER_DESCRIPTION)
 @Documentation(OMSSCANLINERASTERIZER_DOCUMENTATION)
@@ -155,12 +150,8 @@ public class OmsScanLineRasterizer extends JGTModel {
 
     private int width;
 
-    private GeometryFactory gf = GeometryUtilities.gf();
-
     private RegionMap paramsMap;
 
-    private double xRes;
-
     private RandomIter inIter;
 
     @Execute
@@ -201,7 +192,6 @@ public class OmsScanLineRasterizer extends JGTModel {
             paramsMap = gridGeometry2RegionParamsMap(pGrid);
             height = paramsMap.getRows();
             width = paramsMap.getCols();
-            xRes = paramsMap.getXres();
 
             outWR = CoverageUtilities.createDoubleWritableRaster(width, height, null, null, doubleNovalue);
         }
@@ -223,96 +213,52 @@ public class OmsScanLineRasterizer extends JGTModel {
 
     }
     private void rasterizepolygon( final GridGeometry2D gridGeometry ) throws InvalidGridGeometryException, TransformException {
-
-        int size = inVector.size();
+        final List<SimpleFeature> featuresList = FeatureUtilities.featureCollectionToList(inVector);
+        final int size = featuresList.size();
         pm.beginTask("Rasterizing features...", size);
-        FeatureIterator<SimpleFeature> featureIterator = inVector.features();
-
-        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(getDefaultThreadsNum());
-
-        while( featureIterator.hasNext() ) {
-            final SimpleFeature feature = featureIterator.next();
-
-            // extract the value to put into the raster.
-            double tmpValue = -1.0;
-            if (pValue == null) {
-                tmpValue = ((Number) feature.getAttribute(fCat)).doubleValue();
-            } else {
-                tmpValue = pValue;
-            }
-            final double value = tmpValue;
-            final double delta = xRes / 4.0;
 
+        int threads = getDefaultThreadsNum();
+        final AtomicInteger nextFeature = new AtomicInteger(0);
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+        for( int t = 0; t < threads; t++ ) {
             Runnable runner = new Runnable(){
                 public void run() {
-                    try {
-                        Geometry geometry = (Geometry) feature.getDefaultGeometry();
-                        int numGeometries = geometry.getNumGeometries();
-                        for( int i = 0; i < numGeometries; i++ ) {
-                            final Geometry geometryN = geometry.getGeometryN(i);
-                            // PreparedGeometry preparedGeometryN =
-                            // PreparedGeometryFactory.prepare(geometryN);
-                            for( int r = 0; r < height; r++ ) {
-                                // do scan line to fill the polygon
-                                double[] westPos = gridGeometry.gridToWorld(new GridCoordinates2D(0, r)).getCoordinate();
-                                double[] eastPos = gridGeometry.gridToWorld(new GridCoordinates2D(width - 1, r)).getCoordinate();
-                                Coordinate west = new Coordinate(westPos[0], westPos[1]);
-                                Coordinate east = new Coordinate(eastPos[0], eastPos[1]);
-                                LineString line = gf.createLineString(new Coordinate[]{west, east});
-                                if (geometryN.intersects(line)) {
-                                    Geometry internalLines = geometryN.intersection(line);
-                                    int lineNums = internalLines.getNumGeometries();
-                                    for( int l = 0; l < lineNums; l++ ) {
-                                        Coordinate[] coords = internalLines.getGeometryN(l).getCoordinates();
-                                        if (coords.length == 2) {
-                                            for( int j = 0; j < coords.length; j = j + 2 ) {
-                                                Coordinate startC = new Coordinate(coords[j].x + delta, coords[j].y);
-                                                Coordinate endC = new Coordinate(coords[j + 1].x - delta, coords[j + 1].y);
-
-                                                DirectPosition2D startDP;
-                                                DirectPosition2D endDP;
-                                                if (startC.x < endC.x) {
-                                                    startDP = new DirectPosition2D(startC.x, startC.x);
-                                                    endDP = new DirectPosition2D(endC.x, endC.x);
-                                                } else {
-                                                    startDP = new DirectPosition2D(endC.x, endC.x);
-                                                    endDP = new DirectPosition2D(startC.x, startC.x);
-                                                }
-                                                GridCoordinates2D startGridCoord = gridGeometry.worldToGrid(startDP);
-                                                GridCoordinates2D endGridCoord = gridGeometry.worldToGrid(endDP);
-
-                                                /*
-                                                 * the part in between has to be filled
-                                                 */
-                                                for( int k = startGridCoord.x; k <= endGridCoord.x; k++ ) {
-                                                    if (inIter != null) {
-                                                        double v = inIter.getSampleDouble(k, r, 0);
-                                                        outWR.setSample(k, r, 0, v);
-                                                    } else {
-                                                        outWR.setSample(k, r, 0, value);
-                                                    }
-                                                }
-                                            }
+                    // every thread has its own rasterizer and span buffer
+                    PolygonRasterizer rasterizer = new PolygonRasterizer(paramsMap);
+                    final double[] spanValues = new double[width];
+                    int index;
+                    while( (index = nextFeature.getAndIncrement()) < size ) {
+                        SimpleFeature feature = featuresList.get(index);
+                        try {
+                            // extract the value to put into the raster.
+                            final double value;
+                            if (pValue == null) {
+                                value = ((Number) feature.getAttribute(fCat)).doubleValue();
+                            } else {
+                                value = pValue;
+                            }
+
+                            Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                            rasterizer.rasterize(geometry, new PolygonRasterizer.SpanHandler(){
+                                public void span( int row, int fromCol, int toCol ) {
+                                    int spanCols = toCol - fromCol + 1;
+                                    for( int k = 0; k < spanCols; k++ ) {
+                                        if (inIter != null) {
+                                            spanValues[k] = inIter.getSampleDouble(fromCol + k, row, 0);
                                         } else {
-                                            if (coords.length == 1) {
-                                                pm.errorMessage(MessageFormat.format("Found a cusp in: {0}/{1}", coords[0].x,
-                                                        coords[0].y));
-                                            } else {
-                                                throw new ModelsIOException(MessageFormat.format(
-                                                        "Found intersection with more than 2 points in: {0}/{1}", coords[0].x,
-                                                        coords[0].y), this);
-                                            }
+                                            spanValues[k] = value;
                                         }
                                     }
-
+                                    outWR.setSamples(fromCol, row, spanCols, 1, 0, spanValues);
                                 }
-                            }
+                            });
+                        } catch (Exception e) {
+                            pm.errorMessage(e.getLocalizedMessage());
+                            e.printStackTrace();
+                        }
+                        synchronized (pm) {
+                            pm.worked(1);
                         }
-
-                        pm.worked(1);
-                    } catch (Exception e) {
-                        pm.errorMessage(e.getLocalizedMessage());
-                        e.printStackTrace();
                     }
                 }
             };
@@ -327,6 +273,5 @@ public class OmsScanLineRasterizer extends JGTModel {
             e.printStackTrace();
         }
         pm.done();
-        featureIterator.close();
     }
 }
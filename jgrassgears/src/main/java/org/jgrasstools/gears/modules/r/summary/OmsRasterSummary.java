@@ -27,23 +27,22 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_LICENSE;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_doHistogram_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_doQuantiles_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_inRaster_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outCb_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outMax_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outMean_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outMin_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outQuantiles_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outRange_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outSdev_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outSum_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_pBins_DESCRIPTION;
 
 import java.awt.image.RenderedImage;
+import java.util.ArrayList;
 import java.util.List;
 
-import javax.media.jai.JAI;
-import javax.media.jai.ParameterBlockJAI;
-import javax.media.jai.RenderedOp;
-
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
@@ -57,13 +56,12 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.jaitools.media.jai.zonalstats.Result;
-import org.jaitools.media.jai.zonalstats.ZonalStats;
-import org.jaitools.media.jai.zonalstats.ZonalStatsDescriptor;
-import org.jaitools.numeric.Statistic;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.math.CoupledFieldsMoments;
+import org.jgrasstools.gears.utils.math.statistics.FixedBinHistogram;
+import org.jgrasstools.gears.utils.math.statistics.ImageAccumulatorEngine;
+import org.jgrasstools.gears.utils.math.statistics.StreamingStatistics;
 
 @Description(OMSRASTERSUMMARY_DESCRIPTION)
 @Documentation(OMSRASTERSUMMARY_DOCUMENTATION)
@@ -87,6 +85,10 @@ public class OmsRasterSummary extends JGTModel {
     @In
     public boolean doHistogram = false;
 
+    @Description(OMSRASTERSUMMARY_doQuantiles_DESCRIPTION)
+    @In
+    public boolean doQuantiles = false;
+
     @Description(OMSRASTERSUMMARY_outMin_DESCRIPTION)
     @Out
     public Double outMin = null;
@@ -115,7 +117,11 @@ public class OmsRasterSummary extends JGTModel {
     @Out
     public double[][] outCb = null;
 
-    private Statistic[] stats;
+    @Description(OMSRASTERSUMMARY_outQuantiles_DESCRIPTION)
+    @Out
+    public double[][] outQuantiles = null;
+
+    private static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
 
     @Execute
     public void process() throws Exception {
@@ -123,59 +129,52 @@ public class OmsRasterSummary extends JGTModel {
             return;
         }
 
-        // TODO use the geotools bridge instead of jaitools:
-        // http://svn.osgeo.org/geotools/trunk/modules/library/coverage/src/test/java/org/geotools/coverage/processing/operation/ZonalStasTest.java
-
         RenderedImage inRI = inRaster.getRenderedImage();
-        ParameterBlockJAI pb = new ParameterBlockJAI("ZonalStats");
-        pb.setSource("dataImage", inRI);
-        // pb.setSource("zoneImage", null);
-
-        if (stats == null) {
-            stats = new Statistic[]{Statistic.MIN, Statistic.MAX, Statistic.MEAN, Statistic.SDEV, Statistic.RANGE, Statistic.SUM};
-        }
-        pb.setParameter("stats", stats);
-
-        RenderedOp op = JAI.create("ZonalStats", pb);
-
-        ZonalStats zonalStats = (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
-        List<Result> results = zonalStats.results();
-        for( Result result : results ) {
-            Statistic statistic = result.getStatistic();
-            Double value = result.getValue();
-
-            switch( statistic ) {
-            case MIN:
-                outMin = value;
-                break;
-            case MAX:
-                outMax = value;
-                break;
-            case MEAN:
-                outMean = value;
-                break;
-            case SDEV:
-                outSdev = value;
-                break;
-            case RANGE:
-                outRange = value;
-                break;
-            case SUM:
-                outSum = value;
-                break;
-            default:
-                break;
+        int threads = getDefaultThreadsNum();
+
+        StreamingStatistics statistics = new StreamingStatistics(doQuantiles);
+        ImageAccumulatorEngine.accumulate(inRI, null, statistics, threads, pm);
+
+        outMin = statistics.getMin();
+        outMax = statistics.getMax();
+        outMean = statistics.getMean();
+        outSdev = statistics.getSampleStandardDeviation();
+        outRange = statistics.getRange();
+        outSum = statistics.getSum();
+
+        if (doQuantiles) {
+            outQuantiles = new double[QUANTILES.length][2];
+            for( int i = 0; i < QUANTILES.length; i++ ) {
+                outQuantiles[i][0] = QUANTILES[i];
+                outQuantiles[i][1] = statistics.getQuantile(QUANTILES[i]);
             }
         }
 
         if (!doHistogram)
             return;
 
-        double[][] cb = new CoupledFieldsMoments().process(inRI, null, pBins, 1, 2, pm, 1);
-
         int width = inRI.getWidth();
         int height = inRI.getHeight();
         int pixelsNum = width * height;
+
+        double[][] cb;
+        if (pBins <= 1 || statistics.getCount() == 0) {
+            // classes of equal values need the sorted data
+            cb = new CoupledFieldsMoments().process(inRI, null, pBins, 1, 2, pm, 1);
+        } else {
+            // same binning as the cb: pBins - 1 intervals between min and max
+            FixedBinHistogram histogram = new FixedBinHistogram(outMin, outMax, pBins - 1);
+            ImageAccumulatorEngine.accumulate(inRI, null, histogram, threads, pm);
+            List<double[]> binsList = new ArrayList<double[]>();
+            for( int i = 0; i < histogram.getBinsNum(); i++ ) {
+                long count = histogram.getCount(i);
+                if (count > 0) {
+                    binsList.add(new double[]{histogram.getMean(i), count});
+                }
+            }
+            cb = binsList.toArray(new double[binsList.size()][]);
+        }
+
         outCb = new double[cb.length + 1][3];
 
         double sum = 0;
@@ -200,7 +199,6 @@ public class OmsRasterSummary extends JGTModel {
         OmsRasterSummary summary = new OmsRasterSummary();
         summary.inRaster = raster;
         summary.doHistogram = false;
-        summary.stats = new Statistic[]{Statistic.MIN, Statistic.MAX};
         summary.process();
 
         double min = summary.outMin;
@@ -212,7 +210,6 @@ public class OmsRasterSummary extends JGTModel {
         OmsRasterSummary summary = new OmsRasterSummary();
         summary.inRaster = raster;
         summary.doHistogram = false;
-        summary.stats = new Statistic[]{Statistic.MIN, Statistic.MAX, Statistic.MEAN, Statistic.SUM};
         summary.process();
 
         double min = summary.outMin;
@@ -17,10 +17,6 @@
  */
 package org.jgrasstools.gears.modules.r.summary;
 
-import static java.lang.Math.abs;
-import static java.lang.Math.ceil;
-import static java.lang.Math.pow;
-import static java.lang.Math.sqrt;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_AUTHORCONTACTS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_AUTHORNAMES;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSHYDRO_LICENSE;
@@ -29,7 +25,6 @@ import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 import java.awt.Rectangle;
 import java.awt.image.Raster;
 import java.io.File;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -48,33 +43,27 @@ import oms3.annotations.Name;
 import oms3.annotations.Out;
 import oms3.annotations.Status;
 
-import org.geotools.coverage.grid.GridCoordinates2D;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.coverage.grid.GridEnvelope2D;
 import org.geotools.coverage.grid.GridGeometry2D;
-import org.geotools.coverage.grid.InvalidGridGeometryException;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.feature.DefaultFeatureCollection;
 import org.geotools.feature.FeatureCollections;
 import org.geotools.feature.simple.SimpleFeatureBuilder;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
-import org.geotools.geometry.DirectPosition2D;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.jgrasstools.gears.libs.exceptions.ModelsIOException;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModelIM;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
-import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.jgrasstools.gears.utils.geometry.PolygonRasterizer;
 import org.jgrasstools.gears.utils.math.NumericsUtilities;
+import org.jgrasstools.gears.utils.math.statistics.StreamingStatistics;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.referencing.operation.TransformException;
 
-import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Polygon;
 
 @Description("Calculate zonal stats on image mosaic datasets.")
@@ -110,8 +99,6 @@ public class OmsZonalStatsIM extends JGTModelIM {
     @Out
     public SimpleFeatureCollection outVector;
 
-    private GeometryFactory gf = GeometryUtilities.gf();
-
     private SimpleFeatureBuilder featureBuilder;
 
     private double totalMean = 0;
@@ -216,101 +203,52 @@ public class OmsZonalStatsIM extends JGTModelIM {
         }
     }
 
-    private double[] polygonStats( Geometry geometry, GridGeometry2D gridGeometry, RandomIter inIter )
-            throws InvalidGridGeometryException, TransformException, Exception {
+    private double[] polygonStats( Geometry geometry, GridGeometry2D gridGeometry, final RandomIter inIter ) {
         GridEnvelope2D gridRange = gridGeometry.getGridRange2D();
-        int rows = gridRange.height;
-        int cols = gridRange.width;
-        int startX = gridRange.x;
-        int startY = gridRange.y;
-
-        final double delta = xRes / 4.0;
-        Envelope env = geometry.getEnvelopeInternal();
-        double envArea = env.getWidth() * env.getHeight();
-        int maxCells = (int) ceil(envArea / (xRes * yRes));
-
-        int activeCellCount = 0;
-        int passiveCellCount = 0;
-        double min = Double.POSITIVE_INFINITY;
-        double max = Double.NEGATIVE_INFINITY;
-
-        double[] values = new double[maxCells];
-
-        for( int r = startY; r < startY + rows; r++ ) {
-            // do scan line to fill the polygon
-            double[] westPos = gridGeometry.gridToWorld(new GridCoordinates2D(startX, r)).getCoordinate();
-            double[] eastPos = gridGeometry.gridToWorld(new GridCoordinates2D(startX + cols - 1, r)).getCoordinate();
-            Coordinate west = new Coordinate(westPos[0], westPos[1]);
-            Coordinate east = new Coordinate(eastPos[0], eastPos[1]);
-            LineString line = gf.createLineString(new Coordinate[]{west, east});
-            if (geometry.intersects(line)) {
-                Geometry internalLines = geometry.intersection(line);
-                int lineNums = internalLines.getNumGeometries();
-                for( int l = 0; l < lineNums; l++ ) {
-                    Coordinate[] coords = internalLines.getGeometryN(l).getCoordinates();
-                    if (coords.length == 2) {
-                        for( int j = 0; j < coords.length; j = j + 2 ) {
-                            Coordinate startC = new Coordinate(coords[j].x + delta, coords[j].y);
-                            Coordinate endC = new Coordinate(coords[j + 1].x - delta, coords[j + 1].y);
-
-                            DirectPosition2D startDP;
-                            DirectPosition2D endDP;
-                            if (startC.x < endC.x) {
-                                startDP = new DirectPosition2D(startC.x, startC.x);
-                                endDP = new DirectPosition2D(endC.x, endC.x);
-                            } else {
-                                startDP = new DirectPosition2D(endC.x, endC.x);
-                                endDP = new DirectPosition2D(startC.x, startC.x);
-                            }
-                            GridCoordinates2D startGridCoord = gridGeometry.worldToGrid(startDP);
-                            GridCoordinates2D endGridCoord = gridGeometry.worldToGrid(endDP);
-
-                            /*
-                             * the part in between has to be filled
-                             */
-                            for( int k = startGridCoord.x; k <= endGridCoord.x; k++ ) {
-                                double v = inIter.getSampleDouble(k, r, 0);
-                                if (isNovalue(v)) {
-                                    passiveCellCount++;
-                                    continue;
-                                }
-                                min = Math.min(min, v);
-                                max = Math.max(max, v);
-                                values[activeCellCount] = v;
-                                activeCellCount++;
-
-                                if (pTotalMean == null) {
-                                    totalMean += v;
-                                    totalActiveCells++;
-                                }
-                            }
-                        }
-                    } else {
-                        if (coords.length == 1) {
-                            pm.errorMessage(MessageFormat.format("Found a cusp in: {0}/{1}", coords[0].x, coords[0].y));
-                        } else {
-                            throw new ModelsIOException(MessageFormat.format(
-                                    "Found intersection with more than 2 points in: {0}/{1}", coords[0].x, coords[0].y), this);
-                        }
+        final int startX = gridRange.x;
+        final int startY = gridRange.y;
+
+        final StreamingStatistics statistics = new StreamingStatistics();
+        if (pTotalMean != null) {
+            statistics.setDeviationReference(userTotalMean);
+        }
+
+        PolygonRasterizer rasterizer = new PolygonRasterizer(CoverageUtilities.gridGeometry2RegionParamsMap(gridGeometry));
+        rasterizer.rasterize(geometry, new PolygonRasterizer.SpanHandler(){
+            public void span( int row, int fromCol, int toCol ) {
+                int r = startY + row;
+                for( int k = startX + fromCol; k <= startX + toCol; k++ ) {
+                    double v = inIter.getSampleDouble(k, r, 0);
+                    statistics.add(v);
+                    if (isNovalue(v)) {
+                        continue;
                     }
-                }
 
+                    if (pTotalMean == null) {
+                        totalMean += v;
+                        totalActiveCells++;
+                    }
+                }
             }
-        }
+        });
 
-        int all = activeCellCount + passiveCellCount;
+        long activeCellCount = statistics.getCount();
+        long passiveCellCount = statistics.getNovaluesCount();
+        long all = activeCellCount + passiveCellCount;
         double ratio = 100.0 * activeCellCount / all;
         if (ratio < pPercentageThres) {
             return null;
         }
 
-        double mean = mean(values, activeCellCount);
-        double sdev = standardDeviation(values, mean, activeCellCount);
-        double var = variance(values, mean, activeCellCount);
+        double min = statistics.getMin();
+        double max = statistics.getMax();
+        double mean = statistics.getMean();
+        double sdev = statistics.getStandardDeviation();
+        double var = statistics.getVariance();
 
         double[] result;
         if (pTotalMean != null) {
-            double meanAbsoluteDeviation = meanAbsoluteDeviation(values, activeCellCount);
+            double meanAbsoluteDeviation = statistics.getMeanAbsoluteDeviation();
             result = new double[]{min, max, mean, var, sdev, meanAbsoluteDeviation, activeCellCount, passiveCellCount};
         } else {
             result = new double[]{min, max, mean, var, sdev, activeCellCount, passiveCellCount};
@@ -336,37 +274,6 @@ public class OmsZonalStatsIM extends JGTModelIM {
         featureBuilder = new SimpleFeatureBuilder(type);
     }
 
-    private double meanAbsoluteDeviation( double[] values, int count ) {
-        double mean = 0;
-        for( int i = 0; i < count; i++ ) {
-            mean = mean + abs(values[i] - userTotalMean);
-        }
-        return mean / count;
-    }
-
-    private double mean( double[] values, int count ) {
-        double mean = 0;
-        for( int i = 0; i < count; i++ ) {
-            mean += values[i];
-        }
-        return mean / count;
-    }
-
-    private double standardDeviation( double[] values, double mean, int count ) {
-        double sd = variance(values, mean, count);
-        sd = sqrt(sd);
-        return sd;
-    }
-
-    private double variance( double[] values, double mean, int count ) {
-        double variance = 0;
-        for( int i = 0; i < count; i++ ) {
-            variance = variance + pow(values[i] - mean, 2.0);
-        }
-        variance = variance / (count);
-        return variance;
-    }
-
     protected void processCell( int readCol, int readRow, int writeCol, int writeRow, int readCols, int readRows, int writeCols,
             int writeRows ) {
         // not used in this case
@@ -18,8 +18,6 @@
 package org.jgrasstools.gears.modules.r.windowsampler;
 
 import static java.lang.Math.ceil;
-import static java.lang.Math.max;
-import static java.lang.Math.min;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_AUTHORCONTACTS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_AUTHORNAMES;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_DESCRIPTION;
@@ -32,16 +30,16 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_inGeodata_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_outGeodata_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pCols_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pMode_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pRows_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pXstep_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pYstep_DESCRIPTION;
-import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
 
-import java.awt.Dimension;
-import java.awt.Point;
 import java.awt.image.WritableRaster;
 
+import javax.media.jai.iterator.RandomIter;
+
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Documentation;
@@ -55,10 +53,10 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.coverage.grid.GridCoverage2D;
-import org.jaitools.imageutils.iterator.WindowIterator;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
-import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.libs.modules.WindowStatisticsEngine;
+import org.jgrasstools.gears.libs.modules.WindowStatisticsEngine.WindowFunction;
 import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 
@@ -96,6 +94,10 @@ public class OmsWindowSampler extends JGTModel {
     @In
     public Integer pYstep;
 
+    @Description(OMSWINDOWSAMPLER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSWINDOWSAMPLER_outGeodata_DESCRIPTION)
     @Out
     public GridCoverage2D outGeodata;
@@ -121,72 +123,42 @@ public class OmsWindowSampler extends JGTModel {
         // new rows and cols are all that have space rounding down
         int newRows = (int) ceil((double) rows / (double) ystep);
         int newCols = (int) ceil((double) cols / (double) xstep);
-        WritableRaster outputWR = CoverageUtilities.createDoubleWritableRaster(newCols, newRows, null, null,
-                JGTConstants.doubleNovalue);
+        WindowFunction function = getFunction();
 
-        WindowIterator iter = new WindowIterator(inGeodata.getRenderedImage(), null, new Dimension(pCols, pRows),
-                new Point(0, 0), xstep, ystep, JGTConstants.doubleNovalue);
-
-        for( int r = 0; r < newRows; r++ ) {
-            for( int c = 0; c < newCols; c++ ) {
-                double[][] window = iter.getWindowDouble(null);
-                double newValue = calculateValue(window);
-                iter.next();
-
-                outputWR.setSample(c, r, 0, newValue);
+        RandomIter inIter = CoverageUtilities.getRandomIterator(inGeodata);
+        double[] values = new double[cols * rows];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                values[r * cols + c] = inIter.getSampleDouble(c, r, 0);
             }
         }
+        inIter.done();
+
+        WindowStatisticsEngine engine = new WindowStatisticsEngine(values, cols, rows);
+        double[] sampled = engine.calculate(pCols, pRows, 0, 0, xstep, ystep, function, pMaxThreads, pm);
+
+        WritableRaster outputWR = CoverageUtilities.createDoubleWritableRaster(newCols, newRows, null, null, null);
+        outputWR.setSamples(0, 0, newCols, newRows, 0, sampled);
 
         outGeodata = CoverageUtilities
                 .buildCoverage("downsampled", outputWR, regionMap, inGeodata.getCoordinateReferenceSystem());
 
     }
 
-    private double calculateValue( double[][] window ) {
+    private WindowFunction getFunction() {
         switch( pMode ) {
         case 0:
-            double avg = 0;
-            int num = 0;
-            for( int i = 0; i < window.length; i++ ) {
-                for( int j = 0; j < window[0].length; j++ ) {
-                    if (!isNovalue(window[i][j])) {
-                        avg = avg + window[i][j];
-                        num++;
-                    }
-                }
-            }
-            avg = avg / num;
-            return avg;
+            return WindowStatisticsEngine.MEAN;
         case 1:
-            double sum = 0;
-            for( int i = 0; i < window.length; i++ ) {
-                for( int j = 0; j < window[0].length; j++ ) {
-                    if (!isNovalue(window[i][j])) {
-                        sum = sum + window[i][j];
-                    }
-                }
-            }
-            return sum;
+            return WindowStatisticsEngine.SUM;
         case 2:
-            double max = Double.NEGATIVE_INFINITY;
-            for( int i = 0; i < window.length; i++ ) {
-                for( int j = 0; j < window[0].length; j++ ) {
-                    if (!isNovalue(window[i][j])) {
-                        max = max(window[i][j], max);
-                    }
-                }
-            }
-            return max;
+            return WindowStatisticsEngine.MAX;
         case 3:
-            double min = Double.POSITIVE_INFINITY;
-            for( int i = 0; i < window.length; i++ ) {
-                for( int j = 0; j < window[0].length; j++ ) {
-                    if (!isNovalue(window[i][j])) {
-                        min = min(window[i][j], min);
-                    }
-                }
-            }
-            return min;
+            return WindowStatisticsEngine.MIN;
+        case 4:
+            return WindowStatisticsEngine.MEDIAN;
+        case 5:
+            return WindowStatisticsEngine.STANDARD_DEVIATION;
         default:
             throw new ModelsIllegalargumentException("Mode not recognized: " + pMode, this);
         }
@@ -46,10 +46,11 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.feature.DefaultFeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.utils.features.pipeline.FeatureOperator;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 @Description(OMSVECTORFIELDROUNDER_DESCRIPTION)
 @Documentation(OMSVECTORFIELDROUNDER_DOCUMENTATION)
@@ -77,8 +78,6 @@ public class OmsVectorFieldRounder extends JGTModel {
     @Out
     public SimpleFeatureCollection outVector;
 
-    private DecimalFormat formatter = null;
-
     @Execute
     public void process() throws Exception {
         if (!concatOr(outVector == null, doReset)) {
@@ -87,32 +86,45 @@ public class OmsVectorFieldRounder extends JGTModel {
 
         checkNull(pPattern, fRound);
 
-        formatter = new DecimalFormat(pPattern);
-
-        outVector = new DefaultFeatureCollection();
-
-        int size = inVector.size();
-        pm.beginTask("Rounding data...", size);
-        FeatureIterator<SimpleFeature> inFeatureIterator = inVector.features();
-        while( inFeatureIterator.hasNext() ) {
-            SimpleFeature feature = inFeatureIterator.next();
+        FeaturePipeline pipeline = new FeaturePipeline(inVector);
+        pipeline.add(createOperator(inVector.getSchema()));
+        outVector = pipeline.runToCollection("Rounding data...", pm);
+    }
 
-            Object attribute = feature.getAttribute(fRound);
-            if (attribute instanceof Number) {
-                double num = ((Number) attribute).doubleValue();
-                String numStr = formatter.format(num);
-                numStr = numStr.replaceFirst(",", ".");
-                num = Double.parseDouble(numStr);
-                feature.setAttribute(fRound, num);
+    /**
+     * Create the rounding as a {@link FeatureOperator}, to be used in a {@link FeaturePipeline}.
+     * 
+     * <p>The rounded value is set in place on the passed feature.</p>
+     * 
+     * @param featureType the type of the features to round.
+     * @return the operator.
+     */
+    public FeatureOperator createOperator( final SimpleFeatureType featureType ) {
+        final String pattern = pPattern;
+        final String field = fRound;
+        // formats are not thread safe
+        final ThreadLocal<DecimalFormat> formatter = new ThreadLocal<DecimalFormat>(){
+            protected DecimalFormat initialValue() {
+                return new DecimalFormat(pattern);
+            }
+        };
+        return new FeatureOperator(){
+            public SimpleFeatureType getOutputType() {
+                return featureType;
             }
 
-            ((DefaultFeatureCollection) outVector).add(feature);
-            pm.worked(1);
-        }
-        pm.done();
-
-        inFeatureIterator.close();
-
+            public SimpleFeature process( SimpleFeature feature ) throws Exception {
+                Object attribute = feature.getAttribute(field);
+                if (attribute instanceof Number) {
+                    double num = ((Number) attribute).doubleValue();
+                    String numStr = formatter.get().format(num);
+                    numStr = numStr.replaceFirst(",", ".");
+                    num = Double.parseDouble(numStr);
+                    feature.setAttribute(field, num);
+                }
+                return feature;
+            }
+        };
     }
 
 }
@@ -42,11 +42,12 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.feature.DefaultFeatureCollection;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.features.FilterUtilities;
+import org.jgrasstools.gears.utils.features.pipeline.FeatureOperator;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.filter.Filter;
 
 @Description(OMSVECTORFILTER_DESCRIPTION)
@@ -78,19 +79,33 @@ public class OmsVectorFilter extends JGTModel {
         }
         checkNull(inVector, pCql);
 
-        Filter cqlFilter = FilterUtilities.getCQLFilter(pCql);
-        SimpleFeatureCollection subCollection = inVector.subCollection(cqlFilter);
+        FeaturePipeline pipeline = new FeaturePipeline(inVector);
+        pipeline.add(createOperator(inVector.getSchema()));
+        outVector = pipeline.runToCollection("Filtering features...", pm);
+    }
 
-        outVector = new DefaultFeatureCollection();
-        SimpleFeatureIterator iterator = subCollection.features();
-        try {
-            while( iterator.hasNext() ) {
-                SimpleFeature feature = iterator.next();
-                ((DefaultFeatureCollection) outVector).add(feature);
+    /**
+     * Create the filter as a {@link FeatureOperator}, to be used in a {@link FeaturePipeline}.
+     * 
+     * @param featureType the type of the features to filter.
+     * @return the operator, which drops the features that do not match.
+     * @throws Exception
+     */
+    public FeatureOperator createOperator( final SimpleFeatureType featureType ) throws Exception {
+        checkNull(pCql);
+        final Filter cqlFilter = FilterUtilities.getCQLFilter(pCql);
+        return new FeatureOperator(){
+            public SimpleFeatureType getOutputType() {
+                return featureType;
             }
-        } finally {
-            iterator.close();
-        }
+
+            public SimpleFeature process( SimpleFeature feature ) throws Exception {
+                if (cqlFilter.evaluate(feature)) {
+                    return feature;
+                }
+                return null;
+            }
+        };
     }
 
 }
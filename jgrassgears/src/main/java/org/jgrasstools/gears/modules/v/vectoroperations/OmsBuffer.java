@@ -32,6 +32,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_outMap_DESCRIPT
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pBuffer_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pCapstyle_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pJoinstyle_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.libs.modules.Variables.CAP_FLAT;
 import static org.jgrasstools.gears.libs.modules.Variables.CAP_ROUND;
 import static org.jgrasstools.gears.libs.modules.Variables.CAP_SQUARE;
@@ -56,12 +57,13 @@ import oms3.annotations.Status;
 import oms3.annotations.UI;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.feature.DefaultFeatureCollection;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.features.FeatureGeometrySubstitutor;
-import org.jgrasstools.gears.utils.features.FeatureUtilities;
+import org.jgrasstools.gears.utils.features.pipeline.FeatureOperator;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -102,6 +104,10 @@ public class OmsBuffer extends JGTModel {
     @In
     public String pCapstyle = CAP_ROUND;
 
+    @Description(OMSBUFFER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSBUFFER_outMap_DESCRIPTION)
     @Out
     public SimpleFeatureCollection outMap = null;
@@ -113,6 +119,20 @@ public class OmsBuffer extends JGTModel {
     public void process() throws Exception {
         checkNull(inMap);
 
+        FeaturePipeline pipeline = new FeaturePipeline(inMap);
+        pipeline.add(createOperator(inMap.getSchema()));
+        pipeline.setThreads(pMaxThreads);
+        outMap = pipeline.runToCollection("Buffering geometries...", pm);
+    }
+
+    /**
+     * Create the buffer as a {@link FeatureOperator}, to be used in a {@link FeaturePipeline}.
+     * 
+     * @param featureType the type of the features to buffer.
+     * @return the operator.
+     * @throws Exception
+     */
+    public FeatureOperator createOperator( SimpleFeatureType featureType ) throws Exception {
         int joinStyle;
         if (pJoinstyle.equals(JOIN_MITRE)) {
             joinStyle = BufferParameters.JOIN_MITRE;
@@ -130,37 +150,35 @@ public class OmsBuffer extends JGTModel {
             endCapStyle = BufferParameters.CAP_ROUND;
         }
 
-        FeatureGeometrySubstitutor fgs = new FeatureGeometrySubstitutor(inMap.getSchema(), MultiPolygon.class);
-
-        DefaultFeatureCollection outMaptmp = new DefaultFeatureCollection("new", fgs.getNewFeatureType());
+        final FeatureGeometrySubstitutor fgs = new FeatureGeometrySubstitutor(featureType, MultiPolygon.class);
+        final GeometryFactory gf = GeometryUtilities.gf();
+        final BufferParameters bP = new BufferParameters(quadrantSegments, endCapStyle, joinStyle, mitreLimit);
+        final double buffer = pBuffer;
 
-        GeometryFactory gf = GeometryUtilities.gf();
-
-        List<SimpleFeature> featuresList = FeatureUtilities.featureCollectionToList(inMap);
-        pm.beginTask("Buffering geometries...", featuresList.size());
-        for( SimpleFeature feature : featuresList ) {
-            Geometry geometry = (Geometry) feature.getDefaultGeometry();
+        return new FeatureOperator(){
+            public SimpleFeatureType getOutputType() {
+                return fgs.getNewFeatureType();
+            }
 
-            BufferParameters bP = new BufferParameters(quadrantSegments, endCapStyle, joinStyle, mitreLimit);
-            Geometry bufferedGeom = BufferOp.bufferOp(geometry, pBuffer, bP);
-            List<Polygon> polygons = new ArrayList<Polygon>(bufferedGeom.getNumGeometries());
-            for( int i = 0; i < bufferedGeom.getNumGeometries(); i++ ) {
-                Geometry geometryN = bufferedGeom.getGeometryN(i);
-                if (geometryN instanceof Polygon) {
-                    polygons.add((Polygon) geometryN);
-                } else {
-                    pm.errorMessage("Ignored non polygonal geometry in: " + geometryN.toText());
+            public SimpleFeature process( SimpleFeature feature ) throws Exception {
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+
+                Geometry bufferedGeom = BufferOp.bufferOp(geometry, buffer, bP);
+                List<Polygon> polygons = new ArrayList<Polygon>(bufferedGeom.getNumGeometries());
+                for( int i = 0; i < bufferedGeom.getNumGeometries(); i++ ) {
+                    Geometry geometryN = bufferedGeom.getGeometryN(i);
+                    if (geometryN instanceof Polygon) {
+                        polygons.add((Polygon) geometryN);
+                    } else {
+                        synchronized (pm) {
+                            pm.errorMessage("Ignored non polygonal geometry in: " + geometryN.toText());
+                        }
+                    }
                 }
+                MultiPolygon multiPolygon = gf.createMultiPolygon(polygons.toArray(GeometryUtilities.TYPE_POLYGON));
+                return fgs.substituteGeometry(feature, multiPolygon);
             }
-            MultiPolygon multiPolygon = gf.createMultiPolygon(polygons.toArray(GeometryUtilities.TYPE_POLYGON));
-            SimpleFeature newFeature = fgs.substituteGeometry(feature, multiPolygon);
-            outMaptmp.add(newFeature);
-            pm.worked(1);
-        }
-        pm.done();
-
-        outMap = outMaptmp;
-
+        };
     }
 
 }
@@ -26,16 +26,23 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_LICENSE;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_STATUS;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_doDissolve_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_inMap1_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_inMap2_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_pType_DESCRIPTION;
 import static org.jgrasstools.gears.libs.modules.Variables.DIFFERENCE;
 import static org.jgrasstools.gears.libs.modules.Variables.INTERSECTION;
 import static org.jgrasstools.gears.libs.modules.Variables.SYMDIFFERENCE;
 import static org.jgrasstools.gears.libs.modules.Variables.UNION;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -57,19 +64,21 @@ import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.jgrasstools.gears.libs.exceptions.ModelsIllegalargumentException;
 import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
 import org.jgrasstools.gears.libs.modules.JGTModel;
-import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.jgrasstools.gears.modules.v.vectoroverlayoperators.OverlayEngine.OverlayPiece;
 import org.jgrasstools.gears.utils.features.FeatureUtilities;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
-import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
 
 @Description(OMSVECTOROVERLAYOPERATORS_DESCRIPTION)
 @Documentation(OMSVECTOROVERLAYOPERATORS_DOCUMENTATION)
@@ -94,6 +103,14 @@ public class OmsVectorOverlayOperators extends JGTModel {
     @In
     public String pType = INTERSECTION;
 
+    @Description(OMSVECTOROVERLAYOPERATORS_doDissolve_DESCRIPTION)
+    @In
+    public boolean doDissolve = false;
+
+    @Description(OMSVECTOROVERLAYOPERATORS_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION)
     @Out
     public SimpleFeatureCollection outMap = null;
@@ -104,70 +121,155 @@ public class OmsVectorOverlayOperators extends JGTModel {
 
         CoordinateReferenceSystem crs = inMap1.getSchema().getCoordinateReferenceSystem();
 
-        outMap = new DefaultFeatureCollection();
-
-        SimpleFeatureBuilder builder = null;
-
         pm.message("Preparing geometry layers...");
+        List<SimpleFeature> features1 = FeatureUtilities.featureCollectionToList(inMap1);
+        List<SimpleFeature> features2 = FeatureUtilities.featureCollectionToList(inMap2);
+        List<Geometry> geoms1 = getGeometries(features1);
+        List<Geometry> geoms2 = getGeometries(features2);
 
-        GeometryFactory gf = GeometryUtilities.gf();
-        List<Geometry> geoms1 = FeatureUtilities.featureCollectionToGeometriesList(inMap1, false, null);
-        List<Geometry> geoms2 = FeatureUtilities.featureCollectionToGeometriesList(inMap2, false, null);
-
-        GeometryCollection geometryCollection1 = new GeometryCollection(geoms1.toArray(new Geometry[0]), gf);
-        GeometryCollection geometryCollection2 = new GeometryCollection(geoms2.toArray(new Geometry[0]), gf);
-        Geometry g1 = geometryCollection1.buffer(0);
-        Geometry g2 = geometryCollection2.buffer(0);
-
-        pm.beginTask("Performing overlay operation...", IJGTProgressMonitor.UNKNOWN);
-        Geometry resultingGeometryCollection = null;
+        OverlayEngine engine = new OverlayEngine(geoms1, geoms2);
+        List<OverlayPiece> pieces;
         if (pType.equals(INTERSECTION)) {
-            resultingGeometryCollection = g1.intersection(g2);
+            pieces = engine.intersection(pMaxThreads, pm);
         } else if (pType.equals(UNION)) {
-            resultingGeometryCollection = g1.union(g2);
+            pieces = engine.union(pMaxThreads, pm);
         } else if (pType.equals(DIFFERENCE)) {
-            resultingGeometryCollection = g1.difference(g2);
+            pieces = engine.difference(pMaxThreads, pm);
         } else if (pType.equals(SYMDIFFERENCE)) {
-            resultingGeometryCollection = g1.symDifference(g2);
+            pieces = engine.symDifference(pMaxThreads, pm);
         } else {
             throw new ModelsIllegalargumentException("The overlay type is not supported: " + pType, this);
         }
-        pm.done();
 
         pm.message("Preparing final layer...");
-        int numGeometries = resultingGeometryCollection.getNumGeometries();
-        for( int i = 0; i < numGeometries; i++ ) {
-            Geometry geometryN = resultingGeometryCollection.getGeometryN(i);
-            int numGeometries2 = geometryN.getNumGeometries();
-            for( int j = 0; j < numGeometries2; j++ ) {
-                Geometry geometryN2 = geometryN.getGeometryN(j);
+        if (doDissolve) {
+            List<Geometry> geometries = new ArrayList<Geometry>(pieces.size());
+            for( OverlayPiece piece : pieces ) {
+                geometries.add(piece.geometry);
+            }
+            pieces = new ArrayList<OverlayPiece>();
+            if (geometries.size() > 0) {
+                Geometry dissolved = UnaryUnionOp.union(geometries);
+                pieces.add(new OverlayPiece(dissolved, -1, -1));
+            }
+            features1 = Collections.emptyList();
+            features2 = Collections.emptyList();
+        }
 
+        DefaultFeatureCollection outFC = new DefaultFeatureCollection();
+        SimpleFeatureType type = null;
+        SimpleFeatureBuilder builder = null;
+        int[] attributesIndexes1 = null;
+        int[] attributesIndexes2 = null;
+        int id = 0;
+        List<Geometry> parts = new ArrayList<Geometry>();
+        for( OverlayPiece piece : pieces ) {
+            parts.clear();
+            explode(piece.geometry, parts);
+            for( Geometry part : parts ) {
                 if (builder == null) {
                     SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
                     b.setName("overlay");
                     b.setCRS(crs);
-                    if (geometryN2 instanceof Polygon) {
+                    if (part instanceof Polygon) {
                         b.add("the_geom", Polygon.class);
-                    } else if (geometryN2 instanceof LineString) {
+                    } else if (part instanceof LineString) {
                         b.add("the_geom", LineString.class);
-                    } else if (geometryN2 instanceof Point) {
+                    } else if (part instanceof Point) {
                         b.add("the_geom", Point.class);
                     } else {
                         throw new ModelsRuntimeException("An unexpected geometry type has been created: "
-                                + geometryN2.getGeometryType(), this);
+                                + part.getGeometryType(), this);
                     }
                     b.add("id", Integer.class);
-                    SimpleFeatureType type = b.buildFeatureType();
+                    Set<String> names = new HashSet<String>();
+                    names.add("the_geom");
+                    names.add("id");
+                    attributesIndexes1 = addAttributes(b, inMap1.getSchema(), features1.size() > 0, names);
+                    attributesIndexes2 = addAttributes(b, inMap2.getSchema(), features2.size() > 0, names);
+                    type = b.buildFeatureType();
                     builder = new SimpleFeatureBuilder(type);
                 }
 
-                Object[] values = new Object[]{geometryN2, i};
+                Object[] values = new Object[type.getAttributeCount()];
+                values[0] = part;
+                values[1] = id++;
+                int index = 2;
+                index = copyAttributes(piece.index1 >= 0 ? features1.get(piece.index1) : null, attributesIndexes1, values,
+                        index);
+                copyAttributes(piece.index2 >= 0 ? features2.get(piece.index2) : null, attributesIndexes2, values, index);
                 builder.addAll(values);
                 SimpleFeature feature = builder.buildFeature(null);
-                ((DefaultFeatureCollection) outMap).add(feature);
+                outFC.add(feature);
+            }
+        }
+        outMap = outFC;
+    }
+
+    private List<Geometry> getGeometries( List<SimpleFeature> features ) {
+        List<Geometry> geometries = new ArrayList<Geometry>(features.size());
+        for( SimpleFeature feature : features ) {
+            Geometry geometry = (Geometry) feature.getDefaultGeometry();
+            if (geometry == null) {
+                geometry = GeometryUtilities.gf().createGeometryCollection(null);
+            } else if (geometry.getDimension() == 2 && !geometry.isValid()) {
+                // repair self intersections and overlapping parts
+                geometry = geometry.buffer(0);
+            }
+            geometries.add(geometry);
+        }
+        return geometries;
+    }
+
+    private void explode( Geometry geometry, List<Geometry> parts ) {
+        int numGeometries = geometry.getNumGeometries();
+        if (numGeometries == 1 && !(geometry instanceof GeometryCollection)) {
+            parts.add(geometry);
+            return;
+        }
+        for( int i = 0; i < numGeometries; i++ ) {
+            explode(geometry.getGeometryN(i), parts);
+        }
+    }
+
+    /**
+     * Add the non geometric attributes of a layer to the output type, renaming the duplicated ones.
+     * 
+     * @return the indexes of the copied attributes in the source type.
+     */
+    private int[] addAttributes( SimpleFeatureTypeBuilder b, SimpleFeatureType featureType, boolean doAdd, Set<String> names ) {
+        if (!doAdd) {
+            return new int[0];
+        }
+        List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+        int[] indexes = new int[descriptors.size()];
+        int count = 0;
+        for( int i = 0; i < descriptors.size(); i++ ) {
+            AttributeDescriptor descriptor = descriptors.get(i);
+            if (descriptor instanceof GeometryDescriptor) {
+                continue;
             }
+            String name = descriptor.getLocalName();
+            int suffix = 2;
+            String newName = name;
+            while( names.contains(newName.toLowerCase()) ) {
+                newName = name + "_" + suffix++;
+            }
+            names.add(newName.toLowerCase());
+            b.add(newName, descriptor.getType().getBinding());
+            indexes[count++] = i;
         }
+        return Arrays.copyOf(indexes, count);
+    }
 
+    private int copyAttributes( SimpleFeature feature, int[] attributesIndexes, Object[] values, int index ) {
+        for( int i = 0; i < attributesIndexes.length; i++ ) {
+            if (feature != null) {
+                values[index] = feature.getAttribute(attributesIndexes[i]);
+            }
+            index++;
+        }
+        return index;
     }
 
 }
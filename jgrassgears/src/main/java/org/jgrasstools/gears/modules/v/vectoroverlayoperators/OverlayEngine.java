@@ -0,0 +1,329 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules.v.vectoroverlayoperators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrasstools.gears.libs.exceptions.ModelsRuntimeException;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+
+/**
+ * Feature by feature overlay of two geometry layers.
+ * 
+ * <p>
+ * Both layers are indexed in a {@link STRtree}. Every geometry of a layer is
+ * prepared and only overlaid with the geometries of the other layer that
+ * intersect it, so that no geometry is ever merged with the rest of its layer.
+ * Every resulting piece keeps the indexes of the originating geometries, so that
+ * attributes of both sides can be carried to the result.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class OverlayEngine {
+
+    /**
+     * A piece of the overlay.
+     */
+    public static class OverlayPiece {
+        /**
+         * The geometry of the piece.
+         */
+        public final Geometry geometry;
+        /**
+         * The index of the geometry of the first layer the piece comes from, or -1.
+         */
+        public final int index1;
+        /**
+         * The index of the geometry of the second layer the piece comes from, or -1.
+         */
+        public final int index2;
+
+        public OverlayPiece( Geometry geometry, int index1, int index2 ) {
+            this.geometry = geometry;
+            this.index1 = index1;
+            this.index2 = index2;
+        }
+    }
+
+    private final List<Geometry> geoms1;
+    private final List<Geometry> geoms2;
+    private final STRtree tree1;
+    private final STRtree tree2;
+
+    /**
+     * Constructor.
+     * 
+     * @param geoms1 the geometries of the first layer.
+     * @param geoms2 the geometries of the second layer.
+     */
+    public OverlayEngine( List<Geometry> geoms1, List<Geometry> geoms2 ) {
+        this.geoms1 = geoms1;
+        this.geoms2 = geoms2;
+        tree1 = buildTree(geoms1);
+        tree2 = buildTree(geoms2);
+    }
+
+    private static STRtree buildTree( List<Geometry> geoms ) {
+        STRtree tree = new STRtree();
+        for( int i = 0; i < geoms.size(); i++ ) {
+            tree.insert(geoms.get(i).getEnvelopeInternal(), i);
+        }
+        tree.build();
+        return tree;
+    }
+
+    /**
+     * Intersect the layers.
+     * 
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the pieces common to both layers, with both indexes set.
+     */
+    public List<OverlayPiece> intersection( int threads, IJGTProgressMonitor pm ) {
+        pm.beginTask("Intersecting layers...", geoms1.size());
+        List<OverlayPiece> pieces = run(geoms1, geoms2, tree2, true, false, threads, pm);
+        pm.done();
+        return pieces;
+    }
+
+    /**
+     * Subtract the second layer from the first.
+     * 
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the pieces of the first layer not covered by the second.
+     */
+    public List<OverlayPiece> difference( int threads, IJGTProgressMonitor pm ) {
+        pm.beginTask("Subtracting layers...", geoms1.size());
+        List<OverlayPiece> pieces = run(geoms1, geoms2, tree2, false, false, threads, pm);
+        pm.done();
+        return pieces;
+    }
+
+    /**
+     * Symmetric difference of the layers.
+     * 
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the pieces covered by only one of the layers.
+     */
+    public List<OverlayPiece> symDifference( int threads, IJGTProgressMonitor pm ) {
+        pm.beginTask("Subtracting layers...", geoms1.size() + geoms2.size());
+        List<OverlayPiece> pieces = run(geoms1, geoms2, tree2, false, false, threads, pm);
+        pieces.addAll(run(geoms2, geoms1, tree1, false, true, threads, pm));
+        pm.done();
+        return pieces;
+    }
+
+    /**
+     * Union of the layers.
+     * 
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the common pieces followed by the pieces covered by only one of the layers.
+     */
+    public List<OverlayPiece> union( int threads, IJGTProgressMonitor pm ) {
+        pm.beginTask("Overlaying layers...", 2 * geoms1.size() + geoms2.size());
+        List<OverlayPiece> pieces = run(geoms1, geoms2, tree2, true, false, threads, pm);
+        pieces.addAll(run(geoms1, geoms2, tree2, false, false, threads, pm));
+        pieces.addAll(run(geoms2, geoms1, tree1, false, true, threads, pm));
+        pm.done();
+        return pieces;
+    }
+
+    /**
+     * Overlay every geometry of a layer with its candidates of the other layer.
+     * 
+     * <p>The pieces are returned in the order of the geometries of the first layer,
+     * independently of the number of threads used. If the overlay of a geometry fails,
+     * the exception is rethrown as in the single threaded case.</p>
+     */
+    private List<OverlayPiece> run( final List<Geometry> geoms, final List<Geometry> otherGeoms, final STRtree otherTree,
+            final boolean doIntersection, final boolean swapped, int threads, final IJGTProgressMonitor pm ) {
+        final int size = geoms.size();
+        final List<List<OverlayPiece>> results = new ArrayList<List<OverlayPiece>>(Collections.nCopies(size,
+                (List<OverlayPiece>) null));
+        if (threads > 1 && size > 1) {
+            final AtomicInteger nextIndex = new AtomicInteger(0);
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for( int t = 0; t < threads; t++ ) {
+                futures.add(fixedThreadPool.submit(new Callable<Object>(){
+                    public Object call() throws Exception {
+                        int index;
+                        while( (index = nextIndex.getAndIncrement()) < size ) {
+                            List<OverlayPiece> pieces;
+                            try {
+                                pieces = overlay(index, geoms, otherGeoms, otherTree, doIntersection, swapped);
+                            } catch (RuntimeException e) {
+                                // stop the other workers, the overlay fails anyway
+                                nextIndex.set(size);
+                                throw e;
+                            }
+                            synchronized (results) {
+                                results.set(index, pieces);
+                            }
+                            synchronized (pm) {
+                                pm.worked(1);
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            try {
+                for( Future<Object> future : futures ) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new ModelsRuntimeException(cause.getLocalizedMessage(), this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ModelsRuntimeException("Interrupted while overlaying the layers.", this);
+            } finally {
+                fixedThreadPool.shutdownNow();
+            }
+        } else {
+            for( int i = 0; i < size; i++ ) {
+                results.set(i, overlay(i, geoms, otherGeoms, otherTree, doIntersection, swapped));
+                pm.worked(1);
+            }
+        }
+
+        List<OverlayPiece> pieces = new ArrayList<OverlayPiece>();
+        for( List<OverlayPiece> list : results ) {
+            pieces.addAll(list);
+        }
+        return pieces;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<OverlayPiece> overlay( int index, List<Geometry> geoms, List<Geometry> otherGeoms, STRtree otherTree,
+            boolean doIntersection, boolean swapped ) {
+        Geometry geometry = geoms.get(index);
+        List<OverlayPiece> pieces = new ArrayList<OverlayPiece>();
+        if (geometry.isEmpty()) {
+            return pieces;
+        }
+
+        List<Integer> candidates = otherTree.query(geometry.getEnvelopeInternal());
+        // keep the query order independent from the tree layout
+        Collections.sort(candidates);
+        PreparedGeometry prepared = PreparedGeometryFactory.prepare(geometry);
+
+        if (doIntersection) {
+            int dimension = geometry.getDimension();
+            for( Integer otherIndex : candidates ) {
+                Geometry otherGeometry = otherGeoms.get(otherIndex);
+                if (!prepared.intersects(otherGeometry)) {
+                    continue;
+                }
+                Geometry result;
+                if (prepared.containsProperly(otherGeometry)) {
+                    result = otherGeometry;
+                } else {
+                    result = geometry.intersection(otherGeometry);
+                }
+                result = filterDimension(result, Math.min(dimension, otherGeometry.getDimension()));
+                if (result != null) {
+                    pieces.add(swapped ? new OverlayPiece(result, otherIndex, index) : new OverlayPiece(result, index,
+                            otherIndex));
+                }
+            }
+        } else {
+            List<Geometry> intersecting = new ArrayList<Geometry>();
+            for( Integer otherIndex : candidates ) {
+                Geometry otherGeometry = otherGeoms.get(otherIndex);
+                if (prepared.intersects(otherGeometry)) {
+                    if (otherGeometry.covers(geometry)) {
+                        return pieces;
+                    }
+                    intersecting.add(otherGeometry);
+                }
+            }
+            Geometry result;
+            if (intersecting.size() == 0) {
+                result = geometry;
+            } else {
+                // cascaded union of the local neighbours only
+                Geometry cutter = UnaryUnionOp.union(intersecting);
+                result = geometry.difference(cutter);
+            }
+            result = filterDimension(result, geometry.getDimension());
+            if (result != null) {
+                pieces.add(swapped ? new OverlayPiece(result, -1, index) : new OverlayPiece(result, index, -1));
+            }
+        }
+        return pieces;
+    }
+
+    /**
+     * Removes the lower dimensional parts that overlay operations create where geometries touch.
+     * 
+     * @return the geometry or <code>null</code> if nothing is left.
+     */
+    private static Geometry filterDimension( Geometry geometry, int dimension ) {
+        if (geometry.isEmpty()) {
+            return null;
+        }
+        int numGeometries = geometry.getNumGeometries();
+        if (numGeometries == 1) {
+            if (geometry.getDimension() == dimension) {
+                return geometry;
+            }
+            return null;
+        }
+        List<Geometry> parts = new ArrayList<Geometry>(numGeometries);
+        for( int i = 0; i < numGeometries; i++ ) {
+            Geometry part = geometry.getGeometryN(i);
+            if (!part.isEmpty() && part.getDimension() == dimension) {
+                parts.add(part);
+            }
+        }
+        if (parts.size() == 0) {
+            return null;
+        }
+        if (parts.size() == numGeometries) {
+            return geometry;
+        }
+        return geometry.getFactory().buildGeometry(parts);
+    }
+
+}
@@ -28,6 +28,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_inVector_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_outVector_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_pTolerance_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_pType_DESCRIPTION;
 
@@ -47,12 +48,13 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.feature.DefaultFeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.features.FeatureGeometrySubstitutor;
+import org.jgrasstools.gears.utils.features.pipeline.FeatureOperator;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
 import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
 import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryCollection;
@@ -82,6 +84,10 @@ public class OmsVectorSimplifier extends JGTModel {
     @In
     public double pTolerance = 0.2;
 
+    @Description(OMSVECTORSIMPLIFIER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTORSIMPLIFIER_outVector_DESCRIPTION)
     @Out
     public SimpleFeatureCollection outVector;
@@ -93,59 +99,67 @@ public class OmsVectorSimplifier extends JGTModel {
         if (!concatOr(outVector == null, doReset)) {
             return;
         }
-        FeatureIterator<SimpleFeature> inFeatureIterator = inVector.features();
-
-        outVector = new DefaultFeatureCollection();
-
-        FeatureGeometrySubstitutor fGS = new FeatureGeometrySubstitutor(inVector.getSchema());
-
-        int size = inVector.size();
-        pm.beginTask("Simplifing features...", size);
-        while( inFeatureIterator.hasNext() ) {
-            SimpleFeature feature = inFeatureIterator.next();
-
-            Geometry geometry = (Geometry) feature.getDefaultGeometry();
-
-            List<Geometry> geomList = new ArrayList<Geometry>();
-
-            int numGeometries = geometry.getNumGeometries();
-            for( int i = 0; i < numGeometries; i++ ) {
-                Geometry geometryN = geometry.getGeometryN(i);
-                switch( pType ) {
-                case 0:
-                    TopologyPreservingSimplifier tpSimplifier = new TopologyPreservingSimplifier(geometryN);
-                    tpSimplifier.setDistanceTolerance(pTolerance);
-                    Geometry tpsGeometry = tpSimplifier.getResultGeometry();
-                    geomList.add(tpsGeometry);
-                    break;
-                case 1:
-                    DouglasPeuckerSimplifier dpSimplifier = new DouglasPeuckerSimplifier(geometryN);
-                    dpSimplifier.setDistanceTolerance(pTolerance);
-                    Geometry dpsGeometry = dpSimplifier.getResultGeometry();
-                    geomList.add(dpsGeometry);
-                    break;
-                default:
-                }
 
+        FeaturePipeline pipeline = new FeaturePipeline(inVector);
+        pipeline.add(createOperator(inVector.getSchema()));
+        pipeline.setThreads(pMaxThreads);
+        outVector = pipeline.runToCollection("Simplifing features...", pm);
+    }
+
+    /**
+     * Create the simplification as a {@link FeatureOperator}, to be used in a {@link FeaturePipeline}.
+     * 
+     * @param featureType the type of the features to simplify.
+     * @return the operator.
+     * @throws Exception
+     */
+    public FeatureOperator createOperator( SimpleFeatureType featureType ) throws Exception {
+        final FeatureGeometrySubstitutor fGS = new FeatureGeometrySubstitutor(featureType);
+        return new FeatureOperator(){
+            public SimpleFeatureType getOutputType() {
+                return fGS.getNewFeatureType();
             }
 
-            Geometry newGeometry = null;
-            if (geomList.size() == 1) {
-                newGeometry = geomList.get(0);
-            } else {
-                Geometry[] geomArray = (Geometry[]) geomList.toArray(new Geometry[geomList.size()]);
-                newGeometry = new GeometryCollection(geomArray, gF);
+            public SimpleFeature process( SimpleFeature feature ) throws Exception {
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                Geometry newGeometry = simplify(geometry);
+                return fGS.substituteGeometry(feature, newGeometry);
             }
+        };
+    }
 
-            SimpleFeature newFeature = fGS.substituteGeometry(feature, newGeometry);
+    private Geometry simplify( Geometry geometry ) {
+        List<Geometry> geomList = new ArrayList<Geometry>();
+
+        int numGeometries = geometry.getNumGeometries();
+        for( int i = 0; i < numGeometries; i++ ) {
+            Geometry geometryN = geometry.getGeometryN(i);
+            switch( pType ) {
+            case 0:
+                TopologyPreservingSimplifier tpSimplifier = new TopologyPreservingSimplifier(geometryN);
+                tpSimplifier.setDistanceTolerance(pTolerance);
+                Geometry tpsGeometry = tpSimplifier.getResultGeometry();
+                geomList.add(tpsGeometry);
+                break;
+            case 1:
+                DouglasPeuckerSimplifier dpSimplifier = new DouglasPeuckerSimplifier(geometryN);
+                dpSimplifier.setDistanceTolerance(pTolerance);
+                Geometry dpsGeometry = dpSimplifier.getResultGeometry();
+                geomList.add(dpsGeometry);
+                break;
+            default:
+            }
 
-            ((DefaultFeatureCollection) outVector).add(newFeature);
-            pm.worked(1);
         }
-        pm.done();
-
-        inFeatureIterator.close();
 
+        Geometry newGeometry = null;
+        if (geomList.size() == 1) {
+            newGeometry = geomList.get(0);
+        } else {
+            Geometry[] geomArray = (Geometry[]) geomList.toArray(new Geometry[geomList.size()]);
+            newGeometry = new GeometryCollection(geomArray, gF);
+        }
+        return newGeometry;
     }
 
 }
@@ -28,6 +28,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_NAME
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_inVector_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_outVector_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_pTransX_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_pTransY_DESCRIPTION;
 
@@ -46,13 +47,13 @@ import oms3.annotations.Out;
 import oms3.annotations.Status;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.feature.DefaultFeatureCollection;
-import org.geotools.feature.FeatureIterator;
 import org.geotools.geometry.jts.JTS;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.operation.transform.AffineTransform2D;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.utils.features.FeatureGeometrySubstitutor;
+import org.jgrasstools.gears.utils.features.pipeline.FeatureOperator;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.operation.MathTransform;
@@ -85,6 +86,10 @@ public class OmsVectorTransformer extends JGTModel {
     @In
     public Double pRotate;
 
+    @Description(OMSVECTORTRANSFORMER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTORTRANSFORMER_outVector_DESCRIPTION)
     @Out
     public SimpleFeatureCollection outVector = null;
@@ -95,50 +100,59 @@ public class OmsVectorTransformer extends JGTModel {
             return;
         }
 
-        outVector = new DefaultFeatureCollection();
-        SimpleFeatureType featureType = inVector.getSchema();
-        ReferencedEnvelope vectorBounds = inVector.getBounds();
+        FeaturePipeline pipeline = new FeaturePipeline(inVector);
+        pipeline.add(createOperator(inVector.getSchema(), inVector.getBounds()));
+        pipeline.setThreads(pMaxThreads);
+        outVector = pipeline.runToCollection("Transforming geometries...", pm);
+    }
+
+    /**
+     * Create the transformation as a {@link FeatureOperator}, to be used in a {@link FeaturePipeline}.
+     * 
+     * @param featureType the type of the features to transform.
+     * @param vectorBounds the bounds of the dataset, the center of which is used for the rotation.
+     * @return the operator.
+     * @throws Exception
+     */
+    public FeatureOperator createOperator( SimpleFeatureType featureType, ReferencedEnvelope vectorBounds ) throws Exception {
         double centerX = vectorBounds.getMinX() + (vectorBounds.getMaxX() - vectorBounds.getMinX()) / 2.0;
         double centerY = vectorBounds.getMinY() + (vectorBounds.getMaxY() - vectorBounds.getMinY()) / 2.0;
-        double pAngle = 0;
         MathTransform rotationTransform = null;
         if (pRotate != null) {
-            pAngle = pRotate;
+            double pAngle = pRotate;
             AffineTransform rotationAT = new AffineTransform();
             rotationAT.translate(centerX, centerY);
             rotationAT.rotate(Math.toRadians(-pAngle));
             rotationAT.translate(-centerX, -centerY);
             rotationTransform = new AffineTransform2D(rotationAT);
         }
-        FeatureGeometrySubstitutor substitutor = new FeatureGeometrySubstitutor(featureType);
-
-        FeatureIterator<SimpleFeature> inFeatureIterator = inVector.features();
-        pm.beginTask("Transforming geometries...", inVector.size());
-        while( inFeatureIterator.hasNext() ) {
-            // copy the contents of each feature and transform the geometry
-            SimpleFeature feature = inFeatureIterator.next();
-            Geometry geometry = (Geometry) feature.getDefaultGeometry();
-
-            if (pRotate != null) {
-                geometry = JTS.transform(geometry, rotationTransform);
+        final MathTransform rotation = rotationTransform;
+
+        // m00 the X coordinate scaling element of the 3x3 matrix
+        // m10 the Y coordinate shearing element of the 3x3 matrix
+        // m01 the X coordinate shearing element of the 3x3 matrix
+        // m11 the Y coordinate scaling element of the 3x3 matrix
+        // m02 the X coordinate translation element of the 3x3 matrix
+        // m12 the Y coordinate translation element of the 3x3 matrix
+        // m00, m10, m01, m11, m02, m12
+        final MathTransform translation = new AffineTransform2D(1.0, 0.0, 0.0, 1.0, pTransX, pTransY);
+        final FeatureGeometrySubstitutor substitutor = new FeatureGeometrySubstitutor(featureType);
+
+        return new FeatureOperator(){
+            public SimpleFeatureType getOutputType() {
+                return substitutor.getNewFeatureType();
             }
 
-            // m00 the X coordinate scaling element of the 3x3 matrix
-            // m10 the Y coordinate shearing element of the 3x3 matrix
-            // m01 the X coordinate shearing element of the 3x3 matrix
-            // m11 the Y coordinate scaling element of the 3x3 matrix
-            // m02 the X coordinate translation element of the 3x3 matrix
-            // m12 the Y coordinate translation element of the 3x3 matrix
-            // m00, m10, m01, m11, m02, m12
-            MathTransform transform = new AffineTransform2D(1.0, 0.0, 0.0, 1.0, pTransX, pTransY);
-            Geometry transformedGeometry = JTS.transform(geometry, transform);
-
-            SimpleFeature newFeature = substitutor.substituteGeometry(feature, transformedGeometry);
-            ((DefaultFeatureCollection) outVector).add(newFeature);
-            pm.worked(1);
-        }
-        inFeatureIterator.close();
-        pm.done();
+            public SimpleFeature process( SimpleFeature feature ) throws Exception {
+                // copy the contents of each feature and transform the geometry
+                Geometry geometry = (Geometry) feature.getDefaultGeometry();
+                if (rotation != null) {
+                    geometry = JTS.transform(geometry, rotation);
+                }
+                Geometry transformedGeometry = JTS.transform(geometry, translation);
+                return substitutor.substituteGeometry(feature, transformedGeometry);
+            }
+        };
     }
 
 }
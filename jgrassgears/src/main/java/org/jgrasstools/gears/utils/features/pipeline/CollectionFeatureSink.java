@@ -0,0 +1,55 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.features.pipeline;
+
+import java.io.IOException;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * A {@link FeatureSink} that collects the features in memory.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class CollectionFeatureSink implements FeatureSink {
+
+    private DefaultFeatureCollection collection;
+
+    public void open( SimpleFeatureType featureType ) throws IOException {
+        collection = new DefaultFeatureCollection(null, featureType);
+    }
+
+    public void add( SimpleFeature feature ) throws IOException {
+        collection.add(feature);
+    }
+
+    public void close() throws IOException {
+    }
+
+    /**
+     * @return the collected features.
+     */
+    public SimpleFeatureCollection getCollection() {
+        return collection;
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.features.pipeline;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * A per feature operation of a {@link FeaturePipeline}.
+ * 
+ * <p>
+ * Operators are created for a given input {@link SimpleFeatureType} and
+ * have to be thread safe, since parallel pipelines call {@link #process(SimpleFeature)}
+ * from several threads at the same time.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public interface FeatureOperator {
+
+    /**
+     * @return the type of the features produced by this operator.
+     */
+    public SimpleFeatureType getOutputType();
+
+    /**
+     * Process a single feature.
+     * 
+     * @param feature the feature to process.
+     * @return the resulting feature or <code>null</code> if the feature has to be dropped.
+     * @throws Exception
+     */
+    public SimpleFeature process( SimpleFeature feature ) throws Exception;
+
+}
@@ -0,0 +1,236 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.features.pipeline;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * A streaming chain of {@link FeatureOperator}s from a feature source to a {@link FeatureSink}.
+ * 
+ * <p>
+ * The source is read through its iterator in chunks, every chunk is passed through
+ * the operators and handed to the sink in source order. At most two chunks per thread
+ * are in memory at any time, so that collections that are lazily read from disk
+ * (as for example the ones of {@link org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureReader})
+ * can be transformed without loading them.
+ * </p>
+ * <p>
+ * Example:
+ * <pre>
+ * FeaturePipeline pipeline = new FeaturePipeline(OmsShapefileFeatureReader.readShapefile(inPath));
+ * pipeline.add(simplifier.createOperator(pipeline.getOutputType()));
+ * pipeline.add(buffer.createOperator(pipeline.getOutputType()));
+ * pipeline.setThreads(4);
+ * pipeline.run(new ShapefileFeatureSink(outPath), "Processing...", pm);
+ * </pre>
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class FeaturePipeline {
+
+    /**
+     * The default number of features processed as a single unit of work.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private final SimpleFeatureCollection source;
+    private final List<FeatureOperator> operators = new ArrayList<FeatureOperator>();
+    private int threads = 1;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Constructor.
+     * 
+     * @param source the source of the features.
+     */
+    public FeaturePipeline( SimpleFeatureCollection source ) {
+        this.source = source;
+    }
+
+    /**
+     * Append an operator to the chain.
+     * 
+     * <p>The operator has to be created for the current {@link #getOutputType()}.</p>
+     * 
+     * @param operator the operator to add.
+     * @return the pipeline itself.
+     */
+    public FeaturePipeline add( FeatureOperator operator ) {
+        operators.add(operator);
+        return this;
+    }
+
+    /**
+     * @param threads the number of threads to use for the operators.
+     * @return the pipeline itself.
+     */
+    public FeaturePipeline setThreads( int threads ) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    /**
+     * @param chunkSize the number of features processed as a single unit of work.
+     * @return the pipeline itself.
+     */
+    public FeaturePipeline setChunkSize( int chunkSize ) {
+        this.chunkSize = Math.max(1, chunkSize);
+        return this;
+    }
+
+    /**
+     * @return the type of the features that leave the chain.
+     */
+    public SimpleFeatureType getOutputType() {
+        if (operators.size() == 0) {
+            return source.getSchema();
+        }
+        return operators.get(operators.size() - 1).getOutputType();
+    }
+
+    /**
+     * Run the chain and collect the result in memory.
+     * 
+     * @param taskName the name of the task for the progress monitor.
+     * @param pm the progress monitor.
+     * @return the resulting features.
+     * @throws Exception
+     */
+    public SimpleFeatureCollection runToCollection( String taskName, IJGTProgressMonitor pm ) throws Exception {
+        CollectionFeatureSink sink = new CollectionFeatureSink();
+        run(sink, taskName, pm);
+        return sink.getCollection();
+    }
+
+    /**
+     * Run the chain.
+     * 
+     * @param sink the sink to which to pass the resulting features.
+     * @param taskName the name of the task for the progress monitor.
+     * @param pm the progress monitor.
+     * @return the number of features that reached the sink.
+     * @throws Exception
+     */
+    public int run( FeatureSink sink, String taskName, IJGTProgressMonitor pm ) throws Exception {
+        sink.open(getOutputType());
+
+        pm.beginTask(taskName, source.size());
+        int count = 0;
+        SimpleFeatureIterator iterator = source.features();
+        ExecutorService fixedThreadPool = null;
+        try {
+            if (threads > 1) {
+                fixedThreadPool = Executors.newFixedThreadPool(threads);
+                LinkedList<Future<List<SimpleFeature>>> pending = new LinkedList<Future<List<SimpleFeature>>>();
+                while( iterator.hasNext() ) {
+                    final List<SimpleFeature> chunk = readChunk(iterator);
+                    pending.add(fixedThreadPool.submit(new Callable<List<SimpleFeature>>(){
+                        public List<SimpleFeature> call() throws Exception {
+                            processChunk(chunk);
+                            return chunk;
+                        }
+                    }));
+                    if (pending.size() >= 2 * threads) {
+                        count = count + emit(getChunk(pending.removeFirst()), sink, pm);
+                    }
+                }
+                while( !pending.isEmpty() ) {
+                    count = count + emit(getChunk(pending.removeFirst()), sink, pm);
+                }
+            } else {
+                while( iterator.hasNext() ) {
+                    List<SimpleFeature> chunk = readChunk(iterator);
+                    processChunk(chunk);
+                    count = count + emit(chunk, sink, pm);
+                }
+            }
+        } finally {
+            iterator.close();
+            if (fixedThreadPool != null) {
+                fixedThreadPool.shutdownNow();
+            }
+            sink.close();
+            pm.done();
+        }
+        return count;
+    }
+
+    private List<SimpleFeature> readChunk( SimpleFeatureIterator iterator ) {
+        List<SimpleFeature> chunk = new ArrayList<SimpleFeature>(chunkSize);
+        while( chunk.size() < chunkSize && iterator.hasNext() ) {
+            chunk.add(iterator.next());
+        }
+        return chunk;
+    }
+
+    /**
+     * Pass the features of a chunk through the operators, in place.
+     * 
+     * <p>Dropped features are set to <code>null</code>.</p>
+     */
+    private void processChunk( List<SimpleFeature> chunk ) throws Exception {
+        int operatorsNum = operators.size();
+        for( int i = 0; i < chunk.size(); i++ ) {
+            SimpleFeature feature = chunk.get(i);
+            for( int j = 0; j < operatorsNum && feature != null; j++ ) {
+                feature = operators.get(j).process(feature);
+            }
+            chunk.set(i, feature);
+        }
+    }
+
+    private List<SimpleFeature> getChunk( Future<List<SimpleFeature>> future ) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private int emit( List<SimpleFeature> chunk, FeatureSink sink, IJGTProgressMonitor pm ) throws Exception {
+        int count = 0;
+        for( SimpleFeature feature : chunk ) {
+            if (feature != null) {
+                sink.add(feature);
+                count++;
+            }
+        }
+        pm.worked(chunk.size());
+        return count;
+    }
+
+}
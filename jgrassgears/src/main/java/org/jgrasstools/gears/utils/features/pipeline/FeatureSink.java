@@ -0,0 +1,58 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.features.pipeline;
+
+import java.io.IOException;
+
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * The final consumer of the features of a {@link FeaturePipeline}.
+ * 
+ * <p>Features are passed to the sink from a single thread and in source order.</p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public interface FeatureSink {
+
+    /**
+     * Prepare the sink to receive features.
+     * 
+     * @param featureType the type of the features that will be added.
+     * @throws IOException
+     */
+    public void open( SimpleFeatureType featureType ) throws IOException;
+
+    /**
+     * Add a feature to the sink.
+     * 
+     * @param feature the feature to add.
+     * @throws IOException
+     */
+    public void add( SimpleFeature feature ) throws IOException;
+
+    /**
+     * Flush and release the sink.
+     * 
+     * @throws IOException
+     */
+    public void close() throws IOException;
+
+}
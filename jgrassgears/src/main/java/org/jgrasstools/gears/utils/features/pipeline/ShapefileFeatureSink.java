@@ -0,0 +1,113 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.features.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureWriter;
+import org.geotools.data.FileDataStoreFactorySpi;
+import org.geotools.data.FileDataStoreFinder;
+import org.geotools.data.Transaction;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * A {@link FeatureSink} that writes the features to a shapefile as they arrive.
+ * 
+ * <p>
+ * The features are written in auto commit mode, so that they are not
+ * kept in memory by a transaction until the end of the process.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class ShapefileFeatureSink implements FeatureSink {
+
+    private final String path;
+    private DataStore dataStore;
+    private FeatureWriter<SimpleFeatureType, SimpleFeature> writer;
+    private int[] attributeIndexes;
+
+    /**
+     * Constructor.
+     * 
+     * @param path the path of the shapefile to create.
+     */
+    public ShapefileFeatureSink( String path ) {
+        if (!path.endsWith(".shp")) {
+            path = path + ".shp";
+        }
+        this.path = path;
+    }
+
+    public void open( SimpleFeatureType featureType ) throws IOException {
+        File shapeFile = new File(path);
+        FileDataStoreFactorySpi factory = FileDataStoreFinder.getDataStoreFactory("shp");
+        Map<String, Serializable> map = Collections.singletonMap("url", (Serializable) shapeFile.toURI().toURL());
+        dataStore = factory.createNewDataStore(map);
+        dataStore.createSchema(featureType);
+
+        // the shapefile schema has the geometry first, followed by the other attributes in order
+        List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+        int attributesNum = 0;
+        int[] indexes = new int[descriptors.size()];
+        for( int i = 0; i < descriptors.size(); i++ ) {
+            if (!(descriptors.get(i) instanceof GeometryDescriptor)) {
+                indexes[attributesNum++] = i;
+            }
+        }
+        attributeIndexes = Arrays.copyOf(indexes, attributesNum);
+
+        String typeName = dataStore.getTypeNames()[0];
+        writer = dataStore.getFeatureWriterAppend(typeName, Transaction.AUTO_COMMIT);
+    }
+
+    public void add( SimpleFeature feature ) throws IOException {
+        SimpleFeature newFeature = writer.next();
+        newFeature.setDefaultGeometry(feature.getDefaultGeometry());
+        for( int i = 0; i < attributeIndexes.length; i++ ) {
+            newFeature.setAttribute(i + 1, feature.getAttribute(attributeIndexes[i]));
+        }
+        writer.write();
+    }
+
+    public void close() throws IOException {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+        } finally {
+            writer = null;
+            if (dataStore != null) {
+                dataStore.dispose();
+                dataStore = null;
+            }
+        }
+    }
+
+}
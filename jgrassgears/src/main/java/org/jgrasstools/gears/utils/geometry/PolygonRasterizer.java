@@ -0,0 +1,265 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.geometry;
+
+import java.util.Arrays;
+
+import org.jgrasstools.gears.utils.RegionMap;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Active edge table scanline rasterizer for polygonal geometries.
+ * 
+ * <p>
+ * The rings of the polygon (holes and all the parts of multipolygons included) 
+ * are converted to edges in grid space and only the rows covered by the polygon
+ * are visited. For every row the intersections of the active edges with the
+ * line through the cell centers are calculated arithmetically and filled with 
+ * the even-odd rule, producing spans of cells.
+ * </p>
+ * <p>
+ * A cell is part of a span if it overlaps the intersection segment after 
+ * shrinking it by a quarter of a cell on both sides, which is the same rule 
+ * used by the jts based scanline of {@link org.jgrasstools.gears.modules.r.scanline.OmsScanLineRasterizer}.
+ * </p>
+ * <p>
+ * The rasterizer keeps scratch buffers and is not thread safe, use one per thread.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class PolygonRasterizer {
+
+    /**
+     * Receiver of the rasterized spans.
+     */
+    public static interface SpanHandler {
+        /**
+         * Called for every span of cells inside the polygon.
+         * 
+         * @param row the row of the span.
+         * @param fromCol the first col of the span.
+         * @param toCol the last col of the span (inclusive).
+         */
+        public void span( int row, int fromCol, int toCol );
+    }
+
+    private static final double SHRINK = 0.25;
+
+    private final double west;
+    private final double north;
+    private final double xRes;
+    private final double yRes;
+    private final int cols;
+    private final int rows;
+
+    // edges: first row, last row, x at the first row center, x increment per row
+    private int[] edgeFromRow = new int[64];
+    private int[] edgeToRow = new int[64];
+    private double[] edgeX = new double[64];
+    private double[] edgeSlope = new double[64];
+    private int edgesNum;
+
+    private int[] sortedEdges = new int[64];
+    private int[] activeEdges = new int[64];
+    private double[] crossings = new double[64];
+
+    /**
+     * Constructor.
+     * 
+     * @param region the region of the grid.
+     */
+    public PolygonRasterizer( RegionMap region ) {
+        this(region.getWest(), region.getNorth(), region.getXres(), region.getYres(), region.getCols(), region.getRows());
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param west the west bound of the grid.
+     * @param north the north bound of the grid.
+     * @param xRes the x resolution.
+     * @param yRes the y resolution.
+     * @param cols the cols of the grid.
+     * @param rows the rows of the grid.
+     */
+    public PolygonRasterizer( double west, double north, double xRes, double yRes, int cols, int rows ) {
+        this.west = west;
+        this.north = north;
+        this.xRes = Math.abs(xRes);
+        this.yRes = Math.abs(yRes);
+        this.cols = cols;
+        this.rows = rows;
+    }
+
+    /**
+     * Rasterize a geometry.
+     * 
+     * @param geometry the geometry. Only the polygonal parts are considered.
+     * @param handler the handler that receives the spans, ordered by row.
+     */
+    public void rasterize( Geometry geometry, SpanHandler handler ) {
+        edgesNum = 0;
+        addEdges(geometry);
+        if (edgesNum == 0) {
+            return;
+        }
+
+        // the edge table, sorted by first row
+        if (sortedEdges.length < edgesNum) {
+            sortedEdges = new int[edgeFromRow.length];
+            activeEdges = new int[edgeFromRow.length];
+            crossings = new double[edgeFromRow.length];
+        }
+        int minRow = Integer.MAX_VALUE;
+        int maxRow = Integer.MIN_VALUE;
+        for( int i = 0; i < edgesNum; i++ ) {
+            minRow = Math.min(minRow, edgeFromRow[i]);
+            maxRow = Math.max(maxRow, edgeToRow[i]);
+        }
+        minRow = Math.max(0, minRow);
+        maxRow = Math.min(rows - 1, maxRow);
+        sortEdgesByRow(minRow, maxRow);
+
+        int nextEdge = 0;
+        int activeNum = 0;
+        for( int row = minRow; row <= maxRow; row++ ) {
+            // move the starting edges to the active list
+            while( nextEdge < edgesNum && edgeFromRow[sortedEdges[nextEdge]] <= row ) {
+                activeEdges[activeNum++] = sortedEdges[nextEdge++];
+            }
+            // drop the ended edges and calculate the crossings
+            int crossingsNum = 0;
+            int keep = 0;
+            for( int i = 0; i < activeNum; i++ ) {
+                int edge = activeEdges[i];
+                if (edgeToRow[edge] < row) {
+                    continue;
+                }
+                activeEdges[keep++] = edge;
+                crossings[crossingsNum++] = edgeX[edge] + (row - edgeFromRow[edge]) * edgeSlope[edge];
+            }
+            activeNum = keep;
+
+            sortCrossings(crossingsNum);
+            for( int i = 0; i + 1 < crossingsNum; i = i + 2 ) {
+                int fromCol = (int) Math.floor(crossings[i] + SHRINK);
+                int toCol = (int) Math.floor(crossings[i + 1] - SHRINK);
+                if (fromCol < 0) {
+                    fromCol = 0;
+                }
+                if (toCol > cols - 1) {
+                    toCol = cols - 1;
+                }
+                if (fromCol <= toCol) {
+                    handler.span(row, fromCol, toCol);
+                }
+            }
+        }
+    }
+
+    private void addEdges( Geometry geometry ) {
+        int numGeometries = geometry.getNumGeometries();
+        if (numGeometries > 1 || geometry != geometry.getGeometryN(0)) {
+            for( int i = 0; i < numGeometries; i++ ) {
+                addEdges(geometry.getGeometryN(i));
+            }
+            return;
+        }
+        if (geometry instanceof Polygon) {
+            Polygon polygon = (Polygon) geometry;
+            addRingEdges(polygon.getExteriorRing().getCoordinates());
+            for( int i = 0; i < polygon.getNumInteriorRing(); i++ ) {
+                addRingEdges(polygon.getInteriorRingN(i).getCoordinates());
+            }
+        }
+    }
+
+    private void addRingEdges( Coordinate[] ring ) {
+        for( int i = 0; i < ring.length - 1; i++ ) {
+            // to grid space, rows grow southwards
+            double x1 = (ring[i].x - west) / xRes;
+            double y1 = (north - ring[i].y) / yRes;
+            double x2 = (ring[i + 1].x - west) / xRes;
+            double y2 = (north - ring[i + 1].y) / yRes;
+            if (y1 == y2) {
+                continue;
+            }
+            if (y1 > y2) {
+                double tmp = x1;
+                x1 = x2;
+                x2 = tmp;
+                tmp = y1;
+                y1 = y2;
+                y2 = tmp;
+            }
+            // the rows whose center falls in [y1, y2)
+            int fromRow = (int) Math.ceil(y1 - 0.5);
+            int toRow = (int) Math.ceil(y2 - 0.5) - 1;
+            if (toRow < fromRow || toRow < 0 || fromRow >= rows) {
+                continue;
+            }
+            double slope = (x2 - x1) / (y2 - y1);
+            if (edgesNum == edgeFromRow.length) {
+                int newSize = edgesNum * 2;
+                edgeFromRow = Arrays.copyOf(edgeFromRow, newSize);
+                edgeToRow = Arrays.copyOf(edgeToRow, newSize);
+                edgeX = Arrays.copyOf(edgeX, newSize);
+                edgeSlope = Arrays.copyOf(edgeSlope, newSize);
+            }
+            edgeFromRow[edgesNum] = fromRow;
+            edgeToRow[edgesNum] = toRow;
+            edgeX[edgesNum] = x1 + (fromRow + 0.5 - y1) * slope;
+            edgeSlope[edgesNum] = slope;
+            edgesNum++;
+        }
+    }
+
+    /**
+     * Counting sort of the edges by their first row (clipped to the grid).
+     */
+    private void sortEdgesByRow( int minRow, int maxRow ) {
+        int[] rowCounts = new int[maxRow - minRow + 2];
+        for( int i = 0; i < edgesNum; i++ ) {
+            rowCounts[Math.max(minRow, edgeFromRow[i]) - minRow + 1]++;
+        }
+        for( int i = 1; i < rowCounts.length; i++ ) {
+            rowCounts[i] = rowCounts[i] + rowCounts[i - 1];
+        }
+        for( int i = 0; i < edgesNum; i++ ) {
+            sortedEdges[rowCounts[Math.max(minRow, edgeFromRow[i]) - minRow]++] = i;
+        }
+    }
+
+    private void sortCrossings( int crossingsNum ) {
+        for( int i = 1; i < crossingsNum; i++ ) {
+            double x = crossings[i];
+            int j = i - 1;
+            while( j >= 0 && crossings[j] > x ) {
+                crossings[j + 1] = crossings[j];
+                j--;
+            }
+            crossings[j + 1] = x;
+        }
+    }
+
+}
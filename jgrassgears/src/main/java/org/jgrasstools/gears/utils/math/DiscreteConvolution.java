@@ -0,0 +1,189 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math;
+
+/**
+ * Linear convolution of a series with a kernel, as needed for example to
+ * route a rainfall series through an instantaneous unit hydrograph.
+ *
+ * <p>
+ * Short kernels and sparse series are convolved directly, skipping the zero
+ * values of the series. Long dense series are convolved by overlap-add: the series is
+ * split in blocks as long as the kernel, the kernel is transformed once and two real
+ * blocks are packed in every complex transform as real and imaginary part.
+ * </p>
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class DiscreteConvolution {
+
+    /**
+     * Let the engine choose the cheapest strategy.
+     */
+    public static final int AUTO = -1;
+    /**
+     * Direct summation over the non zero values of the series.
+     */
+    public static final int DIRECT = 0;
+    /**
+     * Overlap-add with fast Fourier transforms.
+     */
+    public static final int FFT = 1;
+
+    /**
+     * Kernels shorter than this are always convolved directly.
+     */
+    private static final int MIN_FFT_KERNEL = 64;
+
+    private DiscreteConvolution() {
+    }
+
+    /**
+     * Convolve a series with a kernel, choosing the strategy.
+     *
+     * @param series the series.
+     * @param kernel the kernel.
+     * @param length the number of values of the result to compute, the full
+     *          convolution has <code>series.length + kernel.length - 1</code> values.
+     * @return the first <code>length</code> values of the convolution.
+     */
+    public static double[] convolve( double[] series, double[] kernel, int length ) {
+        return convolve(series, kernel, length, AUTO);
+    }
+
+    /**
+     * Convolve a series with a kernel.
+     *
+     * @param series the series.
+     * @param kernel the kernel.
+     * @param length the number of values of the result to compute.
+     * @param strategy one of {@link #AUTO}, {@link #DIRECT}, {@link #FFT}.
+     * @return the first <code>length</code> values of the convolution.
+     */
+    public static double[] convolve( double[] series, double[] kernel, int length, int strategy ) {
+        if (strategy == AUTO) {
+            strategy = chooseStrategy(series, kernel.length);
+        }
+        double[] result = new double[length];
+        if (series.length == 0 || kernel.length == 0 || length == 0) {
+            return result;
+        }
+        switch( strategy ) {
+        case DIRECT:
+            convolveDirect(series, kernel, result);
+            break;
+        case FFT:
+            convolveFft(series, kernel, result);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown convolution strategy: " + strategy);
+        }
+        return result;
+    }
+
+    /**
+     * Choose the cheapest strategy for a series and a kernel length.
+     *
+     * @param series the series.
+     * @param kernelLength the length of the kernel.
+     * @return {@link #DIRECT} or {@link #FFT}.
+     */
+    public static int chooseStrategy( double[] series, int kernelLength ) {
+        if (kernelLength < MIN_FFT_KERNEL) {
+            return DIRECT;
+        }
+        long nonZero = 0;
+        for( int i = 0; i < series.length; i++ ) {
+            if (series[i] != 0.0) {
+                nonZero++;
+            }
+        }
+        int fftSize = FastFourierTransform.nextPowerOf2(2 * kernelLength);
+        long blocks = (series.length + kernelLength - 1) / kernelLength;
+        int log = Integer.numberOfTrailingZeros(fftSize);
+        // one complex transform forth and back every two blocks
+        long fftCost = 4L * (blocks + 1) / 2 * fftSize * log + (long) fftSize * log;
+        long directCost = nonZero * kernelLength;
+        return directCost <= fftCost ? DIRECT : FFT;
+    }
+
+    private static void convolveDirect( double[] series, double[] kernel, double[] result ) {
+        int length = result.length;
+        for( int i = 0; i < series.length && i < length; i++ ) {
+            double value = series[i];
+            if (value == 0.0) {
+                continue;
+            }
+            int end = Math.min(kernel.length, length - i);
+            for( int k = 0; k < end; k++ ) {
+                result[i + k] = result[i + k] + value * kernel[k];
+            }
+        }
+    }
+
+    private static void convolveFft( double[] series, double[] kernel, double[] result ) {
+        int length = result.length;
+        int blockLength = kernel.length;
+        int fftSize = FastFourierTransform.nextPowerOf2(blockLength + kernel.length - 1);
+        FastFourierTransform fft = new FastFourierTransform(fftSize);
+
+        double[] kernelRe = new double[fftSize];
+        double[] kernelIm = new double[fftSize];
+        System.arraycopy(kernel, 0, kernelRe, 0, kernel.length);
+        fft.transform(kernelRe, kernelIm, 0, false);
+
+        double[] re = new double[fftSize];
+        double[] im = new double[fftSize];
+        int seriesLength = Math.min(series.length, length);
+        for( int start = 0; start < seriesLength; start = start + 2 * blockLength ) {
+            int secondStart = start + blockLength;
+            int firstEnd = Math.min(secondStart, seriesLength);
+            int secondEnd = Math.min(secondStart + blockLength, seriesLength);
+            for( int i = 0; i < fftSize; i++ ) {
+                re[i] = 0.0;
+                im[i] = 0.0;
+            }
+            System.arraycopy(series, start, re, 0, firstEnd - start);
+            if (secondEnd > secondStart) {
+                System.arraycopy(series, secondStart, im, 0, secondEnd - secondStart);
+            }
+
+            fft.transform(re, im, 0, false);
+            for( int i = 0; i < fftSize; i++ ) {
+                double r = re[i] * kernelRe[i] - im[i] * kernelIm[i];
+                double m = re[i] * kernelIm[i] + im[i] * kernelRe[i];
+                re[i] = r;
+                im[i] = m;
+            }
+            fft.transform(re, im, 0, true);
+
+            // the kernel is real, so the two blocks come back separated
+            int outputLength = blockLength + kernel.length - 1;
+            for( int i = 0; i < outputLength && start + i < length; i++ ) {
+                result[start + i] = result[start + i] + re[i];
+            }
+            if (secondEnd > secondStart) {
+                for( int i = 0; i < outputLength && secondStart + i < length; i++ ) {
+                    result[secondStart + i] = result[secondStart + i] + im[i];
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math;
+
+/**
+ * Radix 2 fast Fourier transform of complex data held in separate real and imaginary arrays.
+ * 
+ * <p>
+ * The bit reversal permutation and the twiddle factors are computed once in the constructor,
+ * after that the instance is read only and can be shared among threads.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class FastFourierTransform {
+
+    private final int size;
+    private final int[] reversed;
+    private final double[] cos;
+    private final double[] sin;
+
+    /**
+     * Constructor.
+     * 
+     * @param size the size of the transform, a power of 2.
+     */
+    public FastFourierTransform( int size ) {
+        if (size < 1 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("The size of the transform has to be a power of 2.");
+        }
+        this.size = size;
+        int bits = Integer.numberOfTrailingZeros(size);
+        reversed = new int[size];
+        for( int i = 0; i < size; i++ ) {
+            reversed[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+        cos = new double[size / 2];
+        sin = new double[size / 2];
+        for( int i = 0; i < size / 2; i++ ) {
+            cos[i] = Math.cos(2.0 * Math.PI * i / size);
+            sin[i] = -Math.sin(2.0 * Math.PI * i / size);
+        }
+    }
+
+    /**
+     * @return the size of the transform.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Smallest power of 2 not smaller than a value.
+     * 
+     * @param value the value.
+     * @return the power of 2.
+     */
+    public static int nextPowerOf2( int value ) {
+        int power = 1;
+        while( power < value ) {
+            power = power << 1;
+        }
+        return power;
+    }
+
+    /**
+     * In place transform of a complex sequence.
+     * 
+     * @param re the real parts.
+     * @param im the imaginary parts.
+     * @param offset the position of the first element in the arrays.
+     * @param inverse if <code>true</code>, the inverse transform is done, scaled by 1/size.
+     */
+    public void transform( double[] re, double[] im, int offset, boolean inverse ) {
+        for( int i = 0; i < size; i++ ) {
+            int j = reversed[i];
+            if (j > i) {
+                double tmp = re[offset + i];
+                re[offset + i] = re[offset + j];
+                re[offset + j] = tmp;
+                tmp = im[offset + i];
+                im[offset + i] = im[offset + j];
+                im[offset + j] = tmp;
+            }
+        }
+        double sign = inverse ? -1.0 : 1.0;
+        for( int length = 2; length <= size; length = length << 1 ) {
+            int half = length >> 1;
+            int tableStep = size / length;
+            for( int start = 0; start < size; start = start + length ) {
+                for( int k = 0; k < half; k++ ) {
+                    double wRe = cos[k * tableStep];
+                    double wIm = sign * sin[k * tableStep];
+                    int a = offset + start + k;
+                    int b = a + half;
+                    double tRe = re[b] * wRe - im[b] * wIm;
+                    double tIm = re[b] * wIm + im[b] * wRe;
+                    re[b] = re[a] - tRe;
+                    im[b] = im[a] - tIm;
+                    re[a] = re[a] + tRe;
+                    im[a] = im[a] + tIm;
+                }
+            }
+        }
+        if (inverse) {
+            double scale = 1.0 / size;
+            for( int i = offset; i < offset + size; i++ ) {
+                re[i] = re[i] * scale;
+                im[i] = im[i] * scale;
+            }
+        }
+    }
+
+    /**
+     * In place transform of a square complex grid of side size, stored row major.
+     * 
+     * @param re the real parts.
+     * @param im the imaginary parts.
+     * @param inverse if <code>true</code>, the inverse transform is done.
+     */
+    public void transform2D( double[] re, double[] im, boolean inverse ) {
+        for( int row = 0; row < size; row++ ) {
+            transform(re, im, row * size, inverse);
+        }
+        double[] colRe = new double[size];
+        double[] colIm = new double[size];
+        for( int col = 0; col < size; col++ ) {
+            for( int row = 0; row < size; row++ ) {
+                colRe[row] = re[row * size + col];
+                colIm[row] = im[row * size + col];
+            }
+            transform(colRe, colIm, 0, inverse);
+            for( int row = 0; row < size; row++ ) {
+                re[row * size + col] = colRe[row];
+                im[row * size + col] = colIm[row];
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.matrixes;
+
+/**
+ * Cholesky decomposition <code>A = L L<sup>T</sup></code> of a symmetric positive
+ * definite {@link DenseMatrix}.
+ * 
+ * <p>
+ * Only the lower triangle of the matrix is read. The factor is kept in a flat row
+ * major array and can be reused for any number of right hand sides.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class CholeskyDecomposition {
+
+    private final int n;
+    private final double[] l;
+
+    /**
+     * Decompose a matrix.
+     * 
+     * @param matrix the symmetric positive definite matrix. It is not modified.
+     * @throws MatrixException for a non square or not positive definite matrix.
+     */
+    public CholeskyDecomposition( DenseMatrix matrix ) throws MatrixException {
+        if (matrix.getRows() != matrix.getCols()) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        n = matrix.getRows();
+        l = new double[n * n];
+        double[] a = matrix.getData();
+        for( int i = 0; i < n; i++ ) {
+            int iOffset = i * n;
+            for( int j = 0; j <= i; j++ ) {
+                int jOffset = j * n;
+                // rows i and j of the factor are both contiguous
+                double sum = a[iOffset + j];
+                for( int k = 0; k < j; k++ ) {
+                    sum -= l[iOffset + k] * l[jOffset + k];
+                }
+                if (i == j) {
+                    if (sum <= 0 || Double.isNaN(sum)) {
+                        throw new MatrixException(MatrixException.NOT_POSITIVE_DEFINITE);
+                    }
+                    l[iOffset + i] = Math.sqrt(sum);
+                } else {
+                    l[iOffset + j] = sum / l[jOffset + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the size of the decomposed matrix.
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * @return the determinant of the decomposed matrix.
+     */
+    public double determinant() {
+        double determinant = 1;
+        for( int i = 0; i < n; i++ ) {
+            double d = l[i * n + i];
+            determinant *= d * d;
+        }
+        return determinant;
+    }
+
+    /**
+     * Solve <code>Ax = b</code>.
+     * 
+     * @param b the right hand side.
+     * @return the solution.
+     * @throws MatrixException if the size of b is wrong.
+     */
+    public double[] solve( double[] b ) throws MatrixException {
+        if (b.length != n) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        double[] x = new double[n];
+        System.arraycopy(b, 0, x, 0, n);
+        substituteColumns(x, 1, 0, 1);
+        return x;
+    }
+
+    /**
+     * Solve <code>AX = B</code> for many right hand sides at once.
+     * 
+     * @param b the right hand sides as columns of a n x m matrix. It is not modified.
+     * @param threads the number of threads that may be used when the system is large.
+     * @return the solutions as columns of a n x m matrix.
+     * @throws MatrixException if the size of b is wrong.
+     */
+    public DenseMatrix solve( DenseMatrix b, int threads ) throws MatrixException {
+        if (b.getRows() != n) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        final int m = b.getCols();
+        final double[] x = new double[n * m];
+        System.arraycopy(b.getData(), 0, x, 0, x.length);
+
+        int blocks = (m + DenseMatrix.BLOCK_SIZE - 1) / DenseMatrix.BLOCK_SIZE;
+        long work = (long) n * n * m;
+        DenseMatrix.runBlocks(blocks, work, threads, new DenseMatrix.BlockRunner(){
+            public void run( int block ) {
+                int from = block * DenseMatrix.BLOCK_SIZE;
+                int to = Math.min(from + DenseMatrix.BLOCK_SIZE, m);
+                substituteColumns(x, m, from, to);
+            }
+        });
+        return new DenseMatrix(n, m, x);
+    }
+
+    /**
+     * Solve with L and then with L<sup>T</sup> a range of columns, as row operations.
+     */
+    private void substituteColumns( double[] x, int m, int from, int to ) {
+        for( int r = 0; r < n; r++ ) {
+            int offset = r * n;
+            int xr = r * m;
+            for( int k = 0; k < r; k++ ) {
+                double value = l[offset + k];
+                if (value == 0) {
+                    continue;
+                }
+                int xk = k * m;
+                for( int j = from; j < to; j++ ) {
+                    x[xr + j] -= value * x[xk + j];
+                }
+            }
+            double diagonal = l[offset + r];
+            for( int j = from; j < to; j++ ) {
+                x[xr + j] /= diagonal;
+            }
+        }
+        // the transposed factor is walked by rows of L, subtracting each solved row from the ones above
+        for( int r = n - 1; r >= 0; r-- ) {
+            int offset = r * n;
+            int xr = r * m;
+            double diagonal = l[offset + r];
+            for( int j = from; j < to; j++ ) {
+                x[xr + j] /= diagonal;
+            }
+            for( int k = 0; k < r; k++ ) {
+                double value = l[offset + k];
+                if (value == 0) {
+                    continue;
+                }
+                int xk = k * m;
+                for( int j = from; j < to; j++ ) {
+                    x[xk + j] -= value * x[xr + j];
+                }
+            }
+        }
+    }
+
+}
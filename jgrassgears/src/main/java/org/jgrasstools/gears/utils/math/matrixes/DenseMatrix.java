@@ -0,0 +1,307 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.matrixes;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A dense matrix stored in a flat row major array.
+ * 
+ * <p>
+ * This is the computational kernel behind {@link Matrix}, {@link LinearSystem}
+ * and {@link InvertibleMatrix}. Elements are accessed without bound checks,
+ * products are computed by cache sized blocks and can be split among threads
+ * by blocks of rows.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class DenseMatrix {
+
+    /**
+     * The size of the square blocks used in the products.
+     */
+    static final int BLOCK_SIZE = 64;
+
+    /**
+     * The number of multiply-add operations below which work is never split among threads.
+     */
+    static final long PARALLEL_THRESHOLD = 1L << 21;
+
+    private final int rows;
+    private final int cols;
+    private final double[] data;
+
+    /**
+     * Create a matrix of zeros.
+     * 
+     * @param rows the number of rows.
+     * @param cols the number of columns.
+     */
+    public DenseMatrix( int rows, int cols ) {
+        this(rows, cols, new double[rows * cols]);
+    }
+
+    /**
+     * Wrap an existing array.
+     * 
+     * @param rows the number of rows.
+     * @param cols the number of columns.
+     * @param data the values in row major order. The array is not copied.
+     */
+    public DenseMatrix( int rows, int cols, double[] data ) {
+        if (data.length < rows * cols) {
+            throw new IllegalArgumentException("The data array is smaller than the matrix.");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+    }
+
+    /**
+     * Create a matrix from a 2d array.
+     * 
+     * @param values the values as [row][col]. The values are copied.
+     */
+    public DenseMatrix( double[][] values ) {
+        this(values.length, values[0].length);
+        for( int r = 0; r < rows; r++ ) {
+            System.arraycopy(values[r], 0, data, r * cols, cols);
+        }
+    }
+
+    /**
+     * Create a matrix from the upper left part of a 2d array.
+     * 
+     * @param values the values as [row][col]. The values are copied.
+     * @param rows the number of rows to use.
+     * @param cols the number of columns to use.
+     */
+    public DenseMatrix( double[][] values, int rows, int cols ) {
+        this(rows, cols);
+        for( int r = 0; r < rows; r++ ) {
+            System.arraycopy(values[r], 0, data, r * cols, cols);
+        }
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * @return the backing array in row major order.
+     */
+    public double[] getData() {
+        return data;
+    }
+
+    public double get( int row, int col ) {
+        return data[row * cols + col];
+    }
+
+    public void set( int row, int col, double value ) {
+        data[row * cols + col] = value;
+    }
+
+    /**
+     * @return a copy of this matrix.
+     */
+    public DenseMatrix copy() {
+        double[] newData = new double[rows * cols];
+        System.arraycopy(data, 0, newData, 0, newData.length);
+        return new DenseMatrix(rows, cols, newData);
+    }
+
+    /**
+     * @return the values as a new 2d array [row][col].
+     */
+    public double[][] toArray() {
+        double[][] values = new double[rows][cols];
+        for( int r = 0; r < rows; r++ ) {
+            System.arraycopy(data, r * cols, values[r], 0, cols);
+        }
+        return values;
+    }
+
+    /**
+     * @return the transposed matrix.
+     */
+    public DenseMatrix transpose() {
+        DenseMatrix t = new DenseMatrix(cols, rows);
+        double[] tData = t.data;
+        for( int rr = 0; rr < rows; rr += BLOCK_SIZE ) {
+            int rEnd = Math.min(rr + BLOCK_SIZE, rows);
+            for( int cc = 0; cc < cols; cc += BLOCK_SIZE ) {
+                int cEnd = Math.min(cc + BLOCK_SIZE, cols);
+                for( int r = rr; r < rEnd; r++ ) {
+                    for( int c = cc; c < cEnd; c++ ) {
+                        tData[c * rows + r] = data[r * cols + c];
+                    }
+                }
+            }
+        }
+        return t;
+    }
+
+    /**
+     * Multiply this matrix by a vector.
+     * 
+     * @param x the vector, of size cols.
+     * @param y the result vector, of size rows.
+     */
+    public void multiply( double[] x, double[] y ) {
+        for( int r = 0; r < rows; r++ ) {
+            int offset = r * cols;
+            double dot = 0;
+            for( int c = 0; c < cols; c++ ) {
+                dot += data[offset + c] * x[c];
+            }
+            y[r] = dot;
+        }
+    }
+
+    /**
+     * Multiply this matrix by another.
+     * 
+     * @param other the right hand matrix.
+     * @param threads the number of threads that may be used for large matrixes.
+     * @return the product matrix.
+     * @throws MatrixException if the dimensions do not match.
+     */
+    public DenseMatrix multiply( DenseMatrix other, int threads ) throws MatrixException {
+        DenseMatrix result = new DenseMatrix(rows, other.cols);
+        multiply(this, other, result, threads);
+        return result;
+    }
+
+    /**
+     * Blocked matrix product <code>c = a * b</code>.
+     * 
+     * @param a the left matrix.
+     * @param b the right matrix.
+     * @param c the result matrix, overwritten.
+     * @param threads the number of threads that may be used for large matrixes.
+     * @throws MatrixException if the dimensions do not match.
+     */
+    public static void multiply( final DenseMatrix a, final DenseMatrix b, final DenseMatrix c, int threads )
+            throws MatrixException {
+        if (a.cols != b.rows || c.rows != a.rows || c.cols != b.cols) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        if (c == a || c == b) {
+            throw new IllegalArgumentException("The result matrix has to be different from the operands.");
+        }
+        Arrays.fill(c.data, 0, c.rows * c.cols, 0.0);
+
+        int rowBlocks = (a.rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long work = (long) a.rows * a.cols * b.cols;
+        runBlocks(rowBlocks, work, threads, new BlockRunner(){
+            public void run( int block ) {
+                multiplyRowBlock(a, b, c, block * BLOCK_SIZE, Math.min((block + 1) * BLOCK_SIZE, a.rows));
+            }
+        });
+    }
+
+    private static void multiplyRowBlock( DenseMatrix a, DenseMatrix b, DenseMatrix c, int rowStart, int rowEnd ) {
+        double[] aData = a.data;
+        double[] bData = b.data;
+        double[] cData = c.data;
+        int inner = a.cols;
+        int n = b.cols;
+        for( int kk = 0; kk < inner; kk += BLOCK_SIZE ) {
+            int kEnd = Math.min(kk + BLOCK_SIZE, inner);
+            for( int jj = 0; jj < n; jj += BLOCK_SIZE ) {
+                int jEnd = Math.min(jj + BLOCK_SIZE, n);
+                for( int i = rowStart; i < rowEnd; i++ ) {
+                    int aOffset = i * inner;
+                    int cOffset = i * n;
+                    for( int k = kk; k < kEnd; k++ ) {
+                        double aik = aData[aOffset + k];
+                        if (aik == 0.0) {
+                            continue;
+                        }
+                        int bOffset = k * n;
+                        for( int j = jj; j < jEnd; j++ ) {
+                            cData[cOffset + j] += aik * bData[bOffset + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A unit of work that can be run in parallel.
+     */
+    static interface BlockRunner {
+        public void run( int block );
+    }
+
+    /**
+     * Run a number of independent blocks, in parallel if the work is large enough.
+     * 
+     * @param blocks the number of blocks.
+     * @param work the total number of operations, used to decide about threading.
+     * @param threads the maximum number of threads.
+     * @param runner the block runner.
+     */
+    static void runBlocks( final int blocks, long work, int threads, final BlockRunner runner ) {
+        threads = Math.min(threads, blocks);
+        if (threads <= 1 || work < PARALLEL_THRESHOLD) {
+            for( int block = 0; block < blocks; block++ ) {
+                runner.run(block);
+            }
+            return;
+        }
+        final AtomicInteger nextBlock = new AtomicInteger(0);
+        ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+        for( int t = 0; t < threads; t++ ) {
+            fixedThreadPool.execute(new Runnable(){
+                public void run() {
+                    int block;
+                    while( (block = nextBlock.getAndIncrement()) < blocks ) {
+                        runner.run(block);
+                    }
+                }
+            });
+        }
+        try {
+            fixedThreadPool.shutdown();
+            fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+            fixedThreadPool.shutdownNow();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -30,13 +30,20 @@ public class InvertibleMatrix extends LinearSystem
      */
     public InvertibleMatrix inverse() throws MatrixException
     {
-        InvertibleMatrix inverse  = new InvertibleMatrix(nRows);
+        decompose();
+
+        // Solve for all the columns of the identity matrix at once,
+        // reusing the decomposition.
+        double[][] solutions = LU.inverse(1).toArray();
+
+        InvertibleMatrix inverse = new InvertibleMatrix(solutions);
         IdentityMatrix   identity = new IdentityMatrix(nRows);
 
-        // Compute each column of the inverse matrix
-        // using columns of the identity matrix.
+        // Improve each column of the inverse matrix
+        // as the single solves do.
         for (int c = 0; c < nCols; ++c) {
-            ColumnVector col = solve(identity.getColumn(c), true);
+            ColumnVector col = inverse.getColumn(c);
+            improve(identity.getColumn(c), col);
             inverse.setColumn(col, c);
         }
 
@@ -53,16 +60,9 @@ public class InvertibleMatrix extends LinearSystem
         decompose();
 
         // Each row exchange during forward elimination flips the sign
-        // of the determinant, so check for an odd number of exchanges.
-        double determinant = ((exchangeCount & 1) == 0) ? 1 : -1;
-
-        // Form the product of the diagonal elements of matrix U.
-        for (int i = 0; i < nRows; ++i) {
-            int pi = permutation[i];        // permuted index
-            determinant *= LU.at(pi, i);
-        }
-
-        return determinant;
+        // of the determinant, the rest is the product of the diagonal
+        // elements of matrix U.
+        return LU.determinant();
     }
 
     /**
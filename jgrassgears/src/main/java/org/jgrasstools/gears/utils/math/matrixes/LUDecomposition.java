@@ -0,0 +1,282 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.matrixes;
+
+/**
+ * LU decomposition of a square {@link DenseMatrix} with scaled partial pivoting.
+ * 
+ * <p>
+ * The factors are computed once in a flat row major array, with physical row
+ * exchanges, and can then be reused for any number of right hand sides.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class LUDecomposition {
+
+    private final int n;
+    private final double[] lu;
+    private final int[] permutation;
+    private int exchangeCount = 0;
+
+    /**
+     * Decompose a matrix.
+     * 
+     * @param matrix the square matrix to decompose. It is not modified.
+     * @throws MatrixException for a non square matrix, a zero row or a singular matrix.
+     */
+    public LUDecomposition( DenseMatrix matrix ) throws MatrixException {
+        if (matrix.getRows() != matrix.getCols()) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        n = matrix.getRows();
+        lu = new double[n * n];
+        System.arraycopy(matrix.getData(), 0, lu, 0, lu.length);
+        permutation = new int[n];
+        decompose();
+    }
+
+    private void decompose() throws MatrixException {
+        double[] scales = new double[n];
+        for( int r = 0; r < n; r++ ) {
+            permutation[r] = r;
+            double largestRowElmt = 0;
+            int offset = r * n;
+            for( int c = 0; c < n; c++ ) {
+                double elmt = Math.abs(lu[offset + c]);
+                if (largestRowElmt < elmt) {
+                    largestRowElmt = elmt;
+                }
+            }
+            if (largestRowElmt == 0) {
+                throw new MatrixException(MatrixException.ZERO_ROW);
+            }
+            scales[r] = 1 / largestRowElmt;
+        }
+
+        for( int p = 0; p < n; p++ ) {
+            double largestScaledElmt = 0;
+            int rLargest = p;
+            for( int r = p; r < n; r++ ) {
+                double scaledElmt = Math.abs(lu[r * n + p]) * scales[r];
+                if (largestScaledElmt < scaledElmt) {
+                    largestScaledElmt = scaledElmt;
+                    rLargest = r;
+                }
+            }
+            if (largestScaledElmt == 0) {
+                throw new MatrixException(MatrixException.SINGULAR);
+            }
+            if (rLargest != p) {
+                swapRows(p, rLargest);
+                double tmpScale = scales[p];
+                scales[p] = scales[rLargest];
+                scales[rLargest] = tmpScale;
+                int tmp = permutation[p];
+                permutation[p] = permutation[rLargest];
+                permutation[rLargest] = tmp;
+                exchangeCount++;
+            }
+
+            // eliminate below the pivot, rows are contiguous
+            int pOffset = p * n;
+            double pivotElmt = lu[pOffset + p];
+            for( int r = p + 1; r < n; r++ ) {
+                int rOffset = r * n;
+                double multiple = lu[rOffset + p] / pivotElmt;
+                lu[rOffset + p] = multiple;
+                if (multiple != 0) {
+                    for( int c = p + 1; c < n; c++ ) {
+                        lu[rOffset + c] -= multiple * lu[pOffset + c];
+                    }
+                }
+            }
+        }
+    }
+
+    private void swapRows( int r1, int r2 ) {
+        int o1 = r1 * n;
+        int o2 = r2 * n;
+        for( int c = 0; c < n; c++ ) {
+            double tmp = lu[o1 + c];
+            lu[o1 + c] = lu[o2 + c];
+            lu[o2 + c] = tmp;
+        }
+    }
+
+    /**
+     * @return the size of the decomposed matrix.
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * @return the number of row exchanges done while pivoting.
+     */
+    public int getExchangeCount() {
+        return exchangeCount;
+    }
+
+    /**
+     * @return the determinant of the decomposed matrix.
+     */
+    public double determinant() {
+        double determinant = ((exchangeCount & 1) == 0) ? 1 : -1;
+        for( int i = 0; i < n; i++ ) {
+            determinant *= lu[i * n + i];
+        }
+        return determinant;
+    }
+
+    /**
+     * Solve <code>Ax = b</code>.
+     * 
+     * @param b the right hand side.
+     * @return the solution.
+     * @throws MatrixException if the size of b is wrong.
+     */
+    public double[] solve( double[] b ) throws MatrixException {
+        double[] x = new double[n];
+        solve(b, x);
+        return x;
+    }
+
+    /**
+     * Solve <code>Ax = b</code> into an existing array.
+     * 
+     * @param b the right hand side.
+     * @param x the array for the solution. It can be <code>b</code> itself.
+     * @throws MatrixException if the size of the arrays is wrong.
+     */
+    public void solve( double[] b, double[] x ) throws MatrixException {
+        if (b.length != n || x.length != n) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        double[] y = x;
+        if (x == b) {
+            y = new double[n];
+        }
+        // forward substitution on the permuted right hand side
+        for( int r = 0; r < n; r++ ) {
+            int offset = r * n;
+            double dot = 0;
+            for( int c = 0; c < r; c++ ) {
+                dot += lu[offset + c] * y[c];
+            }
+            y[r] = b[permutation[r]] - dot;
+        }
+        // back substitution
+        for( int r = n - 1; r >= 0; r-- ) {
+            int offset = r * n;
+            double dot = 0;
+            for( int c = r + 1; c < n; c++ ) {
+                dot += lu[offset + c] * y[c];
+            }
+            y[r] = (y[r] - dot) / lu[offset + r];
+        }
+        if (y != x) {
+            System.arraycopy(y, 0, x, 0, n);
+        }
+    }
+
+    /**
+     * Solve <code>AX = B</code> for many right hand sides at once.
+     * 
+     * @param b the right hand sides as columns of a n x m matrix. It is not modified.
+     * @param threads the number of threads that may be used when the system is large.
+     * @return the solutions as columns of a n x m matrix.
+     * @throws MatrixException if the size of b is wrong.
+     */
+    public DenseMatrix solve( DenseMatrix b, int threads ) throws MatrixException {
+        if (b.getRows() != n) {
+            throw new MatrixException(MatrixException.INVALID_DIMENSIONS);
+        }
+        final int m = b.getCols();
+        final double[] bData = b.getData();
+        final double[] x = new double[n * m];
+        for( int r = 0; r < n; r++ ) {
+            System.arraycopy(bData, permutation[r] * m, x, r * m, m);
+        }
+
+        // the right hand sides are independent, split them in column blocks
+        int blocks = (m + DenseMatrix.BLOCK_SIZE - 1) / DenseMatrix.BLOCK_SIZE;
+        long work = (long) n * n * m;
+        DenseMatrix.runBlocks(blocks, work, threads, new DenseMatrix.BlockRunner(){
+            public void run( int block ) {
+                int from = block * DenseMatrix.BLOCK_SIZE;
+                int to = Math.min(from + DenseMatrix.BLOCK_SIZE, m);
+                substituteColumns(x, m, from, to);
+            }
+        });
+        return new DenseMatrix(n, m, x);
+    }
+
+    /**
+     * Forward and back substitution of a range of columns, as row operations.
+     */
+    private void substituteColumns( double[] x, int m, int from, int to ) {
+        for( int r = 0; r < n; r++ ) {
+            int offset = r * n;
+            int xr = r * m;
+            for( int k = 0; k < r; k++ ) {
+                double l = lu[offset + k];
+                if (l == 0) {
+                    continue;
+                }
+                int xk = k * m;
+                for( int j = from; j < to; j++ ) {
+                    x[xr + j] -= l * x[xk + j];
+                }
+            }
+        }
+        for( int r = n - 1; r >= 0; r-- ) {
+            int offset = r * n;
+            int xr = r * m;
+            for( int k = r + 1; k < n; k++ ) {
+                double u = lu[offset + k];
+                if (u == 0) {
+                    continue;
+                }
+                int xk = k * m;
+                for( int j = from; j < to; j++ ) {
+                    x[xr + j] -= u * x[xk + j];
+                }
+            }
+            double diagonal = lu[offset + r];
+            for( int j = from; j < to; j++ ) {
+                x[xr + j] /= diagonal;
+            }
+        }
+    }
+
+    /**
+     * @param threads the number of threads that may be used when the matrix is large.
+     * @return the inverse of the decomposed matrix.
+     * @throws MatrixException
+     */
+    public DenseMatrix inverse( int threads ) throws MatrixException {
+        DenseMatrix identity = new DenseMatrix(n, n);
+        for( int i = 0; i < n; i++ ) {
+            identity.set(i, i, 1.0);
+        }
+        return solve(identity, threads);
+    }
+
+}
@@ -136,6 +136,15 @@ public class Matrix
         return v;
     }
 
+    /**
+     * Copy the values of this matrix into a flat row major matrix.
+     * @return the dense matrix
+     */
+    public DenseMatrix toDenseMatrix()
+    {
+        return new DenseMatrix(values, nRows, nCols);
+    }
+
     //---------//
     // Setters //
     //---------//
@@ -325,20 +334,10 @@ public class Matrix
                                 MatrixException.INVALID_DIMENSIONS);
         }
 
-        double pv[][] = new double[nRows][m.nCols];  // product values
+        // Compute the product with the blocked kernel.
+        DenseMatrix product = toDenseMatrix().multiply(m.toDenseMatrix(), 1);
 
-        // Compute values of the product.
-        for (int r = 0; r < nRows; ++r) {
-            for (int c = 0; c < m.nCols; ++c) {
-                double dot = 0;
-                for (int k = 0; k < nCols; ++k) {
-                    dot += values[r][k] * m.values[k][c];
-                }
-                pv[r][c] = dot;
-            }
-        }
-
-        return new Matrix(pv);
+        return new Matrix(product.toArray());
     }
 
     /**
@@ -17,6 +17,8 @@ public class MatrixException extends Exception
                                         "Matrix is singular.";
     public static final String NO_CONVERGENCE =
                                         "Solution did not converge.";
+    public static final String NOT_POSITIVE_DEFINITE =
+                                        "Matrix is not positive definite.";
 
     /**
      * Constructor.
@@ -0,0 +1,270 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.statistics;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+/**
+ * A streaming and mergeable histogram with a fixed number of bins.
+ * 
+ * <p>
+ * The bins split the range between min and max in equal intervals, closed on 
+ * the upper limit (the first bin also contains the min). Values outside the 
+ * range go to the first or last bin. For every bin the count and the sum of the
+ * values are kept, so that the mean of the binned values is available. Optionally
+ * the power sums of a coupled value are kept too, in order to calculate the 
+ * moments of a second field for every bin of the first one.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class FixedBinHistogram implements MergeableAccumulator<FixedBinHistogram> {
+
+    private final double min;
+    private final double max;
+    private final int binsNum;
+    private final int momentsOrder;
+    private final double binWidth;
+    private final double[] upperLimits;
+
+    private final long[] counts;
+    private final double[] sums;
+    private final long[] coupledCounts;
+    private final double[] coupledPowerSums;
+    private long novaluesCount = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param min the min of the range.
+     * @param max the max of the range.
+     * @param binsNum the number of bins. If min and max are the same, a single bin is used.
+     */
+    public FixedBinHistogram( double min, double max, int binsNum ) {
+        this(min, max, binsNum, 0);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param min the min of the range.
+     * @param max the max of the range.
+     * @param binsNum the number of bins. If min and max are the same, a single bin is used.
+     * @param momentsOrder the max power of the coupled values to keep. If 0, coupled 
+     *          values are ignored.
+     */
+    public FixedBinHistogram( double min, double max, int binsNum, int momentsOrder ) {
+        if (binsNum < 1) {
+            throw new IllegalArgumentException("The number of bins has to be positive.");
+        }
+        if (max < min) {
+            throw new IllegalArgumentException("The max of the range is smaller than the min.");
+        }
+        this.min = min;
+        this.max = max;
+        this.momentsOrder = momentsOrder;
+        if (max == min) {
+            binsNum = 1;
+        }
+        this.binsNum = binsNum;
+        binWidth = (max - min) / binsNum;
+
+        upperLimits = new double[binsNum];
+        double runningCenter = min + binWidth / 2.0;
+        for( int i = 0; i < binsNum; i++ ) {
+            if (i == binsNum - 1) {
+                upperLimits[i] = max;
+            } else {
+                upperLimits[i] = runningCenter + binWidth / 2.0;
+            }
+            runningCenter += binWidth;
+        }
+
+        counts = new long[binsNum];
+        sums = new double[binsNum];
+        if (momentsOrder > 0) {
+            coupledCounts = new long[binsNum];
+            coupledPowerSums = new double[binsNum * momentsOrder];
+        } else {
+            coupledCounts = null;
+            coupledPowerSums = null;
+        }
+    }
+
+    /**
+     * Add a value.
+     * 
+     * @param value the value to add. Novalues are counted but not binned.
+     */
+    public void add( double value ) {
+        if (isNovalue(value)) {
+            novaluesCount++;
+            return;
+        }
+        int bin = getBin(value);
+        counts[bin]++;
+        sums[bin] = sums[bin] + value;
+    }
+
+    public void add( double value, double coupledValue ) {
+        if (isNovalue(value)) {
+            novaluesCount++;
+            return;
+        }
+        int bin = getBin(value);
+        counts[bin]++;
+        sums[bin] = sums[bin] + value;
+        if (momentsOrder > 0 && !isNovalue(coupledValue)) {
+            coupledCounts[bin]++;
+            int offset = bin * momentsOrder;
+            double power = 1;
+            for( int j = 0; j < momentsOrder; j++ ) {
+                power = power * coupledValue;
+                coupledPowerSums[offset + j] = coupledPowerSums[offset + j] + power;
+            }
+        }
+    }
+
+    /**
+     * Get the bin a value falls into.
+     * 
+     * @param value the value.
+     * @return the index of the bin.
+     */
+    public int getBin( double value ) {
+        if (binsNum == 1 || value <= upperLimits[0]) {
+            return 0;
+        }
+        int bin = (int) ((value - min) / binWidth);
+        if (bin >= binsNum) {
+            bin = binsNum - 1;
+        }
+        // fix rounding issues against the limits
+        while( bin > 0 && value <= upperLimits[bin - 1] ) {
+            bin--;
+        }
+        while( bin < binsNum - 1 && value > upperLimits[bin] ) {
+            bin++;
+        }
+        return bin;
+    }
+
+    public void merge( FixedBinHistogram other ) {
+        if (other.binsNum != binsNum || other.min != min || other.max != max || other.momentsOrder != momentsOrder) {
+            throw new IllegalArgumentException("Only histograms with the same setup can be merged.");
+        }
+        novaluesCount = novaluesCount + other.novaluesCount;
+        for( int i = 0; i < binsNum; i++ ) {
+            counts[i] = counts[i] + other.counts[i];
+            sums[i] = sums[i] + other.sums[i];
+        }
+        if (momentsOrder > 0) {
+            for( int i = 0; i < binsNum; i++ ) {
+                coupledCounts[i] = coupledCounts[i] + other.coupledCounts[i];
+            }
+            for( int i = 0; i < coupledPowerSums.length; i++ ) {
+                coupledPowerSums[i] = coupledPowerSums[i] + other.coupledPowerSums[i];
+            }
+        }
+    }
+
+    public FixedBinHistogram createEmpty() {
+        return new FixedBinHistogram(min, max, binsNum, momentsOrder);
+    }
+
+    public int getBinsNum() {
+        return binsNum;
+    }
+
+    /**
+     * @param bin the bin index.
+     * @return the upper limit of the bin.
+     */
+    public double getUpperLimit( int bin ) {
+        return upperLimits[bin];
+    }
+
+    /**
+     * @param bin the bin index.
+     * @return the number of values in the bin.
+     */
+    public long getCount( int bin ) {
+        return counts[bin];
+    }
+
+    /**
+     * @param bin the bin index.
+     * @return the mean of the values in the bin or <code>NaN</code> if the bin is empty.
+     */
+    public double getMean( int bin ) {
+        return counts[bin] == 0 ? Double.NaN : sums[bin] / counts[bin];
+    }
+
+    /**
+     * @return the number of novalues that have been added.
+     */
+    public long getNovaluesCount() {
+        return novaluesCount;
+    }
+
+    /**
+     * @param bin the bin index.
+     * @return the number of valid coupled values in the bin.
+     */
+    public long getCoupledCount( int bin ) {
+        checkMoments(1);
+        return coupledCounts[bin];
+    }
+
+    /**
+     * Get the moment of the coupled values of a bin around a center.
+     * 
+     * <p>The moment <code>sum((v - center)^order) / n</code> is obtained 
+     * from the power sums through the binomial expansion.</p>
+     * 
+     * @param bin the bin index.
+     * @param order the order of the moment.
+     * @param center the center of the moment.
+     * @return the moment or <code>NaN</code> if there are no valid coupled values in the bin.
+     */
+    public double getCoupledMoment( int bin, int order, double center ) {
+        checkMoments(order);
+        long n = coupledCounts[bin];
+        if (n == 0) {
+            return Double.NaN;
+        }
+        int offset = bin * momentsOrder;
+        double moment = 0;
+        double binomial = 1;
+        for( int j = 0; j <= order; j++ ) {
+            // sum of v^j
+            double powerSum = j == 0 ? n : coupledPowerSums[offset + j - 1];
+            moment = moment + binomial * Math.pow(-center, order - j) * powerSum;
+            binomial = binomial * (order - j) / (j + 1);
+        }
+        return moment / n;
+    }
+
+    private void checkMoments( int order ) {
+        if (order > momentsOrder) {
+            throw new IllegalStateException("The histogram keeps coupled moments only up to order " + momentsOrder);
+        }
+    }
+
+}
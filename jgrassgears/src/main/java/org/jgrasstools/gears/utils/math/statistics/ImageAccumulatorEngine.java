@@ -0,0 +1,186 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.statistics;
+
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrasstools.gears.libs.monitor.IJGTProgressMonitor;
+
+/**
+ * Feeds the values of an image into {@link MergeableAccumulator}s.
+ * 
+ * <p>
+ * The image is split in row stripes that follow its tiling, every stripe is read 
+ * tile by tile, so that only the tiles in use need to be loaded (deferred images 
+ * stream them from disk). Stripes are distributed among threads, each thread fills 
+ * its own accumulator and the partial results are merged at the end.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class ImageAccumulatorEngine {
+
+    private ImageAccumulatorEngine() {
+    }
+
+    /**
+     * Accumulate the first band of an image.
+     * 
+     * @param image the image to read.
+     * @param coupledImage an optional image of the same size, whose values are passed as coupled
+     *          values. If <code>null</code>, the values of the first image are passed.
+     * @param accumulator the accumulator to fill. The values are merged into it.
+     * @param threads the number of threads to use.
+     * @param pm the progress monitor.
+     * @return the filled accumulator.
+     */
+    public static <T extends MergeableAccumulator<T>> T accumulate( final RenderedImage image,
+            final RenderedImage coupledImage, T accumulator, int threads, final IJGTProgressMonitor pm ) {
+        if (coupledImage != null
+                && (coupledImage.getWidth() != image.getWidth() || coupledImage.getHeight() != image.getHeight())) {
+            throw new IllegalArgumentException("The coupled image needs to have the same size of the image.");
+        }
+
+        final List<int[]> stripes = createStripes(image, threads);
+        threads = Math.max(1, Math.min(threads, stripes.size()));
+
+        final List<T> partials = new ArrayList<T>();
+        for( int i = 0; i < threads; i++ ) {
+            partials.add(accumulator.createEmpty());
+        }
+
+        pm.beginTask("Accumulating values...", stripes.size());
+        if (threads == 1) {
+            T partial = partials.get(0);
+            for( int[] stripe : stripes ) {
+                processStripe(image, coupledImage, stripe, partial);
+                pm.worked(1);
+            }
+        } else {
+            final AtomicInteger nextStripe = new AtomicInteger(0);
+            ExecutorService fixedThreadPool = Executors.newFixedThreadPool(threads);
+            for( int i = 0; i < threads; i++ ) {
+                final T partial = partials.get(i);
+                Runnable runner = new Runnable(){
+                    public void run() {
+                        int index;
+                        while( (index = nextStripe.getAndIncrement()) < stripes.size() ) {
+                            processStripe(image, coupledImage, stripes.get(index), partial);
+                            synchronized (pm) {
+                                pm.worked(1);
+                            }
+                        }
+                    }
+                };
+                fixedThreadPool.execute(runner);
+            }
+            try {
+                fixedThreadPool.shutdown();
+                fixedThreadPool.awaitTermination(30, TimeUnit.DAYS);
+                fixedThreadPool.shutdownNow();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        pm.done();
+
+        for( T partial : partials ) {
+            accumulator.merge(partial);
+        }
+        return accumulator;
+    }
+
+    /**
+     * Create the row stripes as [tileY, fromRow, toRow (exclusive)].
+     */
+    private static List<int[]> createStripes( RenderedImage image, int threads ) {
+        int minY = image.getMinY();
+        int height = image.getHeight();
+        int tileHeight = image.getTileHeight();
+        // untiled images are split to feed all threads
+        int stripeHeight = tileHeight;
+        if (image.getNumYTiles() < 4 * threads) {
+            stripeHeight = Math.max(1, height / (4 * threads));
+        }
+
+        List<int[]> stripes = new ArrayList<int[]>();
+        int minTileY = image.getMinTileY();
+        for( int ty = minTileY; ty < minTileY + image.getNumYTiles(); ty++ ) {
+            int tileFromRow = Math.max(minY, image.getTileGridYOffset() + ty * tileHeight);
+            int tileToRow = Math.min(minY + height, image.getTileGridYOffset() + (ty + 1) * tileHeight);
+            for( int fromRow = tileFromRow; fromRow < tileToRow; fromRow = fromRow + stripeHeight ) {
+                stripes.add(new int[]{ty, fromRow, Math.min(tileToRow, fromRow + stripeHeight)});
+            }
+        }
+        return stripes;
+    }
+
+    private static <T extends MergeableAccumulator<T>> void processStripe( RenderedImage image, RenderedImage coupledImage,
+            int[] stripe, T accumulator ) {
+        int ty = stripe[0];
+        int fromRow = stripe[1];
+        int toRow = stripe[2];
+        int minX = image.getMinX();
+        int width = image.getWidth();
+        int tileWidth = image.getTileWidth();
+        int minTileX = image.getMinTileX();
+
+        double[] values = new double[tileWidth];
+        double[] coupledValues = new double[tileWidth];
+        for( int tx = minTileX; tx < minTileX + image.getNumXTiles(); tx++ ) {
+            int fromCol = Math.max(minX, image.getTileGridXOffset() + tx * tileWidth);
+            int toCol = Math.min(minX + width, image.getTileGridXOffset() + (tx + 1) * tileWidth);
+            int cols = toCol - fromCol;
+            if (cols <= 0) {
+                continue;
+            }
+            Raster tile = image.getTile(tx, ty);
+            Raster coupledTile = null;
+            if (coupledImage != null) {
+                // the coupled image may have a different tiling
+                int dx = coupledImage.getMinX() - minX;
+                int dy = coupledImage.getMinY() - image.getMinY();
+                coupledTile = coupledImage.getData(new Rectangle(fromCol + dx, fromRow + dy, cols, toRow - fromRow));
+            }
+            for( int row = fromRow; row < toRow; row++ ) {
+                tile.getSamples(fromCol, row, cols, 1, 0, values);
+                if (coupledTile != null) {
+                    coupledTile.getSamples(coupledTile.getMinX(), coupledTile.getMinY() + row - fromRow, cols, 1, 0,
+                            coupledValues);
+                    for( int i = 0; i < cols; i++ ) {
+                        accumulator.add(values[i], coupledValues[i]);
+                    }
+                } else {
+                    for( int i = 0; i < cols; i++ ) {
+                        accumulator.add(values[i], values[i]);
+                    }
+                }
+            }
+        }
+    }
+
+}
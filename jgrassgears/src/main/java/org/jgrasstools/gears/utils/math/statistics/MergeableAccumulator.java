@@ -0,0 +1,58 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.statistics;
+
+/**
+ * An accumulator of values that can be fed in streaming mode and merged with
+ * other accumulators of the same kind.
+ * 
+ * <p>Partial accumulators can be filled on different parts of a dataset (for example
+ * in different threads) and merged at the end, giving the same result as if the
+ * whole dataset was fed to a single accumulator.</p>
+ * 
+ * @param <T> the type of the accumulator.
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public interface MergeableAccumulator<T extends MergeableAccumulator<T>> {
+
+    /**
+     * Add a value.
+     * 
+     * @param value the value to add. Novalues are handled by the accumulator.
+     * @param coupledValue a value coupled to the first one (for example the value 
+     *          of a second map in the same position). Ignored by accumulators that
+     *          don't need it.
+     */
+    public void add( double value, double coupledValue );
+
+    /**
+     * Merge the content of another accumulator into this one.
+     * 
+     * @param other the accumulator to merge.
+     */
+    public void merge( T other );
+
+    /**
+     * Create an empty accumulator with the same setup of this one.
+     * 
+     * @return the new empty accumulator.
+     */
+    public T createEmpty();
+
+}
@@ -0,0 +1,286 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.statistics;
+
+/**
+ * A mergeable digest for the streaming estimation of quantiles.
+ * 
+ * <p>
+ * The values are summarized in a limited number of weighted centroids, following
+ * the merging t-digest idea by Dunning: centroids are allowed to grow large in the
+ * middle of the distribution and are kept small at the tails, so that extreme
+ * quantiles are estimated with a better accuracy than the median. The memory used
+ * is proportional to the compression and independent of the number of values.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class QuantileDigest {
+
+    private final double compression;
+
+    private double[] means;
+    private double[] weights;
+    private int centroidsNum = 0;
+
+    private final double[] bufferMeans;
+    private final double[] bufferWeights;
+    private int bufferSize = 0;
+
+    private double totalWeight = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Constructor with default compression of 100.
+     */
+    public QuantileDigest() {
+        this(100);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param compression the compression factor. Larger values give more accurate 
+     *          results and use more memory (about <code>2 * compression</code> centroids).
+     */
+    public QuantileDigest( double compression ) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("The compression needs to be at least 10.");
+        }
+        this.compression = compression;
+        int size = (int) Math.ceil(2 * compression) + 10;
+        means = new double[size];
+        weights = new double[size];
+        bufferMeans = new double[5 * size];
+        bufferWeights = new double[5 * size];
+    }
+
+    /**
+     * @return the compression of the digest.
+     */
+    public double getCompression() {
+        return compression;
+    }
+
+    /**
+     * Add a value.
+     * 
+     * @param value the value to add.
+     */
+    public void add( double value ) {
+        add(value, 1.0);
+    }
+
+    /**
+     * Add a weighted value.
+     * 
+     * @param value the value to add.
+     * @param weight the weight of the value.
+     */
+    public void add( double value, double weight ) {
+        if (bufferSize == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[bufferSize] = value;
+        bufferWeights[bufferSize] = weight;
+        bufferSize++;
+        totalWeight = totalWeight + weight;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Merge another digest into this one.
+     * 
+     * @param other the digest to merge.
+     */
+    public void merge( QuantileDigest other ) {
+        other.compress();
+        for( int i = 0; i < other.centroidsNum; i++ ) {
+            add(other.means[i], other.weights[i]);
+        }
+        // the centroids can't know the exact extremes
+        if (other.min < min) {
+            min = other.min;
+        }
+        if (other.max > max) {
+            max = other.max;
+        }
+    }
+
+    /**
+     * @return the total weight (the number of values if not weighted) of the digest.
+     */
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Estimate a quantile.
+     * 
+     * @param q the quantile, between 0 and 1.
+     * @return the estimated value or <code>NaN</code> if the digest is empty.
+     */
+    public double getQuantile( double q ) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("The quantile needs to be between 0 and 1.");
+        }
+        compress();
+        if (centroidsNum == 0) {
+            return Double.NaN;
+        }
+        if (centroidsNum == 1) {
+            return means[0];
+        }
+
+        double target = q * totalWeight;
+        // the centroids are considered to be centered on their weight
+        double previousCenter = weights[0] / 2.0;
+        if (target <= previousCenter) {
+            return interpolate(min, means[0], target / previousCenter);
+        }
+        double cumulated = weights[0];
+        for( int i = 1; i < centroidsNum; i++ ) {
+            double center = cumulated + weights[i] / 2.0;
+            if (target <= center) {
+                return interpolate(means[i - 1], means[i], (target - previousCenter) / (center - previousCenter));
+            }
+            cumulated = cumulated + weights[i];
+            previousCenter = center;
+        }
+        double lastSpan = totalWeight - previousCenter;
+        if (lastSpan <= 0) {
+            return max;
+        }
+        return interpolate(means[centroidsNum - 1], max, (target - previousCenter) / lastSpan);
+    }
+
+    private static double interpolate( double from, double to, double fraction ) {
+        return from + (to - from) * fraction;
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    private void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        int size = centroidsNum + bufferSize;
+        double[] allMeans = new double[size];
+        double[] allWeights = new double[size];
+        System.arraycopy(means, 0, allMeans, 0, centroidsNum);
+        System.arraycopy(weights, 0, allWeights, 0, centroidsNum);
+        System.arraycopy(bufferMeans, 0, allMeans, centroidsNum, bufferSize);
+        System.arraycopy(bufferWeights, 0, allWeights, centroidsNum, bufferSize);
+        bufferSize = 0;
+        sort(allMeans, allWeights, 0, size - 1);
+
+        int index = 0;
+        double mergedWeight = 0;
+        double currentMean = allMeans[0];
+        double currentWeight = allWeights[0];
+        for( int i = 1; i < size; i++ ) {
+            double proposedWeight = currentWeight + allWeights[i];
+            double q0 = mergedWeight / totalWeight;
+            double q2 = (mergedWeight + proposedWeight) / totalWeight;
+            double limit = 4.0 * totalWeight * Math.min(q0 * (1 - q0), q2 * (1 - q2)) / compression;
+            if (proposedWeight <= limit) {
+                currentMean = currentMean + (allMeans[i] - currentMean) * allWeights[i] / proposedWeight;
+                currentWeight = proposedWeight;
+            } else {
+                index = store(index, currentMean, currentWeight);
+                mergedWeight = mergedWeight + currentWeight;
+                currentMean = allMeans[i];
+                currentWeight = allWeights[i];
+            }
+        }
+        centroidsNum = store(index, currentMean, currentWeight);
+    }
+
+    private int store( int index, double mean, double weight ) {
+        if (index == means.length) {
+            double[] tmpMeans = new double[means.length * 2];
+            double[] tmpWeights = new double[weights.length * 2];
+            System.arraycopy(means, 0, tmpMeans, 0, index);
+            System.arraycopy(weights, 0, tmpWeights, 0, index);
+            means = tmpMeans;
+            weights = tmpWeights;
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    private static void sort( double[] values, double[] follow, int low, int high ) {
+        while( low < high ) {
+            if (high - low < 16) {
+                // insertion sort on small chunks
+                for( int i = low + 1; i <= high; i++ ) {
+                    double v = values[i];
+                    double f = follow[i];
+                    int j = i - 1;
+                    while( j >= low && values[j] > v ) {
+                        values[j + 1] = values[j];
+                        follow[j + 1] = follow[j];
+                        j--;
+                    }
+                    values[j + 1] = v;
+                    follow[j + 1] = f;
+                }
+                return;
+            }
+            double pivot = values[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while( i <= j ) {
+                while( values[i] < pivot ) {
+                    i++;
+                }
+                while( values[j] > pivot ) {
+                    j--;
+                }
+                if (i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    tmp = follow[i];
+                    follow[i] = follow[j];
+                    follow[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            // recurse on the smaller part to limit the stack depth
+            if (j - low < high - i) {
+                sort(values, follow, low, j);
+                low = i;
+            } else {
+                sort(values, follow, i, high);
+                high = j;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.utils.math.statistics;
+
+import static org.jgrasstools.gears.libs.modules.JGTConstants.isNovalue;
+
+/**
+ * Streaming and mergeable base statistics.
+ * 
+ * <p>
+ * Count, sum, min, max, mean and variance are kept with Welford's running
+ * update and merged with Chan's parallel formula, so values never need to be
+ * kept in memory. Quantiles are optionally estimated through a {@link QuantileDigest}.
+ * Novalues are counted but not used for the statistics.
+ * </p>
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ * @since 0.7.7
+ */
+public class StreamingStatistics implements MergeableAccumulator<StreamingStatistics> {
+
+    private long count = 0;
+    private long novaluesCount = 0;
+    private double sum = 0;
+    private double mean = 0;
+    private double m2 = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    private double deviationReference = Double.NaN;
+    private double absoluteDeviationSum = 0;
+
+    private QuantileDigest digest;
+
+    /**
+     * Constructor for base statistics without quantiles.
+     */
+    public StreamingStatistics() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param doQuantiles if <code>true</code>, quantiles are estimated too.
+     */
+    public StreamingStatistics( boolean doQuantiles ) {
+        if (doQuantiles) {
+            digest = new QuantileDigest();
+        }
+    }
+
+    /**
+     * Set a reference value to calculate the mean absolute deviation from.
+     * 
+     * <p>This has to be set before adding values.</p>
+     * 
+     * @param reference the reference value (for example a known global mean).
+     */
+    public void setDeviationReference( double reference ) {
+        deviationReference = reference;
+    }
+
+    /**
+     * Add a value.
+     * 
+     * @param value the value to add.
+     */
+    public void add( double value ) {
+        if (isNovalue(value)) {
+            novaluesCount++;
+            return;
+        }
+        count++;
+        sum = sum + value;
+        double delta = value - mean;
+        mean = mean + delta / count;
+        m2 = m2 + delta * (value - mean);
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+        if (!isNovalue(deviationReference)) {
+            absoluteDeviationSum = absoluteDeviationSum + Math.abs(value - deviationReference);
+        }
+        if (digest != null) {
+            digest.add(value);
+        }
+    }
+
+    public void add( double value, double coupledValue ) {
+        add(value);
+    }
+
+    public void merge( StreamingStatistics other ) {
+        novaluesCount = novaluesCount + other.novaluesCount;
+        if (other.count == 0) {
+            return;
+        }
+        long newCount = count + other.count;
+        double delta = other.mean - mean;
+        m2 = m2 + other.m2 + delta * delta * count * other.count / newCount;
+        mean = mean + delta * other.count / newCount;
+        count = newCount;
+        sum = sum + other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        absoluteDeviationSum = absoluteDeviationSum + other.absoluteDeviationSum;
+        if (digest != null && other.digest != null) {
+            digest.merge(other.digest);
+        }
+    }
+
+    public StreamingStatistics createEmpty() {
+        StreamingStatistics empty = new StreamingStatistics(digest != null);
+        empty.deviationReference = deviationReference;
+        return empty;
+    }
+
+    /**
+     * @return the number of valid values.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the number of novalues that have been added.
+     */
+    public long getNovaluesCount() {
+        return novaluesCount;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the min or <code>NaN</code> if no valid value was added.
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * @return the max or <code>NaN</code> if no valid value was added.
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getRange() {
+        return getMax() - getMin();
+    }
+
+    /**
+     * @return the mean or <code>NaN</code> if no valid value was added.
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * @return the population variance (divided by the count).
+     */
+    public double getVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    /**
+     * @return the sample variance (divided by the count - 1).
+     */
+    public double getSampleVariance() {
+        return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    /**
+     * @return the population standard deviation.
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * @return the sample standard deviation.
+     */
+    public double getSampleStandardDeviation() {
+        return Math.sqrt(getSampleVariance());
+    }
+
+    /**
+     * @return the mean absolute deviation from the reference set through 
+     *          {@link #setDeviationReference(double)}.
+     */
+    public double getMeanAbsoluteDeviation() {
+        if (isNovalue(deviationReference)) {
+            throw new IllegalStateException("No deviation reference has been set.");
+        }
+        return count == 0 ? Double.NaN : absoluteDeviationSum / count;
+    }
+
+    /**
+     * Estimate a quantile.
+     * 
+     * @param q the quantile, between 0 and 1.
+     * @return the estimated value.
+     */
+    public double getQuantile( double q ) {
+        if (digest == null) {
+            throw new IllegalStateException("The statistics have been created without quantiles support.");
+        }
+        return digest.getQuantile(q);
+    }
+
+}
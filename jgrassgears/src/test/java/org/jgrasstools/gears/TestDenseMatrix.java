@@ -0,0 +1,183 @@
+package org.jgrasstools.gears;
+
+import java.util.Random;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.math.matrixes.CholeskyDecomposition;
+import org.jgrasstools.gears.utils.math.matrixes.ColumnVector;
+import org.jgrasstools.gears.utils.math.matrixes.DenseMatrix;
+import org.jgrasstools.gears.utils.math.matrixes.InvertibleMatrix;
+import org.jgrasstools.gears.utils.math.matrixes.LUDecomposition;
+import org.jgrasstools.gears.utils.math.matrixes.LinearSystem;
+import org.jgrasstools.gears.utils.math.matrixes.Matrix;
+import org.jgrasstools.gears.utils.math.matrixes.MatrixException;
+/**
+ * Test {@link DenseMatrix} and its decompositions.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDenseMatrix extends HMTestCase {
+
+    private Random random = new Random(42);
+
+    public void testMultiply() throws Exception {
+        DenseMatrix a = randomMatrix(150, 130);
+        DenseMatrix b = randomMatrix(130, 170);
+        DenseMatrix c1 = a.multiply(b, 1);
+        DenseMatrix c4 = a.multiply(b, 4);
+        for( int r = 0; r < 150; r++ ) {
+            for( int c = 0; c < 170; c++ ) {
+                double dot = 0;
+                for( int k = 0; k < 130; k++ ) {
+                    dot += a.get(r, k) * b.get(k, c);
+                }
+                assertEquals(dot, c1.get(r, c), DELTA);
+                assertEquals(dot, c4.get(r, c), DELTA);
+            }
+        }
+
+        Matrix m = new Matrix(new double[][]{{1, 2}, {3, 4}, {5, 6}});
+        Matrix product = m.multiply(m.transpose());
+        assertEquals(3, product.rowCount());
+        assertEquals(39.0, product.at(1, 2), DELTA);
+    }
+
+    public void testLU() throws Exception {
+        int n = 120;
+        DenseMatrix a = randomMatrix(n, n);
+        LUDecomposition lu = new LUDecomposition(a);
+
+        double[] b = randomVector(n);
+        double[] x = lu.solve(b);
+        double[] ax = new double[n];
+        a.multiply(x, ax);
+        for( int i = 0; i < n; i++ ) {
+            assertEquals(b[i], ax[i], DELTA);
+        }
+
+        // many right hand sides give the same result of single solves
+        DenseMatrix rhs = randomMatrix(n, 70);
+        DenseMatrix solutions = lu.solve(rhs, 3);
+        double[] column = new double[n];
+        for( int j = 0; j < 70; j++ ) {
+            for( int i = 0; i < n; i++ ) {
+                column[i] = rhs.get(i, j);
+            }
+            lu.solve(column, column);
+            for( int i = 0; i < n; i++ ) {
+                assertEquals(column[i], solutions.get(i, j), DELTA);
+            }
+        }
+
+        DenseMatrix identity = a.multiply(lu.inverse(2), 1);
+        for( int i = 0; i < n; i++ ) {
+            for( int j = 0; j < n; j++ ) {
+                assertEquals(i == j ? 1.0 : 0.0, identity.get(i, j), DELTA);
+            }
+        }
+
+        try {
+            new LUDecomposition(new DenseMatrix(new double[][]{{1, 2}, {2, 4}}));
+            fail();
+        } catch (MatrixException e) {
+            assertEquals(MatrixException.SINGULAR, e.getMessage());
+        }
+    }
+
+    public void testCholesky() throws Exception {
+        int n = 90;
+        DenseMatrix m = randomMatrix(n, n);
+        DenseMatrix a = m.transpose().multiply(m, 1);
+        for( int i = 0; i < n; i++ ) {
+            a.set(i, i, a.get(i, i) + n);
+        }
+        CholeskyDecomposition cholesky = new CholeskyDecomposition(a);
+        LUDecomposition lu = new LUDecomposition(a);
+        assertEquals(1.0, cholesky.determinant() / lu.determinant(), DELTA);
+
+        double[] b = randomVector(n);
+        double[] x1 = cholesky.solve(b);
+        double[] x2 = lu.solve(b);
+        for( int i = 0; i < n; i++ ) {
+            assertEquals(x2[i], x1[i], DELTA);
+        }
+
+        DenseMatrix rhs = randomMatrix(n, 5);
+        DenseMatrix x = cholesky.solve(rhs, 2);
+        DenseMatrix ax = a.multiply(x, 1);
+        for( int i = 0; i < n; i++ ) {
+            for( int j = 0; j < 5; j++ ) {
+                assertEquals(rhs.get(i, j), ax.get(i, j), DELTA);
+            }
+        }
+
+        try {
+            new CholeskyDecomposition(new DenseMatrix(new double[][]{{1, 2}, {2, 1}}));
+            fail();
+        } catch (MatrixException e) {
+            assertEquals(MatrixException.NOT_POSITIVE_DEFINITE, e.getMessage());
+        }
+    }
+
+    public void testLinearSystem() throws Exception {
+        double[][] values = {{2, 1, 1}, {4, -6, 0}, {-2, 7, 2}};
+        LinearSystem system = new LinearSystem(values);
+        ColumnVector solution = system.solve(new ColumnVector(new double[]{5, -2, 9}), true);
+        assertEquals(1.0, solution.at(0), DELTA);
+        assertEquals(1.0, solution.at(1), DELTA);
+        assertEquals(2.0, solution.at(2), DELTA);
+
+        InvertibleMatrix invertible = new InvertibleMatrix(values);
+        assertEquals(-16.0, invertible.determinant(), DELTA);
+        Matrix identity = invertible.multiply(invertible.inverse());
+        for( int i = 0; i < 3; i++ ) {
+            for( int j = 0; j < 3; j++ ) {
+                assertEquals(i == j ? 1.0 : 0.0, identity.at(i, j), DELTA);
+            }
+        }
+    }
+
+    public void testInverseRefinement() throws Exception {
+        // the Hilbert matrix is badly conditioned
+        int n = 7;
+        double[][] values = new double[n][n];
+        for( int i = 0; i < n; i++ ) {
+            for( int j = 0; j < n; j++ ) {
+                values[i][j] = 1.0 / (i + j + 1);
+            }
+        }
+        InvertibleMatrix invertible = new InvertibleMatrix(values);
+        InvertibleMatrix inverse = invertible.inverse();
+
+        // the inverse matches the refined single column solves
+        LinearSystem system = new LinearSystem(values);
+        for( int c = 0; c < n; c++ ) {
+            double[] unit = new double[n];
+            unit[c] = 1.0;
+            ColumnVector column = system.solve(new ColumnVector(unit), true);
+            for( int r = 0; r < n; r++ ) {
+                double expected = column.at(r);
+                assertEquals(expected, inverse.at(r, c), Math.abs(expected) * 1E-6);
+            }
+        }
+        assertEquals(invertible.norm() * inverse.norm(), invertible.condition(), DELTA);
+    }
+
+    private DenseMatrix randomMatrix( int rows, int cols ) {
+        DenseMatrix matrix = new DenseMatrix(rows, cols);
+        double[] data = matrix.getData();
+        for( int i = 0; i < data.length; i++ ) {
+            data[i] = random.nextDouble() - 0.5;
+        }
+        return matrix;
+    }
+
+    private double[] randomVector( int n ) {
+        double[] vector = new double[n];
+        for( int i = 0; i < n; i++ ) {
+            vector[i] = random.nextDouble() - 0.5;
+        }
+        return vector;
+    }
+
+}
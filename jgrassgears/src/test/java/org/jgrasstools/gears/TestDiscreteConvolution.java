@@ -0,0 +1,56 @@
+package org.jgrasstools.gears;
+
+import java.util.Random;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.math.DiscreteConvolution;
+
+/**
+ * Test {@link DiscreteConvolution}.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestDiscreteConvolution extends HMTestCase {
+
+    public void testSmallSeries() throws Exception {
+        double[] series = {1, 0, 2};
+        double[] kernel = {1, 2, 3};
+
+        double[] expected = {1, 2, 5, 4, 6};
+        double[] direct = DiscreteConvolution.convolve(series, kernel, 5, DiscreteConvolution.DIRECT);
+        double[] fft = DiscreteConvolution.convolve(series, kernel, 5, DiscreteConvolution.FFT);
+        for( int i = 0; i < expected.length; i++ ) {
+            assertEquals(expected[i], direct[i], DELTA);
+            assertEquals(expected[i], fft[i], DELTA);
+        }
+
+        // truncated and padded results
+        double[] truncated = DiscreteConvolution.convolve(series, kernel, 3);
+        assertEquals(3, truncated.length);
+        assertEquals(5.0, truncated[2], DELTA);
+        double[] padded = DiscreteConvolution.convolve(series, kernel, 7, DiscreteConvolution.FFT);
+        assertEquals(6.0, padded[4], DELTA);
+        assertEquals(0.0, padded[6], DELTA);
+    }
+
+    public void testStrategiesMatch() throws Exception {
+        Random random = new Random(23);
+        double[] kernel = new double[300];
+        for( int i = 0; i < kernel.length; i++ ) {
+            kernel[i] = random.nextDouble();
+        }
+        double[] series = new double[2000];
+        for( int i = 0; i < series.length; i++ ) {
+            series[i] = random.nextDouble() < 0.3 ? 0.0 : random.nextDouble() * 10.0;
+        }
+        assertEquals(DiscreteConvolution.FFT, DiscreteConvolution.chooseStrategy(series, kernel.length));
+
+        int length = series.length + kernel.length - 1;
+        double[] direct = DiscreteConvolution.convolve(series, kernel, length, DiscreteConvolution.DIRECT);
+        double[] fft = DiscreteConvolution.convolve(series, kernel, length, DiscreteConvolution.FFT);
+        for( int i = 0; i < length; i++ ) {
+            assertEquals(direct[i], fft[i], 1E-9);
+        }
+    }
+
+}
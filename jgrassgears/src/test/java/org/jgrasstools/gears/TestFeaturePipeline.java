@@ -0,0 +1,154 @@
+package org.jgrasstools.gears;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.DefaultFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureReader;
+import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureWriter;
+import org.jgrasstools.gears.modules.v.vectorfilter.OmsVectorFilter;
+import org.jgrasstools.gears.modules.v.vectortransformer.OmsVectorTransformer;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.features.pipeline.FeatureOperator;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
+import org.jgrasstools.gears.utils.features.pipeline.FeatureSink;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.Point;
+/**
+ * Test {@link FeaturePipeline}.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestFeaturePipeline extends HMTestCase {
+
+    public void testPipeline() throws Exception {
+        int featuresNum = 1234;
+        DefaultFeatureCollection collection = createPoints(featuresNum);
+        final SimpleFeatureType type = collection.getSchema();
+
+        OmsVectorTransformer transformer = new OmsVectorTransformer();
+        transformer.pTransX = 10.0;
+        transformer.pTransY = 5.0;
+        FeatureOperator transformOperator = transformer.createOperator(type, collection.getBounds());
+
+        FeatureOperator evenFilter = new FeatureOperator(){
+            public SimpleFeatureType getOutputType() {
+                return type;
+            }
+            public SimpleFeature process( SimpleFeature feature ) throws Exception {
+                int id = ((Number) feature.getAttribute("id")).intValue();
+                if (id % 2 == 0) {
+                    return feature;
+                }
+                return null;
+            }
+        };
+
+        for( int threads = 1; threads <= 3; threads++ ) {
+            FeaturePipeline pipeline = new FeaturePipeline(collection);
+            pipeline.add(evenFilter).add(transformOperator);
+            pipeline.setThreads(threads).setChunkSize(50);
+            final List<SimpleFeature> result = new ArrayList<SimpleFeature>();
+            int count = pipeline.run(new FeatureSink(){
+                public void open( SimpleFeatureType featureType ) throws IOException {
+                    assertEquals(type.getAttributeCount(), featureType.getAttributeCount());
+                }
+                public void add( SimpleFeature feature ) throws IOException {
+                    result.add(feature);
+                }
+                public void close() throws IOException {
+                }
+            }, "test", pm);
+
+            // features reach the sink in source order
+            assertEquals(featuresNum / 2, count);
+            assertEquals(featuresNum / 2, result.size());
+            int expectedId = 0;
+            for( SimpleFeature feature : result ) {
+                int id = ((Number) feature.getAttribute("id")).intValue();
+                assertEquals(expectedId, id);
+                Coordinate coordinate = ((Point) feature.getDefaultGeometry()).getCoordinate();
+                assertEquals(id + 10.0, coordinate.x, DELTA);
+                assertEquals(-id + 5.0, coordinate.y, DELTA);
+                expectedId = expectedId + 2;
+            }
+        }
+
+        // the in memory collection keeps all the features
+        SimpleFeatureCollection collected = new FeaturePipeline(collection).add(transformOperator).setThreads(2)
+                .runToCollection("test", pm);
+        assertEquals(featuresNum, collected.size());
+    }
+
+    @SuppressWarnings("nls")
+    public void testShapefileSink() throws Exception {
+        int featuresNum = 1234;
+        DefaultFeatureCollection collection = createPoints(featuresNum);
+        File tmpShape = File.createTempFile("jgt-pipeline", ".shp");
+        String shapePath = tmpShape.getAbsolutePath();
+
+        OmsVectorFilter filter = new OmsVectorFilter();
+        filter.pCql = "id >= 100 AND id < 700";
+        FeaturePipeline pipeline = new FeaturePipeline(collection);
+        pipeline.add(filter.createOperator(collection.getSchema()));
+        pipeline.setThreads(3).setChunkSize(50);
+        int count = OmsShapefileFeatureWriter.writeShapefile(shapePath, pipeline, pm);
+        assertEquals(600, count);
+
+        // read back in the written order
+        SimpleFeatureCollection readCollection = OmsShapefileFeatureReader.readShapefile(shapePath);
+        assertEquals(600, readCollection.size());
+        SimpleFeatureIterator iterator = readCollection.features();
+        try {
+            int expectedId = 100;
+            while( iterator.hasNext() ) {
+                SimpleFeature feature = iterator.next();
+                int id = ((Number) feature.getAttribute("id")).intValue();
+                assertEquals(expectedId, id);
+                Coordinate coordinate = ((Geometry) feature.getDefaultGeometry()).getCoordinate();
+                assertEquals(id, coordinate.x, DELTA);
+                assertEquals(-id, coordinate.y, DELTA);
+                expectedId++;
+            }
+            assertEquals(700, expectedId);
+        } finally {
+            iterator.close();
+        }
+
+        String basePath = shapePath.substring(0, shapePath.length() - 4);
+        for( String extension : new String[]{".shp", ".shx", ".dbf", ".prj", ".fix", ".qix"} ) {
+            new File(basePath + extension).delete();
+        }
+    }
+
+    private DefaultFeatureCollection createPoints( int featuresNum ) {
+        SimpleFeatureTypeBuilder b = new SimpleFeatureTypeBuilder();
+        b.setName("typename");
+        b.setCRS(DefaultGeographicCRS.WGS84);
+        b.add("the_geom", Point.class);
+        b.add("id", Integer.class);
+        SimpleFeatureType type = b.buildFeatureType();
+
+        DefaultFeatureCollection collection = new DefaultFeatureCollection(null, type);
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        for( int i = 0; i < featuresNum; i++ ) {
+            Point point = GeometryUtilities.gf().createPoint(new Coordinate(i, -i));
+            builder.addAll(new Object[]{point, i});
+            collection.add(builder.buildFeature(String.format("f%05d", i)));
+        }
+        return collection;
+    }
+
+}
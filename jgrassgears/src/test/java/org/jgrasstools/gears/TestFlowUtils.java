@@ -2,6 +2,7 @@ package org.jgrasstools.gears;
 
 import static java.lang.Double.NaN;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.List;
 import java.util.TreeSet;
@@ -11,6 +12,7 @@ import javax.media.jai.iterator.RandomIter;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.libs.modules.Direction;
 import org.jgrasstools.gears.libs.modules.FlowNode;
+import org.jgrasstools.gears.libs.modules.FlowTopology;
 import org.jgrasstools.gears.libs.modules.GridNode;
 import org.jgrasstools.gears.libs.modules.GridNodeElevationToLeastComparator;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
@@ -235,4 +237,39 @@ public class TestFlowUtils extends HMTestCase {
         assertNull(n);
     }
 
+    public void testFlowTopology() throws Exception {
+        FlowTopology topology = FlowTopology.build(flowIter, nCols, nRows, pm);
+
+        FlowNode node = new FlowNode(flowIter, nCols, nRows, 5, 4);
+        int index = topology.index(5, 4);
+        List<FlowNode> enteringNodes = node.getEnteringNodes();
+        assertEquals(enteringNodes.size(), topology.getUpstreamCount(index));
+        for( int i = topology.getUpstreamStart(index); i < topology.getUpstreamEnd(index); i++ ) {
+            assertEquals(index, topology.getDownstream(topology.getUpstreamCell(i)));
+        }
+
+        // every cell comes after the cells that flow into it
+        int[] order = topology.getOrder();
+        int[] position = new int[nCols * nRows];
+        for( int i = 0; i < order.length; i++ ) {
+            position[order[i]] = i;
+        }
+        for( int i = 0; i < order.length; i++ ) {
+            int downstream = topology.getDownstream(order[i]);
+            if (downstream >= 0) {
+                assertTrue(position[downstream] > i);
+            }
+        }
+
+        File topologyFile = File.createTempFile("jgt-", FlowTopology.CACHE_EXTENSION);
+        topologyFile.deleteOnExit();
+        topology.write(topologyFile, null);
+        FlowTopology readTopology = FlowTopology.read(topologyFile, null);
+        assertEquals(order.length, readTopology.getOrder().length);
+        for( int i = 0; i < nCols * nRows; i++ ) {
+            assertEquals(topology.getFlow(i), readTopology.getFlow(i));
+            assertEquals(topology.getUpstreamCount(i), readTopology.getUpstreamCount(i));
+        }
+    }
+
 }
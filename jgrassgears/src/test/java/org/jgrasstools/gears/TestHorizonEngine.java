@@ -0,0 +1,39 @@
+package org.jgrasstools.gears;
+
+import org.jgrasstools.gears.libs.modules.HorizonEngine;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link HorizonEngine}.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestHorizonEngine extends HMTestCase {
+
+    public void testWall() throws Exception {
+        int cols = 10;
+        int rows = 5;
+        double[] elev = new double[cols * rows];
+        // a 10 meters wall on the last column
+        for( int r = 0; r < rows; r++ ) {
+            elev[r * cols + cols - 1] = 10.0;
+        }
+
+        HorizonEngine engine = new HorizonEngine(elev, cols, rows, 10.0, 10.0, 4);
+        engine.calculate(2, pm);
+
+        // east: the wall is 10 meters away from column 8
+        assertEquals(Math.PI / 4.0, engine.getHorizon(1, 8, 2), DELTA);
+        assertEquals(Math.atan(10.0 / 80.0), engine.getHorizon(1, 1, 2), 1E-6);
+        // west, north and south are flat
+        assertEquals(0.0, engine.getHorizon(3, 5, 2), DELTA);
+        assertEquals(0.0, engine.getHorizon(0, 5, 2), DELTA);
+        assertEquals(0.0, engine.getHorizon(2, 5, 2), DELTA);
+
+        // the wall looks down westwards
+        assertTrue(engine.getHorizon(3, 9, 2) < 0);
+
+        assertTrue(engine.isVisible(Math.PI / 2.0, Math.toRadians(46), 8, 2));
+        assertFalse(engine.isVisible(Math.PI / 2.0, Math.toRadians(44), 8, 2));
+    }
+}
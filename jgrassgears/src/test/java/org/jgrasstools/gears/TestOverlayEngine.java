@@ -0,0 +1,88 @@
+package org.jgrasstools.gears;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgrasstools.gears.modules.v.vectoroverlayoperators.OverlayEngine;
+import org.jgrasstools.gears.modules.v.vectoroverlayoperators.OverlayEngine.OverlayPiece;
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.geometry.GeometryUtilities;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+/**
+ * Test {@link OverlayEngine}.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestOverlayEngine extends HMTestCase {
+
+    public void testOverlay() throws Exception {
+        List<Geometry> geoms1 = new ArrayList<Geometry>();
+        geoms1.add(box(0, 10, 0, 10));
+        List<Geometry> geoms2 = new ArrayList<Geometry>();
+        geoms2.add(box(5, 15, 0, 10));
+        geoms2.add(box(20, 30, 0, 10));
+
+        OverlayEngine engine = new OverlayEngine(geoms1, geoms2);
+        for( int threads = 1; threads <= 2; threads++ ) {
+            List<OverlayPiece> pieces = engine.intersection(threads, pm);
+            assertEquals(1, pieces.size());
+            assertEquals(50.0, pieces.get(0).geometry.getArea(), DELTA);
+            assertEquals(0, pieces.get(0).index1);
+            assertEquals(0, pieces.get(0).index2);
+
+            pieces = engine.difference(threads, pm);
+            assertEquals(1, pieces.size());
+            assertEquals(50.0, pieces.get(0).geometry.getArea(), DELTA);
+            assertEquals(0, pieces.get(0).index1);
+            assertEquals(-1, pieces.get(0).index2);
+
+            pieces = engine.symDifference(threads, pm);
+            assertEquals(3, pieces.size());
+            assertEquals(200.0, area(pieces), DELTA);
+            assertEquals(-1, pieces.get(2).index1);
+            assertEquals(1, pieces.get(2).index2);
+            assertEquals(100.0, pieces.get(2).geometry.getArea(), DELTA);
+
+            pieces = engine.union(threads, pm);
+            assertEquals(4, pieces.size());
+            assertEquals(250.0, area(pieces), DELTA);
+        }
+    }
+
+    public void testOverlayErrorsAreRethrown() throws Exception {
+        List<Geometry> geoms1 = new ArrayList<Geometry>();
+        geoms1.add(box(0, 10, 0, 10));
+        geoms1.add(box(20, 30, 0, 10));
+        geoms1.add(box(40, 50, 0, 10));
+        // the overlay doesn't support collections as arguments
+        Geometry collection = GeometryUtilities.gf().createGeometryCollection(
+                new Geometry[]{box(5, 15, 0, 10), box(60, 70, 0, 10)});
+        List<Geometry> geoms2 = new ArrayList<Geometry>();
+        geoms2.add(collection);
+
+        OverlayEngine engine = new OverlayEngine(geoms1, geoms2);
+        for( int threads = 1; threads <= 2; threads++ ) {
+            try {
+                engine.intersection(threads, pm);
+                fail("The failed overlay has to be rethrown with " + threads + " threads.");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private Geometry box( double w, double e, double s, double n ) {
+        return GeometryUtilities.gf().toGeometry(new Envelope(w, e, s, n));
+    }
+
+    private double area( List<OverlayPiece> pieces ) {
+        double area = 0;
+        for( OverlayPiece piece : pieces ) {
+            area = area + piece.geometry.getArea();
+        }
+        return area;
+    }
+
+}
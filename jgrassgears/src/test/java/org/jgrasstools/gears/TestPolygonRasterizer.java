@@ -0,0 +1,70 @@
+package org.jgrasstools.gears;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.geometry.PolygonRasterizer;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.MultiPolygon;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Test {@link PolygonRasterizer}.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestPolygonRasterizer extends HMTestCase {
+
+    private GeometryFactory gf = new GeometryFactory();
+
+    public void testHolesAndMultipolygons() throws Exception {
+        // a 10x10 grid of 1 meter cells, north = 10, west = 0
+        PolygonRasterizer rasterizer = new PolygonRasterizer(0, 10, 1, 1, 10, 10);
+
+        // 6x6 square with a 2x2 hole in the middle
+        Polygon square = gf.createPolygon(ring(1, 1, 7, 7), new LinearRing[]{ring(3, 3, 5, 5)});
+        // a second part outside of the grid on the east side
+        Polygon outside = gf.createPolygon(ring(8, 8, 12, 9), null);
+        MultiPolygon multiPolygon = gf.createMultiPolygon(new Polygon[]{square, outside});
+
+        final int[][] grid = new int[10][10];
+        final List<Integer> spanRows = new ArrayList<Integer>();
+        rasterizer.rasterize(multiPolygon, new PolygonRasterizer.SpanHandler(){
+            public void span( int row, int fromCol, int toCol ) {
+                spanRows.add(row);
+                for( int c = fromCol; c <= toCol; c++ ) {
+                    grid[row][c]++;
+                }
+            }
+        });
+
+        int count = 0;
+        for( int r = 0; r < 10; r++ ) {
+            for( int c = 0; c < 10; c++ ) {
+                count = count + grid[r][c];
+                // no cell is filled twice
+                assertTrue(grid[r][c] <= 1);
+            }
+        }
+        // 36 cells of the square, minus 4 of the hole, plus 2 of the clipped part
+        assertEquals(34, count);
+        assertEquals(0, grid[5][3]);
+        assertEquals(1, grid[4][1]);
+        assertEquals(1, grid[1][8]);
+        assertEquals(1, grid[1][9]);
+
+        // spans come ordered by row
+        for( int i = 1; i < spanRows.size(); i++ ) {
+            assertTrue(spanRows.get(i - 1) <= spanRows.get(i));
+        }
+    }
+
+    private LinearRing ring( double minX, double minY, double maxX, double maxY ) {
+        return gf.createLinearRing(new Coordinate[]{new Coordinate(minX, minY), new Coordinate(maxX, minY),
+                new Coordinate(maxX, maxY), new Coordinate(minX, maxY), new Coordinate(minX, minY)});
+    }
+}
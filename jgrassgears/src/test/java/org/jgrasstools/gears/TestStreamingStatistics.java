@@ -0,0 +1,82 @@
+package org.jgrasstools.gears;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jgrasstools.gears.utils.HMTestCase;
+import org.jgrasstools.gears.utils.math.statistics.FixedBinHistogram;
+import org.jgrasstools.gears.utils.math.statistics.StreamingStatistics;
+
+/**
+ * Test the streaming statistics accumulators.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestStreamingStatistics extends HMTestCase {
+
+    public void testMergedStatistics() throws Exception {
+        Random random = new Random(1);
+        double[] values = new double[10001];
+        StreamingStatistics all = new StreamingStatistics(true);
+        StreamingStatistics first = all.createEmpty();
+        StreamingStatistics second = all.createEmpty();
+        double sum = 0;
+        for( int i = 0; i < values.length; i++ ) {
+            values[i] = 100 + 10 * random.nextGaussian();
+            sum = sum + values[i];
+            all.add(values[i]);
+            if (i % 3 == 0) {
+                first.add(values[i]);
+            } else {
+                second.add(values[i]);
+            }
+        }
+        first.add(Double.NaN);
+        first.merge(second);
+
+        double mean = sum / values.length;
+        double var = 0;
+        for( double value : values ) {
+            var = var + (value - mean) * (value - mean);
+        }
+        var = var / values.length;
+        Arrays.sort(values);
+
+        assertEquals(values.length, first.getCount());
+        assertEquals(1, first.getNovaluesCount());
+        assertEquals(values[0], first.getMin(), DELTA);
+        assertEquals(values[values.length - 1], first.getMax(), DELTA);
+        assertEquals(mean, first.getMean(), 1E-9);
+        assertEquals(mean, all.getMean(), 1E-9);
+        assertEquals(var, first.getVariance(), 1E-6);
+        assertEquals(var, all.getVariance(), 1E-6);
+
+        double median = values[values.length / 2];
+        assertEquals(median, all.getQuantile(0.5), 0.1);
+        assertEquals(median, first.getQuantile(0.5), 0.1);
+        assertEquals(values[(int) (0.99 * values.length)], first.getQuantile(0.99), 0.2);
+    }
+
+    public void testHistogram() throws Exception {
+        FixedBinHistogram histogram = new FixedBinHistogram(0, 10, 5, 2);
+        FixedBinHistogram other = histogram.createEmpty();
+        histogram.add(0, 1);
+        histogram.add(2, 3);
+        histogram.add(2.5, Double.NaN);
+        other.add(10, 4);
+        other.add(Double.NaN, 4);
+        histogram.merge(other);
+
+        // upper limits are included in the bin
+        assertEquals(2, histogram.getCount(0));
+        assertEquals(1.0, histogram.getMean(0), DELTA);
+        assertEquals(1, histogram.getCount(1));
+        assertEquals(1, histogram.getCount(4));
+        assertEquals(1, histogram.getNovaluesCount());
+
+        assertEquals(2.0, histogram.getCoupledMoment(0, 1, 0.0), DELTA);
+        assertEquals(1.0, histogram.getCoupledMoment(0, 2, 2.0), DELTA);
+        assertEquals(0, histogram.getCoupledCount(1));
+        assertEquals(4.0, histogram.getCoupledMoment(4, 1, 0.0), DELTA);
+    }
+}
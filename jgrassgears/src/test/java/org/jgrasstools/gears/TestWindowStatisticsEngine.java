@@ -0,0 +1,94 @@
+package org.jgrasstools.gears;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.WindowStatisticsEngine;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test {@link WindowStatisticsEngine}.
+ * 
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestWindowStatisticsEngine extends HMTestCase {
+
+    private static final int COLS = 37;
+    private static final int ROWS = 150;
+
+    public void testCenteredWindow() throws Exception {
+        double[] values = createValues();
+        WindowStatisticsEngine engine = new WindowStatisticsEngine(values, COLS, ROWS);
+        for( int threads = 1; threads <= 3; threads += 2 ) {
+            double[] median = engine.calculate(5, 3, WindowStatisticsEngine.MEDIAN, threads, pm);
+            double[] mean = engine.calculate(5, 3, WindowStatisticsEngine.MEAN, threads, pm);
+            double[] sigma = engine.calculate(5, 3, WindowStatisticsEngine.STANDARD_DEVIATION, threads, pm);
+            double[] max = engine.calculate(5, 3, WindowStatisticsEngine.MAX, threads, pm);
+            for( int r = 0; r < ROWS; r++ ) {
+                for( int c = 0; c < COLS; c++ ) {
+                    double[] window = getWindow(values, c - 2, r - 1, 5, 3);
+                    int i = r * COLS + c;
+                    assertEquals(window[(window.length - 1) / 2], median[i], 1E-12);
+                    assertEquals(window[window.length - 1], max[i], 1E-12);
+                    double sum = 0;
+                    for( double value : window ) {
+                        sum += value;
+                    }
+                    double avg = sum / window.length;
+                    double var = 0;
+                    for( double value : window ) {
+                        var += (value - avg) * (value - avg);
+                    }
+                    assertEquals(avg, mean[i], 1E-9);
+                    assertEquals(Math.sqrt(var / window.length), sigma[i], 1E-9);
+                }
+            }
+        }
+    }
+
+    public void testSteppedWindow() throws Exception {
+        double[] values = createValues();
+        WindowStatisticsEngine engine = new WindowStatisticsEngine(values, COLS, ROWS);
+        double[] min = engine.calculate(4, 3, 0, 0, 4, 2, WindowStatisticsEngine.MIN, 2, pm);
+        int outCols = (COLS + 3) / 4;
+        int outRows = ROWS / 2;
+        assertEquals(outCols * outRows, min.length);
+        for( int r = 0; r < outRows; r++ ) {
+            for( int c = 0; c < outCols; c++ ) {
+                double[] window = getWindow(values, c * 4, r * 2, 4, 3);
+                assertEquals(window[0], min[r * outCols + c], 1E-12);
+            }
+        }
+    }
+
+    private double[] createValues() {
+        Random random = new Random(3);
+        double[] values = new double[COLS * ROWS];
+        for( int i = 0; i < values.length; i++ ) {
+            if (random.nextDouble() < 0.05) {
+                values[i] = JGTConstants.doubleNovalue;
+            } else {
+                // few distinct values, to have ties
+                values[i] = 1000 + random.nextInt(50) / 4.0;
+            }
+        }
+        return values;
+    }
+
+    private double[] getWindow( double[] values, int fromCol, int fromRow, int windowCols, int windowRows ) {
+        double[] window = new double[windowCols * windowRows];
+        int n = 0;
+        for( int r = fromRow; r < fromRow + windowRows; r++ ) {
+            for( int c = fromCol; c < fromCol + windowCols; c++ ) {
+                if (r >= 0 && r < ROWS && c >= 0 && c < COLS && !JGTConstants.isNovalue(values[r * COLS + c])) {
+                    window[n++] = values[r * COLS + c];
+                }
+            }
+        }
+        window = Arrays.copyOf(window, n);
+        Arrays.sort(window);
+        return window;
+    }
+
+}
@@ -2,12 +2,15 @@ package org.jgrasstools.gears.modules;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.List;
 
 import org.jgrasstools.gears.io.disktree.IDiskTree;
+import org.jgrasstools.gears.io.disktree.PackedDiskTreeReader;
+import org.jgrasstools.gears.io.disktree.PackedDiskTreeWriter;
 import org.jgrasstools.gears.utils.HMTestCase;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -151,6 +154,52 @@ public class TestDiskTreeIO extends HMTestCase {
 
     }
 
+    public void testPackedDiskTree() throws Exception {
+        WKTReader r = new WKTReader();
+        Geometry pol = r.read("POLYGON ((210 350, 230 310, 290 350, 290 350, 210 350))");
+        pol.setUserData(new Integer(1));
+        Geometry line = r.read("LINESTRING (50 380, 90 210, 180 160, 240 40, 240 40)");
+        line.setUserData("line");
+        Geometry point = r.read("POINT (130 120)");
+
+        File file = File.createTempFile("jgt-disktree", ".jgpt");
+        try {
+            PackedDiskTreeWriter writer = new PackedDiskTreeWriter(file.getAbsolutePath());
+            writer.setNodeCapacity(2);
+            writer.writeGeometries(new Geometry[]{pol, line, point});
+
+            PackedDiskTreeReader reader = new PackedDiskTreeReader(file.getAbsolutePath());
+            reader.open();
+            try {
+                assertEquals(3, reader.getGeometriesCount());
+                assertEquals(new Envelope(50, 290, 40, 380), reader.getBounds());
+
+                List<Geometry> geometries = reader.query(pol.getEnvelopeInternal());
+                assertEquals(2, geometries.size());
+                for( Geometry geometry : geometries ) {
+                    if (geometry.getGeometryType().equals("Polygon")) {
+                        assertTrue(geometry.equalsExact(pol));
+                        assertEquals("1", geometry.getUserData());
+                    } else {
+                        assertTrue(geometry.equalsExact(line));
+                        assertEquals("line", geometry.getUserData());
+                    }
+                }
+
+                geometries = reader.query(new Envelope(125, 135, 115, 125));
+                assertEquals(1, geometries.size());
+                assertTrue(geometries.get(0).equalsExact(point));
+                assertNull(geometries.get(0).getUserData());
+
+                assertEquals(0, reader.query(new Envelope(0, 10, 0, 10)).size());
+            } finally {
+                reader.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
     private static byte[] serialize( Object obj ) throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         ObjectOutputStream out = new ObjectOutputStream(bos);
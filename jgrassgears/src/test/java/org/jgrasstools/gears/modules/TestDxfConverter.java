@@ -17,10 +17,13 @@
  */
 package org.jgrasstools.gears.modules;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.net.URL;
 
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.jgrasstools.gears.io.dxfdwg.libs.dxf.DxfGroup;
+import org.jgrasstools.gears.io.dxfdwg.libs.dxf.DxfGroupReader;
 import org.jgrasstools.gears.modules.v.vectorconverter.OmsDxfConverter;
 import org.jgrasstools.gears.utils.HMTestCase;
 import org.opengis.feature.simple.SimpleFeature;
@@ -60,4 +63,31 @@ public class TestDxfConverter extends HMTestCase {
         assertEquals(coordinates[1].y, 10.0, delta);
 
     }
+
+    @SuppressWarnings("nls")
+    public void testDxfGroupReader() throws Exception {
+        String dxf = "  0\r\nPOINT\r\n  8\nLAYER1\r 10\r\n1234.5678\r\n 20\r\n-1.5E2\r\n 62\r\n   256\r\n 10\r\n1,5\r\n  0\r\nEOF";
+        DxfGroupReader reader = new DxfGroupReader(new ByteArrayInputStream(dxf.getBytes("ISO-8859-1")));
+
+        DxfGroup group = reader.readGroup();
+        assertEquals(0, group.getCode());
+        assertEquals("POINT", group.getValue());
+        group = reader.readGroup();
+        assertEquals(8, group.getCode());
+        assertEquals("LAYER1", group.getValue());
+        assertEquals(12, group.getAddress());
+        group = reader.readGroup();
+        assertEquals(1234.5678, group.getDoubleValue(), 0.0);
+        group = reader.readGroup();
+        assertEquals(-150.0, group.getDoubleValue(), 0.0);
+        group = reader.readGroup();
+        assertEquals(256, group.getIntValue());
+        // values that aren't numbers are kept as they are
+        group = reader.readGroup();
+        assertEquals("1,5", group.getValue());
+        group = reader.readGroup();
+        assertEquals("EOF", group.getValue());
+        assertNull(reader.readGroup());
+        reader.close();
+    }
 }
@@ -0,0 +1,435 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.gears.modules;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.jgrasstools.gears.io.grasslegacy.io.GrassRasterReader;
+import org.jgrasstools.gears.io.grasslegacy.io.GrassRasterWriter;
+import org.jgrasstools.gears.io.grasslegacy.io.MapReader;
+import org.jgrasstools.gears.io.grasslegacy.utils.FileUtilities;
+import org.jgrasstools.gears.io.grasslegacy.utils.GrassLegacyConstans;
+import org.jgrasstools.gears.io.grasslegacy.utils.Window;
+import org.jgrasstools.gears.utils.HMTestCase;
+
+/**
+ * Test the legacy GRASS raster reader and writer.
+ *
+ * @author Andrea Antonello (www.hydrologis.com)
+ */
+public class TestGrassLegacyIO extends HMTestCase {
+
+    private static final String MAPSET = "test";
+    private static final int ROWS = 150;
+    private static final int COLS = 23;
+    private static final double RES = 10.0;
+
+    private File location;
+    private File mapset;
+
+    /* the file window of the maps and a window that resamples them and goes outside of them */
+    private Window fileWindow = new Window(0.0, COLS * RES, 0.0, ROWS * RES, ROWS, COLS);
+    private Window resampledWindow = new Window(-25.0, 215.0, 13.0, 1525.0, 4.0, 7.0);
+
+    protected void setUp() throws Exception {
+        location = File.createTempFile("jgt-grasslegacy", "");
+        location.delete();
+        mapset = new File(location, MAPSET);
+        File permanent = new File(location, GrassLegacyConstans.PERMANENT_MAPSET);
+        permanent.mkdirs();
+        mapset.mkdirs();
+        Window.writeActiveWindowToMapset(permanent.getAbsolutePath(), fileWindow);
+        Window.writeDefaultWindowToLocation(location.getAbsolutePath(), fileWindow);
+        Window.writeActiveWindowToMapset(mapset.getAbsolutePath(), fileWindow);
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtilities.deleteFileOrDir(location);
+    }
+
+    public void testReadCompressedDoubleMap() throws Exception {
+        double[][] values = createValues();
+        writeFPMap("double_map", values, true);
+
+        checkMappedEqualsRowByRow("double_map", fileWindow);
+        checkMappedEqualsRowByRow("double_map", resampledWindow);
+        checkMatrixEqual(read("double_map", fileWindow, 1), values, 0.0);
+    }
+
+    public void testReadCompressedFloatMap() throws Exception {
+        double[][] values = createValues();
+        writeFPMap("float_map", values, false);
+
+        checkMatrixEqual(read("float_map", fileWindow, 4), values, 0.0);
+        double[][] resampled = read("float_map", resampledWindow, 4);
+        checkMatrixEqual(resampled, resample(values, resampledWindow), 0.0);
+    }
+
+    public void testReadRleIntegerMap() throws Exception {
+        double[][] values = createIntegerValues();
+        writeRleIntegerMap("int_map", values, 2);
+
+        checkMatrixEqual(read("int_map", fileWindow, 4), values, 0.0);
+        double[][] resampled = read("int_map", resampledWindow, 4);
+        checkMatrixEqual(resampled, resample(values, resampledWindow), 0.0);
+    }
+
+    public void testWriteDoubleMap() throws Exception {
+        double[][] values = createValues();
+        checkWrittenMaps(values, true);
+
+        checkMatrixEqual(read("written_1", fileWindow, 1), values, 0.0);
+        checkMatrixEqual(read("written_4", fileWindow, 1), values, 0.0);
+    }
+
+    public void testWriteIntegerValuesAsFloatMap() throws Exception {
+        double[][] values = createIntegerValues();
+        checkWrittenMaps(values, false);
+
+        /* float maps can only be read back through the mapped path */
+        checkMatrixEqual(read("written_1", fileWindow, 4), values, 0.0);
+        checkMatrixEqual(read("written_4", fileWindow, 4), values, 0.0);
+    }
+
+    /**
+     * Writes the values with one and with more threads and checks that the files are the same
+     * and that they are the files the row by row writer produced.
+     */
+    private void checkWrittenMaps( double[][] values, boolean isDouble ) throws Exception {
+        write("written_1", values, isDouble, 1);
+        write("written_4", values, isDouble, 4);
+
+        String nullPath = GrassLegacyConstans.CELL_MISC + File.separator + "%s" + File.separator
+                + GrassLegacyConstans.CELLMISC_NULL;
+        String rangePath = GrassLegacyConstans.CELL_MISC + File.separator + "%s" + File.separator
+                + GrassLegacyConstans.CELLMISC_RANGE;
+        String[] paths = {GrassLegacyConstans.FCELL + File.separator + "%s", nullPath, rangePath};
+        for( String path : paths ) {
+            byte[] single = readBytes(new File(mapset, String.format(path, "written_1")));
+            byte[] multi = readBytes(new File(mapset, String.format(path, "written_4")));
+            assertTrue(path, Arrays.equals(single, multi));
+        }
+
+        byte[] fcell = readBytes(new File(mapset, GrassLegacyConstans.FCELL + File.separator + "written_4"));
+        assertTrue(Arrays.equals(rowByRowCells(values, isDouble), fcell));
+        byte[] nulls = readBytes(new File(mapset, String.format(nullPath, "written_4")));
+        assertTrue(Arrays.equals(nullBytes(values), nulls));
+    }
+
+    private void write( String name, double[][] values, boolean isDouble, int threads ) throws Exception {
+        GrassRasterWriter writer = new GrassRasterWriter();
+        if (isDouble) {
+            writer.setOutputDataObject(new Double(2));
+        } else {
+            writer.setOutputDataObject(new Float(2));
+        }
+        writer.setDataWindow(fileWindow);
+        writer.setParameter("threads", threads);
+        assertTrue(writer.open(name, location.getAbsolutePath(), MAPSET));
+        try {
+            assertTrue(writer.write(values));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The cell file as the writer produced it compressing one row at a time: the header with the
+     * row addresses, then every row flagged as compressed and deflated with the default level.
+     */
+    private byte[] rowByRowCells( double[][] values, boolean isDouble ) throws IOException {
+        int bytes = isDouble ? 8 : 4;
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        long[] addresses = new long[ROWS + 1];
+        int headerSize = 1 + 4 * (ROWS + 1);
+        for( int r = 0; r < ROWS; r++ ) {
+            addresses[r] = headerSize + rows.size();
+            ByteBuffer row = ByteBuffer.allocate(COLS * bytes);
+            for( int c = 0; c < COLS; c++ ) {
+                double value = Double.isNaN(values[r][c]) ? 0.0 : values[r][c];
+                if (isDouble) {
+                    row.putDouble(value);
+                } else {
+                    row.putFloat((float) value);
+                }
+            }
+            Deflater deflater = new Deflater();
+            deflater.setInput(row.array());
+            deflater.finish();
+            byte[] compressed = new byte[row.capacity() * 2];
+            int length = deflater.deflate(compressed);
+            deflater.end();
+            rows.write(49);
+            rows.write(compressed, 0, length);
+        }
+        addresses[ROWS] = headerSize + rows.size();
+
+        ByteArrayOutputStream cells = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(cells);
+        out.write(4);
+        for( long address : addresses ) {
+            out.writeInt((int) address);
+        }
+        out.write(rows.toByteArray());
+        out.close();
+        return cells.toByteArray();
+    }
+
+    private byte[] readBytes( File file ) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while( read < bytes.length ) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    /**
+     * Values with a pattern of nulls, stored as NaN.
+     */
+    private double[][] createValues() {
+        double[][] values = new double[ROWS][COLS];
+        for( int r = 0; r < ROWS; r++ ) {
+            for( int c = 0; c < COLS; c++ ) {
+                values[r][c] = (r + c) % 7 == 0 ? Double.NaN : r * 100 + c + 0.5;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Integer values with runs of equal values and a pattern of nulls, stored as NaN.
+     */
+    private double[][] createIntegerValues() {
+        double[][] values = new double[ROWS][COLS];
+        for( int r = 0; r < ROWS; r++ ) {
+            for( int c = 0; c < COLS; c++ ) {
+                values[r][c] = (r + c) % 11 == 0 ? Double.NaN : (r / 5) * 10 + c / 6 - 105;
+            }
+        }
+        return values;
+    }
+
+    private void checkMappedEqualsRowByRow( String name, Window window ) throws Exception {
+        double[][] rowByRow = read(name, window, 1);
+        double[][] mapped = read(name, window, 4);
+        assertEquals(window.getRows(), mapped.length);
+        assertEquals(window.getCols(), mapped[0].length);
+        checkMatrixEqual(mapped, rowByRow, 0.0);
+    }
+
+    private double[][] read( String name, Window window, int threads ) throws Exception {
+        GrassRasterReader reader = new GrassRasterReader();
+        reader.setReaderType(MapReader.RASTER_READER);
+        reader.setOutputDataObject(new double[0][0]);
+        reader.setDataWindow(window);
+        reader.setParameter("threads", threads);
+        assertTrue(reader.open(name, location.getAbsolutePath(), MAPSET));
+        try {
+            assertTrue(reader.hasMoreData(pm));
+            return (double[][]) reader.getNextData();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Expected values of a data window, taking the file cell in which the north-west corner of
+     * every data cell falls.
+     */
+    private double[][] resample( double[][] values, Window window ) {
+        double[][] resampled = new double[window.getRows()][window.getCols()];
+        for( int r = 0; r < resampled.length; r++ ) {
+            int fileRow = (int) Math.floor((fileWindow.getNorth() - (window.getNorth() - r * window.getNSResolution())) / RES);
+            for( int c = 0; c < resampled[0].length; c++ ) {
+                int fileCol = (int) Math.floor((window.getWest() + c * window.getWEResolution() - fileWindow.getWest()) / RES);
+                if (fileRow < 0 || fileRow >= ROWS || fileCol < 0 || fileCol >= COLS) {
+                    resampled[r][c] = Double.NaN;
+                } else {
+                    resampled[r][c] = values[fileRow][fileCol];
+                }
+            }
+        }
+        return resampled;
+    }
+
+    /**
+     * Writes a compressed floating point map as GRASS does, with every third row left
+     * uncompressed.
+     */
+    private void writeFPMap( String name, double[][] values, boolean isDouble ) throws IOException {
+        writeCellhd(name, -1);
+        writeText(new File(mapset, GrassLegacyConstans.CELL_MISC + File.separator + name + File.separator
+                + GrassLegacyConstans.CELLMISC_FORMAT), "type: " + (isDouble ? "double" : "float")
+                + "\nbyte_order: xdr\nlzw_compression_bits: -1");
+        writeText(new File(mapset, GrassLegacyConstans.CELL + File.separator + name), "");
+
+        int bytes = isDouble ? 8 : 4;
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        long[] addresses = new long[ROWS + 1];
+        int headerSize = 1 + 4 * (ROWS + 1);
+        for( int r = 0; r < ROWS; r++ ) {
+            addresses[r] = headerSize + rows.size();
+            ByteBuffer row = ByteBuffer.allocate(COLS * bytes);
+            for( int c = 0; c < COLS; c++ ) {
+                double value = Double.isNaN(values[r][c]) ? 0.0 : values[r][c];
+                if (isDouble) {
+                    row.putDouble(value);
+                } else {
+                    row.putFloat((float) value);
+                }
+            }
+            if (r % 3 == 0) {
+                rows.write(48);
+                rows.write(row.array());
+            } else {
+                Deflater deflater = new Deflater();
+                deflater.setInput(row.array());
+                deflater.finish();
+                byte[] compressed = new byte[row.capacity() * 2 + 64];
+                int length = deflater.deflate(compressed);
+                deflater.end();
+                rows.write(49);
+                rows.write(compressed, 0, length);
+            }
+        }
+        addresses[ROWS] = headerSize + rows.size();
+        writeRows(new File(mapset, GrassLegacyConstans.FCELL + File.separator + name), addresses, rows.toByteArray());
+        writeNullFile(name, values);
+    }
+
+    /**
+     * Writes a run length encoded integer map, with every fourth row left unencoded.
+     */
+    private void writeRleIntegerMap( String name, double[][] values, int bytesPerValue ) throws IOException {
+        writeCellhd(name, bytesPerValue - 1);
+
+        ByteArrayOutputStream rows = new ByteArrayOutputStream();
+        long[] addresses = new long[ROWS + 1];
+        int headerSize = 1 + 4 * (ROWS + 1);
+        for( int r = 0; r < ROWS; r++ ) {
+            addresses[r] = headerSize + rows.size();
+            rows.write(bytesPerValue);
+            if (r % 4 == 0) {
+                for( int c = 0; c < COLS; c++ ) {
+                    writeInteger(rows, values[r][c], bytesPerValue);
+                }
+            } else {
+                int c = 0;
+                while( c < COLS ) {
+                    int count = 1;
+                    while( c + count < COLS && sameValue(values[r][c], values[r][c + count]) ) {
+                        count++;
+                    }
+                    rows.write(count);
+                    writeInteger(rows, values[r][c], bytesPerValue);
+                    c += count;
+                }
+            }
+        }
+        addresses[ROWS] = headerSize + rows.size();
+        writeRows(new File(mapset, GrassLegacyConstans.CELL + File.separator + name), addresses, rows.toByteArray());
+        writeNullFile(name, values);
+    }
+
+    private boolean sameValue( double value1, double value2 ) {
+        return value1 == value2 || (Double.isNaN(value1) && Double.isNaN(value2));
+    }
+
+    private void writeInteger( ByteArrayOutputStream out, double value, int bytesPerValue ) {
+        int intValue = Double.isNaN(value) ? 0 : (int) value;
+        for( int i = bytesPerValue - 1; i >= 0; i-- ) {
+            out.write(intValue >>> (8 * i));
+        }
+    }
+
+    private void writeRows( File file, long[] addresses, byte[] rows ) throws IOException {
+        file.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.write(4);
+            for( long address : addresses ) {
+                out.writeInt((int) address);
+            }
+            out.write(rows);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void writeNullFile( String name, double[][] values ) throws IOException {
+        byte[] nulls = nullBytes(values);
+        File nullFile = new File(mapset, GrassLegacyConstans.CELL_MISC + File.separator + name + File.separator
+                + GrassLegacyConstans.CELLMISC_NULL);
+        nullFile.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(nullFile);
+        try {
+            out.write(nulls);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * The null file bitmap, with the bits of the nulls set.
+     */
+    private byte[] nullBytes( double[][] values ) {
+        int bytesPerRow = (COLS + 7) / 8;
+        byte[] nulls = new byte[ROWS * bytesPerRow];
+        for( int r = 0; r < ROWS; r++ ) {
+            for( int c = 0; c < COLS; c++ ) {
+                if (Double.isNaN(values[r][c])) {
+                    nulls[r * bytesPerRow + c / 8] |= (byte) (0x80 >>> (c % 8));
+                }
+            }
+        }
+        return nulls;
+    }
+
+    private void writeCellhd( String name, int format ) throws IOException {
+        writeText(new File(mapset, GrassLegacyConstans.CELLHD + File.separator + name), "proj:   0\nzone:   0\nnorth:   "
+                + fileWindow.getNorth() + "\nsouth:   " + fileWindow.getSouth() + "\neast:   " + fileWindow.getEast()
+                + "\nwest:   " + fileWindow.getWest() + "\ncols:   " + COLS + "\nrows:   " + ROWS + "\nn-s resol:   " + RES
+                + "\ne-w resol:   " + RES + "\nformat:   " + format + "\ncompressed:   1");
+    }
+
+    private void writeText( File file, String text ) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStreamWriter writer = new OutputStreamWriter(new FileOutputStream(file));
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+
+}
@@ -26,6 +26,7 @@ import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.modules.r.mapcalc.OmsMapcalc;
 import org.jgrasstools.gears.utils.HMTestCase;
 import org.jgrasstools.gears.utils.HMTestMaps;
+import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -100,6 +101,79 @@ public class TestMapcalc extends HMTestCase {
         checkEqualsSinlgeValue(renderedImage, 900.0, 0.000000001);
     }
 
+    public void testMapcalcRerun() throws Exception {
+        double[][] elevationData = HMTestMaps.flowData;
+        HashMap<String, Double> envelopeParams = HMTestMaps.envelopeParams;
+        CoordinateReferenceSystem crs = HMTestMaps.crs;
+        GridCoverage2D elevationCoverage = CoverageUtilities.buildCoverage("flow", elevationData, envelopeParams, crs, true);
+
+        List<GridCoverage2D> maps = Arrays.asList(elevationCoverage);
+
+        OmsMapcalc mapcalc = new OmsMapcalc();
+        mapcalc.inRasters = maps;
+        mapcalc.pFunction = "images{flow=read; dest=write;} dest = flow*3;";
+        mapcalc.pMaxThreads = 2;
+        mapcalc.doInPlace = true;
+        mapcalc.process();
+
+        // a different script written into the output buffer of the first run
+        mapcalc.pFunction = "images{flow=read; dest=write;} dest = (flow+flow)/2;";
+        mapcalc.doReset = true;
+        mapcalc.process();
+        mapcalc.process();
+
+        GridCoverage2D outMap = mapcalc.outRaster;
+        RenderedImage renderedImage = outMap.getRenderedImage();
+        checkMatrixEqual(renderedImage, HMTestMaps.flowData, 0.000000001);
+    }
+
+    public void testMapcalcStripes() throws Exception {
+        // more rows than three stripes, so that the stripes are split among the threads
+        int rows = 300;
+        int cols = 7;
+        double[][] data = new double[rows][cols];
+        double[][] otherData = new double[rows][cols];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                data[r][c] = r * cols + c;
+                otherData[r][c] = (rows - r) * 0.5 + c;
+            }
+        }
+        RegionMap region = CoverageUtilities.makeRegionParamsMap(3000.0, 0.0, 0.0, 70.0, 10.0, 10.0, cols, rows);
+        CoordinateReferenceSystem crs = HMTestMaps.crs;
+        String script = "images{map=read; dest=write;} dest = map*3;";
+
+        OmsMapcalc mapcalc = new OmsMapcalc();
+        mapcalc.inRasters = Arrays.asList(CoverageUtilities.buildCoverage("map", data, region, crs, true));
+        mapcalc.pFunction = script;
+        mapcalc.pMaxThreads = 4;
+        mapcalc.process();
+        checkMatrixEqual(mapcalc.outRaster.getRenderedImage(), times3(data), 0.000000001);
+
+        // the same script again, with the runtimes compiled by the first run
+        mapcalc.doReset = true;
+        mapcalc.process();
+        checkMatrixEqual(mapcalc.outRaster.getRenderedImage(), times3(data), 0.000000001);
+
+        // the cached runtimes bound to a different map
+        OmsMapcalc otherMapcalc = new OmsMapcalc();
+        otherMapcalc.inRasters = Arrays.asList(CoverageUtilities.buildCoverage("map", otherData, region, crs, true));
+        otherMapcalc.pFunction = script;
+        otherMapcalc.pMaxThreads = 3;
+        otherMapcalc.process();
+        checkMatrixEqual(otherMapcalc.outRaster.getRenderedImage(), times3(otherData), 0.000000001);
+    }
+
+    private double[][] times3( double[][] data ) {
+        double[][] result = new double[data.length][data[0].length];
+        for( int r = 0; r < data.length; r++ ) {
+            for( int c = 0; c < data[0].length; c++ ) {
+                result[r][c] = data[r][c] * 3;
+            }
+        }
+        return result;
+    }
+
     public static void main( String[] args ) throws Exception {
         new TestMapcalc().testMapcalc();
     }
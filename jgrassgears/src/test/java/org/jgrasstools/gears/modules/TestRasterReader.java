@@ -24,6 +24,7 @@ import java.net.URL;
 
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.io.rasterreader.OmsRasterReader;
+import org.jgrasstools.gears.io.rasterreader.RasterReadCache;
 import org.jgrasstools.gears.utils.HMTestCase;
 import org.jgrasstools.gears.utils.HMTestMaps;
 /**
@@ -175,4 +176,59 @@ public class TestRasterReader extends HMTestCase {
         readCoverage = reader.outRaster;
         checkMatrixEqual(readCoverage.getRenderedImage(), mapData);
     }
+
+    public void testRasterReaderCache() throws Exception {
+        RasterReadCache.clear();
+
+        OmsRasterReader reader = new OmsRasterReader();
+        reader.file = arcPath;
+        reader.doCache = true;
+        reader.process();
+        GridCoverage2D readCoverage = reader.outRaster;
+        checkMatrixEqual(readCoverage.getRenderedImage(), HMTestMaps.mapData);
+
+        reader = new OmsRasterReader();
+        reader.file = arcPath;
+        reader.doCache = true;
+        reader.process();
+        assertSame(readCoverage, reader.outRaster);
+
+        // aligned window cut from the cached map
+        double[][] mapData = new double[][]{//
+        {1000, 1000, 1200, 1250, 1300, 1350, 1450}, //
+                {750, 850, 860, 900, 1000, 1200, 1250}, //
+                {700, 750, 800, 850, 900, 1000, 1100}, //
+                {650, 700, 750, 800, 850, 490, 450}, //
+                {430, 500, 600, 700, 800, 500, 450}, //
+                {700, 750, 760, 770, 850, 1000, 1150} //
+        };
+        reader = new OmsRasterReader();
+        reader.file = arcPath;
+        reader.doCache = true;
+        reader.pNorth = 5140020.0;
+        reader.pSouth = 5139840.0;
+        reader.pWest = 1640710.0;
+        reader.pEast = 1640920.0;
+        reader.pXres = 30.0;
+        reader.pYres = 30.0;
+        reader.process();
+        checkMatrixEqual(reader.outRaster.getRenderedImage(), mapData);
+
+        // the default quick read doesn't share the cached coverage
+        assertNotSame(readCoverage, OmsRasterReader.readRaster(arcPath));
+        assertSame(readCoverage, OmsRasterReader.readRaster(arcPath, true));
+
+        // maps bigger than the cache are neither loaded in memory nor cached
+        RasterReadCache.clear();
+        RasterReadCache.setMaxBytes(16);
+        try {
+            readCoverage = OmsRasterReader.readRaster(arcPath, true);
+            checkMatrixEqual(readCoverage.getRenderedImage(), HMTestMaps.mapData);
+            assertNotSame(readCoverage, OmsRasterReader.readRaster(arcPath, true));
+        } finally {
+            RasterReadCache.setMaxBytes(Runtime.getRuntime().maxMemory() / 4);
+        }
+
+        RasterReadCache.clear();
+    }
 }
@@ -44,6 +44,7 @@ public class TestRasterSummary extends HMTestCase {
         summary.pm = pm;
         summary.inRaster = inCoverage;
         summary.doHistogram = true;
+        summary.doQuantiles = true;
         summary.pBins = 100;
         summary.process();
 
@@ -60,6 +61,8 @@ public class TestRasterSummary extends HMTestCase {
         assertEquals(0.0, sdev);
         assertEquals(0.0, range);
         assertEquals(18.0, sum);
+        assertEquals(0.5, summary.outQuantiles[2][0]);
+        assertEquals(2.0, summary.outQuantiles[2][1]);
 
         double[] minMax = OmsRasterSummary.getMinMax(inCoverage);
         assertEquals(2.0, minMax[0]);
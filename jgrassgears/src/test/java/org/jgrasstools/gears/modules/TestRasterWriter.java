@@ -17,6 +17,7 @@
  */
 package org.jgrasstools.gears.modules;
 
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.net.URL;
 import java.util.HashMap;
@@ -24,8 +25,10 @@ import java.util.HashMap;
 import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.io.rasterreader.OmsRasterReader;
 import org.jgrasstools.gears.io.rasterwriter.OmsRasterWriter;
+import org.jgrasstools.gears.io.rasterwriter.StreamingGeoTiffWriter;
 import org.jgrasstools.gears.utils.HMTestCase;
 import org.jgrasstools.gears.utils.HMTestMaps;
+import org.jgrasstools.gears.utils.RegionMap;
 import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 /**
@@ -37,12 +40,14 @@ public class TestRasterWriter extends HMTestCase {
 
     private String arcPath;
     private String grassPath;
+    private String tiffPath;
     private GridCoverage2D coverage;
 
     protected void setUp() throws Exception {
         URL testUrl = this.getClass().getClassLoader().getResource("dtm_test.asc");
         arcPath = new File(testUrl.toURI()).getAbsolutePath();
         arcPath = arcPath.replaceFirst("dtm_test.asc", "dtm_testout.asc");
+        tiffPath = arcPath.replaceFirst("dtm_testout.asc", "dtm_testout_stream.tiff");
         testUrl = this.getClass().getClassLoader().getResource("gbovest/testcase/cell");
         grassPath = new File(testUrl.toURI()).getAbsolutePath() + File.separator + "testout";
 
@@ -85,4 +90,66 @@ public class TestRasterWriter extends HMTestCase {
         }
     }
 
+    public void testStreamingGeoTiffWriter() throws Exception {
+        RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(coverage);
+        // the smallest tile, larger than the map, so that the rows and cols are padded
+        StreamingGeoTiffWriter writer = new StreamingGeoTiffWriter(new File(tiffPath), regionMap,
+                coverage.getCoordinateReferenceSystem(), 16);
+        try {
+            for( double[] row : HMTestMaps.mapData ) {
+                writer.writeRow(row);
+            }
+        } finally {
+            writer.close();
+        }
+
+        OmsRasterReader reader = new OmsRasterReader();
+        reader.file = tiffPath;
+        reader.process();
+        GridCoverage2D readCoverage = reader.outRaster;
+        checkMatrixEqual(readCoverage.getRenderedImage(), HMTestMaps.mapData);
+        new File(tiffPath).delete();
+    }
+
+    public void testStreamingGeoTiffWriterTiles() throws Exception {
+        // 3 bands of tiles of 3 tiles each, the last band and column only partially filled
+        int cols = 45;
+        int rows = 37;
+        RegionMap regionMap = CoverageUtilities.makeRegionParamsMap(5370.0, 5000.0, 1000.0, 1450.0, 10.0, 10.0, cols, rows);
+        double[][] data = new double[rows][cols];
+        for( int r = 0; r < rows; r++ ) {
+            for( int c = 0; c < cols; c++ ) {
+                data[r][c] = (r + c) % 7 == 0 ? Double.NaN : r * 1000.0 + c + 0.25;
+            }
+        }
+
+        StreamingGeoTiffWriter writer = new StreamingGeoTiffWriter(new File(tiffPath), regionMap, HMTestMaps.crs, 16);
+        try {
+            // the first rows one by one, the others as a raster crossing the band borders
+            int splitRow = 20;
+            for( int r = 0; r < splitRow; r++ ) {
+                writer.writeRow(data[r]);
+            }
+            WritableRaster raster = CoverageUtilities.createDoubleWritableRaster(cols, rows - splitRow, null, null, null);
+            for( int r = splitRow; r < rows; r++ ) {
+                raster.setSamples(0, r - splitRow, cols, 1, 0, data[r]);
+            }
+            writer.writeRows(raster);
+        } finally {
+            writer.close();
+        }
+
+        OmsRasterReader reader = new OmsRasterReader();
+        reader.file = tiffPath;
+        reader.process();
+        GridCoverage2D readCoverage = reader.outRaster;
+        RegionMap readRegion = CoverageUtilities.getRegionParamsFromGridCoverage(readCoverage);
+        assertEquals(cols, readRegion.getCols());
+        assertEquals(rows, readRegion.getRows());
+        assertEquals(5370.0, readRegion.getNorth(), DELTA);
+        assertEquals(1000.0, readRegion.getWest(), DELTA);
+        checkMatrixEqual(readCoverage.getRenderedImage(), data);
+        new File(tiffPath).delete();
+    }
+
 }
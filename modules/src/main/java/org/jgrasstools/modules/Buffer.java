@@ -31,6 +31,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_outMap_DESCRIPT
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pBuffer_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pCapstyle_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pJoinstyle_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSBUFFER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.libs.modules.Variables.CAP_FLAT;
 import static org.jgrasstools.gears.libs.modules.Variables.CAP_ROUND;
 import static org.jgrasstools.gears.libs.modules.Variables.CAP_SQUARE;
@@ -84,6 +85,10 @@ public class Buffer extends JGTModel {
     @In
     public String pCapstyle = CAP_ROUND;
 
+    @Description(OMSBUFFER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSBUFFER_outMap_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -97,7 +102,10 @@ public class Buffer extends JGTModel {
         buffer.doSinglesided = doSinglesided;
         buffer.pJoinstyle = pJoinstyle;
         buffer.pCapstyle = pCapstyle;
+        buffer.pMaxThreads = pMaxThreads;
         buffer.pm = pm;
+        buffer.doProcess = doProcess;
+        buffer.doReset = doReset;
         buffer.process();
         dumpVector(buffer.outMap, outMap);
     }
@@ -25,10 +25,21 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_LA
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_doHorizonTable_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_doMonthly_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_doSeasonal_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outIns_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outInsMonthly_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_outInsSeasonal_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_pHorizonAzimuths_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tEndDate_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSINSOLATION_tStartDate_DESCRIPTION;
+
+import java.io.File;
+import java.util.List;
+
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Execute;
@@ -40,6 +51,7 @@ import oms3.annotations.Name;
 import oms3.annotations.Status;
 import oms3.annotations.UI;
 
+import org.geotools.coverage.grid.GridCoverage2D;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.hortonmachine.modules.hydrogeomorphology.insolation.OmsInsolation;
@@ -66,21 +78,68 @@ public class Insolation extends JGTModel {
     @In
     public String tEndDate = null;
 
+    @Description(OMSINSOLATION_doHorizonTable_DESCRIPTION)
+    @In
+    public boolean doHorizonTable = false;
+
+    @Description(OMSINSOLATION_pHorizonAzimuths_DESCRIPTION)
+    @In
+    public int pHorizonAzimuths = 72;
+
+    @Description(OMSINSOLATION_doMonthly_DESCRIPTION)
+    @In
+    public boolean doMonthly = false;
+
+    @Description(OMSINSOLATION_doSeasonal_DESCRIPTION)
+    @In
+    public boolean doSeasonal = false;
+
+    @Description(OMSINSOLATION_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSINSOLATION_outIns_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
     public String outIns;
 
+    @Description(OMSINSOLATION_outInsMonthly_DESCRIPTION)
+    @UI(JGTConstants.FOLDEROUT_UI_HINT)
+    @In
+    public String outInsMonthly;
+
+    @Description(OMSINSOLATION_outInsSeasonal_DESCRIPTION)
+    @UI(JGTConstants.FOLDEROUT_UI_HINT)
+    @In
+    public String outInsSeasonal;
+
     @Execute
     public void process() throws Exception {
         OmsInsolation insolation = new OmsInsolation();
         insolation.inElev = getRaster(inElev);
         insolation.tStartDate = tStartDate;
         insolation.tEndDate = tEndDate;
+        insolation.doHorizonTable = doHorizonTable;
+        insolation.pHorizonAzimuths = pHorizonAzimuths;
+        insolation.doMonthly = doMonthly;
+        insolation.doSeasonal = doSeasonal;
+        insolation.pMaxThreads = pMaxThreads;
         insolation.pm = pm;
         insolation.doProcess = doProcess;
         insolation.doReset = doReset;
         insolation.process();
         dumpRaster(insolation.outIns, outIns);
+        dumpRasters(insolation.outInsMonthly, outInsMonthly);
+        dumpRasters(insolation.outInsSeasonal, outInsSeasonal);
+    }
+
+    private void dumpRasters( List<GridCoverage2D> rasters, String folder ) throws Exception {
+        if (rasters == null || folder == null) {
+            return;
+        }
+        for( GridCoverage2D raster : rasters ) {
+            File file = new File(folder, raster.getName().toString() + ".tiff");
+            dumpRaster(raster, file.getAbsolutePath());
+        }
     }
 }
@@ -29,6 +29,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_inMap_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_outDensity_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_pKernel_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSKERNELDENSITY_pRadius_DESCRIPTION;
 import oms3.annotations.Author;
 import oms3.annotations.Description;
@@ -71,6 +72,10 @@ public class KernelDensity extends JGTModel {
     @In
     public boolean doConstant = false;
 
+    @Description(OMSKERNELDENSITY_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSKERNELDENSITY_outDensity_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -84,6 +89,7 @@ public class KernelDensity extends JGTModel {
         omskerneldensity.pKernel = pKernel;
         omskerneldensity.pRadius = pRadius;
         omskerneldensity.doConstant = doConstant;
+        omskerneldensity.pMaxThreads = pMaxThreads;
         omskerneldensity.pm = pm;
         omskerneldensity.doProcess = doProcess;
         omskerneldensity.doReset = doReset;
@@ -27,6 +27,11 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_NAM
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_STATUS;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_inFlow_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMAGNITUDO_outMag_DESCRIPTION;
+
+import java.io.File;
+
+import javax.media.jai.iterator.RandomIter;
+
 import oms3.annotations.Author;
 import oms3.annotations.Description;
 import oms3.annotations.Execute;
@@ -38,8 +43,12 @@ import oms3.annotations.Name;
 import oms3.annotations.Status;
 import oms3.annotations.UI;
 
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.jgrasstools.gears.libs.modules.FlowTopology;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.gears.utils.RegionMap;
+import org.jgrasstools.gears.utils.coverage.CoverageUtilities;
 import org.jgrasstools.hortonmachine.modules.network.magnitudo.OmsMagnitudo;
 
 @Description(OMSMAGNITUDO_DESCRIPTION)
@@ -64,7 +73,16 @@ public class Magnitudo extends JGTModel {
     @Execute
     public void process() throws Exception {
         OmsMagnitudo magnitudo = new OmsMagnitudo();
-        magnitudo.inFlow = getRaster(inFlow);
+        GridCoverage2D flowCoverage = getRaster(inFlow);
+        magnitudo.inFlow = flowCoverage;
+        File flowFile = new File(inFlow);
+        if (flowFile.isFile()) {
+            // reuse the topology cached next to the flow map
+            RegionMap regionMap = CoverageUtilities.getRegionParamsFromGridCoverage(flowCoverage);
+            RandomIter flowIter = CoverageUtilities.getRandomIterator(flowCoverage);
+            magnitudo.inTopology = FlowTopology.getCached(flowFile, flowIter, regionMap.getCols(), regionMap.getRows(), pm);
+            flowIter.done();
+        }
         magnitudo.pm = pm;
         magnitudo.doProcess = doProcess;
         magnitudo.doReset = doReset;
@@ -0,0 +1,92 @@
+/*
+ * This file is part of JGrasstools (http://www.jgrasstools.org)
+ * (C) HydroloGIS - www.hydrologis.com
+ *
+ * JGrasstools is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jgrasstools.modules;
+
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_AUTHORCONTACTS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_AUTHORNAMES;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_KEYWORDS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_LABEL;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_LICENSE;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_NAME;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_fId_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_inFlow_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_inOutlets_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_outBasins_DESCRIPTION;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSMULTIWATEROUTLET_pMaxThreads_DESCRIPTION;
+import oms3.annotations.Author;
+import oms3.annotations.Description;
+import oms3.annotations.Execute;
+import oms3.annotations.In;
+import oms3.annotations.Keywords;
+import oms3.annotations.Label;
+import oms3.annotations.License;
+import oms3.annotations.Name;
+import oms3.annotations.Status;
+import oms3.annotations.UI;
+
+import org.jgrasstools.gears.libs.modules.JGTConstants;
+import org.jgrasstools.gears.libs.modules.JGTModel;
+import org.jgrasstools.hortonmachine.modules.demmanipulation.wateroutlet.OmsMultiWateroutlet;
+
+@Description(OMSMULTIWATEROUTLET_DESCRIPTION)
+@Author(name = OMSMULTIWATEROUTLET_AUTHORNAMES, contact = OMSMULTIWATEROUTLET_AUTHORCONTACTS)
+@Keywords(OMSMULTIWATEROUTLET_KEYWORDS)
+@Label(OMSMULTIWATEROUTLET_LABEL)
+@Name("_" + OMSMULTIWATEROUTLET_NAME)
+@Status(OMSMULTIWATEROUTLET_STATUS)
+@License(OMSMULTIWATEROUTLET_LICENSE)
+public class MultiWateroutlet extends JGTModel {
+    @Description(OMSMULTIWATEROUTLET_inFlow_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inFlow;
+
+    @Description(OMSMULTIWATEROUTLET_inOutlets_DESCRIPTION)
+    @UI(JGTConstants.FILEIN_UI_HINT)
+    @In
+    public String inOutlets;
+
+    @Description(OMSMULTIWATEROUTLET_fId_DESCRIPTION)
+    @In
+    public String fId;
+
+    @Description(OMSMULTIWATEROUTLET_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
+    @Description(OMSMULTIWATEROUTLET_outBasins_DESCRIPTION)
+    @UI(JGTConstants.FILEOUT_UI_HINT)
+    @In
+    public String outBasins = null;
+
+    @Execute
+    public void process() throws Exception {
+        OmsMultiWateroutlet omsmultiwateroutlet = new OmsMultiWateroutlet();
+        omsmultiwateroutlet.inFlow = getRaster(inFlow);
+        omsmultiwateroutlet.inOutlets = getVector(inOutlets);
+        omsmultiwateroutlet.fId = fId;
+        omsmultiwateroutlet.pMaxThreads = pMaxThreads;
+        omsmultiwateroutlet.pm = pm;
+        omsmultiwateroutlet.doProcess = doProcess;
+        omsmultiwateroutlet.doReset = doReset;
+        omsmultiwateroutlet.process();
+        dumpRaster(omsmultiwateroutlet.outBasins, outBasins);
+    }
+}
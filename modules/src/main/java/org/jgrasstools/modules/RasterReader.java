@@ -26,6 +26,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_LICENSE;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_doLegacyGrass_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_fileNovalue_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_file_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERREADER_geodataNovalue_DESCRIPTION;
@@ -122,6 +123,10 @@ public class RasterReader extends JGTModel {
     @In
     public Boolean doLegacyGrass = false;
 
+    @Description(OMSRASTERREADER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSRASTERREADER_outRaster_DESCRIPTION)
     @In
     public GridCoverage2D outRaster = null;
@@ -151,6 +156,7 @@ public class RasterReader extends JGTModel {
         rasterreader.pRows = pRows;
         rasterreader.pCols = pCols;
         rasterreader.doLegacyGrass = doLegacyGrass;
+        rasterreader.pMaxThreads = pMaxThreads;
         rasterreader.doEnvelope = doEnvelope;
         rasterreader.pm = pm;
         rasterreader.doProcess = doProcess;
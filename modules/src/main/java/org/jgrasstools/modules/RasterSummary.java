@@ -26,11 +26,13 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_LICENSE;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_doHistogram_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_doQuantiles_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_inRaster_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outCb_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outMax_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outMean_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outMin_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outQuantiles_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outRange_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outSdev_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSRASTERSUMMARY_outSum_DESCRIPTION;
@@ -73,6 +75,10 @@ public class RasterSummary extends JGTModel {
     @In
     public boolean doHistogram = false;
 
+    @Description(OMSRASTERSUMMARY_doQuantiles_DESCRIPTION)
+    @In
+    public boolean doQuantiles = false;
+
     @Description(OMSRASTERSUMMARY_outMin_DESCRIPTION)
     @Out
     public Double outMin = null;
@@ -101,12 +107,17 @@ public class RasterSummary extends JGTModel {
     @Out
     public double[][] outCb = null;
 
+    @Description(OMSRASTERSUMMARY_outQuantiles_DESCRIPTION)
+    @Out
+    public double[][] outQuantiles = null;
+
     @Execute
     public void process() throws Exception {
         OmsRasterSummary rastersummary = new OmsRasterSummary();
         rastersummary.inRaster = getRaster(inRaster);
         rastersummary.pBins = pBins;
         rastersummary.doHistogram = doHistogram;
+        rastersummary.doQuantiles = doQuantiles;
         rastersummary.pm = pm;
         rastersummary.doProcess = doProcess;
         rastersummary.doReset = doReset;
@@ -118,5 +129,6 @@ public class RasterSummary extends JGTModel {
         outRange = rastersummary.outRange;
         outSum = rastersummary.outSum;
         outCb = rastersummary.outCb;
+        outQuantiles = rastersummary.outQuantiles;
     }
 }
@@ -25,6 +25,7 @@ import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LABEL
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_LICENSE;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_NAME;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_STATUS;
+import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_doHorizonTable_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_inElev_DESCRIPTION;
 import static org.jgrasstools.hortonmachine.i18n.HortonMessages.OMSSKYVIEW_outSky_DESCRIPTION;
 import oms3.annotations.Author;
@@ -56,6 +57,10 @@ public class Skyview extends JGTModel {
     @In
     public String inElev = null;
 
+    @Description(OMSSKYVIEW_doHorizonTable_DESCRIPTION)
+    @In
+    public boolean doHorizonTable = false;
+
     @Description(OMSSKYVIEW_outSky_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -65,6 +70,7 @@ public class Skyview extends JGTModel {
     public void process() throws Exception {
         OmsSkyview skyview = new OmsSkyview();
         skyview.inElev = getRaster(inElev);
+        skyview.doHorizonTable = doHorizonTable;
         skyview.pm = pm;
         skyview.doProcess = doProcess;
         skyview.doReset = doReset;
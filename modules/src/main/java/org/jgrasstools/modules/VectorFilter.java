@@ -39,9 +39,11 @@ import oms3.annotations.Name;
 import oms3.annotations.Status;
 import oms3.annotations.UI;
 
+import org.jgrasstools.gears.io.shapefile.OmsShapefileFeatureWriter;
 import org.jgrasstools.gears.libs.modules.JGTConstants;
 import org.jgrasstools.gears.libs.modules.JGTModel;
 import org.jgrasstools.gears.modules.v.vectorfilter.OmsVectorFilter;
+import org.jgrasstools.gears.utils.features.pipeline.FeaturePipeline;
 
 @Description(OMSVECTORFILTER_DESCRIPTION)
 @Author(name = OMSVECTORFILTER_AUTHORNAMES, contact = OMSVECTORFILTER_AUTHORCONTACTS)
@@ -74,6 +76,13 @@ public class VectorFilter extends JGTModel {
         omsvectorfilter.pm = pm;
         omsvectorfilter.doProcess = doProcess;
         omsvectorfilter.doReset = doReset;
+        if (!doProcess && omsvectorfilter.inVector != null && outVector != null && outVector.toLowerCase().endsWith(".shp")) {
+            // stream the features from the reader to the shapefile
+            FeaturePipeline pipeline = new FeaturePipeline(omsvectorfilter.inVector);
+            pipeline.add(omsvectorfilter.createOperator(omsvectorfilter.inVector.getSchema()));
+            OmsShapefileFeatureWriter.writeShapefile(outVector, pipeline, pm);
+            return;
+        }
         omsvectorfilter.process();
         dumpVector(omsvectorfilter.outVector, outVector);
     }
@@ -25,9 +25,11 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_LICENSE;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_STATUS;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_doDissolve_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_inMap1_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_inMap2_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTOROVERLAYOPERATORS_pType_DESCRIPTION;
 import static org.jgrasstools.gears.libs.modules.Variables.DIFFERENCE;
 import static org.jgrasstools.gears.libs.modules.Variables.INTERSECTION;
@@ -72,6 +74,14 @@ public class VectorOverlayOperators extends JGTModel {
     @In
     public String pType = INTERSECTION;
 
+    @Description(OMSVECTOROVERLAYOPERATORS_doDissolve_DESCRIPTION)
+    @In
+    public boolean doDissolve = false;
+
+    @Description(OMSVECTOROVERLAYOPERATORS_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTOROVERLAYOPERATORS_outMap_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -83,6 +93,8 @@ public class VectorOverlayOperators extends JGTModel {
         vectoroverlayoperators.inMap1 = getVector(inMap1);
         vectoroverlayoperators.inMap2 = getVector(inMap2);
         vectoroverlayoperators.pType = pType;
+        vectoroverlayoperators.doDissolve = doDissolve;
+        vectoroverlayoperators.pMaxThreads = pMaxThreads;
         vectoroverlayoperators.pm = pm;
         vectoroverlayoperators.doProcess = doProcess;
         vectoroverlayoperators.doReset = doReset;
@@ -27,6 +27,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_NAME;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_inVector_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_outVector_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_pTolerance_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORSIMPLIFIER_pType_DESCRIPTION;
 import oms3.annotations.Author;
@@ -66,6 +67,10 @@ public class VectorSimplifier extends JGTModel {
     @In
     public double pTolerance = 0.2;
 
+    @Description(OMSVECTORSIMPLIFIER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTORSIMPLIFIER_outVector_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -77,6 +82,7 @@ public class VectorSimplifier extends JGTModel {
         vectorsimplifier.inVector = getVector(inVector);
         vectorsimplifier.pType = pType;
         vectorsimplifier.pTolerance = pTolerance;
+        vectorsimplifier.pMaxThreads = pMaxThreads;
         vectorsimplifier.pm = pm;
         vectorsimplifier.doProcess = doProcess;
         vectorsimplifier.doReset = doReset;
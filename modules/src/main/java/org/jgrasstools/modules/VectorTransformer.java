@@ -28,6 +28,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_NAME
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_inVector_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_outVector_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_pTransX_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSVECTORTRANSFORMER_pTransY_DESCRIPTION;
 import oms3.annotations.Author;
@@ -67,6 +68,10 @@ public class VectorTransformer extends JGTModel {
     @In
     public double pTransY;
 
+    @Description(OMSVECTORTRANSFORMER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSVECTORTRANSFORMER_outVector_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -78,6 +83,7 @@ public class VectorTransformer extends JGTModel {
         vectortransformer.inVector = getVector(inVector);
         vectortransformer.pTransX = pTransX;
         vectortransformer.pTransY = pTransY;
+        vectortransformer.pMaxThreads = pMaxThreads;
         vectortransformer.pm = pm;
         vectortransformer.doProcess = doProcess;
         vectortransformer.doReset = doReset;
@@ -29,6 +29,7 @@ import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_STATUS;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_inGeodata_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_outGeodata_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pCols_DESCRIPTION;
+import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pMaxThreads_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pMode_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pRows_DESCRIPTION;
 import static org.jgrasstools.gears.i18n.GearsMessages.OMSWINDOWSAMPLER_pXstep_DESCRIPTION;
@@ -82,6 +83,10 @@ public class WindowSampler extends JGTModel {
     @In
     public Integer pYstep;
 
+    @Description(OMSWINDOWSAMPLER_pMaxThreads_DESCRIPTION)
+    @In
+    public int pMaxThreads = 1;
+
     @Description(OMSWINDOWSAMPLER_outGeodata_DESCRIPTION)
     @UI(JGTConstants.FILEOUT_UI_HINT)
     @In
@@ -96,6 +101,7 @@ public class WindowSampler extends JGTModel {
         windowsampler.pCols = pCols;
         windowsampler.pXstep = pXstep;
         windowsampler.pYstep = pYstep;
+        windowsampler.pMaxThreads = pMaxThreads;
         windowsampler.pm = pm;
         windowsampler.doProcess = doProcess;
         windowsampler.doReset = doReset;